@@ -3,6 +3,9 @@ package edu.usfca.cs272;
 import java.io.IOException;
 import java.nio.file.Path;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
 /**
  * Class responsible for running this project based on the provided command-line
  * arguments. See the README for details.
@@ -12,6 +15,9 @@ import java.nio.file.Path;
  * @version Spring 2024
  */
 public class Driver {
+	/** Logger used for this class. */
+	private static final Logger log = LogManager.getLogger();
+
 	/**
 	 * Initializes the classes necessary based on the provided command-line
 	 * arguments. This includes (but is not limited to) how to build or search an
@@ -26,9 +32,29 @@ public class Driver {
 		ThreadSafeInvertedIndex threadSafeIndex = null;
 		WorkQueue queue = null;
 		QueryProcessorInterface search = null;
+		QueryCache cache = null;
 
 		boolean multithread = parser.hasFlag("-threads");
 		boolean isPartial = parser.hasFlag("-partial");
+		int limit = parser.getInteger("-limit", Integer.MAX_VALUE);
+		boolean streamed = false;
+
+		QueryParser queryParser = new QueryParser(parser.hasFlag("-phrases"), parser.hasFlag("-operators"),
+				parser.hasFlag("-and"));
+
+		Scorer scorer = Scorer.forName(parser.getString("-scorer", "count"));
+		if (scorer == null) {
+			System.out.println("Unknown scorer, using count instead: " + parser.getString("-scorer"));
+			scorer = Scorer.COUNT;
+		}
+
+		if (parser.hasFlag("-cache")) {
+			cache = QueryCache.forBounds(parser.getString("-cache"));
+			if (cache == null) {
+				System.out.println("Invalid cache bounds, using the defaults instead: " + parser.getString("-cache"));
+				cache = new QueryCache();
+			}
+		}
 
 		if (multithread) {
 			threadSafeIndex = new ThreadSafeInvertedIndex();
@@ -39,13 +65,40 @@ public class Driver {
 				threads = 5;
 			}
 
-			queue = new WorkQueue(threads);
+			WorkQueue.Type executor = WorkQueue.Type.forName(parser.getString("-executor", "legacy"));
+			if (executor == null) {
+				System.out.println("Unknown executor, using legacy instead: " + parser.getString("-executor"));
+				executor = WorkQueue.Type.LEGACY;
+			}
 
-			search = new QueuedQueryProcessor(threadSafeIndex, isPartial, queue);
+			queue = new WorkQueue(threads, executor);
 		}
 		else {
 			index = new InvertedIndex();
-			search = new QueryProcessor(index, isPartial);
+		}
+
+		if (parser.hasFlag("-load")) {
+			Path segment = parser.getPath("-load");
+
+			if (segment != null) {
+				try {
+					IndexSegment.map(segment, index);
+				}
+				catch (IOException e) {
+					System.out.println("Unable to load the inverted index from segment: " + segment);
+
+					// never search part of a segment, start over from an empty index
+					threadSafeIndex = multithread ? new ThreadSafeInvertedIndex() : null;
+					index = multithread ? threadSafeIndex : new InvertedIndex();
+				}
+			}
+		}
+
+		if (multithread) {
+			search = new QueuedQueryProcessor(threadSafeIndex, isPartial, limit, scorer, queryParser, cache, queue);
+		}
+		else {
+			search = new QueryProcessor(index, isPartial, limit, scorer, queryParser, cache);
 		}
 
 		if (parser.hasFlag("-text")) {
@@ -69,11 +122,23 @@ public class Driver {
 			}
 		}
 
+		// the index is complete, so searches no longer need to synchronize
+		index.freeze();
+
 		if (parser.hasFlag("-query")) {
 			Path query = parser.getPath("-query");
 			if (query != null) {
 				try {
-					search.processQueries(query);
+					if (parser.hasFlag("-stream") && parser.hasFlag("-results")) {
+						// write the results while searching, holding only a window of them
+						Path resultsOutput = parser.getPath("-results", Path.of("results.json"));
+						int window = parser.getInteger("-stream", SearchResultStream.DEFAULT_WINDOW);
+						streamed = true;
+						search.processQueries(query, resultsOutput, window);
+					}
+					else {
+						search.processQueries(query);
+					}
 				}
 				catch (IOException e) {
 					System.err.println("Error getting search results: " + e.getMessage());
@@ -81,6 +146,10 @@ public class Driver {
 			}
 		}
 
+		if (cache != null) {
+			log.info("Query cache: {}", cache);
+		}
+
 		if (queue != null) {
 			queue.shutdown();
 		}
@@ -106,7 +175,17 @@ public class Driver {
 			}
 		}
 
-		if (parser.hasFlag("-results")) {
+		if (parser.hasFlag("-save")) {
+			Path segmentOutput = parser.getPath("-save", Path.of("index.bin"));
+			try {
+				index.writeSegment(segmentOutput);
+			}
+			catch (IOException e) {
+				System.out.println("Error writing index segment: " + e.getMessage());
+			}
+		}
+
+		if (parser.hasFlag("-results") && !streamed) {
 			Path resultsOutput = parser.getPath("-results", Path.of("results.json"));
 			try {
 				search.writeSearchResults(resultsOutput);
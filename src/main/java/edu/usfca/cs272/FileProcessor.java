@@ -1,15 +1,24 @@
 package edu.usfca.cs272;
 
-import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Checksum;
 
 import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
 /**
  * Class responsible for processing files and directories. It includes methods
@@ -26,66 +35,353 @@ public class FileProcessor {
 	 * inverted index. If a file path is already present in the inverted index, it
 	 * updates the word count and index information.
 	 *
+	 * Files that changed since they were indexed are only collected while the
+	 * directory is traversed. Their stale documents are removed together once the
+	 * traversal is done, and then the files are read again.
+	 *
 	 * @param directory the directory to traverse
 	 * @param index the inverted index to update
 	 * @throws IOException if an I/O error occurs while traversing the directory or
 	 *   reading files
 	 */
 	public static void traverseDirectory(Path directory, InvertedIndex index) throws IOException {
+		LinkedHashMap<Path, BasicFileAttributes> changed = new LinkedHashMap<>();
+		traverseDirectory(directory, index, changed);
+		readChanged(changed, index);
+	}
+
+	/**
+	 * Recursively traverses the specified directory, reading each text file that
+	 * was never indexed and collecting each one that changed since it was.
+	 *
+	 * @param directory the directory to traverse
+	 * @param index the inverted index to update
+	 * @param changed the changed files found so far, with their attributes
+	 * @throws IOException if an I/O error occurs while traversing the directory or
+	 *   reading files
+	 */
+	private static void traverseDirectory(Path directory, InvertedIndex index,
+			Map<Path, BasicFileAttributes> changed) throws IOException {
 		try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
 			for (Path path : paths) {
-				if (Files.isDirectory(path)) {
-					traverseDirectory(path, index);
+				BasicFileAttributes attributes = readAttributes(path);
+
+				if (attributes == null) {
+					continue;
+				}
+
+				if (attributes.isDirectory()) {
+					traverseDirectory(path, index, changed);
 				}
-				else if (Files.isRegularFile(path) && isExtensionText(path)) {
-					readFile(path, index);
+				else if (attributes.isRegularFile() && isExtensionText(path)
+						&& needsIndexing(path, attributes, index)) {
+					if (index.getStamp(path.toString()) != null) {
+						changed.put(path, attributes);
+					}
+					else {
+						readFile(path, attributes, index, UTF_8);
+					}
 				}
 			}
 		}
 	}
 
+	/**
+	 * Removes the stale documents of files that changed since they were indexed,
+	 * all in one pass over the index, and then reads the files again.
+	 *
+	 * @param changed the changed files, with their attributes
+	 * @param index the inverted index to update
+	 * @throws IOException if an I/O error occurs while reading the files
+	 */
+	private static void readChanged(Map<Path, BasicFileAttributes> changed, InvertedIndex index)
+			throws IOException {
+		if (changed.isEmpty()) {
+			return;
+		}
+
+		index.removeDocuments(locations(changed.keySet()));
+
+		for (var entry : changed.entrySet()) {
+			readFile(entry.getKey(), entry.getValue(), index, UTF_8);
+		}
+	}
+
+	/**
+	 * Returns the locations of files in the index.
+	 *
+	 * @param paths the paths of the files
+	 * @return the location of each file, in the same order
+	 */
+	static ArrayList<String> locations(Collection<Path> paths) {
+		ArrayList<String> locations = new ArrayList<>(paths.size());
+
+		for (Path path : paths) {
+			locations.add(path.toString());
+		}
+
+		return locations;
+	}
+
+	/**
+	 * Reads the attributes of a file, following symbolic links, so that checking
+	 * whether it is a directory or a regular file only takes one call to the file
+	 * system.
+	 *
+	 * @param path the path of the file
+	 * @return the attributes of the file, or {@code null} if they cannot be read,
+	 *   in which case the file is neither a directory nor a regular file as far
+	 *   as {@link Files#isDirectory} and {@link Files#isRegularFile} are concerned
+	 */
+	public static BasicFileAttributes readAttributes(Path path) {
+		try {
+			return Files.readAttributes(path, BasicFileAttributes.class);
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
 	/**
 	 * Reads the content of the specified file, parses it line by line, and updates
 	 * the inverted index. For each line, it extracts words, stems them, and adds
 	 * them to the inverted index along with their positions. It also updates the
-	 * word count for the file in the inverted index.
+	 * word count for the file in the inverted index, and records the size,
+	 * modified time, and checksum of the file so later runs can skip it if it has
+	 * not changed.
 	 *
 	 * @param path the path to the file to read
 	 * @param index the inverted index to update
 	 * @throws IOException if an I/O error occurs while reading the file
 	 */
 	public static void readFile(Path path, InvertedIndex index) throws IOException {
+		readFile(path, index, UTF_8);
+	}
 
-		try (BufferedReader reader = Files.newBufferedReader(path)) {
-			String line;
-			int position = 1;
-			String pathStr = path.toString();
-			Stemmer stemmer = new SnowballStemmer(ENGLISH);
+	/**
+	 * Reads the content of the specified file in the given character set. UTF-8
+	 * files are read through a {@link LineReader}, which decodes large blocks of
+	 * the file without creating a string for every line. Files in any other
+	 * character set are read through a {@link BufferedReader}.
+	 *
+	 * @param path the path to the file to read
+	 * @param index the inverted index to update
+	 * @param charset the character set of the file
+	 * @throws IOException if an I/O error occurs while reading the file
+	 *
+	 * @see #readFile(Path, InvertedIndex)
+	 */
+	public static void readFile(Path path, InvertedIndex index, Charset charset) throws IOException {
+		readFile(path, Files.readAttributes(path, BasicFileAttributes.class), index, charset);
+	}
 
-			while ((line = reader.readLine()) != null) {
-				String[] words = FileStemmer.parse(line);
+	/**
+	 * Reads the content of the specified file in the given character set, using
+	 * attributes that were already read, for example while traversing a
+	 * directory. The attributes are recorded in the stamp of the file.
+	 *
+	 * @param path the path to the file to read
+	 * @param attributes the attributes of the file, read before its content
+	 * @param index the inverted index to update
+	 * @param charset the character set of the file
+	 * @throws IOException if an I/O error occurs while reading the file
+	 *
+	 * @see #readFile(Path, InvertedIndex, Charset)
+	 */
+	public static void readFile(Path path, BasicFileAttributes attributes, InvertedIndex index, Charset charset)
+			throws IOException {
+		Checksum checksum = FileStamp.checksum();
+		String pathStr = path.toString();
 
-				for (String word : words) {
-					String stemmedWord = stemmer.stem(word).toString();
-					index.addWord(stemmedWord, pathStr, position);
-					position++;
-				}
+		if (charset.equals(UTF_8)) {
+			// one extra byte so small files are read and found to end in one pass
+			int bufferSize = (int) Math.min(attributes.size() + 1, LineReader.BUFFER_SIZE);
+
+			try (LineReader reader = new LineReader(FileChannel.open(path), checksum, bufferSize)) {
+				readWords(reader, pathStr, index);
 			}
 		}
+		else {
+			try (CheckedInputStream input = new CheckedInputStream(Files.newInputStream(path), checksum);
+					BufferedReader reader = new BufferedReader(new InputStreamReader(input, charset.newDecoder()))) {
+				readWords(reader, pathStr, index);
+			}
+		}
+
+		index.setStamp(pathStr, new FileStamp(attributes, checksum.getValue()));
 	}
 
 	/**
-	 * Processes the given input path, updating the provided inverted index.
+	 * Reads text line by line, stems each word, and adds the stems to the inverted
+	 * index at consecutive positions starting from 1.
+	 *
+	 * @param reader the reader of the text
+	 * @param location the path of the document the text belongs to
+	 * @param index the inverted index to update
+	 * @return the number of words read
+	 * @throws IOException if an I/O error occurs while reading the text
+	 */
+	public static int readWords(BufferedReader reader, String location, InvertedIndex index) throws IOException {
+		String line;
+		int position = 1;
+		WordTokenizer tokenizer = new WordTokenizer();
+
+		while ((line = reader.readLine()) != null) {
+			position = addWords(line, location, index, tokenizer, position);
+		}
+
+		return position - 1;
+	}
+
+	/**
+	 * Reads text line by line, stems each word, and adds the stems to the inverted
+	 * index at consecutive positions starting from 1.
+	 *
+	 * @param reader the reader of the text
+	 * @param location the path of the document the text belongs to
+	 * @param index the inverted index to update
+	 * @return the number of words read
+	 * @throws IOException if an I/O error occurs while reading the text
+	 */
+	public static int readWords(LineReader reader, String location, InvertedIndex index) throws IOException {
+		CharSequence line;
+		int position = 1;
+		WordTokenizer tokenizer = new WordTokenizer();
+
+		while ((line = reader.readLine()) != null) {
+			position = addWords(line, location, index, tokenizer, position);
+		}
+
+		return position - 1;
+	}
+
+	/**
+	 * Stems each word of a line and adds the stems to the inverted index at
+	 * consecutive positions.
+	 *
+	 * @param line the line of text
+	 * @param location the path of the document the text belongs to
+	 * @param index the inverted index to update
+	 * @param tokenizer the tokenizer to split the line with
+	 * @param position the position of the first word of the line
+	 * @return the position after the last word of the line
+	 */
+	private static int addWords(CharSequence line, String location, InvertedIndex index, WordTokenizer tokenizer,
+			int position) {
+		Stemmer stemmer = StemCache.ENGLISH;
+		int words = tokenizer.tokenize(line);
+
+		for (int i = 0; i < words; i++) {
+			String stemmedWord = stemmer.stem(tokenizer.view(i)).toString();
+			index.addWord(stemmedWord, location, position);
+			position++;
+		}
+
+		return position;
+	}
+
+	/**
+	 * Checks whether a file has to be read into the index. Files that have never
+	 * been indexed always need to be read. Files whose recorded size and modified
+	 * time still match are skipped. Otherwise, the file contents are hashed: if the
+	 * contents are unchanged only the stamp is updated, and if they changed, the
+	 * file needs to be read again.
+	 *
+	 * The stale document of a changed file is left in the index. Callers remove it
+	 * before reading the file again, ideally together with the documents of every
+	 * other changed file, since each removal visits every word in the index.
+	 *
+	 * @param path the path of the file to check
+	 * @param index the inverted index to check against
+	 * @return {@code true} if the file needs to be read
+	 * @throws IOException if an I/O error occurs while checking the file
+	 */
+	public static boolean needsIndexing(Path path, InvertedIndex index) throws IOException {
+		// the attributes are only needed if the file was indexed before
+		if (index.getStamp(path.toString()) == null) {
+			return true;
+		}
+
+		return needsIndexing(path, Files.readAttributes(path, BasicFileAttributes.class), index);
+	}
+
+	/**
+	 * Checks whether a file has to be read into the index, using attributes that
+	 * were already read.
+	 *
+	 * @param path the path of the file to check
+	 * @param attributes the attributes of the file
+	 * @param index the inverted index to check against
+	 * @return {@code true} if the file needs to be read
+	 * @throws IOException if an I/O error occurs while checking the file
+	 *
+	 * @see #needsIndexing(Path, InvertedIndex)
+	 */
+	public static boolean needsIndexing(Path path, BasicFileAttributes attributes, InvertedIndex index)
+			throws IOException {
+		String location = path.toString();
+		FileStamp stamp = index.getStamp(location);
+
+		if (stamp == null) {
+			return true;
+		}
+
+		if (stamp.matches(attributes)) {
+			return false;
+		}
+
+		if (stamp.getSize() == attributes.size()) {
+			long hash = FileStamp.hash(path);
+
+			if (hash == stamp.getHash()) {
+				index.setStamp(location, new FileStamp(attributes, hash));
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Removes every indexed document located under the input path that no longer
+	 * exists as a regular file, along with the stamps of such files that were read
+	 * without finding any words.
+	 *
+	 * @param input the path to a directory or file being indexed
+	 * @param index the inverted index to update
+	 * @return the number of documents removed
+	 */
+	public static int removeMissing(Path input, InvertedIndex index) {
+		ArrayList<String> missing = new ArrayList<>();
+
+		for (String location : index.viewStampedFiles()) {
+			Path path = Path.of(location);
+
+			if (path.startsWith(input) && !Files.isRegularFile(path)) {
+				missing.add(location);
+			}
+		}
+
+		return missing.isEmpty() ? 0 : index.removeDocuments(missing);
+	}
+
+	/**
+	 * Processes the given input path, updating the provided inverted index. If the
+	 * index already contains documents (for example, loaded from a segment), only
+	 * new or modified files are read, and documents for deleted files are removed.
 	 *
 	 * @param input the path to a directory or file
 	 * @param index the inverted index to update
 	 * @throws IOException if an I/O error occurs
 	 */
 	public static void processPath(Path input, InvertedIndex index) throws IOException {
+		removeMissing(input, index);
+
 		if (Files.isDirectory(input)) {
 			FileProcessor.traverseDirectory(input, index);
 		}
-		else {
+		else if (needsIndexing(input, index)) {
+			index.removeDocument(input.toString());
 			FileProcessor.readFile(input, index);
 		}
 	}
@@ -0,0 +1,121 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * Records the size, last modified time, and content hash of an indexed file, so
+ * that unchanged files can be skipped when a directory is indexed again.
+ */
+public class FileStamp {
+	/** The size of the file in bytes. */
+	private final long size;
+
+	/** The last modified time of the file in milliseconds since the epoch. */
+	private final long modified;
+
+	/** The CRC-32C checksum of the file contents. */
+	private final long hash;
+
+	/**
+	 * Constructs a file stamp with the given values.
+	 *
+	 * @param size the size of the file in bytes
+	 * @param modified the last modified time of the file in milliseconds
+	 * @param hash the checksum of the file contents
+	 */
+	public FileStamp(long size, long modified, long hash) {
+		this.size = size;
+		this.modified = modified;
+		this.hash = hash;
+	}
+
+	/**
+	 * Constructs a file stamp from the attributes of a file and the checksum of its
+	 * contents.
+	 *
+	 * @param attributes the attributes of the file
+	 * @param hash the checksum of the file contents
+	 */
+	public FileStamp(BasicFileAttributes attributes, long hash) {
+		this(attributes.size(), attributes.lastModifiedTime().toMillis(), hash);
+	}
+
+	/**
+	 * Returns the size of the file in bytes.
+	 *
+	 * @return the size of the file
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the last modified time of the file in milliseconds since the epoch.
+	 *
+	 * @return the last modified time
+	 */
+	public long getModified() {
+		return modified;
+	}
+
+	/**
+	 * Returns the checksum of the file contents.
+	 *
+	 * @return the checksum
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * Checks whether the size and last modified time of this stamp match the given
+	 * file attributes, without reading the file contents.
+	 *
+	 * @param attributes the current attributes of the file
+	 * @return {@code true} if the size and last modified time match
+	 */
+	public boolean matches(BasicFileAttributes attributes) {
+		return size == attributes.size() && modified == attributes.lastModifiedTime().toMillis();
+	}
+
+	/**
+	 * Creates a checksum used to hash file contents.
+	 *
+	 * @return a new checksum
+	 */
+	public static Checksum checksum() {
+		return new CRC32C();
+	}
+
+	/**
+	 * Computes the checksum of the contents of a file.
+	 *
+	 * @param path the file to hash
+	 * @return the checksum of the file contents
+	 * @throws IOException if an I/O error occurs while reading the file
+	 */
+	public static long hash(Path path) throws IOException {
+		Checksum checksum = checksum();
+		byte[] buffer = new byte[8192];
+
+		try (InputStream in = Files.newInputStream(path)) {
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				checksum.update(buffer, 0, read);
+			}
+		}
+
+		return checksum.getValue();
+	}
+
+	@Override
+	public String toString() {
+		return "size=" + size + ", modified=" + modified + ", hash=" + hash;
+	}
+}
@@ -0,0 +1,328 @@
+package edu.usfca.cs272;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes an inverted index in a compact binary segment format, so
+ * that an index can be loaded again without re-reading and re-stemming the
+ * original text files. The segment consists of three sections:
+ *
+ * <ol>
+ * <li>a header with a magic number and format version</li>
+ * <li>the document table, listing the path, word count, and optional file stamp
+ * of each document id, followed by the stamps of files without any words</li>
+ * <li>the term dictionary in sorted order, where each term is followed by its
+ * postings (document id and encoded positions)</li>
+ * </ol>
+ *
+ * Positions are stored in the same encoding used by {@link PositionList}, so
+ * reading a segment copies bytes instead of decoding and re-encoding them.
+ *
+ * A segment can either be read into an index, which copies every list onto the
+ * heap, or mapped into an empty index. A mapped index only reads the document
+ * table and the words up front, and keeps a slice of the mapped file for the
+ * postings of each word. The postings are decoded the first time a word is
+ * searched, and the positions are decoded straight from the mapped file, so
+ * only the parts of the segment that are used are ever paged in.
+ */
+public class IndexSegment {
+	/** The magic number at the start of every segment file. */
+	public static final int MAGIC = 0x53454731;
+
+	/** The version of the segment format. */
+	public static final int VERSION = 3;
+
+	/** The oldest version of the segment format that can still be read. */
+	public static final int MIN_VERSION = 1;
+
+	/**
+	 * Writes the documents and postings of an inverted index to a segment file.
+	 * Removed documents are skipped, and the remaining documents are renumbered
+	 * so that the ids in the segment are dense.
+	 *
+	 * The segment is written to a temporary file that then replaces the file at
+	 * the given path, so an index mapped from that file can still be read while
+	 * it is written, and a failed write leaves the old file in place.
+	 *
+	 * @param postings the postings of each word in sorted order
+	 * @param documents the path of each document id, or {@code null} for removed
+	 *   documents
+	 * @param wordCounts the word count of each document id
+	 * @param stamps the file stamp of each document id, or {@code null} if the
+	 *   document has no stamp
+	 * @param emptyStamps the file stamp of each file without any words
+	 * @param path the path of the segment file to write
+	 * @throws IOException if an I/O error occurs while writing the file
+	 */
+	public static void write(Map<String, PostingList> postings, List<String> documents, int[] wordCounts,
+			List<FileStamp> stamps, Map<String, FileStamp> emptyStamps, Path path) throws IOException {
+		int[] mapping = new int[documents.size()];
+		int live = 0;
+
+		for (int i = 0; i < mapping.length; i++) {
+			mapping[i] = documents.get(i) != null ? live++ : -1;
+		}
+
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+		try {
+			write(postings, documents, wordCounts, stamps, emptyStamps, mapping, live, temp);
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Writes the documents and postings of an inverted index to a new file.
+	 *
+	 * @param postings the postings of each word in sorted order
+	 * @param documents the path of each document id, or {@code null} for removed
+	 *   documents
+	 * @param wordCounts the word count of each document id
+	 * @param stamps the file stamp of each document id, or {@code null} if the
+	 *   document has no stamp
+	 * @param emptyStamps the file stamp of each file without any words
+	 * @param mapping the id in the segment of each document id, or -1 for removed
+	 *   documents
+	 * @param live the number of documents that were not removed
+	 * @param path the path of the file to write
+	 * @throws IOException if an I/O error occurs while writing the file
+	 */
+	private static void write(Map<String, PostingList> postings, List<String> documents, int[] wordCounts,
+			List<FileStamp> stamps, Map<String, FileStamp> emptyStamps, int[] mapping, int live, Path path)
+			throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			out.writeInt(live);
+			for (int i = 0; i < documents.size(); i++) {
+				if (documents.get(i) == null) {
+					continue;
+				}
+
+				writeString(documents.get(i), out);
+				out.writeInt(wordCounts[i]);
+
+				FileStamp stamp = stamps.get(i);
+				out.writeBoolean(stamp != null);
+
+				if (stamp != null) {
+					writeStamp(stamp, out);
+				}
+			}
+
+			out.writeInt(emptyStamps.size());
+			for (var entry : emptyStamps.entrySet()) {
+				writeString(entry.getKey(), out);
+				writeStamp(entry.getValue(), out);
+			}
+
+			out.writeInt(postings.size());
+			for (var entry : postings.entrySet()) {
+				PostingList list = entry.getValue();
+				writeString(entry.getKey(), out);
+				out.writeInt(list.size());
+
+				for (int i = 0; i < list.size(); i++) {
+					out.writeInt(mapping[list.document(i)]);
+					list.positions(i).writeTo(out);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Memory-maps a segment file and adds its documents and postings to the
+	 * provided inverted index. Every list is copied onto the heap, so the index
+	 * may already hold documents, and nothing refers to the mapping once this
+	 * method returns.
+	 *
+	 * @param path the path of the segment file to read
+	 * @param index the inverted index to add to
+	 * @throws IOException if an I/O error occurs or the file is not a valid
+	 *   segment
+	 *
+	 * @see #map(Path, InvertedIndex)
+	 */
+	public static void read(Path path, InvertedIndex index) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Segment file is too large to map: " + path);
+			}
+
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			read(buffer, index, false);
+		}
+		catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+			throw new IOException("Corrupt segment file: " + path, e);
+		}
+	}
+
+	/**
+	 * Memory-maps a segment file into an empty inverted index without copying its
+	 * postings. The postings of each word are decoded from the mapping the first
+	 * time they are used, so the mapping stays in use for as long as the index
+	 * does. Changing the index afterwards copies only the postings that change.
+	 *
+	 * The layout of the whole segment is checked before this method returns, so
+	 * a segment that is truncated or corrupt is never searched. If the segment
+	 * is invalid, the index may hold part of it and should be discarded.
+	 *
+	 * @param path the path of the segment file to map
+	 * @param index the empty inverted index to map the segment into
+	 * @throws IOException if an I/O error occurs or the file is not a valid
+	 *   segment
+	 * @throws IllegalArgumentException if the index is not empty
+	 */
+	public static void map(Path path, InvertedIndex index) throws IOException {
+		if (index.getFileCount() > 0 || !index.viewWords().isEmpty()) {
+			throw new IllegalArgumentException("Segments can only be mapped into an empty index.");
+		}
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Segment file is too large to map: " + path);
+			}
+
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			read(buffer, index, true);
+		}
+		catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException
+				| IllegalArgumentException e) {
+			throw new IOException("Corrupt segment file: " + path, e);
+		}
+	}
+
+	/**
+	 * Reads the contents of a segment from a buffer into the provided index.
+	 *
+	 * @param buffer the buffer containing the segment
+	 * @param index the inverted index to add to
+	 * @param mapped whether the postings are sliced out of the buffer instead of
+	 *   copied, which requires an empty index
+	 * @throws IOException if the buffer does not contain a valid segment
+	 */
+	private static void read(ByteBuffer buffer, InvertedIndex index, boolean mapped) throws IOException {
+		if (buffer.getInt() != MAGIC) {
+			throw new IOException("Not an index segment file.");
+		}
+
+		int version = buffer.getInt();
+		if (version < MIN_VERSION || version > VERSION) {
+			throw new IOException("Unsupported segment version: " + version);
+		}
+
+		int[] mapping = new int[buffer.getInt()];
+		for (int i = 0; i < mapping.length; i++) {
+			String location = readString(buffer);
+			mapping[i] = index.addDocument(location, buffer.getInt());
+
+			if (mapped && mapping[i] != i) {
+				throw new IOException("Duplicate document in segment: " + location);
+			}
+
+			if (version >= 2 && buffer.get() != 0) {
+				index.setStamp(location, readStamp(buffer));
+			}
+		}
+
+		if (version >= 3) {
+			int empty = buffer.getInt();
+			for (int i = 0; i < empty; i++) {
+				// files without any words have a stamp but no document
+				index.setStamp(readString(buffer), readStamp(buffer));
+			}
+		}
+
+		int terms = buffer.getInt();
+		for (int i = 0; i < terms; i++) {
+			String word = readString(buffer);
+
+			if (mapped) {
+				// the ids of an empty index are the ids of the segment
+				index.putPostings(word, PostingList.sliceFrom(buffer, mapping.length));
+				continue;
+			}
+
+			int size = buffer.getInt();
+			PostingList postings = new PostingList();
+
+			for (int j = 0; j < size; j++) {
+				int document = buffer.getInt();
+				postings.addAll(document, PositionList.readFrom(buffer));
+			}
+
+			index.addPostings(word, postings, mapping, 0);
+		}
+	}
+
+	/**
+	 * Writes a length-prefixed UTF-8 string.
+	 *
+	 * @param text the text to write
+	 * @param out the output to write to
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void writeString(String text, DataOutputStream out) throws IOException {
+		byte[] bytes = text.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a length-prefixed UTF-8 string.
+	 *
+	 * @param buffer the buffer to read from
+	 * @return the decoded string
+	 */
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	/**
+	 * Writes the size, modification time, and hash of a file stamp.
+	 *
+	 * @param stamp the stamp to write
+	 * @param out the output to write to
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void writeStamp(FileStamp stamp, DataOutputStream out) throws IOException {
+		out.writeLong(stamp.getSize());
+		out.writeLong(stamp.getModified());
+		out.writeLong(stamp.getHash());
+	}
+
+	/**
+	 * Reads a file stamp written by {@link #writeStamp(FileStamp, DataOutputStream)}.
+	 *
+	 * @param buffer the buffer to read from
+	 * @return the stamp read
+	 */
+	private static FileStamp readStamp(ByteBuffer buffer) {
+		return new FileStamp(buffer.getLong(), buffer.getLong(), buffer.getLong());
+	}
+
+	/** Prevent instantiating this class of static methods. */
+	private IndexSegment() {
+	}
+}
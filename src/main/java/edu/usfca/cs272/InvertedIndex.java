@@ -5,12 +5,21 @@ import java.io.Writer;
 import java.nio.file.Path;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 /**
  * Represents an inverted index data structure that maps words to their
@@ -18,18 +27,207 @@ import java.util.TreeSet;
  * the positions of words in each document.
  */
 public class InvertedIndex {
-	/** A map that stores the count of words in each document. */
-	private final TreeMap<String, Integer> wordCountMap;
+	/**
+	 * The path of each indexed document, indexed by document id. Removed documents
+	 * leave a {@code null} entry so that the remaining ids stay valid.
+	 */
+	private final ArrayList<String> documents;
+
+	/** The document id assigned to each indexed path. */
+	private final HashMap<String, Integer> documentIds;
+
+	/** The count of words in each document, indexed by document id. */
+	private int[] wordCounts;
+
+	/** The sum of the word counts of every indexed document. */
+	private long totalWords;
+
+	/**
+	 * The stamp of the file each document was read from, indexed by document id,
+	 * or {@code null} if the document was not read from a file.
+	 */
+	private final ArrayList<FileStamp> stamps;
+
+	/**
+	 * The stamp of each file that was read without finding any words, and so has
+	 * no document.
+	 */
+	private final HashMap<String, FileStamp> emptyStamps;
+
+	/**
+	 * A map that stores the postings of each word, where documents are referred to
+	 * by their id instead of their path.
+	 */
+	private final NavigableMap<String, PostingList> indexMap;
+
+	/** Whether the index has been frozen and can no longer be modified. */
+	private volatile boolean frozen;
+
+	/**
+	 * The number of modifications made to this index, used to tell whether cached
+	 * search results are still current.
+	 */
+	private final AtomicLong version;
 
-	/** A nested map that stores the positions of words in each document. */
-	private final TreeMap<String, TreeMap<String, TreeSet<Integer>>> indexMap;
+	/**
+	 * The sorted dictionary of words used to speed up partial searches, or
+	 * {@code null} until the index is frozen.
+	 */
+	private TermDictionary dictionary;
 
 	/**
 	 * Constructs a new InvertedIndex with empty word count and index maps.
 	 */
 	public InvertedIndex() {
-		wordCountMap = new TreeMap<>();
-		indexMap = new TreeMap<>();
+		this(new TreeMap<>());
+	}
+
+	/**
+	 * Constructs a new InvertedIndex that stores its postings in the provided
+	 * (empty) map, allowing subclasses to use a concurrent map implementation.
+	 *
+	 * @param indexMap the empty map used to store the postings of each word
+	 */
+	protected InvertedIndex(NavigableMap<String, PostingList> indexMap) {
+		this.documents = new ArrayList<>();
+		this.documentIds = new HashMap<>();
+		this.wordCounts = new int[16];
+		this.totalWords = 0;
+		this.stamps = new ArrayList<>();
+		this.emptyStamps = new HashMap<>();
+		this.indexMap = indexMap;
+		this.frozen = false;
+		this.version = new AtomicLong();
+		this.dictionary = null;
+	}
+
+	/**
+	 * Freezes this index once it has been built. The postings and positions are
+	 * trimmed to their exact sizes, and any later attempt to modify the index
+	 * fails. Since a frozen index never changes, it can be read by any number of
+	 * threads without synchronization.
+	 */
+	public void freeze() {
+		if (frozen) {
+			return;
+		}
+
+		wordCounts = Arrays.copyOf(wordCounts, documents.size());
+		documents.trimToSize();
+		stamps.trimToSize();
+
+		for (PostingList postings : indexMap.values()) {
+			postings.compact();
+			postings.buildBlocks(wordCounts);
+		}
+
+		dictionary = new TermDictionary(indexMap, documents.size());
+		frozen = true;
+	}
+
+	/**
+	 * Checks whether this index has been frozen.
+	 *
+	 * @return {@code true} if the index can no longer be modified
+	 *
+	 * @see #freeze()
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * Returns the version of this index, which changes every time the index is
+	 * modified. Search results computed at one version are only valid while the
+	 * index is still at that version.
+	 *
+	 * @return the current version of the index
+	 *
+	 * @see QueryCache
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * Ensures this index can still be modified, and counts the modification that
+	 * is about to be made.
+	 *
+	 * @throws IllegalStateException if the index has been frozen
+	 */
+	private void checkModifiable() {
+		if (frozen) {
+			throw new IllegalStateException("Cannot modify a frozen inverted index.");
+		}
+
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Returns the id of the given document, assigning the next available id if the
+	 * document has not been indexed yet.
+	 *
+	 * @param location the path of the document
+	 * @return the id of the document
+	 */
+	private int documentId(String location) {
+		Integer id = documentIds.get(location);
+
+		if (id == null) {
+			id = documents.size();
+			documents.add(location);
+			stamps.add(null);
+			documentIds.put(location, id);
+			emptyStamps.remove(location);
+
+			if (id == wordCounts.length) {
+				wordCounts = Arrays.copyOf(wordCounts, id * 2);
+			}
+		}
+
+		return id;
+	}
+
+	/**
+	 * Returns the id of the given document without assigning one.
+	 *
+	 * @param location the path of the document
+	 * @return the id of the document, or -1 if the document is not indexed
+	 */
+	private int findDocument(String location) {
+		Integer id = documentIds.get(location);
+		return id != null ? id : -1;
+	}
+
+	/**
+	 * Returns the id of a document that must be indexed.
+	 *
+	 * @param location the path of the document
+	 * @return the id of the document
+	 * @throws IllegalArgumentException if the document is not indexed
+	 */
+	private int findIndexed(String location) {
+		int id = findDocument(location);
+
+		if (id < 0) {
+			throw new IllegalArgumentException("Not indexed: " + location);
+		}
+
+		return id;
+	}
+
+	/**
+	 * Returns the postings of a word within the given document.
+	 *
+	 * @param word the word to look up
+	 * @param location the path of the document
+	 * @return the positions of the word in the document, or {@code null} if the
+	 *   word does not appear in the document
+	 */
+	private PositionList findPositions(String word, String location) {
+		PostingList postings = indexMap.get(word);
+		int id = findDocument(location);
+		return postings != null && id >= 0 ? postings.get(id) : null;
 	}
 
 	/**
@@ -40,9 +238,117 @@ public class InvertedIndex {
 	 * @param position the position of the word in the document
 	 */
 	public void addWord(String word, String location, Integer position) {
-		indexMap.computeIfAbsent(word, k -> new TreeMap<>()).computeIfAbsent(location, k -> new TreeSet<>()).add(position);
+		int id = addDocument(location, position);
+		addPosting(word, id, position);
+	}
+
+	/**
+	 * Registers a document and updates its word count to include the given
+	 * position. Only accesses the document table of this index.
+	 *
+	 * @param location the path of the document
+	 * @param position the position of a word in the document
+	 * @return the id of the document
+	 * @throws IllegalStateException if the index has been frozen
+	 */
+	protected int addDocument(String location, int position) {
+		checkModifiable();
+		int id = documentId(location);
+
+		if (position > wordCounts[id]) {
+			totalWords += position - wordCounts[id];
+			wordCounts[id] = position;
+		}
+
+		return id;
+	}
+
+	/**
+	 * Registers every document of another index in this index, merging their word
+	 * counts and copying their file stamps. Only accesses the document table of
+	 * this index.
+	 *
+	 * @param other the inverted index whose documents are added
+	 * @param offset the amount added to every position of the other index
+	 * @return the document id in this index for each document id in the other
+	 *   index
+	 * @throws IllegalStateException if the index has been frozen
+	 */
+	protected int[] addDocuments(InvertedIndex other, int offset) {
+		checkModifiable();
+		int[] mapping = new int[other.documents.size()];
+
+		for (int i = 0; i < mapping.length; i++) {
+			String location = other.documents.get(i);
+
+			if (location == null) {
+				mapping[i] = -1;
+				continue;
+			}
+
+			mapping[i] = addDocument(location, other.wordCounts[i] + offset);
+
+			if (other.stamps.get(i) != null) {
+				stamps.set(mapping[i], other.stamps.get(i));
+			}
+		}
+
+		for (var entry : other.emptyStamps.entrySet()) {
+			putStamp(entry.getKey(), entry.getValue());
+		}
+
+		return mapping;
+	}
+
+	/**
+	 * Adds the position of a word in an already registered document. Only accesses
+	 * the postings of the given word.
+	 *
+	 * @param word the word to add
+	 * @param document the id of the document
+	 * @param position the position of the word in the document
+	 * @throws IllegalStateException if the index has been frozen
+	 */
+	protected void addPosting(String word, int document, int position) {
+		checkModifiable();
+		indexMap.computeIfAbsent(word, k -> new PostingList()).add(document, position);
+	}
+
+	/**
+	 * Adds the postings of a word from another index. Only accesses the postings
+	 * of the given word.
+	 *
+	 * @param word the word to add
+	 * @param postings the postings of the word in the other index
+	 * @param mapping the document id in this index for each document id in the
+	 *   other index
+	 * @param offset the amount added to every position of the other index
+	 * @throws IllegalStateException if the index has been frozen
+	 */
+	protected void addPostings(String word, PostingList postings, int[] mapping, int offset) {
+		checkModifiable();
+		indexMap.computeIfAbsent(word, k -> new PostingList()).addAll(postings, mapping, offset);
+	}
+
+	/**
+	 * Adds the postings of a word that is not indexed yet without copying them,
+	 * so this index owns the given postings from now on. The postings must refer
+	 * to documents by their ids in this index. Only accesses the postings of the
+	 * given word.
+	 *
+	 * @param word the word to add
+	 * @param postings the postings of the word
+	 * @throws IllegalArgumentException if the word is already indexed
+	 * @throws IllegalStateException if the index has been frozen
+	 *
+	 * @see IndexSegment#map(java.nio.file.Path, InvertedIndex)
+	 */
+	protected void putPostings(String word, PostingList postings) {
+		checkModifiable();
 
-		wordCountMap.merge(location, position, Integer::max);
+		if (indexMap.putIfAbsent(word, postings) != null) {
+			throw new IllegalArgumentException("Already indexed: " + word);
+		}
 	}
 
 	/**
@@ -72,28 +378,136 @@ public class InvertedIndex {
 	 *   inverted index
 	 */
 	public void addAll(InvertedIndex other) {
-		for (var wordEntry : other.indexMap.entrySet()) {
-			TreeMap<String, TreeSet<Integer>> wordMap = this.indexMap.get(wordEntry.getKey());
+		addAll(other, 0);
+	}
+
+	/**
+	 * Adds all entries from the specified inverted index to this inverted index,
+	 * shifting every position by the given offset. Used to put together a document
+	 * that was indexed in several parts, where each part starts at position 1.
+	 *
+	 * @param other the inverted index containing entries to be added to this
+	 *   inverted index
+	 * @param offset the amount added to every position of the other index
+	 */
+	public void addAll(InvertedIndex other, int offset) {
+		int[] mapping = addDocuments(other, offset);
+		addPostings(other.indexMap, mapping, offset);
+	}
+
+	/**
+	 * Adds the postings of several words from another index. Only accesses the
+	 * postings of the given words.
+	 *
+	 * @param postings the postings of each word in the other index
+	 * @param mapping the document id in this index for each document id in the
+	 *   other index
+	 * @param offset the amount added to every position of the other index
+	 * @throws IllegalStateException if the index has been frozen
+	 */
+	protected void addPostings(Map<String, PostingList> postings, int[] mapping, int offset) {
+		for (var wordEntry : postings.entrySet()) {
+			addPostings(wordEntry.getKey(), wordEntry.getValue(), mapping, offset);
+		}
+	}
+
+	/**
+	 * Records the stamp of the file a document was read from. Files without any
+	 * words have no document, but their stamp is still kept so they are not read
+	 * again while unchanged.
+	 *
+	 * @param location the path of the document
+	 * @param stamp the stamp of the file
+	 * @throws IllegalStateException if the index has been frozen
+	 */
+	public void setStamp(String location, FileStamp stamp) {
+		checkModifiable();
+		putStamp(location, stamp);
+	}
+
+	/**
+	 * Records the stamp of a file, either with its document or with the stamps of
+	 * files that have no document.
+	 *
+	 * @param location the path of the file
+	 * @param stamp the stamp of the file
+	 */
+	private void putStamp(String location, FileStamp stamp) {
+		int id = findDocument(location);
+
+		if (id >= 0) {
+			stamps.set(id, stamp);
+		}
+		else {
+			emptyStamps.put(location, stamp);
+		}
+	}
+
+	/**
+	 * Returns the stamp of the file an indexed document was read from.
+	 *
+	 * @param location the path of the document
+	 * @return the stamp of the file, or {@code null} if the file was never read
+	 */
+	public FileStamp getStamp(String location) {
+		int id = findDocument(location);
+		return id >= 0 ? stamps.get(id) : emptyStamps.get(location);
+	}
+
+	/**
+	 * Removes a document and all of its postings from the index.
+	 *
+	 * @param location the path of the document to remove
+	 * @return {@code true} if the document was indexed
+	 * @throws IllegalStateException if the index has been frozen
+	 *
+	 * @see #removeDocuments(Collection)
+	 */
+	public boolean removeDocument(String location) {
+		return removeDocuments(List.of(location)) > 0;
+	}
+
+	/**
+	 * Removes several documents and all of their postings from the index. Every
+	 * word is visited once regardless of how many documents are removed, so
+	 * removing documents together is much cheaper than removing them one at a
+	 * time. Words that no longer appear in any document are removed as well, and
+	 * so are the stamps of files that were read without finding any words.
+	 *
+	 * @param locations the paths of the documents to remove
+	 * @return the number of documents that were removed
+	 * @throws IllegalStateException if the index has been frozen
+	 */
+	public int removeDocuments(Collection<String> locations) {
+		checkModifiable();
+		BitSet removed = new BitSet(documents.size());
+
+		for (String location : locations) {
+			emptyStamps.remove(location);
+			Integer id = documentIds.remove(location);
 
-			if (wordMap == null) {
-				this.indexMap.put(wordEntry.getKey(), wordEntry.getValue());
+			if (id != null) {
+				removed.set(id);
+				documents.set(id, null);
+				stamps.set(id, null);
+				totalWords -= wordCounts[id];
+				wordCounts[id] = 0;
 			}
-			else {
-				for (var locationEntry : wordEntry.getValue().entrySet()) {
-					TreeSet<Integer> locationMap = wordMap.get(locationEntry.getKey());
-					if (locationMap == null) {
-						wordMap.put(locationEntry.getKey(), locationEntry.getValue());
-					}
-					else {
-						locationMap.addAll(locationEntry.getValue());
-					}
+		}
+
+		if (!removed.isEmpty()) {
+			var iterator = indexMap.values().iterator();
+
+			while (iterator.hasNext()) {
+				PostingList postings = iterator.next();
+
+				if (postings.removeAll(removed) && postings.size() == 0) {
+					iterator.remove();
 				}
 			}
 		}
 
-		for (var otherEntry : other.wordCountMap.entrySet()) {
-			this.wordCountMap.merge(otherEntry.getKey(), otherEntry.getValue(), Integer::max);
-		}
+		return removed.cardinality();
 	}
 
 	/**
@@ -104,7 +518,8 @@ public class InvertedIndex {
 	 *   indexed
 	 */
 	public int getWordCount(String path) {
-		return wordCountMap.getOrDefault(path, 0);
+		int id = findDocument(path);
+		return id >= 0 ? wordCounts[id] : 0;
 	}
 
 	/**
@@ -113,7 +528,16 @@ public class InvertedIndex {
 	 * @return the number of indexed documents
 	 */
 	public int getFileCount() {
-		return wordCountMap.size();
+		return documentIds.size();
+	}
+
+	/**
+	 * Returns the total number of words in every indexed document.
+	 *
+	 * @return the sum of the word counts of all documents
+	 */
+	public long getTotalWords() {
+		return totalWords;
 	}
 
 	/**
@@ -123,7 +547,7 @@ public class InvertedIndex {
 	 * @return {@code true} if the document is indexed
 	 */
 	public boolean hasFileinCount(String path) {
-		return wordCountMap.containsKey(path);
+		return documentIds.containsKey(path);
 	}
 
 	/**
@@ -144,8 +568,7 @@ public class InvertedIndex {
 	 * @return {@code true} if the location is indexed for the specified word
 	 */
 	public boolean hasLocation(String word, String location) {
-		TreeMap<String, TreeSet<Integer>> locationMap = indexMap.get(word);
-		return locationMap != null && locationMap.containsKey(location);
+		return findPositions(word, location) != null;
 	}
 
 	/**
@@ -158,12 +581,8 @@ public class InvertedIndex {
 	 * @return {@code true} if the position is indexed for the word in the location
 	 */
 	public boolean hasPosition(String word, String location, Integer position) {
-		TreeMap<String, TreeSet<Integer>> locationMap = indexMap.get(word);
-		if (locationMap != null) {
-			TreeSet<Integer> positions = locationMap.get(location);
-			return positions != null && positions.contains(position);
-		}
-		return false;
+		PositionList positions = findPositions(word, location);
+		return positions != null && position != null && positions.contains(position.intValue());
 	}
 
 	/**
@@ -173,11 +592,19 @@ public class InvertedIndex {
 	 * @return the number of occurrences of the word in the index map
 	 */
 	public int numWords(String word) {
-		TreeMap<String, TreeSet<Integer>> locationMap = indexMap.get(word);
-		if (locationMap != null) {
-			return locationMap.values().stream().mapToInt(TreeSet::size).sum();
-		}
-		return 0;
+		PostingList postings = indexMap.get(word);
+		return postings != null ? postings.numPositions() : 0;
+	}
+
+	/**
+	 * Returns the number of documents that contain the specified word.
+	 *
+	 * @param word the word to count documents for
+	 * @return the number of documents containing the word
+	 */
+	public int numDocuments(String word) {
+		PostingList postings = indexMap.get(word);
+		return postings != null ? postings.size() : 0;
 	}
 
 	/**
@@ -189,8 +616,8 @@ public class InvertedIndex {
 	 * @return the number of occurrences of the word in the given location
 	 */
 	public int numLocations(String word, String location) {
-		TreeMap<String, TreeSet<Integer>> locationMap = indexMap.get(word);
-		return locationMap.size();
+		PostingList postings = indexMap.get(word);
+		return postings != null ? postings.size() : 0;
 	}
 
 	/**
@@ -205,21 +632,33 @@ public class InvertedIndex {
 	 *   position
 	 */
 	public int numPositions(String word, String location, Integer position) {
-		TreeMap<String, TreeSet<Integer>> locationMap = indexMap.get(word);
-		if (locationMap != null) {
-			TreeSet<Integer> positions = locationMap.get(location);
-			return positions.size();
-		}
-		return 0;
+		PositionList positions = findPositions(word, location);
+		return positions != null ? positions.size() : 0;
 	}
 
 	/**
-	 * Returns an unmodifiable view of the set of all files (locations) indexed.
+	 * Returns an unmodifiable set of all files (locations) indexed, in sorted
+	 * order. The set is a copy, so it does not change as files are added or
+	 * removed.
 	 *
-	 * @return an unmodifiable set of all indexed files
+	 * @return an unmodifiable sorted set of all indexed files
 	 */
 	public Set<String> viewFiles() {
-		return Collections.unmodifiableSet(wordCountMap.keySet());
+		return Collections.unmodifiableSortedSet(new TreeSet<>(documentIds.keySet()));
+	}
+
+	/**
+	 * Returns an unmodifiable set of every file that has a stamp, in sorted
+	 * order. Unlike {@link #viewFiles()}, this includes files that were read
+	 * without finding any words. The set is a copy, so it does not change as
+	 * files are added or removed.
+	 *
+	 * @return an unmodifiable sorted set of all stamped files
+	 */
+	public Set<String> viewStampedFiles() {
+		TreeSet<String> files = new TreeSet<>(documentIds.keySet());
+		files.addAll(emptyStamps.keySet());
+		return Collections.unmodifiableSortedSet(files);
 	}
 
 	/**
@@ -240,9 +679,13 @@ public class InvertedIndex {
 	 *   or an empty set if the word is not indexed
 	 */
 	public Set<String> viewLocations(String word) {
-		TreeMap<String, TreeSet<Integer>> locationMap = indexMap.get(word);
-		if (locationMap != null) {
-			return Collections.unmodifiableSet(locationMap.keySet());
+		PostingList postings = indexMap.get(word);
+		if (postings != null) {
+			TreeSet<String> locations = new TreeSet<>();
+			for (int i = 0; i < postings.size(); i++) {
+				locations.add(documents.get(postings.document(i)));
+			}
+			return Collections.unmodifiableSet(locations);
 		}
 		return Collections.emptySet();
 	}
@@ -257,12 +700,9 @@ public class InvertedIndex {
 	 *   or an empty list if the word or file is not indexed
 	 */
 	public Set<Integer> viewPositions(String word, String location) {
-		TreeMap<String, TreeSet<Integer>> locationMap = indexMap.get(word);
-		if (locationMap != null) {
-			TreeSet<Integer> positions = locationMap.get(location);
-			if (positions != null) {
-				return Collections.unmodifiableSet(positions);
-			}
+		PositionList positions = findPositions(word, location);
+		if (positions != null) {
+			return Collections.unmodifiableSet(positions);
 		}
 		return Collections.emptySet();
 	}
@@ -274,7 +714,7 @@ public class InvertedIndex {
 	 * @throws IOException if an I/O error occurs while writing the JSON file
 	 */
 	public void writeWordCountMap(Path output) throws IOException {
-		JsonWriter.writeObject(wordCountMap, output);
+		JsonWriter.writeObject(wordCountMap(), output);
 	}
 
 	/**
@@ -284,7 +724,34 @@ public class InvertedIndex {
 	 * @throws IOException if an I/O error occurs while writing the JSON file
 	 */
 	public void writeIndexMap(Path output) throws IOException {
-		JsonWriter.writeWordPositionsMap(indexMap, output);
+		JsonWriter.writePostings(indexMap, documents, output);
+	}
+
+	/**
+	 * Writes the index to a binary segment file specified by the given output
+	 * path, which can be loaded again with {@link IndexSegment#read(Path,
+	 * InvertedIndex)}.
+	 *
+	 * @param output the path to the output segment file
+	 * @throws IOException if an I/O error occurs while writing the segment file
+	 */
+	public void writeSegment(Path output) throws IOException {
+		IndexSegment.write(indexMap, documents, wordCounts, stamps, emptyStamps, output);
+	}
+
+	/**
+	 * Translates the word counts into a map sorted by document path.
+	 *
+	 * @return a map from document path to word count
+	 */
+	private TreeMap<String, Integer> wordCountMap() {
+		TreeMap<String, Integer> map = new TreeMap<>();
+		for (int i = 0; i < documents.size(); i++) {
+			if (documents.get(i) != null) {
+				map.put(documents.get(i), wordCounts[i]);
+			}
+		}
+		return map;
 	}
 
 	@Override
@@ -292,13 +759,13 @@ public class InvertedIndex {
 		StringBuilder builder = new StringBuilder();
 
 		builder.append("Word Count Map:\n");
-		wordCountMap
+		wordCountMap()
 				.forEach((file, count) -> { builder.append("  ").append(file).append(": ").append(count).append("\n"); });
 
 		builder.append("\nIndex Map:\n");
-		indexMap.forEach((word, fileMap) -> {
+		indexMap.forEach((word, postings) -> {
 			builder.append("  ").append(word).append(":\n");
-			fileMap.forEach((file, positions) -> {
+			postings.toLocationMap(documents).forEach((file, positions) -> {
 				builder.append("    ").append(file).append(": ").append(positions).append("\n");
 			});
 		});
@@ -317,90 +784,937 @@ public class InvertedIndex {
 	 *   results, sorted based on the calculated scores in descending order
 	 */
 	public ArrayList<IndexSearcher> search(Set<String> query, boolean isPartial) {
-		return (isPartial) ? partialSearch(query) : exactSearch(query);
+		return search(query, isPartial, Integer.MAX_VALUE);
 	}
 
 	/**
-	 * Performs an exact search for the specified set of query terms in the inverted
-	 * index.
+	 * Performs either exact or partial search and returns only the best results.
 	 *
-	 * @param queries the set of query terms to be searched for in the inverted
-	 *   index
-	 * @return an ArrayList containing IndexSearcher objects representing the exact
-	 *   search results, sorted based on the calculated scores in descending order
+	 * @param query the set of query terms to be searched for in the inverted index
+	 * @param isPartial a boolean indicating whether to perform a partial search
+	 *   (true) or an exact search (false)
+	 * @param limit the maximum number of results to return
+	 * @return at most {@code limit} IndexSearcher objects, sorted based on the
+	 *   calculated scores in descending order
+	 *
+	 * @see #countMatches(Set, boolean)
 	 */
-	public ArrayList<IndexSearcher> exactSearch(Set<String> queries) {
-		ArrayList<IndexSearcher> results = new ArrayList<>();
-		Map<String, IndexSearcher> lookup = new HashMap<>();
-
-		for (String query : queries) {
-			TreeMap<String, TreeSet<Integer>> locations = indexMap.get(query);
-			processSearchResult(locations, lookup, results);
-		}
-
-		Collections.sort(results);
-		return results;
-
+	public ArrayList<IndexSearcher> search(Set<String> query, boolean isPartial, int limit) {
+		return search(query, isPartial, limit, Scorer.COUNT);
 	}
 
 	/**
-	 * Performs a partial search for the specified set of queries in the inverted
-	 * index.
-	 * 
-	 * @param queries the set of query strings to be partially searched in the
-	 *   inverted index
-	 * @return an ArrayList containing IndexSearcher objects representing the
-	 *   partial search results, sorted based on the calculated scores in descending
-	 *   order
+	 * Performs either exact or partial search using the given scorer and returns
+	 * only the best results.
+	 *
+	 * @param query the set of query terms to be searched for in the inverted index
+	 * @param isPartial a boolean indicating whether to perform a partial search
+	 *   (true) or an exact search (false)
+	 * @param limit the maximum number of results to return
+	 * @param scorer the scorer used to calculate the score of each result
+	 * @return at most {@code limit} IndexSearcher objects, sorted based on the
+	 *   calculated scores in descending order
 	 */
-	public ArrayList<IndexSearcher> partialSearch(Set<String> queries) {
-		ArrayList<IndexSearcher> results = new ArrayList<>();
-		Map<String, IndexSearcher> lookup = new HashMap<>();
-
-		for (String query : queries) {
-			for (var outerEntry : indexMap.tailMap(query, true).entrySet()) {
-				if (!outerEntry.getKey().startsWith(query)) {
-					break;
-				}
-				TreeMap<String, TreeSet<Integer>> locations = outerEntry.getValue();
-				processSearchResult(locations, lookup, results);
-			}
-		}
-
-		Collections.sort(results);
-		return results;
+	public ArrayList<IndexSearcher> search(Set<String> query, boolean isPartial, int limit, Scorer scorer) {
+		return (isPartial) ? partialSearch(query, limit, scorer) : exactSearch(query, limit, scorer);
 	}
 
 	/**
-	 * Processes a search result by updating an existing IndexSearcher or creating a
-	 * new one. If an IndexSearcher already exists for the location, its score is
-	 * updated based on the matches. Otherwise, a new IndexSearcher is created, its
-	 * score is calculated, and it's added to the results list and lookup map.
+	 * Searches for a parsed query, which may contain phrases and excluded words as
+	 * well as individual words. A document matches if it matches any word or
+	 * phrase of the query (or all of them, if the query is conjunctive) and none
+	 * of the excluded words. The words of a phrase are always matched exactly,
+	 * even for a partial search.
 	 *
-	 * @param locations the paths where the indexed word is in
-	 * @param lookup the map used to look up existing IndexSearchers by location
-	 * @param results the list containing the search results
+	 * @param query the parsed query
+	 * @param isPartial a boolean indicating whether the individual words are
+	 *   matched as prefixes (true) or exactly (false)
+	 * @param limit the maximum number of results to return
+	 * @param scorer the scorer used to calculate the score of each result
+	 * @return at most {@code limit} IndexSearcher objects, sorted based on the
+	 *   calculated scores in descending order
 	 */
-	private void processSearchResult(TreeMap<String, TreeSet<Integer>> locations, Map<String, IndexSearcher> lookup,
-			ArrayList<IndexSearcher> results) {
-		if (locations != null) {
-			for (var entry : locations.entrySet()) {
-				String location = entry.getKey();
-
-				int matches = entry.getValue().size();
+	public ArrayList<IndexSearcher> search(Query query, boolean isPartial, int limit, Scorer scorer) {
+		return search(query, isPartial, limit, scorer, word -> true);
+	}
 
-				IndexSearcher current = lookup.get(location);
-				if (current != null) {
-					current.calculateScore(matches);
+	/**
+	 * Searches for a parsed query, only matching prefixes against the words that
+	 * pass the given filter. Used by subclasses that can only read some of the
+	 * words safely, such as the words guarded by the locks they hold.
+	 *
+	 * @param query the parsed query
+	 * @param isPartial a boolean indicating whether the individual words are
+	 *   matched as prefixes (true) or exactly (false)
+	 * @param limit the maximum number of results to return
+	 * @param scorer the scorer used to calculate the score of each result
+	 * @param visible the filter of the words a prefix may match
+	 * @return at most {@code limit} IndexSearcher objects, sorted based on the
+	 *   calculated scores in descending order
+	 *
+	 * @see #search(Query, boolean, int, Scorer)
+	 */
+	protected ArrayList<IndexSearcher> search(Query query, boolean isPartial, int limit, Scorer scorer,
+			Predicate<String> visible) {
+		QueryEvaluator evaluator = new QueryEvaluator(scorer, query.isConjunctive());
+
+		for (String word : query.getWords()) {
+			evaluator.clause();
+
+			if (isPartial) {
+				addPrefix(word, evaluator, visible);
+			}
+			else {
+				evaluator.add(indexMap.get(word));
+			}
+		}
+
+		for (Query.Phrase phrase : query.getPhrases()) {
+			evaluator.clause();
+			evaluator.add(findPhrase(phrase));
+		}
+
+		for (String word : query.getExcluded()) {
+			if (!isPartial) {
+				PostingList postings = indexMap.get(word);
+				if (postings != null) {
+					evaluator.exclude(postings.iterator());
 				}
-				else {
-					IndexSearcher newSearcher = new IndexSearcher(location);
-					newSearcher.calculateScore(matches);
-					results.add(newSearcher);
-					lookup.put(location, newSearcher);
+			}
+			else if (frozen) {
+				evaluator.exclude(dictionary.prefix(word).iterator());
+			}
+			else {
+				for (var entry : indexMap.tailMap(word, true).entrySet()) {
+					if (!entry.getKey().startsWith(word)) {
+						break;
+					}
+					if (visible.test(entry.getKey())) {
+						evaluator.exclude(entry.getValue().iterator());
+					}
 				}
 			}
+		}
+
+		return evaluator.top(limit);
+	}
+
+	/**
+	 * Performs an exact search for the specified set of query terms in the inverted
+	 * index.
+	 *
+	 * @param queries the set of query terms to be searched for in the inverted
+	 *   index
+	 * @return an ArrayList containing IndexSearcher objects representing the exact
+	 *   search results, sorted based on the calculated scores in descending order
+	 */
+	public ArrayList<IndexSearcher> exactSearch(Set<String> queries) {
+		return exactSearch(queries, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Performs an exact search for the specified set of query terms in the inverted
+	 * index, returning only the best results.
+	 *
+	 * @param queries the set of query terms to be searched for in the inverted
+	 *   index
+	 * @param limit the maximum number of results to return
+	 * @return at most {@code limit} IndexSearcher objects representing the exact
+	 *   search results, sorted based on the calculated scores in descending order
+	 */
+	public ArrayList<IndexSearcher> exactSearch(Set<String> queries, int limit) {
+		return exactSearch(queries, limit, Scorer.COUNT);
+	}
+
+	/**
+	 * Performs an exact search for the specified set of query terms in the inverted
+	 * index using the given scorer, returning only the best results.
+	 *
+	 * @param queries the set of query terms to be searched for in the inverted
+	 *   index
+	 * @param limit the maximum number of results to return
+	 * @param scorer the scorer used to calculate the score of each result
+	 * @return at most {@code limit} IndexSearcher objects representing the exact
+	 *   search results, sorted based on the calculated scores in descending order
+	 */
+	public ArrayList<IndexSearcher> exactSearch(Set<String> queries, int limit, Scorer scorer) {
+		return search(new Query(queries), false, limit, scorer);
+	}
 
+	/**
+	 * Performs a partial search for the specified set of queries in the inverted
+	 * index.
+	 * 
+	 * @param queries the set of query strings to be partially searched in the
+	 *   inverted index
+	 * @return an ArrayList containing IndexSearcher objects representing the
+	 *   partial search results, sorted based on the calculated scores in descending
+	 *   order
+	 */
+	public ArrayList<IndexSearcher> partialSearch(Set<String> queries) {
+		return partialSearch(queries, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Performs a partial search for the specified set of queries in the inverted
+	 * index, returning only the best results.
+	 *
+	 * @param queries the set of query strings to be partially searched in the
+	 *   inverted index
+	 * @param limit the maximum number of results to return
+	 * @return at most {@code limit} IndexSearcher objects representing the partial
+	 *   search results, sorted based on the calculated scores in descending order
+	 */
+	public ArrayList<IndexSearcher> partialSearch(Set<String> queries, int limit) {
+		return partialSearch(queries, limit, Scorer.COUNT);
+	}
+
+	/**
+	 * Performs a partial search for the specified set of queries in the inverted
+	 * index using the given scorer, returning only the best results.
+	 *
+	 * @param queries the set of query strings to be partially searched in the
+	 *   inverted index
+	 * @param limit the maximum number of results to return
+	 * @param scorer the scorer used to calculate the score of each result
+	 * @return at most {@code limit} IndexSearcher objects representing the partial
+	 *   search results, sorted based on the calculated scores in descending order
+	 */
+	public ArrayList<IndexSearcher> partialSearch(Set<String> queries, int limit, Scorer scorer) {
+		return search(new Query(queries), true, limit, scorer);
+	}
+
+	/**
+	 * Adds the postings of every word that starts with the given prefix to a
+	 * search.
+	 *
+	 * @param query the prefix to search for
+	 * @param evaluator the search to add to
+	 * @param visible the filter of the words the prefix may match
+	 */
+	private void addPrefix(String query, QueryEvaluator evaluator, Predicate<String> visible) {
+		if (frozen && evaluator.scorer.isCountBased()) {
+			// the merged postings of a prefix only keep the total matches
+			evaluator.add(dictionary.prefix(query).iterator(), 1.0);
+		}
+		else if (frozen) {
+			for (int i = dictionary.from(query), end = dictionary.to(query); i < end; i++) {
+				evaluator.add(dictionary.postings(i));
+			}
+		}
+		else {
+			for (var outerEntry : indexMap.tailMap(query, true).entrySet()) {
+				if (!outerEntry.getKey().startsWith(query)) {
+					break;
+				}
+				if (visible.test(outerEntry.getKey())) {
+					evaluator.add(outerEntry.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the documents that contain a phrase. The postings of the words are
+	 * intersected by repeatedly advancing each one to the largest document seen so
+	 * far, and the positions are only compared within documents that contain
+	 * every word.
+	 *
+	 * @param phrase the phrase to find
+	 * @return the matching documents and the number of matches in each
+	 */
+	private PostingIterator findPhrase(Query.Phrase phrase) {
+		List<String> words = phrase.getWords();
+		PostingList.DocumentIterator[] iterators = new PostingList.DocumentIterator[words.size()];
+
+		for (int i = 0; i < iterators.length; i++) {
+			PostingList postings = indexMap.get(words.get(i));
+
+			if (postings == null) {
+				return PostingIterator.of(new int[0], new int[0], 0);
+			}
+
+			iterators[i] = postings.iterator();
+		}
+
+		// advance the rarest word first, since it skips the most documents
+		PostingList.DocumentIterator[] bySize = iterators.clone();
+		Arrays.sort(bySize, Comparator.comparingInt(PostingList.DocumentIterator::size));
+
+		int[] documents = new int[bySize[0].size()];
+		int[] counts = new int[documents.length];
+		PositionList[] positions = new PositionList[iterators.length];
+		int found = 0;
+		int document = bySize[0].document();
+
+		while (document != PostingIterator.NO_MORE_DOCUMENTS) {
+			int candidate = document;
+
+			for (PostingList.DocumentIterator iterator : bySize) {
+				document = iterator.advance(candidate);
+				if (document != candidate) {
+					break;
+				}
+			}
+
+			if (document != candidate) {
+				continue;
+			}
+
+			for (int i = 0; i < iterators.length; i++) {
+				positions[i] = iterators[i].positions();
+			}
+
+			int matches = PositionList.countPhrase(positions, phrase.getSlop());
+			if (matches > 0) {
+				documents[found] = document;
+				counts[found] = matches;
+				found++;
+			}
+
+			document = bySize[0].next();
+		}
+
+		return PostingIterator.of(documents, counts, found);
+	}
+
+	/**
+	 * Counts the number of documents that match the query, without scoring or
+	 * sorting them. Useful alongside a limited search to report the total number
+	 * of hits.
+	 *
+	 * @param queries the set of query terms to be searched for in the inverted
+	 *   index
+	 * @param isPartial a boolean indicating whether to perform a partial search
+	 *   (true) or an exact search (false)
+	 * @return the number of matching documents
+	 */
+	public int countMatches(Set<String> queries, boolean isPartial) {
+		return countMatches(queries, isPartial, word -> true);
+	}
+
+	/**
+	 * Counts the number of documents that match the query, only matching prefixes
+	 * against the words that pass the given filter.
+	 *
+	 * @param queries the set of query terms to be searched for in the inverted
+	 *   index
+	 * @param isPartial a boolean indicating whether to perform a partial search
+	 *   (true) or an exact search (false)
+	 * @param visible the filter of the words a prefix may match
+	 * @return the number of matching documents
+	 *
+	 * @see #countMatches(Set, boolean)
+	 */
+	protected int countMatches(Set<String> queries, boolean isPartial, Predicate<String> visible) {
+		BitSet matches = new BitSet(documents.size());
+
+		for (String query : queries) {
+			if (frozen && isPartial) {
+				TermDictionary.PrefixPostings merged = dictionary.prefix(query);
+				for (int i = 0; i < merged.size(); i++) {
+					matches.set(merged.document(i));
+				}
+				continue;
+			}
+
+			for (var entry : indexMap.tailMap(query, true).entrySet()) {
+				if (isPartial ? !entry.getKey().startsWith(query) : !entry.getKey().equals(query)) {
+					break;
+				}
+
+				if (!visible.test(entry.getKey())) {
+					continue;
+				}
+
+				PostingList postings = entry.getValue();
+				for (int i = 0; i < postings.size(); i++) {
+					matches.set(postings.document(i));
+				}
+			}
+		}
+
+		return matches.cardinality();
+	}
+
+	/**
+	 * Sorts the results and keeps only the best ones. If fewer results are
+	 * requested than were found, a bounded heap is used so only the kept results
+	 * are ever sorted.
+	 *
+	 * @param results the unsorted search results
+	 * @param limit the maximum number of results to keep
+	 * @return the best results in sorted order
+	 */
+	private static ArrayList<IndexSearcher> topResults(ArrayList<IndexSearcher> results, int limit) {
+		if (limit >= results.size()) {
+			Collections.sort(results);
+			return results;
+		}
+
+		if (limit <= 0) {
+			return new ArrayList<>();
+		}
+
+		// the head of the heap is the worst result kept so far
+		PriorityQueue<IndexSearcher> heap = new PriorityQueue<>(limit, Collections.reverseOrder());
+
+		for (IndexSearcher result : results) {
+			if (heap.size() < limit) {
+				heap.add(result);
+			}
+			else if (result.compareTo(heap.peek()) < 0) {
+				heap.poll();
+				heap.add(result);
+			}
+		}
+
+		ArrayList<IndexSearcher> top = new ArrayList<>(heap);
+		Collections.sort(top);
+		return top;
+	}
+
+	/**
+	 * Evaluates a single search document-at-a-time. The postings of each query word
+	 * are added as iterators, which are merged in increasing order of document id
+	 * so that each matching document is scored completely before moving on to the
+	 * next one. Since a document is finished before it is added to the results, no
+	 * lookup of the existing result of a document is needed.
+	 *
+	 * The postings are grouped into clauses, one for each word or phrase of the
+	 * query. A conjunctive search intersects the clauses: the clause with the
+	 * fewest documents leads, and every other clause skips ahead to its document,
+	 * so the cost depends on the rarest clause instead of all of the postings.
+	 *
+	 * When only the best few results of a frozen index are needed, any other
+	 * search uses the block-max WAND algorithm: documents whose score is bounded
+	 * below the worst result kept so far are skipped without being scored.
+	 */
+	private class QueryEvaluator {
+		/** The scorer used to calculate the score of each result. */
+		private final Scorer scorer;
+
+		/** The average number of words in a document, computed once per search. */
+		private final double averageWordCount;
+
+		/** The postings of each query word, in the order they were added. */
+		private final ArrayList<Cursor> cursors;
+
+		/** The postings of each clause of the query. */
+		private final ArrayList<ArrayList<Cursor>> clauses;
+
+		/** The postings of the excluded words. */
+		private final ArrayList<PostingIterator> excluded;
+
+		/** Whether every clause must match, instead of any of them. */
+		private final boolean conjunctive;
+
+		/**
+		 * Constructs an evaluator with no postings.
+		 *
+		 * @param scorer the scorer used to calculate the score of each result
+		 * @param conjunctive whether every clause must match, instead of any of them
+		 */
+		public QueryEvaluator(Scorer scorer, boolean conjunctive) {
+			int numDocuments = documentIds.size();
+
+			this.scorer = scorer;
+			this.averageWordCount = numDocuments > 0 ? (double) totalWords / numDocuments : 0.0;
+			this.cursors = new ArrayList<>();
+			this.clauses = new ArrayList<>();
+			this.excluded = new ArrayList<>();
+			this.conjunctive = conjunctive;
+		}
+
+		/**
+		 * Starts a new clause. Postings added afterwards belong to this clause, and
+		 * a clause with no postings matches no documents.
+		 */
+		public void clause() {
+			clauses.add(new ArrayList<>());
+		}
+
+		/**
+		 * Excludes the documents of the given postings from the results.
+		 *
+		 * @param iterator the postings of an excluded word
+		 */
+		public void exclude(PostingIterator iterator) {
+			if (iterator.document() != PostingIterator.NO_MORE_DOCUMENTS) {
+				excluded.add(iterator);
+			}
+		}
+
+		/**
+		 * Adds the postings of a query word to the search.
+		 *
+		 * @param postings the postings of the indexed word, or {@code null} if the
+		 *   word is not indexed
+		 */
+		public void add(PostingList postings) {
+			if (postings != null) {
+				add(postings.iterator());
+			}
+		}
+
+		/**
+		 * Adds the postings of a query word or phrase to the search, weighted by the
+		 * number of documents it appears in.
+		 *
+		 * @param iterator the postings of the word or phrase
+		 */
+		public void add(PostingIterator iterator) {
+			add(iterator, scorer.weight(iterator.size(), documentIds.size()));
+		}
+
+		/**
+		 * Adds the postings of a query word to the search.
+		 *
+		 * @param iterator the postings of the word
+		 * @param weight the weight of the word
+		 */
+		public void add(PostingIterator iterator, double weight) {
+			if (clauses.isEmpty()) {
+				clause();
+			}
+
+			if (iterator.document() != PostingIterator.NO_MORE_DOCUMENTS) {
+				Cursor cursor = new Cursor(iterator, weight, cursors.size());
+				cursors.add(cursor);
+				clauses.get(clauses.size() - 1).add(cursor);
+			}
+		}
+
+		/**
+		 * Evaluates the search and returns the best results in sorted order.
+		 *
+		 * @param limit the maximum number of results to return
+		 * @return the best results
+		 */
+		public ArrayList<IndexSearcher> top(int limit) {
+			if (conjunctive) {
+				return topResults(intersect(), limit);
+			}
+
+			if (limit > 0 && limit < documents.size() && canSkip()) {
+				return skip(limit);
+			}
+
+			return topResults(evaluate(), limit);
+		}
+
+		/**
+		 * Checks whether the scores of every word can be bounded, which is needed to
+		 * skip documents. Sets the bound of each cursor if so.
+		 *
+		 * @return {@code true} if every cursor has an up to date, finite bound
+		 */
+		private boolean canSkip() {
+			for (Cursor cursor : cursors) {
+				if (!(cursor.iterator instanceof PostingList.DocumentIterator iterator)
+						|| !iterator.postings().hasBlocks()) {
+					return false;
+				}
+
+				PostingList postings = iterator.postings();
+				cursor.postings = postings;
+				cursor.maxScore = scorer.maxScore(postings.maxMatches(), postings.minWordCount(), averageWordCount,
+						cursor.weight);
+
+				if (!Double.isFinite(cursor.maxScore)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		/**
+		 * Checks whether a score bound may reach the threshold. Leaves a small margin
+		 * for rounding, so a document is only skipped if it certainly cannot reach
+		 * the threshold, and documents that tie it are still scored.
+		 *
+		 * @param bound the upper bound on a score
+		 * @param threshold the score of the worst result kept so far
+		 * @return {@code true} if a score within the bound could reach the threshold
+		 */
+		private static boolean reaches(double bound, double threshold) {
+			return bound + Math.abs(bound) * 1e-9 >= threshold;
+		}
+
+		/**
+		 * Finds the best results using block-max WAND. The cursors are kept sorted by
+		 * their current document. The pivot is the first cursor at which the sum of
+		 * the bounds of the cursors so far reaches the threshold, since no earlier
+		 * document can. If the bounds of the blocks containing the pivot document
+		 * fall short of the threshold, every cursor up to the pivot skips past the
+		 * nearest block end. Otherwise, the pivot document is scored once all of the
+		 * earlier cursors have caught up to it.
+		 *
+		 * @param limit the maximum number of results to return, which must be
+		 *   positive
+		 * @return the best results in sorted order
+		 */
+		private ArrayList<IndexSearcher> skip(int limit) {
+			PriorityQueue<IndexSearcher> heap = new PriorityQueue<>(limit, Collections.reverseOrder());
+			Cursor[] active = cursors.toArray(new Cursor[0]);
+			int size = active.length;
+			double threshold = Double.NEGATIVE_INFINITY;
+
+			while (true) {
+				size = sortActive(active, size);
+
+				double bound = 0.0;
+				int pivot = -1;
+
+				for (int i = 0; i < size; i++) {
+					bound += active[i].maxScore;
+
+					if (reaches(bound, threshold)) {
+						pivot = i;
+						break;
+					}
+				}
+
+				if (pivot < 0) {
+					break;
+				}
+
+				int document = active[pivot].iterator.document();
+				while (pivot + 1 < size && active[pivot + 1].iterator.document() == document) {
+					pivot++;
+				}
+
+				// the documents before the next cursor only match the cursors up to the
+				// pivot, so they are bounded by the blocks of those cursors
+				double blockBound = 0.0;
+				int next = pivot + 1 < size ? active[pivot + 1].iterator.document() : PostingIterator.NO_MORE_DOCUMENTS;
+
+				for (int i = 0; i <= pivot; i++) {
+					PostingList postings = active[i].postings;
+					int block = postings.findBlock(document);
+
+					if (block == postings.numBlocks()) {
+						// an earlier cursor with no documents left at or after the pivot
+						continue;
+					}
+
+					blockBound += scorer.maxScore(postings.blockMaxMatches(block), postings.blockMinWordCount(block),
+							averageWordCount, active[i].weight);
+					next = Math.min(next, postings.blockLast(block) + 1);
+				}
+
+				if (!reaches(blockBound, threshold)) {
+					for (int i = 0; i <= pivot; i++) {
+						active[i].iterator.advance(next);
+					}
+					continue;
+				}
+
+				if (active[0].iterator.document() != document) {
+					for (int i = 0; i < pivot && active[i].iterator.document() < document; i++) {
+						active[i].iterator.advance(document);
+					}
+					continue;
+				}
+
+				if (!isExcluded(document)) {
+					IndexSearcher searcher = new IndexSearcher(document);
+
+					for (Cursor cursor : cursors) {
+						if (cursor.iterator.document() == document) {
+							searcher.calculateScore(cursor.iterator.matches(), cursor.weight, this);
+						}
+					}
+
+					if (heap.size() < limit) {
+						heap.add(searcher);
+					}
+					else if (searcher.compareTo(heap.peek()) < 0) {
+						heap.poll();
+						heap.add(searcher);
+					}
+
+					if (heap.size() == limit) {
+						threshold = heap.peek().getScore();
+					}
+				}
+
+				for (int i = 0; i <= pivot; i++) {
+					active[i].iterator.next();
+				}
+			}
+
+			ArrayList<IndexSearcher> results = new ArrayList<>(heap);
+			Collections.sort(results);
+			return results;
+		}
+
+		/**
+		 * Sorts the cursors by their current document with an insertion sort, since
+		 * only a few cursors move between calls, and drops exhausted cursors.
+		 *
+		 * @param active the cursors to sort
+		 * @param size the number of cursors in use
+		 * @return the number of cursors that are not exhausted
+		 */
+		private static int sortActive(Cursor[] active, int size) {
+			for (int i = 1; i < size; i++) {
+				Cursor cursor = active[i];
+				int j = i - 1;
+
+				while (j >= 0 && active[j].iterator.document() > cursor.iterator.document()) {
+					active[j + 1] = active[j];
+					j--;
+				}
+
+				active[j + 1] = cursor;
+			}
+
+			while (size > 0 && active[size - 1].iterator.document() == PostingIterator.NO_MORE_DOCUMENTS) {
+				size--;
+			}
+
+			return size;
+		}
+
+		/**
+		 * Checks whether a document contains any of the excluded words. Must be
+		 * called with increasing document ids.
+		 *
+		 * @param document the document id to check
+		 * @return {@code true} if the document must be left out of the results
+		 */
+		private boolean isExcluded(int document) {
+			for (PostingIterator iterator : excluded) {
+				if (iterator.advance(document) == document) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Finds the documents that match every clause and scores each one.
+		 *
+		 * @return the unsorted search results, in increasing order of document id
+		 */
+		private ArrayList<IndexSearcher> intersect() {
+			ArrayList<IndexSearcher> results = new ArrayList<>();
+			Clause[] iterators = new Clause[clauses.size()];
+
+			for (int i = 0; i < iterators.length; i++) {
+				if (clauses.get(i).isEmpty()) {
+					return results;
+				}
+				iterators[i] = new Clause(clauses.get(i));
+			}
+
+			if (iterators.length == 0) {
+				return results;
+			}
+
+			// the rarest clause leads, since every other clause skips to its documents
+			Arrays.sort(iterators, Comparator.comparingInt(Clause::size));
+			int document = iterators[0].document();
+
+			while (document != PostingIterator.NO_MORE_DOCUMENTS) {
+				int candidate = document;
+
+				for (Clause iterator : iterators) {
+					document = iterator.advance(candidate);
+					if (document != candidate) {
+						break;
+					}
+				}
+
+				if (document != candidate) {
+					continue;
+				}
+
+				if (!isExcluded(candidate)) {
+					IndexSearcher searcher = new IndexSearcher(candidate);
+
+					for (Cursor cursor : cursors) {
+						if (cursor.iterator.document() == candidate) {
+							searcher.calculateScore(cursor.iterator.matches(), cursor.weight, this);
+						}
+					}
+
+					results.add(searcher);
+				}
+
+				document = iterators[0].next();
+			}
+
+			return results;
+		}
+
+		/**
+		 * Merges the postings of every query word and scores each matching document.
+		 *
+		 * @return the unsorted search results, in increasing order of document id
+		 */
+		private ArrayList<IndexSearcher> evaluate() {
+			ArrayList<IndexSearcher> results = new ArrayList<>();
+
+			if (cursors.size() == 1) {
+				Cursor cursor = cursors.get(0);
+
+				for (int document = cursor.iterator.document(); document != PostingIterator.NO_MORE_DOCUMENTS;
+						document = cursor.iterator.next()) {
+					if (isExcluded(document)) {
+						continue;
+					}
+
+					IndexSearcher searcher = new IndexSearcher(document);
+					searcher.calculateScore(cursor.iterator.matches(), cursor.weight, this);
+					results.add(searcher);
+				}
+
+				return results;
+			}
+
+			PriorityQueue<Cursor> queue = new PriorityQueue<>(Math.max(1, cursors.size()));
+			queue.addAll(cursors);
+
+			while (!queue.isEmpty()) {
+				int document = queue.peek().iterator.document();
+				IndexSearcher searcher = isExcluded(document) ? null : new IndexSearcher(document);
+
+				// cursors on the same document are polled in the order they were added,
+				// so the score is built up in the same order as the query words
+				while (!queue.isEmpty() && queue.peek().iterator.document() == document) {
+					Cursor cursor = queue.poll();
+
+					if (searcher != null) {
+						searcher.calculateScore(cursor.iterator.matches(), cursor.weight, this);
+					}
+
+					if (cursor.iterator.next() != PostingIterator.NO_MORE_DOCUMENTS) {
+						queue.add(cursor);
+					}
+				}
+
+				if (searcher != null) {
+					results.add(searcher);
+				}
+			}
+
+			return results;
+		}
+	}
+
+	/**
+	 * The postings of one query word during a document-at-a-time search.
+	 */
+	private static class Cursor implements Comparable<Cursor> {
+		/** The postings of the word. */
+		private final PostingIterator iterator;
+
+		/** The weight of the word. */
+		private final double weight;
+
+		/** The order in which the word was added to the search. */
+		private final int order;
+
+		/** The posting list being iterated, if its blocks are used to skip. */
+		private PostingList postings;
+
+		/** The upper bound on the score of the word, if used to skip. */
+		private double maxScore;
+
+		/**
+		 * Constructs a cursor over the postings of a word.
+		 *
+		 * @param iterator the postings of the word
+		 * @param weight the weight of the word
+		 * @param order the order in which the word was added to the search
+		 */
+		public Cursor(PostingIterator iterator, double weight, int order) {
+			this.iterator = iterator;
+			this.weight = weight;
+			this.order = order;
+			this.postings = null;
+			this.maxScore = Double.POSITIVE_INFINITY;
+		}
+
+		@Override
+		public int compareTo(Cursor other) {
+			int documentComparison = Integer.compare(this.iterator.document(), other.iterator.document());
+			return documentComparison != 0 ? documentComparison : Integer.compare(this.order, other.order);
+		}
+	}
+
+	/**
+	 * The union of the postings of one clause of a query, such as every word that
+	 * starts with a prefix. The current document is the smallest current document
+	 * of any of its postings.
+	 */
+	private static class Clause implements PostingIterator {
+		/** The postings of the clause. */
+		private final ArrayList<Cursor> cursors;
+
+		/**
+		 * Constructs the union of the given postings.
+		 *
+		 * @param cursors the postings of the clause
+		 */
+		public Clause(ArrayList<Cursor> cursors) {
+			this.cursors = cursors;
+		}
+
+		@Override
+		public int document() {
+			int document = NO_MORE_DOCUMENTS;
+			for (Cursor cursor : cursors) {
+				document = Math.min(document, cursor.iterator.document());
+			}
+			return document;
+		}
+
+		@Override
+		public int matches() {
+			int document = document();
+			int matches = 0;
+
+			for (Cursor cursor : cursors) {
+				if (cursor.iterator.document() == document) {
+					matches += cursor.iterator.matches();
+				}
+			}
+
+			return matches;
+		}
+
+		@Override
+		public int next() {
+			int document = document();
+
+			for (Cursor cursor : cursors) {
+				if (cursor.iterator.document() == document) {
+					cursor.iterator.next();
+				}
+			}
+
+			return document();
+		}
+
+		@Override
+		public int advance(int target) {
+			for (Cursor cursor : cursors) {
+				cursor.iterator.advance(target);
+			}
+			return document();
+		}
+
+		@Override
+		public int size() {
+			int size = 0;
+			for (Cursor cursor : cursors) {
+				size += cursor.iterator.size();
+			}
+			return size;
 		}
 	}
 
@@ -416,6 +1730,9 @@ public class InvertedIndex {
 		/** The score of the search result. */
 		private double score;
 
+		/** The id of the document containing the matches. */
+		private final int document;
+
 		/** The path of the document containing the matches. */
 		private final String where;
 
@@ -427,12 +1744,23 @@ public class InvertedIndex {
 		/**
 		 * Constructs an IndexSearcher object with the given parameters.
 		 *
-		 * @param where The path of the document containing the matches.
+		 * @param where The location of the document containing the matches.
+		 * @throws IllegalArgumentException if the location is not indexed
 		 */
 		public IndexSearcher(String where) {
+			this(findIndexed(where));
+		}
+
+		/**
+		 * Constructs an IndexSearcher object with the given parameters.
+		 *
+		 * @param document The id of the document containing the matches.
+		 */
+		public IndexSearcher(int document) {
 			this.count = 0;
 			this.score = 0.0;
-			this.where = where;
+			this.document = document;
+			this.where = documents.get(document);
 		}
 
 		/**
@@ -445,13 +1773,16 @@ public class InvertedIndex {
 		}
 
 		/**
-		 * Adds the specified value to the count of matches.
+		 * Adds the specified value to the count of matches and updates the score.
 		 *
-		 * @param count The value to add to the count of matches.
+		 * @param matches The value to add to the count of matches.
+		 * @param weight The weight of the matching word.
+		 * @param search The search this result belongs to.
 		 */
-		private void calculateScore(int count) {
-			this.count += count;
-			this.score = (double) this.count / wordCountMap.get(this.where);
+		private void calculateScore(int matches, double weight, QueryEvaluator search) {
+			this.count += matches;
+			this.score = search.scorer.score(this.score, this.count, matches, wordCounts[this.document],
+					search.averageWordCount, weight);
 		}
 
 		/**
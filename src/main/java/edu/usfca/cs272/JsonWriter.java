@@ -11,6 +11,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import edu.usfca.cs272.InvertedIndex.IndexSearcher;
@@ -70,6 +71,21 @@ public class JsonWriter {
 		writer.write('"');
 	}
 
+	/**
+	 * Escapes the backslashes and quotation marks in the text so it may be written
+	 * inside a JSON string, such as a query that contains a quoted phrase.
+	 *
+	 * @param text the text to escape
+	 * @return the escaped text
+	 */
+	public static String escape(String text) {
+		if (text.indexOf('"') < 0 && text.indexOf('\\') < 0) {
+			return text;
+		}
+
+		return text.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
 	/**
 	 * Writes the elements as a pretty JSON array.
 	 *
@@ -462,6 +478,61 @@ public class JsonWriter {
 		}
 	}
 
+	/**
+	 * Writes the postings of an inverted index to the specified writer in the same
+	 * JSON format as {@link #writeWordPositionsMap(Map, Writer, int)}. Document ids
+	 * are translated back into document paths only while writing.
+	 *
+	 * @param postings the postings of each word
+	 * @param documents the path of each document id
+	 * @param writer the writer to write the JSON content to
+	 * @param indent the indentation level for formatting the JSON
+	 * @throws IOException if an I/O error occurs while writing the JSON content
+	 */
+	public static void writePostings(Map<String, PostingList> postings, List<String> documents, Writer writer,
+			int indent) throws IOException {
+
+		writer.write("{");
+
+		var iterator = postings.entrySet().iterator();
+
+		if (iterator.hasNext()) {
+			writer.write(System.lineSeparator());
+
+			var firstEntry = iterator.next();
+			writeIndent('"' + firstEntry.getKey() + "\": ", writer, indent + 1);
+			writeObjectArrays(firstEntry.getValue().toLocationMap(documents), writer, indent + 1);
+
+			while (iterator.hasNext()) {
+				writer.write(",");
+				writer.write(System.lineSeparator());
+
+				var entry = iterator.next();
+				writeIndent('"' + entry.getKey() + "\": ", writer, indent + 1);
+				writeObjectArrays(entry.getValue().toLocationMap(documents), writer, indent + 1);
+			}
+		}
+
+		writer.write(System.lineSeparator());
+		writeIndent("}", writer, indent);
+	}
+
+	/**
+	 * Writes the postings of an inverted index to the specified file path in JSON
+	 * format.
+	 *
+	 * @param postings the postings of each word
+	 * @param documents the path of each document id
+	 * @param path the path to the file to write the JSON content to
+	 * @throws IOException if an I/O error occurs while writing the JSON content
+	 */
+	public static void writePostings(Map<String, PostingList> postings, List<String> documents, Path path)
+			throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, UTF_8)) {
+			writePostings(postings, documents, writer, 0);
+		}
+	}
+
 	/**
 	 * Writes search results to a writer JSON format.
 	 *
@@ -480,7 +551,7 @@ public class JsonWriter {
 			writer.write(System.lineSeparator());
 
 			var firstEntry = iterator.next();
-			writeIndent('"' + firstEntry.getKey() + "\": ", writer, indent + 1);
+			writeIndent('"' + escape(firstEntry.getKey()) + "\": ", writer, indent + 1);
 			writeSearcherArray(firstEntry.getValue(), writer, indent + 1);
 
 			while (iterator.hasNext()) {
@@ -488,7 +559,7 @@ public class JsonWriter {
 				writer.write(System.lineSeparator());
 
 				var entry = iterator.next();
-				writeIndent('"' + entry.getKey() + "\": ", writer, indent + 1);
+				writeIndent('"' + escape(entry.getKey()) + "\": ", writer, indent + 1);
 				writeSearcherArray(entry.getValue(), writer, indent + 1);
 			}
 		}
@@ -0,0 +1,274 @@
+package edu.usfca.cs272;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.util.Arrays;
+import java.util.zip.Checksum;
+
+/**
+ * Reads lines of UTF-8 text from a channel or a buffer of bytes. Bytes are
+ * decoded in large blocks into a reusable character buffer, and each line is
+ * returned as a view of that buffer instead of a new string.
+ *
+ * Lines end the same way as in {@link BufferedReader#readLine()}, at a line
+ * feed, a carriage return, or a carriage return followed by a line feed, and
+ * malformed input is reported as an error instead of being replaced.
+ */
+public class LineReader implements Closeable {
+	/** The default size of the byte and character buffers. */
+	public static final int BUFFER_SIZE = 1 << 16;
+
+	/** The channel to read from, or {@code null} if all bytes are in memory. */
+	private final ReadableByteChannel channel;
+
+	/** The checksum updated with every byte read, or {@code null} if none. */
+	private final Checksum checksum;
+
+	/** The decoder of the bytes. */
+	private final CharsetDecoder decoder;
+
+	/** The bytes read but not decoded yet, ready to be read. */
+	private final ByteBuffer bytes;
+
+	/** The decoded characters. */
+	private char[] chars;
+
+	/** The start of the characters not returned yet. */
+	private int start;
+
+	/** The end of the decoded characters. */
+	private int end;
+
+	/** Whether every byte has been read. */
+	private boolean endOfInput;
+
+	/** Whether every byte has been decoded. */
+	private boolean decoded;
+
+	/** Whether a line feed right after the last line should be skipped. */
+	private boolean skipLineFeed;
+
+	/** The reusable view of the current line. */
+	private final Line line;
+
+	/**
+	 * Constructs a reader of a channel.
+	 *
+	 * @param channel the channel to read from
+	 * @param checksum the checksum to update with every byte read, or
+	 *   {@code null} if none
+	 * @param bufferSize the size of the byte and character buffers
+	 */
+	public LineReader(ReadableByteChannel channel, Checksum checksum, int bufferSize) {
+		this(channel, checksum, ByteBuffer.allocate(Math.max(16, bufferSize)).flip(), false);
+	}
+
+	/**
+	 * Constructs a reader of the remaining bytes of a buffer.
+	 *
+	 * @param bytes the bytes to read
+	 */
+	public LineReader(ByteBuffer bytes) {
+		this(null, null, bytes, true);
+	}
+
+	/**
+	 * Constructs a reader.
+	 *
+	 * @param channel the channel to read from, or {@code null} if none
+	 * @param checksum the checksum to update with every byte read, or
+	 *   {@code null} if none
+	 * @param bytes the byte buffer, ready to be read
+	 * @param endOfInput whether the byte buffer already holds every byte
+	 */
+	private LineReader(ReadableByteChannel channel, Checksum checksum, ByteBuffer bytes, boolean endOfInput) {
+		this.channel = channel;
+		this.checksum = checksum;
+		this.decoder = UTF_8.newDecoder();
+		this.bytes = bytes;
+		this.chars = new char[Math.max(16, Math.min(bytes.capacity(), BUFFER_SIZE))];
+		this.start = 0;
+		this.end = 0;
+		this.endOfInput = endOfInput;
+		this.decoded = false;
+		this.skipLineFeed = false;
+		this.line = new Line();
+	}
+
+	/**
+	 * Reads the next line. The same view is returned for every line, so it is only
+	 * valid until the next line is read.
+	 *
+	 * @return the next line without its line terminator, or {@code null} if there
+	 *   are no more lines
+	 * @throws IOException if an I/O error occurs or the input is malformed
+	 */
+	public CharSequence readLine() throws IOException {
+		int scan = start;
+
+		while (true) {
+			if (skipLineFeed && start < end) {
+				skipLineFeed = false;
+
+				if (chars[start] == '\n') {
+					start++;
+					scan = start;
+				}
+			}
+
+			for (int i = scan; i < end; i++) {
+				char c = chars[i];
+
+				if (c == '\n' || c == '\r') {
+					line.start = start;
+					line.end = i;
+					start = i + 1;
+					skipLineFeed = c == '\r';
+					return line;
+				}
+			}
+
+			if (decoded) {
+				if (start == end) {
+					return null;
+				}
+
+				line.start = start;
+				line.end = end;
+				start = end;
+				return line;
+			}
+
+			scan = end - start;
+			fill();
+			scan += start;
+		}
+	}
+
+	/**
+	 * Closes the channel, if any.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Decodes more characters, moving the characters not returned yet to the start
+	 * of the buffer and growing the buffer if they already fill it.
+	 *
+	 * @throws IOException if an I/O error occurs or the input is malformed
+	 */
+	private void fill() throws IOException {
+		if (start > 0) {
+			System.arraycopy(chars, start, chars, 0, end - start);
+			end -= start;
+			start = 0;
+		}
+
+		// leave room for at least a surrogate pair, so decoding always makes progress
+		if (chars.length - end < 2) {
+			chars = Arrays.copyOf(chars, chars.length * 2);
+		}
+
+		CharBuffer out = CharBuffer.wrap(chars, end, chars.length - end);
+
+		while (true) {
+			CoderResult result = decoder.decode(bytes, out, endOfInput);
+
+			if (result.isError()) {
+				result.throwException();
+			}
+
+			if (result.isOverflow()) {
+				break;
+			}
+
+			if (endOfInput) {
+				// flushing a UTF-8 decoder never produces more characters
+				decoder.flush(out);
+				decoded = true;
+				break;
+			}
+
+			if (out.position() > end) {
+				break;
+			}
+
+			read();
+		}
+
+		end = out.position();
+	}
+
+	/**
+	 * Reads more bytes from the channel into the byte buffer.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void read() throws IOException {
+		bytes.compact();
+		int position = bytes.position();
+		int read = channel.read(bytes);
+
+		if (read < 0) {
+			endOfInput = true;
+		}
+		else if (checksum != null) {
+			checksum.update(bytes.array(), bytes.arrayOffset() + position, read);
+		}
+
+		bytes.flip();
+	}
+
+	/**
+	 * A view of one line in the character buffer.
+	 */
+	private class Line implements CharSequence {
+		/** The start of the line in the characters. */
+		private int start;
+
+		/** The end (exclusive) of the line in the characters. */
+		private int end;
+
+		/**
+		 * Constructs an empty view.
+		 */
+		private Line() {
+			this.start = 0;
+			this.end = 0;
+		}
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return chars[start + index];
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return new String(chars, start + from, to - from);
+		}
+
+		@Override
+		public String toString() {
+			return new String(chars, start, end - start);
+		}
+	}
+}
@@ -215,9 +215,14 @@ public class MultiReaderLock {
 			Thread callingThread = Thread.currentThread();
 			try {
 				synchronized (lock) {
-					while (writers > 0 && !isActiveWriter()) {
+					while ((readers > 0 || writers > 0) && !isActiveWriter()) {
 						lock.wait();
 					}
+
+					if (writers == 0) {
+						activeWriter = callingThread;
+					}
+					writers++;
 				}
 			}
 			catch (InterruptedException ex) {
@@ -225,11 +230,6 @@ public class MultiReaderLock {
 				Thread.currentThread().interrupt();
 				return;
 			}
-
-			if (writers == 0) {
-				activeWriter = callingThread;
-			}
-			writers++;
 		}
 
 		/**
@@ -0,0 +1,533 @@
+package edu.usfca.cs272;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A compact, sorted set of word positions within a single document. Positions
+ * are stored as variable-length encoded gaps between consecutive positions in a
+ * growable byte array, so a typical position costs a single byte instead of a
+ * boxed {@link Integer} inside a tree node.
+ *
+ * Positions are almost always added in increasing order (as produced by
+ * {@link FileProcessor#readFile(java.nio.file.Path, InvertedIndex)}), which is
+ * handled by appending to the end of the array. Out-of-order positions are
+ * still supported, but require the list to be rebuilt.
+ *
+ * A list may also be a slice of a memory-mapped index segment, in which case
+ * the positions are decoded straight from the mapped bytes. The bytes are only
+ * copied onto the heap if positions are added to the list.
+ */
+public class PositionList extends AbstractSet<Integer> {
+	/** The initial capacity of the encoded byte array. */
+	private static final int INITIAL_CAPACITY = 4;
+
+	/**
+	 * The variable-length encoded gaps between positions, or {@code null} if they
+	 * are still only in a slice of a mapped segment.
+	 */
+	private byte[] bytes;
+
+	/**
+	 * The encoded gaps in a mapped segment, or {@code null} once they are copied
+	 * into the byte array.
+	 */
+	private ByteBuffer slice;
+
+	/** The number of bytes used in the encoded array. */
+	private int length;
+
+	/** The number of positions stored. */
+	private int size;
+
+	/** The last (largest) position stored. */
+	private int last;
+
+	/**
+	 * Constructs an empty position list.
+	 */
+	public PositionList() {
+		this.bytes = new byte[INITIAL_CAPACITY];
+		this.slice = null;
+		this.length = 0;
+		this.size = 0;
+		this.last = 0;
+	}
+
+	/**
+	 * Adds a position to this list if it is not already present. Positions must be
+	 * non-negative.
+	 *
+	 * @param position the position to add
+	 * @return {@code true} if the position was added
+	 * @throws IllegalArgumentException if the position is negative
+	 */
+	public boolean add(int position) {
+		if (position < 0) {
+			throw new IllegalArgumentException("Positions must be non-negative: " + position);
+		}
+
+		if (size == 0 || position > last) {
+			append(position);
+			return true;
+		}
+
+		if (position == last || contains(position)) {
+			return false;
+		}
+
+		int[] positions = toArray(position);
+		Arrays.sort(positions);
+		rebuild(positions);
+		return true;
+	}
+
+	@Override
+	public boolean add(Integer position) {
+		return add(position.intValue());
+	}
+
+	/**
+	 * Adds all positions from another position list to this list. If all of the
+	 * other positions come after the positions in this list, the encoded bytes are
+	 * copied over directly.
+	 *
+	 * @param other the positions to add
+	 * @return {@code true} if this list changed
+	 */
+	public boolean addAll(PositionList other) {
+		return addAll(other, 0);
+	}
+
+	/**
+	 * Adds all positions from another position list to this list, shifting each of
+	 * them by the given offset. If all of the shifted positions come after the
+	 * positions in this list, the encoded bytes are copied over directly, since
+	 * only the first gap depends on the offset.
+	 *
+	 * @param other the positions to add
+	 * @param offset the amount added to every position of the other list
+	 * @return {@code true} if this list changed
+	 */
+	public boolean addAll(PositionList other, int offset) {
+		if (other.size == 0) {
+			return false;
+		}
+
+		if (size == 0 && offset == 0) {
+			ensureCapacity(other.length);
+			other.copyBytes(0, bytes, 0, other.length);
+			length = other.length;
+			size = other.size;
+			last = other.last;
+			return true;
+		}
+
+		if (size == 0 || other.first() + offset > last) {
+			// re-encode the first gap relative to our last position
+			PositionIterator iterator = other.iterator();
+			int first = iterator.nextInt() + offset;
+			int offsetBytes = iterator.offset;
+
+			append(first);
+			ensureCapacity(length + other.length - offsetBytes);
+			other.copyBytes(offsetBytes, bytes, length, other.length - offsetBytes);
+			length += other.length - offsetBytes;
+			size += other.size - 1;
+			last = other.last + offset;
+			return true;
+		}
+
+		boolean changed = false;
+		PositionIterator iterator = other.iterator();
+		while (iterator.hasNext()) {
+			changed |= add(iterator.nextInt() + offset);
+		}
+		return changed;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends Integer> other) {
+		if (other instanceof PositionList positions) {
+			return addAll(positions);
+		}
+
+		return super.addAll(other);
+	}
+
+	@Override
+	public boolean contains(Object object) {
+		return object instanceof Integer position && contains(position.intValue());
+	}
+
+	/**
+	 * Checks whether the given position is stored in this list.
+	 *
+	 * @param position the position to check
+	 * @return {@code true} if the position is stored
+	 */
+	public boolean contains(int position) {
+		if (size == 0 || position > last || position < 0) {
+			return false;
+		}
+
+		PositionIterator iterator = iterator();
+		while (iterator.hasNext()) {
+			int current = iterator.nextInt();
+			if (current >= position) {
+				return current == position;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the first (smallest) position stored.
+	 *
+	 * @return the first position
+	 * @throws NoSuchElementException if the list is empty
+	 */
+	public int first() {
+		return iterator().nextInt();
+	}
+
+	/**
+	 * Returns the last (largest) position stored.
+	 *
+	 * @return the last position
+	 * @throws NoSuchElementException if the list is empty
+	 */
+	public int last() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		return last;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of bytes used to encode the positions.
+	 *
+	 * @return the number of encoded bytes
+	 */
+	public int encodedLength() {
+		return length;
+	}
+
+	/**
+	 * Trims the encoded byte array to its exact size. Should only be called once no
+	 * more positions will be added.
+	 */
+	public void compact() {
+		if (bytes != null && bytes.length > length) {
+			bytes = Arrays.copyOf(bytes, length);
+		}
+	}
+
+	/**
+	 * Writes the encoded positions, preceded by the number of positions, the last
+	 * position, and the number of encoded bytes.
+	 *
+	 * @param out the output to write to
+	 * @throws IOException if an I/O error occurs
+	 *
+	 * @see #readFrom(ByteBuffer)
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(size);
+		out.writeInt(last);
+		out.writeInt(length);
+
+		if (bytes != null) {
+			out.write(bytes, 0, length);
+		}
+		else {
+			byte[] copy = new byte[length];
+			copyBytes(0, copy, 0, length);
+			out.write(copy);
+		}
+	}
+
+	/**
+	 * Reads positions written by {@link #writeTo(DataOutput)}, copying the encoded
+	 * bytes directly without decoding them.
+	 *
+	 * @param buffer the buffer to read from
+	 * @return the positions read
+	 */
+	public static PositionList readFrom(ByteBuffer buffer) {
+		PositionList positions = new PositionList();
+		positions.size = buffer.getInt();
+		positions.last = buffer.getInt();
+		positions.length = buffer.getInt();
+		positions.bytes = new byte[positions.length];
+		buffer.get(positions.bytes);
+		return positions;
+	}
+
+	/**
+	 * Reads positions written by {@link #writeTo(DataOutput)} without copying the
+	 * encoded bytes. The list decodes its positions from a slice of the buffer,
+	 * which must not change for as long as the list is used, such as a read-only
+	 * memory-mapped file.
+	 *
+	 * @param buffer the buffer to read from
+	 * @return the positions read
+	 * @throws IllegalArgumentException if the header of the positions is invalid
+	 *   or the encoded bytes extend past the end of the buffer
+	 */
+	public static PositionList sliceFrom(ByteBuffer buffer) {
+		PositionList positions = new PositionList();
+		positions.size = buffer.getInt();
+		positions.last = buffer.getInt();
+		positions.length = buffer.getInt();
+
+		// every position takes at least one byte and at most five
+		if (positions.size < 0 || positions.length < positions.size
+				|| positions.length > 5L * positions.size || positions.last < 0) {
+			throw new IllegalArgumentException("Invalid encoded positions.");
+		}
+
+		positions.bytes = null;
+		positions.slice = buffer.slice(buffer.position(), positions.length);
+		buffer.position(buffer.position() + positions.length);
+		return positions;
+	}
+
+	/**
+	 * Counts the number of times the words of a phrase appear in order within a
+	 * document. Each match starts at a different position of the first word, and
+	 * the span from the first to the last word may be at most {@code slop} words
+	 * longer than the phrase itself. With a slop of zero, the words must be
+	 * consecutive.
+	 *
+	 * @param phrase the positions of each word of the phrase in order
+	 * @param slop the number of extra words allowed within the phrase
+	 * @return the number of matches
+	 */
+	public static int countPhrase(PositionList[] phrase, int slop) {
+		int[][] positions = new int[phrase.length][];
+		for (int i = 0; i < phrase.length; i++) {
+			positions[i] = phrase[i].toIntArray();
+		}
+
+		// the next position of each word moves forward as the start moves forward,
+		// so every position list is walked at most once
+		int[] next = new int[phrase.length];
+		long span = (long) phrase.length - 1 + slop;
+		int matches = 0;
+
+		for (int start : positions[0]) {
+			int previous = start;
+			boolean found = true;
+
+			for (int i = 1; i < positions.length; i++) {
+				while (next[i] < positions[i].length && positions[i][next[i]] <= previous) {
+					next[i]++;
+				}
+
+				if (next[i] == positions[i].length) {
+					return matches;
+				}
+
+				previous = positions[i][next[i]];
+
+				if (previous - start > span) {
+					found = false;
+					break;
+				}
+			}
+
+			if (found) {
+				matches++;
+			}
+		}
+
+		return matches;
+	}
+
+	@Override
+	public PositionIterator iterator() {
+		return new PositionIterator();
+	}
+
+	/**
+	 * Decodes all positions into a new array.
+	 *
+	 * @return the positions in increasing order
+	 */
+	public int[] toIntArray() {
+		return toArray(-1);
+	}
+
+	/**
+	 * Decodes all positions into a new array, optionally with room for one extra
+	 * position at the end.
+	 *
+	 * @param extra the extra position to include, or a negative value for none
+	 * @return the decoded positions
+	 */
+	private int[] toArray(int extra) {
+		int[] positions = new int[extra < 0 ? size : size + 1];
+		PositionIterator iterator = iterator();
+
+		for (int i = 0; i < size; i++) {
+			positions[i] = iterator.nextInt();
+		}
+
+		if (extra >= 0) {
+			positions[size] = extra;
+		}
+
+		return positions;
+	}
+
+	/**
+	 * Replaces the contents of this list with the given sorted positions.
+	 *
+	 * @param positions the sorted positions
+	 */
+	private void rebuild(int[] positions) {
+		length = 0;
+		size = 0;
+		last = 0;
+
+		for (int position : positions) {
+			append(position);
+		}
+	}
+
+	/**
+	 * Appends a position that is larger than every position already stored.
+	 *
+	 * @param position the position to append
+	 */
+	private void append(int position) {
+		int gap = size == 0 ? position : position - last;
+		ensureCapacity(length + 5);
+
+		while ((gap & ~0x7F) != 0) {
+			bytes[length++] = (byte) ((gap & 0x7F) | 0x80);
+			gap >>>= 7;
+		}
+		bytes[length++] = (byte) gap;
+
+		size++;
+		last = position;
+	}
+
+	/**
+	 * Copies encoded bytes of this list into an array, whether they are on the
+	 * heap or in a mapped slice.
+	 *
+	 * @param from the offset of the first byte to copy
+	 * @param destination the array to copy into
+	 * @param to the offset in the array to copy to
+	 * @param count the number of bytes to copy
+	 */
+	private void copyBytes(int from, byte[] destination, int to, int count) {
+		if (bytes != null) {
+			System.arraycopy(bytes, from, destination, to, count);
+		}
+		else {
+			slice.get(from, destination, to, count);
+		}
+	}
+
+	/**
+	 * Grows the encoded byte array if necessary, first copying the bytes of a
+	 * mapped slice onto the heap.
+	 *
+	 * @param capacity the minimum capacity needed
+	 */
+	private void ensureCapacity(int capacity) {
+		if (bytes == null) {
+			bytes = new byte[Math.max(capacity, INITIAL_CAPACITY)];
+			slice.get(0, bytes, 0, length);
+			slice = null;
+		}
+
+		if (capacity > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length + (bytes.length >> 1)));
+		}
+	}
+
+	/**
+	 * Iterates through the decoded positions in increasing order without boxing
+	 * when {@link #nextInt()} is used.
+	 */
+	public class PositionIterator implements Iterator<Integer> {
+		/** The encoded gaps, or {@code null} if they are in a mapped slice. */
+		private final byte[] array;
+
+		/** The mapped slice of encoded gaps, if they are not on the heap. */
+		private final ByteBuffer mapped;
+
+		/** The offset of the next encoded gap. */
+		private int offset;
+
+		/** The number of positions returned so far. */
+		private int index;
+
+		/** The last position returned. */
+		private int current;
+
+		/**
+		 * Constructs an iterator starting at the first position.
+		 */
+		private PositionIterator() {
+			this.array = bytes;
+			this.mapped = slice;
+			this.offset = 0;
+			this.index = 0;
+			this.current = 0;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return index < size;
+		}
+
+		/**
+		 * Returns the next position without boxing.
+		 *
+		 * @return the next position
+		 * @throws NoSuchElementException if there are no more positions
+		 */
+		public int nextInt() {
+			if (index >= size) {
+				throw new NoSuchElementException();
+			}
+
+			int gap = 0;
+			int shift = 0;
+			byte next;
+
+			do {
+				next = array != null ? array[offset++] : mapped.get(offset++);
+				gap |= (next & 0x7F) << shift;
+				shift += 7;
+			}
+			while ((next & 0x80) != 0);
+
+			current = index == 0 ? gap : current + gap;
+			index++;
+			return current;
+		}
+
+		@Override
+		public Integer next() {
+			return nextInt();
+		}
+	}
+}
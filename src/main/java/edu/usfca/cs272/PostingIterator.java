@@ -0,0 +1,97 @@
+package edu.usfca.cs272;
+
+/**
+ * Iterates through the postings of a word in increasing order of document id.
+ * The iterator starts on its first document, and {@link #advance(int)} can skip
+ * ahead to a target document without visiting every document in between.
+ */
+public interface PostingIterator {
+	/** The document id returned once the iterator is exhausted. */
+	public static final int NO_MORE_DOCUMENTS = Integer.MAX_VALUE;
+
+	/**
+	 * Returns the id of the current document.
+	 *
+	 * @return the current document id, or {@link #NO_MORE_DOCUMENTS} if the
+	 *   iterator is exhausted
+	 */
+	public abstract int document();
+
+	/**
+	 * Returns the number of matches in the current document.
+	 *
+	 * @return the number of matches
+	 */
+	public abstract int matches();
+
+	/**
+	 * Moves to the next document.
+	 *
+	 * @return the id of the next document, or {@link #NO_MORE_DOCUMENTS} if there
+	 *   are no more documents
+	 */
+	public abstract int next();
+
+	/**
+	 * Moves to the first document whose id is greater than or equal to the target.
+	 * Does not move backwards if the current document is already past the target.
+	 *
+	 * @param target the document id to advance to
+	 * @return the id of the new current document, or {@link #NO_MORE_DOCUMENTS} if
+	 *   there are no more documents
+	 */
+	public abstract int advance(int target);
+
+	/**
+	 * Returns the total number of documents in this iterator, used to estimate the
+	 * cost of iterating through it.
+	 *
+	 * @return the number of documents
+	 */
+	public abstract int size();
+
+	/**
+	 * Returns an iterator over documents and match counts stored in parallel
+	 * arrays.
+	 *
+	 * @param documents the sorted document ids
+	 * @param counts the number of matches in each document
+	 * @param size the number of documents in use
+	 * @return an iterator starting on the first document
+	 */
+	public static PostingIterator of(int[] documents, int[] counts, int size) {
+		return new PostingIterator() {
+			/** The index of the current document. */
+			private int index = 0;
+
+			@Override
+			public int document() {
+				return index < size ? documents[index] : NO_MORE_DOCUMENTS;
+			}
+
+			@Override
+			public int matches() {
+				return counts[index];
+			}
+
+			@Override
+			public int next() {
+				if (index < size) {
+					index++;
+				}
+				return document();
+			}
+
+			@Override
+			public int advance(int target) {
+				index = PostingList.gallop(documents, index, size, target);
+				return document();
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+}
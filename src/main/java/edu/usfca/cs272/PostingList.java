@@ -0,0 +1,686 @@
+package edu.usfca.cs272;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * The postings of a single word in the inverted index. Stores the ids of the
+ * documents that contain the word in increasing order, along with the positions
+ * of the word in each of those documents, using parallel arrays instead of a map
+ * keyed by document path.
+ *
+ * Once the index is complete, the postings may be divided into fixed-size
+ * blocks that record the largest number of matches and the smallest document
+ * word count within each block. These are enough to bound the score of any
+ * document in a block, so a ranked search can skip blocks that cannot reach
+ * the top results.
+ *
+ * Postings in a memory-mapped index segment are only decoded the first time
+ * they are used, and their positions stay in the mapped segment even then.
+ */
+public class PostingList {
+	/** The initial capacity of the posting arrays. */
+	private static final int INITIAL_CAPACITY = 2;
+
+	/** The number of postings summarized by each block. */
+	public static final int BLOCK_SIZE = 64;
+
+	/** The sorted ids of the documents containing the word. */
+	private int[] documents;
+
+	/** The positions of the word in each document, parallel to documents. */
+	private PositionList[] positions;
+
+	/** The number of documents stored. */
+	private int size;
+
+	/** The total number of positions across all documents. */
+	private int totalPositions;
+
+	/**
+	 * The last document id of each block, or {@code null} if the blocks have not
+	 * been built.
+	 */
+	private int[] blockLast;
+
+	/** The largest number of matches in a single document of each block. */
+	private int[] blockMaxMatches;
+
+	/** The smallest word count of a document in each block. */
+	private int[] blockMinWordCount;
+
+	/** The largest number of matches in a single document. */
+	private int maxMatches;
+
+	/** The smallest word count of a document containing the word. */
+	private int minWordCount;
+
+	/**
+	 * The encoded postings in a mapped segment, or {@code null} once they have
+	 * been decoded.
+	 */
+	private volatile ByteBuffer encoded;
+
+	/**
+	 * The word counts to build the blocks with once the postings are decoded, or
+	 * {@code null} if the blocks were not requested before then.
+	 */
+	private int[] pendingCounts;
+
+	/**
+	 * Constructs an empty posting list.
+	 */
+	public PostingList() {
+		this.documents = new int[INITIAL_CAPACITY];
+		this.positions = new PositionList[INITIAL_CAPACITY];
+		this.size = 0;
+		this.totalPositions = 0;
+		this.blockLast = null;
+		this.encoded = null;
+		this.pendingCounts = null;
+	}
+
+	/**
+	 * Reads postings written by an {@link IndexSegment} without decoding them.
+	 * Only the layout of the postings is checked, and the buffer is moved past
+	 * them. The postings are decoded from a slice of the buffer the first time
+	 * they are used, and their positions are never copied unless they change, so
+	 * the buffer must not change for as long as the postings are used, such as a
+	 * read-only memory-mapped file.
+	 *
+	 * @param buffer the buffer to read from
+	 * @param numDocuments the number of document ids in the segment
+	 * @return the postings read
+	 * @throws IllegalArgumentException if the postings are invalid or extend past
+	 *   the end of the buffer
+	 *
+	 * @see PositionList#sliceFrom(ByteBuffer)
+	 */
+	public static PostingList sliceFrom(ByteBuffer buffer, int numDocuments) {
+		int start = buffer.position();
+		int size = buffer.getInt();
+		int previous = -1;
+
+		if (size <= 0 || size > numDocuments) {
+			throw new IllegalArgumentException("Invalid number of postings: " + size);
+		}
+
+		for (int i = 0; i < size; i++) {
+			int document = buffer.getInt();
+
+			if (document <= previous || document >= numDocuments) {
+				throw new IllegalArgumentException("Invalid document id: " + document);
+			}
+
+			previous = document;
+			PositionList.sliceFrom(buffer);
+		}
+
+		PostingList postings = new PostingList();
+		postings.encoded = buffer.slice(start, buffer.position() - start);
+		return postings;
+	}
+
+	/**
+	 * Decodes the postings of a mapped segment if that has not happened yet. Must
+	 * be called before any field other than {@link #encoded} is used.
+	 */
+	private void load() {
+		if (encoded != null) {
+			decode();
+		}
+	}
+
+	/**
+	 * Decodes the postings of a mapped segment, slicing the positions of each
+	 * document out of the segment, and builds the blocks if they were requested
+	 * before.
+	 */
+	private synchronized void decode() {
+		ByteBuffer buffer = encoded;
+
+		if (buffer == null) {
+			return;
+		}
+
+		size = buffer.getInt(0);
+		documents = new int[size];
+		positions = new PositionList[size];
+		buffer.position(Integer.BYTES);
+
+		for (int i = 0; i < size; i++) {
+			documents[i] = buffer.getInt();
+			positions[i] = PositionList.sliceFrom(buffer);
+			totalPositions += positions[i].size();
+		}
+
+		if (pendingCounts != null) {
+			computeBlocks(pendingCounts);
+			pendingCounts = null;
+		}
+
+		// publishes the decoded postings to every thread that reads this field
+		encoded = null;
+	}
+
+	/**
+	 * Adds the position of the word in the given document.
+	 *
+	 * @param document the id of the document
+	 * @param position the position of the word in the document
+	 * @return {@code true} if the posting list changed
+	 */
+	public boolean add(int document, int position) {
+		load();
+		blockLast = null;
+		PositionList list = size > 0 && documents[size - 1] == document ? positions[size - 1] : getOrCreate(document);
+
+		if (list.add(position)) {
+			totalPositions++;
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Adds all the positions of the word in the given document.
+	 *
+	 * @param document the id of the document
+	 * @param other the positions of the word in the document
+	 */
+	public void addAll(int document, PositionList other) {
+		addAll(document, other, 0);
+	}
+
+	/**
+	 * Adds all the positions of the word in the given document, shifting each of
+	 * them by the given offset. The positions are always copied, so the other list
+	 * can still be modified afterwards without affecting this one.
+	 *
+	 * @param document the id of the document
+	 * @param other the positions of the word in the document
+	 * @param offset the amount added to every position
+	 */
+	public void addAll(int document, PositionList other, int offset) {
+		load();
+		blockLast = null;
+		int index = indexOf(document);
+
+		if (index < 0) {
+			// always copy, so this list never shares positions with another index
+			PositionList copy = new PositionList();
+			copy.addAll(other, offset);
+			insert(-(index + 1), document, copy);
+			totalPositions += copy.size();
+		}
+		else {
+			PositionList list = positions[index];
+			int before = list.size();
+			list.addAll(other, offset);
+			totalPositions += list.size() - before;
+		}
+	}
+
+	/**
+	 * Adds all the postings from another posting list, translating the document
+	 * ids of the other list using the provided mapping.
+	 *
+	 * @param other the posting list to add
+	 * @param mapping the document id in this index for each document id in the
+	 *   other index
+	 */
+	public void addAll(PostingList other, int[] mapping) {
+		addAll(other, mapping, 0);
+	}
+
+	/**
+	 * Adds all the postings from another posting list, translating the document
+	 * ids of the other list using the provided mapping and shifting every position
+	 * by the given offset.
+	 *
+	 * @param other the posting list to add
+	 * @param mapping the document id in this index for each document id in the
+	 *   other index
+	 * @param offset the amount added to every position
+	 */
+	public void addAll(PostingList other, int[] mapping, int offset) {
+		load();
+		other.load();
+		for (int i = 0; i < other.size; i++) {
+			addAll(mapping[other.documents[i]], other.positions[i], offset);
+		}
+	}
+
+	/**
+	 * Removes the postings of every document in the given set.
+	 *
+	 * @param removed the ids of the documents to remove
+	 * @return {@code true} if the posting list changed
+	 */
+	public boolean removeAll(BitSet removed) {
+		load();
+		blockLast = null;
+		int kept = 0;
+
+		for (int i = 0; i < size; i++) {
+			if (!removed.get(documents[i])) {
+				documents[kept] = documents[i];
+				positions[kept] = positions[i];
+				kept++;
+			}
+			else {
+				totalPositions -= positions[i].size();
+			}
+		}
+
+		if (kept == size) {
+			return false;
+		}
+
+		Arrays.fill(positions, kept, size, null);
+		size = kept;
+		return true;
+	}
+
+	/**
+	 * Returns the number of documents containing the word.
+	 *
+	 * @return the number of documents
+	 */
+	public int size() {
+		load();
+		return size;
+	}
+
+	/**
+	 * Returns the document id stored at the given index.
+	 *
+	 * @param index the index into this posting list
+	 * @return the document id
+	 */
+	public int document(int index) {
+		load();
+		return documents[index];
+	}
+
+	/**
+	 * Returns the positions stored at the given index.
+	 *
+	 * @param index the index into this posting list
+	 * @return the positions of the word in that document
+	 */
+	public PositionList positions(int index) {
+		load();
+		return positions[index];
+	}
+
+	/**
+	 * Returns the positions of the word in the given document.
+	 *
+	 * @param document the id of the document
+	 * @return the positions, or {@code null} if the word is not in the document
+	 */
+	public PositionList get(int document) {
+		load();
+		int index = indexOf(document);
+		return index < 0 ? null : positions[index];
+	}
+
+	/**
+	 * Returns the total number of positions across all documents, also known as
+	 * the collection frequency of the word. The total is kept up to date as
+	 * postings are added and removed.
+	 *
+	 * @return the total number of positions
+	 */
+	public int numPositions() {
+		load();
+		return totalPositions;
+	}
+
+	/**
+	 * Trims the posting arrays and the encoded positions to their exact sizes.
+	 * Should only be called once no more postings will be added.
+	 */
+	public void compact() {
+		// decoded postings already have their exact sizes
+		if (encoded != null) {
+			return;
+		}
+
+		documents = Arrays.copyOf(documents, size);
+		positions = Arrays.copyOf(positions, size);
+
+		for (PositionList list : positions) {
+			list.compact();
+		}
+	}
+
+	/**
+	 * Divides the postings into blocks and records the largest number of matches
+	 * and the smallest document word count of each block. Any later change to the
+	 * postings discards the blocks.
+	 *
+	 * @param wordCounts the word count of each document id
+	 *
+	 * @see #BLOCK_SIZE
+	 */
+	public void buildBlocks(int[] wordCounts) {
+		if (encoded != null) {
+			synchronized (this) {
+				// the blocks of postings that are never used are never built
+				if (encoded != null) {
+					pendingCounts = wordCounts;
+					return;
+				}
+			}
+		}
+
+		computeBlocks(wordCounts);
+	}
+
+	/**
+	 * Divides the decoded postings into blocks and records the largest number of
+	 * matches and the smallest document word count of each block.
+	 *
+	 * @param wordCounts the word count of each document id
+	 */
+	private void computeBlocks(int[] wordCounts) {
+		int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		int[] last = new int[blocks];
+		int[] matches = new int[blocks];
+		int[] counts = new int[blocks];
+
+		maxMatches = 0;
+		minWordCount = Integer.MAX_VALUE;
+
+		for (int block = 0; block < blocks; block++) {
+			int from = block * BLOCK_SIZE;
+			int to = Math.min(from + BLOCK_SIZE, size);
+
+			matches[block] = 0;
+			counts[block] = Integer.MAX_VALUE;
+
+			for (int i = from; i < to; i++) {
+				matches[block] = Math.max(matches[block], positions[i].size());
+				counts[block] = Math.min(counts[block], wordCounts[documents[i]]);
+			}
+
+			last[block] = documents[to - 1];
+			maxMatches = Math.max(maxMatches, matches[block]);
+			minWordCount = Math.min(minWordCount, counts[block]);
+		}
+
+		blockMaxMatches = matches;
+		blockMinWordCount = counts;
+		blockLast = last;
+	}
+
+	/**
+	 * Checks whether the blocks have been built and are still up to date.
+	 *
+	 * @return {@code true} if the block metadata may be used
+	 *
+	 * @see #buildBlocks(int[])
+	 */
+	public boolean hasBlocks() {
+		load();
+		return blockLast != null;
+	}
+
+	/**
+	 * Returns the number of blocks.
+	 *
+	 * @return the number of blocks
+	 */
+	public int numBlocks() {
+		load();
+		return blockLast.length;
+	}
+
+	/**
+	 * Finds the block that contains the first posting whose document id is greater
+	 * than or equal to the target.
+	 *
+	 * @param document the target document id
+	 * @return the index of the block, or the number of blocks if every document id
+	 *   is less than the target
+	 */
+	public int findBlock(int document) {
+		int index = Arrays.binarySearch(blockLast, document);
+		return index < 0 ? -(index + 1) : index;
+	}
+
+	/**
+	 * Returns the last document id of a block.
+	 *
+	 * @param block the index of the block
+	 * @return the last document id in the block
+	 */
+	public int blockLast(int block) {
+		return blockLast[block];
+	}
+
+	/**
+	 * Returns the largest number of matches in a single document of a block.
+	 *
+	 * @param block the index of the block
+	 * @return the largest number of matches in the block
+	 */
+	public int blockMaxMatches(int block) {
+		return blockMaxMatches[block];
+	}
+
+	/**
+	 * Returns the smallest word count of a document in a block.
+	 *
+	 * @param block the index of the block
+	 * @return the smallest word count in the block
+	 */
+	public int blockMinWordCount(int block) {
+		return blockMinWordCount[block];
+	}
+
+	/**
+	 * Returns the largest number of matches in a single document, as of the last
+	 * time the blocks were built.
+	 *
+	 * @return the largest number of matches
+	 */
+	public int maxMatches() {
+		load();
+		return maxMatches;
+	}
+
+	/**
+	 * Returns the smallest word count of a document containing the word, as of the
+	 * last time the blocks were built.
+	 *
+	 * @return the smallest word count
+	 */
+	public int minWordCount() {
+		load();
+		return minWordCount;
+	}
+
+	/**
+	 * Translates this posting list into a map sorted by document path.
+	 *
+	 * @param paths the path of each document id
+	 * @return a map from document path to positions
+	 */
+	public TreeMap<String, PositionList> toLocationMap(List<String> paths) {
+		load();
+		TreeMap<String, PositionList> map = new TreeMap<>();
+		for (int i = 0; i < size; i++) {
+			map.put(paths.get(documents[i]), positions[i]);
+		}
+		return map;
+	}
+
+	/**
+	 * Finds the index of the given document id using binary search.
+	 *
+	 * @param document the document id to find
+	 * @return the index of the document if found, otherwise
+	 *   {@code (-(insertion point) - 1)}
+	 *
+	 * @see Arrays#binarySearch(int[], int, int, int)
+	 */
+	public int indexOf(int document) {
+		load();
+		if (size > 0 && documents[size - 1] < document) {
+			return -(size + 1);
+		}
+		return Arrays.binarySearch(documents, 0, size, document);
+	}
+
+	/**
+	 * Returns an iterator through the documents of this posting list.
+	 *
+	 * @return an iterator starting on the first document
+	 */
+	public DocumentIterator iterator() {
+		load();
+		return new DocumentIterator();
+	}
+
+	/**
+	 * Finds the first index at or after {@code from} whose document id is greater
+	 * than or equal to the target. Probes ahead in exponentially growing steps and
+	 * then binary searches the last step, so skipping over {@code n} documents
+	 * costs {@code O(log n)} comparisons.
+	 *
+	 * @param documents the sorted document ids
+	 * @param from the index to start searching from
+	 * @param size the number of document ids in use
+	 * @param target the document id to search for
+	 * @return the index of the first document id not less than the target, or
+	 *   {@code size} if there is none
+	 */
+	public static int gallop(int[] documents, int from, int size, int target) {
+		if (from >= size || documents[from] >= target) {
+			return from;
+		}
+
+		int low = from;
+		int step = 1;
+
+		while (low + step < size && documents[low + step] < target) {
+			low += step;
+			step <<= 1;
+		}
+
+		int high = Math.min(low + step, size);
+		int index = Arrays.binarySearch(documents, low + 1, high, target);
+		return index < 0 ? -(index + 1) : index;
+	}
+
+	/**
+	 * Returns the positions for the given document, creating them if necessary.
+	 *
+	 * @param document the id of the document
+	 * @return the positions of the word in the document
+	 */
+	private PositionList getOrCreate(int document) {
+		int index = indexOf(document);
+
+		if (index >= 0) {
+			return positions[index];
+		}
+
+		PositionList created = new PositionList();
+		insert(-(index + 1), document, created);
+		return created;
+	}
+
+	/**
+	 * Inserts a document and its positions at the given index.
+	 *
+	 * @param index the index to insert at
+	 * @param document the id of the document
+	 * @param other the positions of the word in the document
+	 */
+	private void insert(int index, int document, PositionList other) {
+		if (size == documents.length) {
+			int capacity = size + (size >> 1) + 1;
+			documents = Arrays.copyOf(documents, capacity);
+			positions = Arrays.copyOf(positions, capacity);
+		}
+
+		if (index < size) {
+			System.arraycopy(documents, index, documents, index + 1, size - index);
+			System.arraycopy(positions, index, positions, index + 1, size - index);
+		}
+
+		documents[index] = document;
+		positions[index] = other;
+		size++;
+	}
+
+	/**
+	 * Iterates through the documents of a posting list in increasing order of id.
+	 */
+	public class DocumentIterator implements PostingIterator {
+		/** The index of the current document. */
+		private int index;
+
+		/**
+		 * Constructs an iterator starting on the first document.
+		 */
+		private DocumentIterator() {
+			this.index = 0;
+		}
+
+		@Override
+		public int document() {
+			return index < size ? documents[index] : NO_MORE_DOCUMENTS;
+		}
+
+		@Override
+		public int matches() {
+			return positions[index].size();
+		}
+
+		/**
+		 * Returns the posting list being iterated.
+		 *
+		 * @return the posting list
+		 */
+		public PostingList postings() {
+			return PostingList.this;
+		}
+
+		/**
+		 * Returns the positions of the word in the current document.
+		 *
+		 * @return the positions in the current document
+		 */
+		public PositionList positions() {
+			return positions[index];
+		}
+
+		@Override
+		public int next() {
+			if (index < size) {
+				index++;
+			}
+			return document();
+		}
+
+		@Override
+		public int advance(int target) {
+			index = gallop(documents, index, size, target);
+			return document();
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package edu.usfca.cs272;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A parsed search query, made up of individual stemmed words, optional phrases,
+ * and optional excluded words. A document matches the query if it matches any
+ * of its words or phrases, or all of them if the query is conjunctive, and none
+ * of its excluded words.
+ *
+ * @see QueryParser
+ */
+public class Query {
+	/** The unique stemmed words of the query in sorted order. */
+	private final TreeSet<String> words;
+
+	/** The phrases of the query in the order they were parsed. */
+	private final ArrayList<Phrase> phrases;
+
+	/** The unique stemmed words that matching documents must not contain. */
+	private final TreeSet<String> excluded;
+
+	/** Whether every word and phrase must match, instead of any of them. */
+	private final boolean conjunctive;
+
+	/**
+	 * Constructs a query of individual words with no phrases.
+	 *
+	 * @param words the stemmed words of the query
+	 */
+	public Query(Set<String> words) {
+		this(words, List.of());
+	}
+
+	/**
+	 * Constructs a query of individual words and phrases.
+	 *
+	 * @param words the stemmed words of the query
+	 * @param phrases the phrases of the query
+	 */
+	public Query(Set<String> words, List<Phrase> phrases) {
+		this(words, phrases, Set.of(), false);
+	}
+
+	/**
+	 * Constructs a query of individual words, phrases, and excluded words.
+	 *
+	 * @param words the stemmed words of the query
+	 * @param phrases the phrases of the query
+	 * @param excluded the stemmed words that matching documents must not contain
+	 * @param conjunctive whether every word and phrase must match, instead of any
+	 *   of them
+	 */
+	public Query(Set<String> words, List<Phrase> phrases, Set<String> excluded, boolean conjunctive) {
+		this.words = new TreeSet<>(words);
+		this.phrases = new ArrayList<>(phrases);
+		this.excluded = new TreeSet<>(excluded);
+		this.conjunctive = conjunctive;
+	}
+
+	/**
+	 * Returns an unmodifiable view of the individual words of the query.
+	 *
+	 * @return the unique stemmed words in sorted order
+	 */
+	public Set<String> getWords() {
+		return Collections.unmodifiableSet(words);
+	}
+
+	/**
+	 * Returns an unmodifiable view of the phrases of the query.
+	 *
+	 * @return the phrases in parsed order
+	 */
+	public List<Phrase> getPhrases() {
+		return Collections.unmodifiableList(phrases);
+	}
+
+	/**
+	 * Returns an unmodifiable view of the words that matching documents must not
+	 * contain.
+	 *
+	 * @return the unique excluded stemmed words in sorted order
+	 */
+	public Set<String> getExcluded() {
+		return Collections.unmodifiableSet(excluded);
+	}
+
+	/**
+	 * Checks whether every word and phrase of the query must match.
+	 *
+	 * @return {@code true} if the query is conjunctive
+	 */
+	public boolean isConjunctive() {
+		return conjunctive;
+	}
+
+	/**
+	 * Returns every word used by the query, including the words of its phrases
+	 * and the excluded words.
+	 *
+	 * @return the unique stemmed words in sorted order
+	 */
+	public TreeSet<String> allWords() {
+		TreeSet<String> all = new TreeSet<>(words);
+		for (Phrase phrase : phrases) {
+			all.addAll(phrase.getWords());
+		}
+		all.addAll(excluded);
+		return all;
+	}
+
+	/**
+	 * Checks whether the query has no words or phrases.
+	 *
+	 * @return {@code true} if the query is empty
+	 */
+	public boolean isEmpty() {
+		return words.isEmpty() && phrases.isEmpty();
+	}
+
+	/**
+	 * Returns the normalized form of this query, used to group identical queries.
+	 * A query of only words is its sorted words joined by spaces. The words and
+	 * phrases of a conjunctive query are joined by {@code AND}, and excluded words
+	 * follow with a leading {@code -}. A query with no words or phrases is always
+	 * the empty string.
+	 *
+	 * @return the normalized query string
+	 */
+	@Override
+	public String toString() {
+		if (phrases.isEmpty() && excluded.isEmpty() && !conjunctive) {
+			return String.join(" ", words);
+		}
+
+		if (isEmpty()) {
+			return "";
+		}
+
+		TreeSet<String> parts = new TreeSet<>(words);
+		for (Phrase phrase : phrases) {
+			parts.add(phrase.toString());
+		}
+
+		String separator = conjunctive && parts.size() > 1 ? " AND " : " ";
+		StringBuilder builder = new StringBuilder(String.join(separator, parts));
+		for (String word : excluded) {
+			builder.append(" -").append(word);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * A sequence of stemmed words that must appear in order. With a slop of zero
+	 * the words must be consecutive; otherwise up to slop other words may appear
+	 * in between, in total.
+	 */
+	public static class Phrase {
+		/** The stemmed words of the phrase in order. */
+		private final List<String> words;
+
+		/** The number of extra words allowed between the words of the phrase. */
+		private final int slop;
+
+		/**
+		 * Constructs a phrase.
+		 *
+		 * @param words the stemmed words of the phrase in order
+		 * @param slop the number of extra words allowed between the words of the
+		 *   phrase
+		 */
+		public Phrase(List<String> words, int slop) {
+			this.words = List.copyOf(words);
+			this.slop = slop;
+		}
+
+		/**
+		 * Returns the stemmed words of the phrase.
+		 *
+		 * @return the words in order
+		 */
+		public List<String> getWords() {
+			return words;
+		}
+
+		/**
+		 * Returns the number of extra words allowed between the words of the phrase.
+		 *
+		 * @return the slop of the phrase
+		 */
+		public int getSlop() {
+			return slop;
+		}
+
+		@Override
+		public String toString() {
+			String quoted = "\"" + String.join(" ", words) + "\"";
+			return slop > 0 ? quoted + "~" + slop : quoted;
+		}
+	}
+}
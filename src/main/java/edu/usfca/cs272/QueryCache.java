@@ -0,0 +1,314 @@
+package edu.usfca.cs272;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import edu.usfca.cs272.InvertedIndex.IndexSearcher;
+
+/**
+ * A bounded cache of search results. The least recently used results are
+ * evicted once the cache holds too many queries or too many (estimated) bytes
+ * of results.
+ *
+ * Results are cached under a key made of the normalized query and the settings
+ * of the search, so one cache may be shared by query processors that search
+ * with different settings. Every result is tagged with the version of the index
+ * it was computed from, and the whole cache is cleared as soon as it sees a
+ * newer version, so results are never returned after the index has been
+ * modified. A cache should therefore only be shared by processors that search
+ * the same index.
+ *
+ * All methods are synchronized, so one cache may be used by several threads.
+ *
+ * @see InvertedIndex#getVersion()
+ */
+public class QueryCache {
+	/** The default maximum number of cached queries. */
+	public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+	/** The default maximum estimated size of the cached results in bytes. */
+	public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+	/** The estimated size of a cache entry, not counting its key or results. */
+	private static final int ENTRY_BYTES = 96;
+
+	/** The estimated size of one cached search result. */
+	private static final int RESULT_BYTES = 40;
+
+	/** The cached results of each query, in access order. */
+	private final LinkedHashMap<String, Entry> entries;
+
+	/** The maximum number of cached queries. */
+	private final int maxEntries;
+
+	/** The maximum estimated size of the cached results in bytes. */
+	private final long maxBytes;
+
+	/** The estimated size of the cached results in bytes. */
+	private long bytes;
+
+	/** The index version the cached results were computed from. */
+	private long version;
+
+	/** The number of lookups that found a cached result. */
+	private long hits;
+
+	/** The number of lookups that did not find a cached result. */
+	private long misses;
+
+	/** The number of results evicted to stay within the bounds of the cache. */
+	private long evictions;
+
+	/**
+	 * Constructs a cache with the default bounds.
+	 *
+	 * @see #DEFAULT_MAX_ENTRIES
+	 * @see #DEFAULT_MAX_BYTES
+	 */
+	public QueryCache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * Constructs a cache with the given bounds.
+	 *
+	 * @param maxEntries the maximum number of cached queries
+	 * @param maxBytes the maximum estimated size of the cached results in bytes
+	 */
+	public QueryCache(int maxEntries, long maxBytes) {
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		this.bytes = 0;
+		this.version = 0;
+		this.hits = 0;
+		this.misses = 0;
+		this.evictions = 0;
+	}
+
+	/**
+	 * Returns a cache with the bounds given as the maximum number of queries,
+	 * optionally followed by a comma and the maximum size in bytes, such as
+	 * "1024" or "1024,16777216". Any bound that is not given uses its default.
+	 *
+	 * @param bounds the bounds of the cache, or {@code null} or an empty string
+	 *   to use the default bounds
+	 * @return the cache, or {@code null} if the bounds are not positive numbers
+	 *
+	 * @see #DEFAULT_MAX_ENTRIES
+	 * @see #DEFAULT_MAX_BYTES
+	 */
+	public static QueryCache forBounds(String bounds) {
+		if (bounds == null || bounds.isBlank()) {
+			return new QueryCache();
+		}
+
+		String[] parts = bounds.split(",", 2);
+
+		try {
+			int maxEntries = Integer.parseInt(parts[0].strip());
+			long maxBytes = parts.length > 1 ? Long.parseLong(parts[1].strip()) : DEFAULT_MAX_BYTES;
+			return maxEntries > 0 && maxBytes > 0 ? new QueryCache(maxEntries, maxBytes) : null;
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the key the results of a query are cached under. The normalized
+	 * query already tells apart the phrases, operators, and conjunctive queries of
+	 * any parser, and the key adds the settings that change the results of the
+	 * same query.
+	 *
+	 * @param query the normalized query string
+	 * @param isPartial whether the query is searched for partial matches
+	 * @param limit the maximum number of results kept for the query
+	 * @param scorer the scorer used to rank the results
+	 * @return the key of the query
+	 */
+	public static String key(String query, boolean isPartial, int limit, Scorer scorer) {
+		// query lines never contain a newline, so no two keys run together
+		return query + '\n' + (isPartial ? "partial" : "exact") + ' ' + limit + ' ' + scorer;
+	}
+
+	/**
+	 * Returns the cached results of a query, if they were computed from the given
+	 * version of the index.
+	 *
+	 * @param query the key of the query
+	 * @param version the current version of the index
+	 * @return the cached results, or {@code null} if there are none
+	 */
+	public synchronized ArrayList<IndexSearcher> get(String query, long version) {
+		if (version > this.version) {
+			invalidate(version);
+		}
+
+		Entry entry = version == this.version ? entries.get(query) : null;
+
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+
+		hits++;
+		return entry.results;
+	}
+
+	/**
+	 * Caches the results of a query, evicting the least recently used results if
+	 * needed. Results computed from an older version of the index than the cache
+	 * has already seen are ignored, as are results too large to ever fit.
+	 *
+	 * @param query the key of the query
+	 * @param results the results of the query, which must not be modified later
+	 * @param version the version of the index the results were computed from,
+	 *   read before the search started
+	 */
+	public synchronized void put(String query, ArrayList<IndexSearcher> results, long version) {
+		if (version < this.version) {
+			return;
+		}
+
+		if (version > this.version) {
+			invalidate(version);
+		}
+
+		long size = estimate(query, results);
+
+		if (size > maxBytes || maxEntries < 1) {
+			return;
+		}
+
+		Entry previous = entries.put(query, new Entry(results, size));
+
+		if (previous != null) {
+			bytes -= previous.bytes;
+		}
+
+		bytes += size;
+		Iterator<Entry> eldest = entries.values().iterator();
+
+		while (entries.size() > maxEntries || bytes > maxBytes) {
+			bytes -= eldest.next().bytes;
+			eldest.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Removes every cached result. The statistics are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Returns the number of cached queries.
+	 *
+	 * @return the number of cached queries
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the estimated size of the cached results.
+	 *
+	 * @return the estimated size in bytes
+	 */
+	public synchronized long bytes() {
+		return bytes;
+	}
+
+	/**
+	 * Returns the number of lookups that found a cached result.
+	 *
+	 * @return the number of hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that did not find a cached result.
+	 *
+	 * @return the number of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of results evicted to stay within the bounds of the
+	 * cache. Results dropped because the index was modified are not counted.
+	 *
+	 * @return the number of evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the fraction of lookups that found a cached result.
+	 *
+	 * @return the hit rate, or 0 if there have been no lookups
+	 */
+	public synchronized double hitRate() {
+		long lookups = hits + misses;
+		return lookups > 0 ? (double) hits / lookups : 0.0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%d queries, %d bytes, %d hits, %d misses, %d evictions", entries.size(), bytes, hits,
+				misses, evictions);
+	}
+
+	/**
+	 * Drops every cached result because the index has moved to a new version.
+	 *
+	 * @param version the new version of the index
+	 */
+	private void invalidate(long version) {
+		clear();
+		this.version = version;
+	}
+
+	/**
+	 * Estimates the memory used to cache the results of a query. The paths of the
+	 * documents are shared with the index, so they are not counted.
+	 *
+	 * @param query the key of the query
+	 * @param results the results of the query
+	 * @return the estimated size in bytes
+	 */
+	private static long estimate(String query, ArrayList<IndexSearcher> results) {
+		return ENTRY_BYTES + 2L * query.length() + (long) RESULT_BYTES * results.size();
+	}
+
+	/**
+	 * The cached results of one query along with their estimated size.
+	 */
+	private static class Entry {
+		/** The results of the query. */
+		private final ArrayList<IndexSearcher> results;
+
+		/** The estimated size of the entry in bytes. */
+		private final long bytes;
+
+		/**
+		 * Constructs a cache entry.
+		 *
+		 * @param results the results of the query
+		 * @param bytes the estimated size of the entry in bytes
+		 */
+		private Entry(ArrayList<IndexSearcher> results, long bytes) {
+			this.results = results;
+			this.bytes = bytes;
+		}
+	}
+}
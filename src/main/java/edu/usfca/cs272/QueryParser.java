@@ -0,0 +1,159 @@
+package edu.usfca.cs272;
+
+import java.util.ArrayList;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import opennlp.tools.stemmer.Stemmer;
+
+/**
+ * Parses lines of text into search queries. By default every line is treated
+ * as a set of unique stemmed words, any of which may match. The parser can also
+ * recognize the following syntax:
+ *
+ * <ul>
+ * <li>Phrases: text in double quotes is parsed as a phrase, optionally followed
+ * by {@code ~N} to allow up to N extra words in between, as in
+ * {@code "quick fox"~2}.</li>
+ * <li>Operators: the word {@code AND} makes every word and phrase of the line
+ * required, and a word preceded by {@code NOT} or prefixed with {@code -}
+ * excludes the documents that contain it.</li>
+ * </ul>
+ *
+ * The parser may also make every query conjunctive, as if each line contained
+ * {@code AND}.
+ */
+public class QueryParser {
+	/** Regular expression that matches a quoted phrase and its optional slop. */
+	public static final Pattern PHRASE_REGEX = Pattern.compile("\"([^\"]*)\"(?:~(\\d{1,9}))?");
+
+	/** The operator that makes every word and phrase of a line required. */
+	public static final String AND = "AND";
+
+	/** The operator that excludes the word following it. */
+	public static final String NOT = "NOT";
+
+	/** Whether quoted text is parsed as phrases. */
+	private final boolean phrases;
+
+	/** Whether the {@code AND} and {@code NOT} operators are recognized. */
+	private final boolean operators;
+
+	/** Whether every query is conjunctive. */
+	private final boolean conjunctive;
+
+	/**
+	 * Constructs a parser that treats every line as a set of words.
+	 */
+	public QueryParser() {
+		this(false);
+	}
+
+	/**
+	 * Constructs a parser without operators.
+	 *
+	 * @param phrases whether quoted text is parsed as phrases
+	 */
+	public QueryParser(boolean phrases) {
+		this(phrases, false, false);
+	}
+
+	/**
+	 * Constructs a parser.
+	 *
+	 * @param phrases whether quoted text is parsed as phrases
+	 * @param operators whether the {@code AND} and {@code NOT} operators are
+	 *   recognized
+	 * @param conjunctive whether every query is conjunctive, even without the
+	 *   {@code AND} operator
+	 */
+	public QueryParser(boolean phrases, boolean operators, boolean conjunctive) {
+		this.phrases = phrases;
+		this.operators = operators;
+		this.conjunctive = conjunctive;
+	}
+
+	/**
+	 * Parses a line of text into a query.
+	 *
+	 * @param line the line to parse
+	 * @param stemmer the stemmer to use
+	 * @return the parsed query
+	 */
+	public Query parse(String line, Stemmer stemmer) {
+		if (!operators && !conjunctive && (!phrases || line.indexOf('"') < 0)) {
+			return new Query(FileStemmer.uniqueStems(line, stemmer));
+		}
+
+		TreeSet<String> words = new TreeSet<>();
+		ArrayList<Query.Phrase> parsed = new ArrayList<>();
+		String remainder = phrases ? parsePhrases(line, stemmer, words, parsed) : line;
+
+		if (!operators) {
+			FileStemmer.addStems(remainder, stemmer, words);
+			return new Query(words, parsed, new TreeSet<>(), conjunctive);
+		}
+
+		TreeSet<String> excluded = new TreeSet<>();
+		boolean required = conjunctive;
+		boolean negate = false;
+
+		for (String token : FileStemmer.split(remainder)) {
+			if (token.equals(AND)) {
+				required = true;
+				continue;
+			}
+
+			if (token.equals(NOT)) {
+				negate = true;
+				continue;
+			}
+
+			if (token.startsWith("-")) {
+				negate = true;
+				token = token.substring(1);
+			}
+
+			FileStemmer.addStems(token, stemmer, negate ? excluded : words);
+			negate = false;
+		}
+
+		return new Query(words, parsed, excluded, required);
+	}
+
+	/**
+	 * Parses the quoted phrases of a line, adding any single-word phrases to the
+	 * words of the query instead.
+	 *
+	 * @param line the line to parse
+	 * @param stemmer the stemmer to use
+	 * @param words the words of the query to add to
+	 * @param parsed the phrases of the query to add to
+	 * @return the rest of the line, with the phrases replaced by spaces
+	 */
+	private static String parsePhrases(String line, Stemmer stemmer, TreeSet<String> words,
+			ArrayList<Query.Phrase> parsed) {
+		StringBuilder remainder = new StringBuilder();
+		Matcher matcher = PHRASE_REGEX.matcher(line);
+		int last = 0;
+
+		while (matcher.find()) {
+			remainder.append(line, last, matcher.start()).append(' ');
+			last = matcher.end();
+
+			ArrayList<String> stems = FileStemmer.listStems(matcher.group(1), stemmer);
+			int slop = matcher.group(2) != null ? Integer.parseInt(matcher.group(2)) : 0;
+
+			if (stems.size() == 1) {
+				words.add(stems.get(0));
+			}
+			else if (stems.size() > 1) {
+				parsed.add(new Query.Phrase(stems, slop));
+			}
+		}
+
+		remainder.append(line, last, line.length());
+		return remainder.toString();
+	}
+}
@@ -1,7 +1,5 @@
 package edu.usfca.cs272;
 
-import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
-
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -9,11 +7,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 import edu.usfca.cs272.InvertedIndex.IndexSearcher;
 import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
 /**
  * A class responsible for processing queries and managing search results.
@@ -31,6 +27,27 @@ public class QueryProcessor implements QueryProcessorInterface {
 	 */
 	private final boolean isPartial;
 
+	/**
+	 * The maximum number of results kept for each query.
+	 */
+	private final int limit;
+
+	/**
+	 * The scorer used to rank the results of each query.
+	 */
+	private final Scorer scorer;
+
+	/**
+	 * The parser used to turn each line into a query.
+	 */
+	private final QueryParser parser;
+
+	/**
+	 * The cache of search results shared across processors, or {@code null} if
+	 * results are not cached.
+	 */
+	private final QueryCache cache;
+
 	/**
 	 * The stemmer used for stemming words.
 	 */
@@ -51,23 +68,123 @@ public class QueryProcessor implements QueryProcessorInterface {
 	 *   exact search (false)
 	 */
 	public QueryProcessor(InvertedIndex index, boolean isPartial) {
+		this(index, isPartial, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Constructs a QueryProcessor that keeps at most the given number of results
+	 * for each query.
+	 *
+	 * @param index the inverted index to be used for query processing
+	 * @param isPartial a boolean indicating whether to use partial search (true) or
+	 *   exact search (false)
+	 * @param limit the maximum number of results kept for each query
+	 */
+	public QueryProcessor(InvertedIndex index, boolean isPartial, int limit) {
+		this(index, isPartial, limit, Scorer.COUNT);
+	}
+
+	/**
+	 * Constructs a QueryProcessor that ranks results with the given scorer and
+	 * keeps at most the given number of results for each query.
+	 *
+	 * @param index the inverted index to be used for query processing
+	 * @param isPartial a boolean indicating whether to use partial search (true) or
+	 *   exact search (false)
+	 * @param limit the maximum number of results kept for each query
+	 * @param scorer the scorer used to rank the results of each query
+	 */
+	public QueryProcessor(InvertedIndex index, boolean isPartial, int limit, Scorer scorer) {
+		this(index, isPartial, limit, scorer, new QueryParser());
+	}
+
+	/**
+	 * Constructs a QueryProcessor that parses each line with the given parser,
+	 * ranks results with the given scorer, and keeps at most the given number of
+	 * results for each query.
+	 *
+	 * @param index the inverted index to be used for query processing
+	 * @param isPartial a boolean indicating whether to use partial search (true) or
+	 *   exact search (false)
+	 * @param limit the maximum number of results kept for each query
+	 * @param scorer the scorer used to rank the results of each query
+	 * @param parser the parser used to turn each line into a query
+	 */
+	public QueryProcessor(InvertedIndex index, boolean isPartial, int limit, Scorer scorer, QueryParser parser) {
+		this(index, isPartial, limit, scorer, parser, null);
+	}
+
+	/**
+	 * Constructs a QueryProcessor that looks up the results of each query in the
+	 * given cache before searching the index.
+	 *
+	 * @param index the inverted index to be used for query processing
+	 * @param isPartial a boolean indicating whether to use partial search (true) or
+	 *   exact search (false)
+	 * @param limit the maximum number of results kept for each query
+	 * @param scorer the scorer used to rank the results of each query
+	 * @param parser the parser used to turn each line into a query
+	 * @param cache the cache of search results, or {@code null} to disable caching
+	 *
+	 * @see QueryCache
+	 */
+	public QueryProcessor(InvertedIndex index, boolean isPartial, int limit, Scorer scorer, QueryParser parser,
+			QueryCache cache) {
 		this.index = index;
 		this.isPartial = isPartial;
-		this.stemmer = new SnowballStemmer(ENGLISH);
+		this.limit = limit;
+		this.scorer = scorer;
+		this.parser = parser;
+		this.cache = cache;
+		this.stemmer = StemCache.ENGLISH;
 		this.searchResult = new TreeMap<>();
 	}
 
 	@Override
 	public void processQueries(String line) {
-		TreeSet<String> query = FileStemmer.uniqueStems(line, stemmer);
-		String queryString = String.join(" ", query);
+		Query query = parser.parse(line, stemmer);
+		String queryString = query.toString();
 
 		if (queryString.isEmpty() || searchResult.containsKey(queryString)) {
 			return;
 		}
 
-		ArrayList<InvertedIndex.IndexSearcher> results = index.search(query, isPartial);
-		searchResult.put(queryString, results);
+		searchResult.put(queryString, search(query, queryString));
+	}
+
+	@Override
+	public void processQueries(String line, SearchResultStream stream) {
+		Query query = parser.parse(line, stemmer);
+		String queryString = query.toString();
+
+		if (queryString.isEmpty() || stream.contains(queryString)) {
+			return;
+		}
+
+		stream.add(queryString, search(query, queryString));
+	}
+
+	/**
+	 * Searches the index for a query, using the cached results if there are any.
+	 *
+	 * @param query the parsed query
+	 * @param queryString the normalized query string
+	 * @return the results of the query
+	 */
+	private ArrayList<IndexSearcher> search(Query query, String queryString) {
+		long version = index.getVersion();
+		String key = cache != null ? QueryCache.key(queryString, isPartial, limit, scorer) : null;
+		ArrayList<IndexSearcher> results = cache != null ? cache.get(key, version) : null;
+
+		if (results == null) {
+			results = index.search(query, isPartial, limit, scorer);
+
+			if (cache != null) {
+				cache.put(key, results, version);
+			}
+		}
+
+		return results;
 	}
 
 	@Override
@@ -98,7 +215,7 @@ public class QueryProcessor implements QueryProcessorInterface {
 
 	@Override
 	public String getQueryString(String query) {
-		return String.join(" ", FileStemmer.uniqueStems(query, stemmer));
+		return parser.parse(query, stemmer).toString();
 	}
 
 	@Override
@@ -35,6 +35,32 @@ public interface QueryProcessorInterface {
 		}
 	}
 
+	/**
+	 * Reads queries from a file and streams their results to a JSON file as they
+	 * are found, instead of keeping them until
+	 * {@link #writeSearchResults(Path)}. At most the given number of results are
+	 * held in memory at once, and the output is the same as the one written by
+	 * {@link #writeSearchResults(Path)}. The results are not kept by this
+	 * processor.
+	 *
+	 * @param path The path to the file containing queries.
+	 * @param output The path to the output JSON file.
+	 * @param window The number of query results held in memory at once.
+	 * @throws IOException If an I/O error occurs while reading the query file or
+	 *   writing the results.
+	 *
+	 * @see SearchResultStream
+	 */
+	public default void processQueries(Path path, Path output, int window) throws IOException {
+		try (SearchResultStream stream = new SearchResultStream(output, window);
+				BufferedReader reader = Files.newBufferedReader(path)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				processQueries(line, stream);
+			}
+		}
+	}
+
 	/**
 	 * Processes a single query line.
 	 * 
@@ -42,6 +68,15 @@ public interface QueryProcessorInterface {
 	 */
 	public abstract void processQueries(String line);
 
+	/**
+	 * Processes a single query line, adding its results to the given stream
+	 * instead of keeping them.
+	 *
+	 * @param line The query line to process.
+	 * @param stream The stream the results are added to.
+	 */
+	public abstract void processQueries(String line, SearchResultStream stream);
+
 	/**
 	 * Retrieves the number of query lines processed by the QueuedQueryProcessor.
 	 *
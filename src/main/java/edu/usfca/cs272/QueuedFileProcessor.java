@@ -1,22 +1,64 @@
 package edu.usfca.cs272;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * A thread-safe version of {@link FileProcessor} using a work queue.
- * 
+ *
+ * Files are not merged into the shared index one at a time. Instead, each
+ * running task reads its file into a local buffer index that is not shared with
+ * any other running task, and buffers are only merged into the shared index
+ * once they hold enough words. This keeps the number of lock acquisitions
+ * proportional to the number of buffers rather than the number of files.
+ *
+ * Files larger than the chunk size are split on line boundaries into chunks
+ * that are read in parallel. Each chunk is indexed from position 1, and the
+ * chunks are merged in order, shifting their positions by the number of words
+ * in the chunks before them.
+ *
+ * Directories are traversed in parallel as well. The entries of a directory are
+ * listed by a task that reads the attributes of each entry once, submits a new
+ * task for every subdirectory, and submits the text files right away, so files
+ * are read while the rest of the tree is still being listed. Once too many tasks
+ * are pending, the listing task reads files itself until the workers catch up.
+ *
+ * Files that changed since they were indexed are only collected while listing.
+ * Once every listing task is done, their stale documents are removed together
+ * in one pass over the index, and then the files are read again.
  */
 public class QueuedFileProcessor {
+	/** The number of words a buffer holds before it is merged into the index. */
+	public static final long FLUSH_WORDS = 1 << 19;
+
+	/** The default size in bytes above which files are split into chunks. */
+	public static final long CHUNK_BYTES = 1 << 24;
+
+	/** The number of pending tasks above which directories stop submitting files. */
+	public static final int PENDING_FILES = 1 << 12;
+
 	/**
 	 * Recursively traverses the specified directory and processes each file. For
 	 * each regular file with a ".txt" extension, it reads the file and updates the
 	 * inverted index. If a file path is already present in the inverted index, it
 	 * updates the word count and index information.
 	 *
+	 * Each file is merged into the index as soon as it is read. This method waits
+	 * for the work queue to finish, so that errors in nested directories and files
+	 * can be reported.
+	 *
 	 * @param directory the path to the directory to traverse
 	 * @param index the thread-safe inverted index to update with file contents
 	 * @param queue the work queue for executing file processing tasks
@@ -25,21 +67,118 @@ public class QueuedFileProcessor {
 	 */
 	public static void traverseDirectory(Path directory, ThreadSafeInvertedIndex index, WorkQueue queue)
 			throws IOException {
+		Buffers buffers = new Buffers(index, 0, CHUNK_BYTES);
+
+		try {
+			traverseDirectory(directory, buffers, queue);
+			queue.finish();
+			readChanged(buffers, queue);
+		}
+		finally {
+			queue.finish();
+			buffers.flush();
+		}
+
+		if (buffers.error != null) {
+			throw buffers.error;
+		}
+	}
+
+	/**
+	 * Lists the specified directory and reads each text file that needs indexing
+	 * into the given buffers. Every subdirectory is traversed by a separate task.
+	 *
+	 * @param directory the path to the directory to traverse
+	 * @param buffers the buffers the files are read into
+	 * @param queue the work queue for executing file processing tasks
+	 * @throws IOException if an I/O error occurs while listing the directory
+	 */
+	private static void traverseDirectory(Path directory, Buffers buffers, WorkQueue queue) throws IOException {
 		try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
 			for (Path path : paths) {
-				if (Files.isDirectory(path)) {
-					traverseDirectory(path, index, queue);
+				BasicFileAttributes attributes = FileProcessor.readAttributes(path);
+
+				if (attributes == null) {
+					continue;
 				}
-				else if (Files.isRegularFile(path) && FileProcessor.isExtensionText(path)) {
-					Task task = new Task(path, index);
-					queue.execute(task);
+
+				if (attributes.isDirectory()) {
+					queue.execute(() -> traverseSubdirectory(path, buffers, queue));
+				}
+				else if (attributes.isRegularFile() && FileProcessor.isExtensionText(path)) {
+					submitIfNeeded(path, attributes, buffers, queue);
 				}
 			}
 		}
 	}
 
+	/**
+	 * Submits a file to be read if it was never indexed, or collects it in the
+	 * buffers if it changed since it was.
+	 *
+	 * @param path the path of the file
+	 * @param attributes the attributes of the file
+	 * @param buffers the buffers the file is read into
+	 * @param queue the work queue for executing file processing tasks
+	 * @throws IOException if an I/O error occurs while checking the file
+	 */
+	private static void submitIfNeeded(Path path, BasicFileAttributes attributes, Buffers buffers, WorkQueue queue)
+			throws IOException {
+		if (!FileProcessor.needsIndexing(path, attributes, buffers.index)) {
+			return;
+		}
+
+		if (buffers.index.getStamp(path.toString()) != null) {
+			buffers.changed.put(path, attributes);
+		}
+		else {
+			submit(path, attributes, buffers, queue);
+		}
+	}
+
+	/**
+	 * Removes the stale documents of the changed files collected in the buffers,
+	 * all in one pass over the index, and then submits the files to be read
+	 * again. Should only be called once every listing task is done.
+	 *
+	 * @param buffers the buffers holding the changed files
+	 * @param queue the work queue for executing file processing tasks
+	 * @throws IOException if an I/O error occurs while splitting a file
+	 */
+	private static void readChanged(Buffers buffers, WorkQueue queue) throws IOException {
+		if (buffers.changed.isEmpty()) {
+			return;
+		}
+
+		buffers.index.removeDocuments(FileProcessor.locations(buffers.changed.keySet()));
+
+		for (var entry : buffers.changed.entrySet()) {
+			submit(entry.getKey(), entry.getValue(), buffers, queue);
+		}
+	}
+
+	/**
+	 * Traverses a subdirectory as a task. Errors are recorded in the buffers so
+	 * that they can be reported once every task is done.
+	 *
+	 * @param directory the path to the subdirectory to traverse
+	 * @param buffers the buffers the files are read into
+	 * @param queue the work queue for executing file processing tasks
+	 */
+	private static void traverseSubdirectory(Path directory, Buffers buffers, WorkQueue queue) {
+		try {
+			traverseDirectory(directory, buffers, queue);
+		}
+		catch (IOException e) {
+			buffers.fail(e);
+			throw new UncheckedIOException(e);
+		}
+	}
+
 	/**
 	 * Processes the specified input path, either as a directory or a single file.
+	 * As with {@link FileProcessor#processPath(Path, InvertedIndex)}, unchanged
+	 * files are skipped and documents for deleted files are removed.
 	 *
 	 * @param input the path to the directory or file to be processed
 	 * @param index the thread-safe inverted index to update with file contents
@@ -47,22 +186,452 @@ public class QueuedFileProcessor {
 	 * @throws IOException if an I/O error occurs while processing the input path
 	 */
 	public static void processPath(Path input, ThreadSafeInvertedIndex index, WorkQueue queue) throws IOException {
-		if (Files.isDirectory(input)) {
-			traverseDirectory(input, index, queue);
+		processPath(input, index, queue, CHUNK_BYTES);
+	}
+
+	/**
+	 * Processes the specified input path, either as a directory or a single file,
+	 * splitting files larger than the given size into chunks that are read in
+	 * parallel.
+	 *
+	 * @param input the path to the directory or file to be processed
+	 * @param index the thread-safe inverted index to update with file contents
+	 * @param queue the work queue for executing file processing tasks
+	 * @param chunkBytes the size in bytes above which files are split into chunks
+	 * @throws IOException if an I/O error occurs while processing the input path
+	 *
+	 * @see #processPath(Path, ThreadSafeInvertedIndex, WorkQueue)
+	 */
+	public static void processPath(Path input, ThreadSafeInvertedIndex index, WorkQueue queue, long chunkBytes)
+			throws IOException {
+		FileProcessor.removeMissing(input, index);
+		Buffers buffers = new Buffers(index, FLUSH_WORDS, chunkBytes);
+
+		try {
+			if (Files.isDirectory(input)) {
+				traverseDirectory(input, buffers, queue);
+			}
+			else {
+				submitIfNeeded(input, Files.readAttributes(input, BasicFileAttributes.class), buffers, queue);
+			}
+
+			queue.finish();
+			readChanged(buffers, queue);
 		}
-		else {
-			Task task = new Task(input, index);
-			queue.execute(task);
+		finally {
+			queue.finish();
+			buffers.flush();
+		}
+
+		if (buffers.error != null) {
+			throw buffers.error;
+		}
+	}
+
+	/**
+	 * Submits the tasks that read a file, splitting the file into chunks if it is
+	 * large enough.
+	 *
+	 * @param path the path of the file
+	 * @param attributes the attributes of the file
+	 * @param buffers the buffers small files are read into
+	 * @param queue the work queue for executing file processing tasks
+	 * @throws IOException if an I/O error occurs while splitting the file
+	 */
+	private static void submit(Path path, BasicFileAttributes attributes, Buffers buffers, WorkQueue queue)
+			throws IOException {
+		if (attributes.size() > buffers.chunkBytes) {
+			long[] bounds = split(path, attributes.size(), buffers.chunkBytes);
+
+			if (bounds.length > 2) {
+				ChunkedFile file = new ChunkedFile(path, attributes, bounds, buffers);
+				queue.execute(file::readChecksum);
+
+				for (int chunk = 0; chunk < bounds.length - 1; chunk++) {
+					int current = chunk;
+					queue.execute(() -> file.readChunk(current));
+				}
+
+				return;
+			}
+		}
+
+		queue.execute(new Task(path, attributes, buffers), PENDING_FILES);
+	}
+
+	/**
+	 * Splits a file into chunks of roughly the given size that start at the
+	 * beginning of a line. Since a newline byte is never part of a multi-byte
+	 * UTF-8 character, every chunk can be decoded on its own.
+	 *
+	 * @param path the path of the file
+	 * @param size the size of the file in bytes
+	 * @param chunkBytes the target size of each chunk
+	 * @return the offset of the start of each chunk followed by the size of the
+	 *   file, or just the start and end of the file if it cannot be split
+	 * @throws IOException if an I/O error occurs while reading the file
+	 */
+	private static long[] split(Path path, long size, long chunkBytes) throws IOException {
+		long chunks = (size + chunkBytes - 1) / chunkBytes;
+		long[] bounds = new long[(int) Math.min(chunks + 1, Integer.MAX_VALUE)];
+		int count = 1;
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+			for (int chunk = 1; chunk < bounds.length - 1; chunk++) {
+				long target = chunk * chunkBytes;
+
+				// a long line may already have carried the previous chunk past this one
+				if (bounds[count - 1] >= target) {
+					continue;
+				}
+
+				long start = nextLine(channel, target, size, buffer);
+
+				if (start < size) {
+					bounds[count++] = start;
+				}
+			}
+		}
+
+		bounds[count++] = size;
+
+		for (int i = 1; i < count; i++) {
+			// chunks are read into arrays, so they must fit in one
+			if (bounds[i] - bounds[i - 1] > Integer.MAX_VALUE - 8) {
+				return new long[] { 0, size };
+			}
+		}
+
+		return Arrays.copyOf(bounds, count);
+	}
+
+	/**
+	 * Finds the start of the first line that begins after the given offset.
+	 *
+	 * @param channel the channel of the file
+	 * @param from the offset to start searching from
+	 * @param size the size of the file in bytes
+	 * @param buffer the buffer used to read the file
+	 * @return the offset just after the next newline, or the size of the file if
+	 *   there is none
+	 * @throws IOException if an I/O error occurs while reading the file
+	 */
+	private static long nextLine(FileChannel channel, long from, long size, ByteBuffer buffer) throws IOException {
+		long position = from;
+
+		while (position < size) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+
+			if (read < 0) {
+				break;
+			}
+
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+
+			position += read;
+		}
+
+		return size;
+	}
+
+	/**
+	 * The local buffer indexes of the running tasks. A task takes a buffer that no
+	 * other task is using, reads its file into it, and gives it back. Buffers that
+	 * have grown large enough are merged into the shared index instead of being
+	 * given back, and the rest are merged by {@link #flush()}.
+	 */
+	private static class Buffers {
+		/** The shared index the buffers are merged into. */
+		private final ThreadSafeInvertedIndex index;
+
+		/** The number of words a buffer holds before it is merged. */
+		private final long threshold;
+
+		/** The size in bytes above which files are split into chunks. */
+		private final long chunkBytes;
+
+		/** The buffers that are not used by any task. */
+		private final ConcurrentLinkedQueue<InvertedIndex> idle;
+
+		/** The files that changed since they were indexed, with their attributes. */
+		private final ConcurrentHashMap<Path, BasicFileAttributes> changed;
+
+		/** The first error that happened while traversing or reading, if any. */
+		private volatile IOException error;
+
+		/**
+		 * Constructs an empty set of buffers.
+		 *
+		 * @param index the shared index the buffers are merged into
+		 * @param threshold the number of words a buffer holds before it is merged,
+		 *   or 0 to merge every file as soon as it is read
+		 * @param chunkBytes the size in bytes above which files are split into
+		 *   chunks
+		 */
+		private Buffers(ThreadSafeInvertedIndex index, long threshold, long chunkBytes) {
+			this.index = index;
+			this.threshold = threshold;
+			this.chunkBytes = chunkBytes;
+			this.idle = new ConcurrentLinkedQueue<>();
+			this.changed = new ConcurrentHashMap<>();
+			this.error = null;
+		}
+
+		/**
+		 * Records an error that happened in a task while traversing a subdirectory
+		 * or reading a file, keeping only the first one.
+		 *
+		 * @param e the error
+		 */
+		private synchronized void fail(IOException e) {
+			if (error == null) {
+				error = e;
+			}
+		}
+
+		/**
+		 * Takes a buffer that no other task is using.
+		 *
+		 * @return an idle buffer, or a new one if none are idle
+		 */
+		private InvertedIndex take() {
+			InvertedIndex buffer = idle.poll();
+			return buffer != null ? buffer : new InvertedIndex();
+		}
+
+		/**
+		 * Gives back a buffer once a task is done with it, merging it into the shared
+		 * index if it holds enough words.
+		 *
+		 * @param buffer the buffer to give back
+		 */
+		private void release(InvertedIndex buffer) {
+			if (buffer.getTotalWords() >= threshold) {
+				index.addAll(buffer);
+			}
+			else {
+				idle.add(buffer);
+			}
+		}
+
+		/**
+		 * Merges every idle buffer into the shared index. Should only be called once
+		 * no task is running.
+		 */
+		private void flush() {
+			InvertedIndex buffer;
+			while ((buffer = idle.poll()) != null) {
+				index.addAll(buffer);
+			}
+		}
+	}
+
+	/**
+	 * A large file that is read in several chunks at once. Each chunk is read into
+	 * its own index starting from position 1. Chunks are merged into the shared
+	 * index strictly in order, as soon as every chunk before them has been merged,
+	 * so that the number of words before each chunk is known. Only one thread
+	 * merges at a time, and the file is stamped once every chunk is merged and the
+	 * checksum of the whole file is known.
+	 */
+	private static class ChunkedFile {
+		/** The path of the file. */
+		private final Path path;
+
+		/** The location of the document in the index. */
+		private final String location;
+
+		/** The attributes of the file, read before any chunk. */
+		private final BasicFileAttributes attributes;
+
+		/** The offset of the start of each chunk followed by the size of the file. */
+		private final long[] bounds;
+
+		/** The shared index the chunks are merged into. */
+		private final ThreadSafeInvertedIndex index;
+
+		/** The buffers that record any error reading the file. */
+		private final Buffers buffers;
+
+		/** The chunks that have been read but not merged yet. */
+		private final InvertedIndex[] chunks;
+
+		/** The number of words in each chunk that has been read. */
+		private final int[] words;
+
+		/** The next chunk to merge. */
+		private int next;
+
+		/** The number of words in the chunks merged so far. */
+		private int offset;
+
+		/** Whether a thread is currently merging chunks. */
+		private boolean merging;
+
+		/** The checksum of the file contents, or {@code null} until it is known. */
+		private Long checksum;
+
+		/** Whether reading any part of the file failed. */
+		private boolean failed;
+
+		/**
+		 * Constructs a file to be read in chunks.
+		 *
+		 * @param path the path of the file
+		 * @param attributes the attributes of the file
+		 * @param bounds the offset of the start of each chunk followed by the size
+		 *   of the file
+		 * @param buffers the buffers holding the shared index the chunks are merged
+		 *   into, which record any error reading the file
+		 */
+		private ChunkedFile(Path path, BasicFileAttributes attributes, long[] bounds, Buffers buffers) {
+			this.path = path;
+			this.location = path.toString();
+			this.attributes = attributes;
+			this.bounds = bounds;
+			this.index = buffers.index;
+			this.buffers = buffers;
+			this.chunks = new InvertedIndex[bounds.length - 1];
+			this.words = new int[bounds.length - 1];
+			this.next = 0;
+			this.offset = 0;
+			this.merging = false;
+			this.checksum = null;
+			this.failed = false;
+		}
+
+		/**
+		 * Reads one chunk of the file and merges every chunk that is ready. Errors
+		 * are recorded in the buffers so that they can be reported once every task
+		 * is done.
+		 *
+		 * @param chunk the index of the chunk to read
+		 */
+		private void readChunk(int chunk) {
+			InvertedIndex local = new InvertedIndex();
+
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				ByteBuffer buffer = ByteBuffer.allocate((int) (bounds[chunk + 1] - bounds[chunk]));
+
+				while (buffer.hasRemaining() && channel.read(buffer, bounds[chunk] + buffer.position()) >= 0) {
+					// keep reading until the chunk is full or the file ends early
+				}
+
+				int count = FileProcessor.readWords(new LineReader(buffer.flip()), location, local);
+
+				synchronized (this) {
+					chunks[chunk] = local;
+					words[chunk] = count;
+				}
+			}
+			catch (IOException e) {
+				buffers.fail(e);
+				fail();
+				throw new UncheckedIOException(e);
+			}
+
+			merge();
+		}
+
+		/**
+		 * Computes the checksum of the whole file, and stamps the file if every chunk
+		 * has already been merged. Errors are recorded in the buffers so that they
+		 * can be reported once every task is done.
+		 */
+		private void readChecksum() {
+			try {
+				long hash = FileStamp.hash(path);
+
+				synchronized (this) {
+					checksum = hash;
+				}
+			}
+			catch (IOException e) {
+				buffers.fail(e);
+				fail();
+				throw new UncheckedIOException(e);
+			}
+
+			merge();
 		}
 
-		queue.finish();
+		/**
+		 * Marks the file as failed, so that whatever was merged is removed.
+		 */
+		private void fail() {
+			synchronized (this) {
+				failed = true;
+			}
+
+			merge();
+		}
+
+		/**
+		 * Merges every chunk whose previous chunks have all been merged, unless
+		 * another thread is already merging, and stamps the file once it is
+		 * complete. If reading failed, the document is removed from the index
+		 * instead.
+		 */
+		private void merge() {
+			synchronized (this) {
+				if (merging) {
+					return;
+				}
+				merging = true;
+			}
+
+			while (true) {
+				InvertedIndex chunk;
+				int shift;
+
+				synchronized (this) {
+					if (failed) {
+						// remove whatever was merged, but only once
+						if (next >= 0) {
+							next = -1;
+							index.removeDocument(location);
+						}
+						merging = false;
+						return;
+					}
+
+					if (next == chunks.length) {
+						if (checksum != null) {
+							next++;
+							index.setStamp(location, new FileStamp(attributes, checksum));
+						}
+						merging = false;
+						return;
+					}
+
+					if (next > chunks.length || chunks[next] == null) {
+						merging = false;
+						return;
+					}
+
+					chunk = chunks[next];
+					chunks[next] = null;
+					shift = offset;
+					offset += words[next];
+					next++;
+				}
+
+				index.addAll(chunk, shift);
+			}
+		}
 	}
 
 	/**
 	 * A task representing the processing of a single file. When executed, it
 	 * processes the contents of the file using a non-thread-safe InvertedIndex
-	 * object, then adds the processed data to the thread-safe inverted index
-	 * provided.
+	 * buffer, which is later added to the thread-safe inverted index.
 	 */
 	private static class Task implements Runnable {
 		/**
@@ -71,42 +640,49 @@ public class QueuedFileProcessor {
 		private final Path path;
 
 		/**
-		 * The non-thread-safe inverted index used to process the contents of the file.
+		 * The attributes of the file, read while traversing its directory.
 		 */
-		private final InvertedIndex index;
+		private final BasicFileAttributes attributes;
 
 		/**
-		 * The thread-safe inverted index where the processed data will be added.
+		 * The buffers the contents of the file are read into.
 		 */
-		private final ThreadSafeInvertedIndex threadSafeIndex;
+		private final Buffers buffers;
 
 		/**
-		 * Constructs a Task with the specified file path and thread-safe inverted
-		 * index.
+		 * Constructs a Task with the specified file path and buffers.
 		 *
 		 * @param path the path to the file to be processed
-		 * @param threadSafeIndex the thread-safe inverted index to add the processed
-		 *   data to
+		 * @param attributes the attributes of the file
+		 * @param buffers the buffers to read the file into
 		 */
-		private Task(Path path, ThreadSafeInvertedIndex threadSafeIndex) {
+		private Task(Path path, BasicFileAttributes attributes, Buffers buffers) {
 			this.path = path;
-			this.threadSafeIndex = threadSafeIndex;
-			this.index = new InvertedIndex();
+			this.attributes = attributes;
+			this.buffers = buffers;
 		}
 
 		/**
 		 * Processes the contents of the file using a non-thread-safe InvertedIndex
-		 * object, then adds the processed data to the thread-safe inverted index.
+		 * buffer. If the file cannot be read, whatever was read from it is removed
+		 * from the buffer again, and the error is recorded in the buffers so that
+		 * it can be reported once every task is done.
 		 */
 		@Override
 		public void run() {
+			InvertedIndex buffer = buffers.take();
+
 			try {
-				FileProcessor.readFile(path, index);
-				threadSafeIndex.addAll(index);
+				FileProcessor.readFile(path, attributes, buffer, UTF_8);
 			}
 			catch (IOException e) {
+				buffer.removeDocument(path.toString());
+				buffers.fail(e);
 				throw new UncheckedIOException(e);
 			}
+			finally {
+				buffers.release(buffer);
+			}
 		}
 	}
 }
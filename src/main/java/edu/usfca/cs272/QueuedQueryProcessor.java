@@ -1,24 +1,32 @@
 package edu.usfca.cs272;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 import edu.usfca.cs272.InvertedIndex.IndexSearcher;
-import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM;
 
 /**
  * A class responsible for processing queries using a work queue and managing
  * search results.
  */
 public class QueuedQueryProcessor implements QueryProcessorInterface {
+	/**
+	 * The number of query lines submitted to the work queue before waiting for
+	 * them to finish, which bounds the number of pending tasks.
+	 */
+	public static final int BATCH_SIZE = 1024;
 
 	/**
 	 * The thread-safe inverted index used for query processing and search result
@@ -32,6 +40,27 @@ public class QueuedQueryProcessor implements QueryProcessorInterface {
 	 */
 	private final boolean isPartial;
 
+	/**
+	 * The maximum number of results kept for each query.
+	 */
+	private final int limit;
+
+	/**
+	 * The scorer used to rank the results of each query.
+	 */
+	private final Scorer scorer;
+
+	/**
+	 * The parser used to turn each line into a query.
+	 */
+	private final QueryParser parser;
+
+	/**
+	 * The cache of search results shared across processors, or {@code null} if
+	 * results are not cached.
+	 */
+	private final QueryCache cache;
+
 	/**
 	 * The work queue used for processing tasks asynchronously.
 	 */
@@ -39,9 +68,11 @@ public class QueuedQueryProcessor implements QueryProcessorInterface {
 
 	/**
 	 * The map storing search results, where keys represent query strings and values
-	 * represent lists of searchers.
+	 * represent lists of searchers. Each query is claimed with a future before it
+	 * is searched, so that workers never search the same query twice; the keys are
+	 * only sorted when they are viewed or written.
 	 */
-	private final TreeMap<String, ArrayList<ThreadSafeInvertedIndex.IndexSearcher>> searchResult;
+	private final ConcurrentHashMap<String, CompletableFuture<ArrayList<IndexSearcher>>> searchResult;
 
 	/**
 	 * Constructs a QueuedQueryProcessor with the specified thread-safe inverted
@@ -55,17 +86,176 @@ public class QueuedQueryProcessor implements QueryProcessorInterface {
 	 * 
 	 */
 	public QueuedQueryProcessor(ThreadSafeInvertedIndex index, boolean isPartial, WorkQueue queue) {
+		this(index, isPartial, Integer.MAX_VALUE, queue);
+	}
+
+	/**
+	 * Constructs a QueuedQueryProcessor that keeps at most the given number of
+	 * results for each query.
+	 *
+	 * @param index the thread-safe inverted index to be used for query processing
+	 *   and search result management
+	 * @param isPartial a boolean indicating whether to use partial search (true) or
+	 *   exact search (false)
+	 * @param limit the maximum number of results kept for each query
+	 * @param queue the work queue for processing tasks asynchronously
+	 */
+	public QueuedQueryProcessor(ThreadSafeInvertedIndex index, boolean isPartial, int limit, WorkQueue queue) {
+		this(index, isPartial, limit, Scorer.COUNT, queue);
+	}
+
+	/**
+	 * Constructs a QueuedQueryProcessor that ranks results with the given scorer
+	 * and keeps at most the given number of results for each query.
+	 *
+	 * @param index the thread-safe inverted index to be used for query processing
+	 *   and search result management
+	 * @param isPartial a boolean indicating whether to use partial search (true) or
+	 *   exact search (false)
+	 * @param limit the maximum number of results kept for each query
+	 * @param scorer the scorer used to rank the results of each query
+	 * @param queue the work queue for processing tasks asynchronously
+	 */
+	public QueuedQueryProcessor(ThreadSafeInvertedIndex index, boolean isPartial, int limit, Scorer scorer,
+			WorkQueue queue) {
+		this(index, isPartial, limit, scorer, new QueryParser(), queue);
+	}
+
+	/**
+	 * Constructs a QueuedQueryProcessor that parses each line with the given
+	 * parser, ranks results with the given scorer, and keeps at most the given
+	 * number of results for each query.
+	 *
+	 * @param index the thread-safe inverted index to be used for query processing
+	 *   and search result management
+	 * @param isPartial a boolean indicating whether to use partial search (true) or
+	 *   exact search (false)
+	 * @param limit the maximum number of results kept for each query
+	 * @param scorer the scorer used to rank the results of each query
+	 * @param parser the parser used to turn each line into a query
+	 * @param queue the work queue for processing tasks asynchronously
+	 */
+	public QueuedQueryProcessor(ThreadSafeInvertedIndex index, boolean isPartial, int limit, Scorer scorer,
+			QueryParser parser, WorkQueue queue) {
+		this(index, isPartial, limit, scorer, parser, null, queue);
+	}
+
+	/**
+	 * Constructs a QueuedQueryProcessor that looks up the results of each query in
+	 * the given cache before searching the index.
+	 *
+	 * @param index the thread-safe inverted index to be used for query processing
+	 *   and search result management
+	 * @param isPartial a boolean indicating whether to use partial search (true) or
+	 *   exact search (false)
+	 * @param limit the maximum number of results kept for each query
+	 * @param scorer the scorer used to rank the results of each query
+	 * @param parser the parser used to turn each line into a query
+	 * @param cache the cache of search results, or {@code null} to disable caching
+	 * @param queue the work queue for processing tasks asynchronously
+	 *
+	 * @see QueryCache
+	 */
+	public QueuedQueryProcessor(ThreadSafeInvertedIndex index, boolean isPartial, int limit, Scorer scorer,
+			QueryParser parser, QueryCache cache, WorkQueue queue) {
 		this.index = index;
 		this.isPartial = isPartial;
+		this.limit = limit;
+		this.scorer = scorer;
+		this.parser = parser;
+		this.cache = cache;
 		this.queue = queue;
-		this.searchResult = new TreeMap<>();
+		this.searchResult = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Reads queries from a file and processes them in parallel, waiting once for
+	 * every batch of lines instead of after every line.
+	 *
+	 * @param path the path to the file containing queries
+	 * @throws IOException if an I/O error occurs while reading the query file
+	 *
+	 * @see #BATCH_SIZE
+	 */
+	@Override
+	public void processQueries(Path path) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(path)) {
+			submit(reader, null, BATCH_SIZE);
+		}
+	}
+
+	/**
+	 * Reads queries from a file and processes them in parallel, streaming their
+	 * results to a JSON file. Waits once for every window of lines, so at most one
+	 * window of results is being searched at a time. Streamed queries are recorded
+	 * as processed so they are never searched twice, but their results are not
+	 * kept by this processor.
+	 *
+	 * @param path the path to the file containing queries
+	 * @param output the path to the output JSON file
+	 * @param window the number of query results held in memory at once
+	 * @throws IOException if an I/O error occurs while reading the query file or
+	 *   writing the results
+	 */
+	@Override
+	public void processQueries(Path path, Path output, int window) throws IOException {
+		try (SearchResultStream stream = new SearchResultStream(output, window);
+				BufferedReader reader = Files.newBufferedReader(path)) {
+			submit(reader, stream, Math.max(1, window));
+		}
+	}
+
+	/**
+	 * Processes a batch of query lines in parallel, waiting once for all of them
+	 * to finish.
+	 *
+	 * @param lines the query lines to process
+	 */
+	public void processQueries(Collection<String> lines) {
+		try {
+			for (String line : lines) {
+				queue.execute(new Task(line, isPartial));
+			}
+		}
+		finally {
+			queue.finish();
+		}
+	}
+
+	/**
+	 * Submits every line of a reader to the work queue, waiting for the submitted
+	 * tasks to finish after every batch and at the end.
+	 *
+	 * @param reader the reader of the query file
+	 * @param stream the stream the results are added to, or {@code null} to keep
+	 *   the results in this processor
+	 * @param batchSize the number of lines submitted before waiting
+	 * @throws IOException if an I/O error occurs while reading the query file
+	 */
+	private void submit(BufferedReader reader, SearchResultStream stream, int batchSize) throws IOException {
+		try {
+			String line;
+			int submitted = 0;
+
+			while ((line = reader.readLine()) != null) {
+				queue.execute(new Task(line, isPartial, stream));
+
+				if (++submitted == batchSize) {
+					queue.finish();
+					submitted = 0;
+				}
+			}
+		}
+		finally {
+			queue.finish();
+		}
 	}
 
 	/**
-	 * Processes queries stored in a file specified by the input path.
+	 * Processes a single query line, waiting for it to finish. Use
+	 * {@link #processQueries(Collection)} to process several lines in parallel.
 	 *
-	 * @param line the path to the file containing query sets to be processed exact
-	 *   search (false)
+	 * @param line the query line to process
 	 */
 	@Override
 	public void processQueries(String line) {
@@ -74,53 +264,86 @@ public class QueuedQueryProcessor implements QueryProcessorInterface {
 	}
 
 	@Override
-	public int numQueryLines() {
-		synchronized (searchResult) {
-			return viewQueries().size();
+	public void processQueries(String line, SearchResultStream stream) {
+		queue.execute(new Task(line, isPartial, stream));
+		queue.finish();
+	}
+
+	/**
+	 * Searches the index for a query, using the cached results if there are any.
+	 *
+	 * @param query the parsed query
+	 * @param queryString the normalized query string
+	 * @param isPartial a boolean indicating whether to perform a partial search
+	 *   (true) or an exact search (false)
+	 * @return the results of the query
+	 */
+	private ArrayList<IndexSearcher> search(Query query, String queryString, boolean isPartial) {
+		long version = index.getVersion();
+		String key = cache != null ? QueryCache.key(queryString, isPartial, limit, scorer) : null;
+		ArrayList<IndexSearcher> results = cache != null ? cache.get(key, version) : null;
+
+		if (results == null) {
+			results = index.search(query, isPartial, limit, scorer);
+
+			if (cache != null) {
+				cache.put(key, results, version);
+			}
 		}
+
+		return results;
+	}
+
+	@Override
+	public int numQueryLines() {
+		return searchResult.size();
 	}
 
 	@Override
 	public int numResults(String query) {
-		synchronized (searchResult) {
-			return viewResults(query).size();
-		}
+		return viewResults(query).size();
 	}
 
 	@Override
 	public boolean hasQueryLine(String queryLine) {
-		String cleanedLine = getQueryString(queryLine);
-		synchronized (searchResult) {
-			return viewQueries().contains(cleanedLine);
-		}
+		return searchResult.containsKey(getQueryString(queryLine));
 	}
 
 	@Override
 	public Set<String> viewQueries() {
-		synchronized (searchResult) {
-			return Collections.unmodifiableSet(searchResult.keySet());
-		}
+		return Collections.unmodifiableSet(new TreeSet<>(searchResult.keySet()));
 	}
 
+	/**
+	 * Retrieves an unmodifiable list of search results associated with the
+	 * specified query line, waiting for the query to finish if it is still being
+	 * searched.
+	 *
+	 * @param query the query line for which to retrieve search results
+	 * @return an unmodifiable list containing IndexSearcher objects representing
+	 *   the search results for the query line, or an empty list if no search
+	 *   results exist for the query line
+	 */
 	@Override
 	public List<IndexSearcher> viewResults(String query) {
-		String queryString = getQueryString(query);
-		synchronized (searchResult) {
-			ArrayList<IndexSearcher> searchers = searchResult.get(queryString);
-			return (searchers != null) ? Collections.unmodifiableList(searchers) : Collections.emptyList();
-		}
+		CompletableFuture<ArrayList<IndexSearcher>> searchers = searchResult.get(getQueryString(query));
+		return (searchers != null) ? Collections.unmodifiableList(searchers.join()) : Collections.emptyList();
 	}
 
 	@Override
 	public String getQueryString(String query) {
-		return String.join(" ", FileStemmer.uniqueStems(query));
+		return parser.parse(query, StemCache.ENGLISH).toString();
 	}
 
 	@Override
 	public void writeSearchResults(Path output) throws IOException {
-		synchronized (searchResult) {
-			JsonWriter.writeSearchResults(searchResult, output);
+		TreeMap<String, ArrayList<IndexSearcher>> sorted = new TreeMap<>();
+
+		for (Map.Entry<String, CompletableFuture<ArrayList<IndexSearcher>>> entry : searchResult.entrySet()) {
+			sorted.put(entry.getKey(), entry.getValue().join());
 		}
+
+		JsonWriter.writeSearchResults(sorted, output);
 	}
 
 	/**
@@ -141,9 +364,10 @@ public class QueuedQueryProcessor implements QueryProcessorInterface {
 		private final boolean isPartial;
 
 		/**
-		 * The local stemmer used for stemming words.
+		 * The stream the results are added to, or {@code null} if the results are
+		 * kept by this processor.
 		 */
-		private final Stemmer localStemmer;
+		private final SearchResultStream stream;
 
 		/**
 		 * Constructs a Task with the specified set of query terms and partial search
@@ -154,30 +378,56 @@ public class QueuedQueryProcessor implements QueryProcessorInterface {
 		 *   (true) or an exact search (false)
 		 */
 		public Task(String line, boolean isPartial) {
+			this(line, isPartial, null);
+		}
+
+		/**
+		 * Constructs a Task that adds its results to the given stream.
+		 *
+		 * @param line the set of query terms to be processed
+		 * @param isPartial a boolean indicating whether to perform a partial search
+		 *   (true) or an exact search (false)
+		 * @param stream the stream the results are added to, or {@code null} to keep
+		 *   the results in this processor
+		 */
+		public Task(String line, boolean isPartial, SearchResultStream stream) {
 			this.line = line;
 			this.isPartial = isPartial;
-			this.localStemmer = new SnowballStemmer(ALGORITHM.ENGLISH);
-			;
+			this.stream = stream;
 		}
 
 		@Override
 		public void run() {
 
-			TreeSet<String> query = FileStemmer.uniqueStems(line, localStemmer);
-			String queryString = String.join(" ", query);
+			Query query = parser.parse(line, StemCache.ENGLISH);
+			String queryString = query.toString();
 
-			synchronized (searchResult) {
-				if (queryString.isEmpty() || searchResult.containsKey(queryString)) {
-					return;
-				}
+			if (queryString.isEmpty()) {
+				return;
 			}
 
-			ArrayList<ThreadSafeInvertedIndex.IndexSearcher> results = index.search(query, isPartial);
-
-			synchronized (searchResult) {
-				searchResult.put(queryString, results);
+			// only the worker that claims the query searches for it and publishes it
+			CompletableFuture<ArrayList<IndexSearcher>> results = new CompletableFuture<>();
+			if (searchResult.putIfAbsent(queryString, results) != null) {
+				return;
 			}
 
+			try {
+				ArrayList<IndexSearcher> found = search(query, queryString, isPartial);
+
+				if (stream != null) {
+					// streamed results are not kept, so only the claim is recorded
+					stream.add(queryString, found);
+					found = new ArrayList<>();
+				}
+
+				results.complete(found);
+			}
+			catch (RuntimeException e) {
+				searchResult.remove(queryString, results);
+				results.completeExceptionally(e);
+				throw e;
+			}
 		}
 	}
 }
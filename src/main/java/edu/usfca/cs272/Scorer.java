@@ -0,0 +1,217 @@
+package edu.usfca.cs272;
+
+/**
+ * Calculates the score of a document for a search. Scores are built up one
+ * query word at a time: the weight of each word is computed once from its
+ * document frequency, and then the score of each document containing the word
+ * is updated from the number of matches in that document.
+ *
+ * The statistics used by the scorers are kept up to date by the index, so
+ * scoring never needs to look anything up by document path.
+ *
+ * Scorers that rank results differently must have different string forms,
+ * since the string form is part of the key cached results are stored under.
+ *
+ * @see QueryCache#key(String, boolean, int, Scorer)
+ * @see InvertedIndex#search(java.util.Set, boolean, int, Scorer)
+ */
+public interface Scorer {
+	/** The default scorer, which divides the number of matches by the word count. */
+	public static final Scorer COUNT = new Count();
+
+	/**
+	 * Computes the weight of a query word.
+	 *
+	 * @param documentFrequency the number of documents containing the word
+	 * @param numDocuments the number of documents in the index
+	 * @return the weight of the word
+	 */
+	public abstract double weight(int documentFrequency, int numDocuments);
+
+	/**
+	 * Updates the score of a document with the matches of one query word.
+	 *
+	 * @param score the score of the document so far
+	 * @param count the total number of matches in the document so far, including
+	 *   the matches of this word
+	 * @param matches the number of matches of this word in the document
+	 * @param wordCount the number of words in the document
+	 * @param averageWordCount the average number of words in a document
+	 * @param weight the weight of the word
+	 * @return the updated score of the document
+	 */
+	public abstract double score(double score, int count, int matches, int wordCount, double averageWordCount,
+			double weight);
+
+	/**
+	 * Returns an upper bound on how much one query word can add to the score of a
+	 * document with at most the given number of matches and at least the given
+	 * word count. Used to skip documents that cannot reach the top results. The
+	 * default bound is infinite, which disables skipping.
+	 *
+	 * @param matches the largest number of matches of the word in the document
+	 * @param wordCount the smallest number of words in the document
+	 * @param averageWordCount the average number of words in a document
+	 * @param weight the weight of the word
+	 * @return the largest possible increase in score
+	 */
+	public default double maxScore(int matches, int wordCount, double averageWordCount, double weight) {
+		return Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Checks whether the score only depends on the total number of matches in a
+	 * document, in which case the matches of several words may be merged before
+	 * the document is scored.
+	 *
+	 * @return {@code true} if the score only depends on the total count
+	 */
+	public default boolean isCountBased() {
+		return false;
+	}
+
+	/**
+	 * Returns the scorer with the given name, ignoring case.
+	 *
+	 * @param name the name of the scorer, one of "count", "tfidf", or "bm25"
+	 * @return the scorer, or {@code null} if no scorer has that name
+	 */
+	public static Scorer forName(String name) {
+		return switch (name.toLowerCase()) {
+			case "count" -> COUNT;
+			case "tfidf", "tf-idf" -> new TfIdf();
+			case "bm25" -> new BM25();
+			default -> null;
+		};
+	}
+
+	/**
+	 * Scores a document by dividing the total number of matches by the number of
+	 * words in the document.
+	 */
+	public static class Count implements Scorer {
+		/**
+		 * Constructs a count scorer.
+		 */
+		public Count() {
+		}
+
+		@Override
+		public double weight(int documentFrequency, int numDocuments) {
+			return 1.0;
+		}
+
+		@Override
+		public double score(double score, int count, int matches, int wordCount, double averageWordCount,
+				double weight) {
+			return (double) count / wordCount;
+		}
+
+		@Override
+		public double maxScore(int matches, int wordCount, double averageWordCount, double weight) {
+			return (double) matches / wordCount;
+		}
+
+		@Override
+		public boolean isCountBased() {
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return "count";
+		}
+	}
+
+	/**
+	 * Scores a document by the sum of the term frequency of each word (matches
+	 * divided by the word count) times its inverse document frequency.
+	 */
+	public static class TfIdf implements Scorer {
+		/**
+		 * Constructs a TF-IDF scorer.
+		 */
+		public TfIdf() {
+		}
+
+		@Override
+		public double weight(int documentFrequency, int numDocuments) {
+			return Math.log(1.0 + (double) numDocuments / documentFrequency);
+		}
+
+		@Override
+		public double score(double score, int count, int matches, int wordCount, double averageWordCount,
+				double weight) {
+			return score + weight * matches / wordCount;
+		}
+
+		@Override
+		public double maxScore(int matches, int wordCount, double averageWordCount, double weight) {
+			return score(0.0, matches, matches, wordCount, averageWordCount, weight);
+		}
+
+		@Override
+		public String toString() {
+			return "tfidf";
+		}
+	}
+
+	/**
+	 * Scores a document using Okapi BM25, which saturates the contribution of
+	 * repeated matches and normalizes by the document length relative to the
+	 * average document length.
+	 */
+	public static class BM25 implements Scorer {
+		/** The default term frequency saturation parameter. */
+		public static final double DEFAULT_K1 = 1.2;
+
+		/** The default length normalization parameter. */
+		public static final double DEFAULT_B = 0.75;
+
+		/** The term frequency saturation parameter. */
+		private final double k1;
+
+		/** The length normalization parameter. */
+		private final double b;
+
+		/**
+		 * Constructs a BM25 scorer with the default parameters.
+		 */
+		public BM25() {
+			this(DEFAULT_K1, DEFAULT_B);
+		}
+
+		/**
+		 * Constructs a BM25 scorer with the given parameters.
+		 *
+		 * @param k1 the term frequency saturation parameter
+		 * @param b the length normalization parameter, between 0 and 1
+		 */
+		public BM25(double k1, double b) {
+			this.k1 = k1;
+			this.b = b;
+		}
+
+		@Override
+		public double weight(int documentFrequency, int numDocuments) {
+			return Math.log(1.0 + (numDocuments - documentFrequency + 0.5) / (documentFrequency + 0.5));
+		}
+
+		@Override
+		public double score(double score, int count, int matches, int wordCount, double averageWordCount,
+				double weight) {
+			double norm = k1 * (1.0 - b + b * wordCount / averageWordCount);
+			return score + weight * matches * (k1 + 1.0) / (matches + norm);
+		}
+
+		@Override
+		public double maxScore(int matches, int wordCount, double averageWordCount, double weight) {
+			return score(0.0, matches, matches, wordCount, averageWordCount, weight);
+		}
+
+		@Override
+		public String toString() {
+			return "bm25(" + k1 + ", " + b + ")";
+		}
+	}
+}
@@ -0,0 +1,468 @@
+package edu.usfca.cs272;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import edu.usfca.cs272.InvertedIndex.IndexSearcher;
+
+/**
+ * Writes search results to a JSON file without keeping every result in memory.
+ * The results of each query are rendered as soon as they are added, and only a
+ * bounded window of rendered results is kept in sorted order. Whenever the
+ * window fills up, it is written to a temporary run file. Closing the stream
+ * merges the runs into the output, so the file is identical to the one written
+ * by {@link JsonWriter#writeSearchResults(Map, Path)}.
+ *
+ * If the same query is added more than once, only its first results are kept.
+ * The queries already written to a run are remembered by their keys alone, so
+ * they are never written or searched again. Runs are merged at most
+ * {@link #MAX_FAN_IN} at a time, in several passes if there are more, so the
+ * number of open files stays bounded. Adding results is synchronized, so one
+ * stream may be shared by several threads.
+ */
+public class SearchResultStream implements Closeable {
+	/** The default number of queries kept in memory before a run is written. */
+	public static final int DEFAULT_WINDOW = 4096;
+
+	/** The maximum number of runs merged at once. */
+	public static final int MAX_FAN_IN = 64;
+
+	/** The path of the output file. */
+	private final Path output;
+
+	/** The number of queries kept in memory before a run is written. */
+	private final int window;
+
+	/** The rendered results of each query that has not been written to a run. */
+	private final TreeMap<String, String> pending;
+
+	/** The queries whose results have been written to a run. */
+	private final HashSet<String> written;
+
+	/** The temporary run files written so far. */
+	private final ArrayList<Path> runs;
+
+	/** The first error that happened while writing a run, if any. */
+	private IOException error;
+
+	/** Whether the stream has been closed. */
+	private boolean closed;
+
+	/**
+	 * Constructs a stream with the default window.
+	 *
+	 * @param output the path of the output file
+	 *
+	 * @see #DEFAULT_WINDOW
+	 */
+	public SearchResultStream(Path output) {
+		this(output, DEFAULT_WINDOW);
+	}
+
+	/**
+	 * Constructs a stream.
+	 *
+	 * @param output the path of the output file
+	 * @param window the number of queries kept in memory before a run is written
+	 */
+	public SearchResultStream(Path output, int window) {
+		this.output = output;
+		this.window = Math.max(1, window);
+		this.pending = new TreeMap<>();
+		this.written = new HashSet<>();
+		this.runs = new ArrayList<>();
+		this.error = null;
+		this.closed = false;
+	}
+
+	/**
+	 * Checks whether the results of a query were already added, whether they are
+	 * still held in memory or were written to a run, in which case searching for
+	 * the query again can be skipped.
+	 *
+	 * @param query the normalized query string
+	 * @return {@code true} if the results of the query were added
+	 */
+	public synchronized boolean contains(String query) {
+		return pending.containsKey(query) || written.contains(query);
+	}
+
+	/**
+	 * Adds the results of a query, writing a run once the window is full. Errors
+	 * writing the run are reported when the stream is closed.
+	 *
+	 * @param query the normalized query string
+	 * @param results the results of the query
+	 * @throws IllegalStateException if the stream has been closed
+	 */
+	public void add(String query, Collection<IndexSearcher> results) {
+		String rendered = render(results);
+
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("Cannot add results to a closed stream.");
+			}
+
+			if (!written.contains(query)) {
+				pending.putIfAbsent(query, rendered);
+			}
+
+			if (pending.size() >= window && error == null) {
+				try {
+					spill();
+				}
+				catch (IOException e) {
+					error = e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the output file by merging the runs with the results still in memory,
+	 * and deletes the runs.
+	 *
+	 * @throws IOException if an error happened while writing a run or the output
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+
+		try {
+			if (error != null) {
+				throw error;
+			}
+
+			try (BufferedWriter writer = Files.newBufferedWriter(output, UTF_8)) {
+				if (runs.isEmpty()) {
+					write(pending, writer);
+				}
+				else {
+					spill();
+					merge(writer);
+				}
+			}
+		}
+		finally {
+			pending.clear();
+			written.clear();
+
+			for (Path run : runs) {
+				Files.deleteIfExists(run);
+			}
+		}
+	}
+
+	/**
+	 * Writes the results held in memory to a new run file and clears them.
+	 *
+	 * @throws IOException if an IO error occurs
+	 */
+	private void spill() throws IOException {
+		Path run = Files.createTempFile("results", ".run");
+		runs.add(run);
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+			out.writeInt(pending.size());
+
+			for (var entry : pending.entrySet()) {
+				writeString(entry.getKey(), out);
+				writeString(entry.getValue(), out);
+			}
+		}
+
+		written.addAll(pending.keySet());
+		pending.clear();
+	}
+
+	/**
+	 * Merges the sorted runs into the output. If there are too many runs to open
+	 * at once, groups of runs are first merged into larger runs until few enough
+	 * are left.
+	 *
+	 * @param writer the writer of the output file
+	 * @throws IOException if an IO error occurs
+	 */
+	private void merge(Writer writer) throws IOException {
+		while (runs.size() > MAX_FAN_IN) {
+			ArrayList<Path> inputs = new ArrayList<>(runs);
+
+			for (int i = 0; i < inputs.size(); i += MAX_FAN_IN) {
+				List<Path> group = inputs.subList(i, Math.min(i + MAX_FAN_IN, inputs.size()));
+				Path run = Files.createTempFile("results", ".run");
+				runs.add(run);
+
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+					merge(group, new EntryConsumer() {
+						@Override
+						public void start(int size) throws IOException {
+							out.writeInt(size);
+						}
+
+						@Override
+						public void accept(String query, String results) throws IOException {
+							writeString(query, out);
+							writeString(results, out);
+						}
+					});
+				}
+
+				for (Path merged : group) {
+					Files.delete(merged);
+				}
+				runs.removeAll(group);
+			}
+		}
+
+		writer.write("{");
+		boolean[] first = { true };
+
+		merge(runs, (query, results) -> {
+			writer.write(first[0] ? System.lineSeparator() : "," + System.lineSeparator());
+			writeEntry(query, results, writer);
+			first[0] = false;
+		});
+
+		writer.write(System.lineSeparator());
+		writer.write("}");
+	}
+
+	/**
+	 * Merges sorted runs, keeping only the first results of every query.
+	 *
+	 * @param paths the run files to merge, in the order they were written
+	 * @param merged receives the number of entries and then every merged entry in
+	 *   sorted order
+	 * @throws IOException if an IO error occurs
+	 */
+	private static void merge(List<Path> paths, EntryConsumer merged) throws IOException {
+		ArrayList<Run> readers = new ArrayList<>();
+		PriorityQueue<Run> heap = new PriorityQueue<>();
+
+		try {
+			int total = 0;
+
+			for (int i = 0; i < paths.size(); i++) {
+				Run run = new Run(paths.get(i), i);
+				readers.add(run);
+				total += run.remaining;
+
+				if (run.next()) {
+					heap.add(run);
+				}
+			}
+
+			// runs never share queries, since written queries are not added again
+			merged.start(total);
+			String last = null;
+
+			while (!heap.isEmpty()) {
+				Run run = heap.poll();
+
+				if (!run.query.equals(last)) {
+					merged.accept(run.query, run.results);
+					last = run.query;
+				}
+
+				if (run.next()) {
+					heap.add(run);
+				}
+			}
+		}
+		finally {
+			for (Run run : readers) {
+				run.in.close();
+			}
+		}
+	}
+
+	/**
+	 * Writes rendered results as a JSON object.
+	 *
+	 * @param results the rendered results of each query in sorted order
+	 * @param writer the writer to use
+	 * @throws IOException if an IO error occurs
+	 */
+	private static void write(Map<String, String> results, Writer writer) throws IOException {
+		writer.write("{");
+		var iterator = results.entrySet().iterator();
+
+		if (iterator.hasNext()) {
+			writer.write(System.lineSeparator());
+			var first = iterator.next();
+			writeEntry(first.getKey(), first.getValue(), writer);
+
+			while (iterator.hasNext()) {
+				writer.write(",");
+				writer.write(System.lineSeparator());
+				var entry = iterator.next();
+				writeEntry(entry.getKey(), entry.getValue(), writer);
+			}
+		}
+
+		writer.write(System.lineSeparator());
+		writer.write("}");
+	}
+
+	/**
+	 * Writes the rendered results of one query as a member of the output object.
+	 *
+	 * @param query the normalized query string
+	 * @param rendered the rendered results of the query
+	 * @param writer the writer to use
+	 * @throws IOException if an IO error occurs
+	 */
+	private static void writeEntry(String query, String rendered, Writer writer) throws IOException {
+		JsonWriter.writeIndent('"' + JsonWriter.escape(query) + "\": ", writer, 1);
+		writer.write(rendered);
+	}
+
+	/**
+	 * Renders search results as they appear in the output object.
+	 *
+	 * @param results the results of a query
+	 * @return the results as a JSON array
+	 */
+	private static String render(Collection<IndexSearcher> results) {
+		try {
+			StringWriter writer = new StringWriter();
+			JsonWriter.writeSearcherArray(results, writer, 1);
+			return writer.toString();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Writes a string of any length as its length in bytes followed by its UTF-8
+	 * bytes.
+	 *
+	 * @param text the string to write
+	 * @param out the stream to write to
+	 * @throws IOException if an IO error occurs
+	 */
+	private static void writeString(String text, DataOutputStream out) throws IOException {
+		byte[] bytes = text.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a string written by {@link #writeString(String, DataOutputStream)}.
+	 *
+	 * @param in the stream to read from
+	 * @return the string
+	 * @throws IOException if an IO error occurs
+	 */
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	/**
+	 * Receives the entries of a merge.
+	 */
+	@FunctionalInterface
+	private static interface EntryConsumer {
+		/**
+		 * Receives the number of entries before any entry is merged. Does nothing by
+		 * default.
+		 *
+		 * @param size the number of entries
+		 * @throws IOException if an IO error occurs
+		 */
+		public default void start(int size) throws IOException {
+		}
+
+		/**
+		 * Receives one entry.
+		 *
+		 * @param query the normalized query string
+		 * @param results the rendered results of the query
+		 * @throws IOException if an IO error occurs
+		 */
+		public abstract void accept(String query, String results) throws IOException;
+	}
+
+	/**
+	 * Reads the entries of one run file in order. Runs are ordered by their current
+	 * query, and then by the order they were written so that the first results of
+	 * a query win.
+	 */
+	private static class Run implements Comparable<Run> {
+		/** The stream of the run file. */
+		private final DataInputStream in;
+
+		/** The order the run was written in. */
+		private final int order;
+
+		/** The number of entries left to read. */
+		private int remaining;
+
+		/** The query of the current entry. */
+		private String query;
+
+		/** The rendered results of the current entry. */
+		private String results;
+
+		/**
+		 * Opens a run file.
+		 *
+		 * @param path the path of the run file
+		 * @param order the order the run was written in
+		 * @throws IOException if an IO error occurs
+		 */
+		private Run(Path path, int order) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+			this.order = order;
+			this.remaining = in.readInt();
+		}
+
+		/**
+		 * Reads the next entry.
+		 *
+		 * @return {@code true} if there was another entry
+		 * @throws IOException if an IO error occurs
+		 */
+		private boolean next() throws IOException {
+			if (remaining == 0) {
+				return false;
+			}
+
+			remaining--;
+			query = readString(in);
+			results = readString(in);
+			return true;
+		}
+
+		@Override
+		public int compareTo(Run other) {
+			int compare = query.compareTo(other.query);
+			return compare != 0 ? compare : Integer.compare(order, other.order);
+		}
+	}
+}
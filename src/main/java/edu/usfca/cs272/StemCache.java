@@ -0,0 +1,175 @@
+package edu.usfca.cs272;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import opennlp.tools.stemmer.Stemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM;
+
+/**
+ * A bounded cache of stems in front of a stemmer. Text repeats the same words
+ * over and over, so most words are found in the cache instead of being stemmed
+ * again, and the cached stems are interned so the index shares one copy of each.
+ *
+ * The cache is a fixed table where each word has a single slot chosen by its
+ * hash, and a new word simply replaces whatever was in its slot. Slots hold
+ * immutable entries, so lookups are thread-safe without locking and do not
+ * allocate. Words that are not cached are stemmed by a stemmer of the calling
+ * thread, since stemmers are not thread-safe.
+ */
+public class StemCache implements Stemmer {
+	/** The default number of slots in the table. */
+	public static final int DEFAULT_SIZE = 1 << 16;
+
+	/** The shared cache of stems for English. */
+	public static final StemCache ENGLISH = new StemCache(() -> new SnowballStemmer(ALGORITHM.ENGLISH));
+
+	/** The cached entries, indexed by the hash of the word. */
+	private final Entry[] entries;
+
+	/** The stemmer of each thread, used for words that are not cached. */
+	private final ThreadLocal<Stemmer> stemmers;
+
+	/** The number of words found in the cache. */
+	private final LongAdder hits;
+
+	/** The number of words not found in the cache. */
+	private final LongAdder misses;
+
+	/**
+	 * Constructs a cache with the default size.
+	 *
+	 * @param factory creates the stemmer of each thread
+	 *
+	 * @see #DEFAULT_SIZE
+	 */
+	public StemCache(Supplier<Stemmer> factory) {
+		this(factory, DEFAULT_SIZE);
+	}
+
+	/**
+	 * Constructs a cache.
+	 *
+	 * @param factory creates the stemmer of each thread
+	 * @param size the number of slots in the table, rounded up to a power of two
+	 */
+	public StemCache(Supplier<Stemmer> factory, int size) {
+		int capacity = Integer.highestOneBit(Math.max(1, Math.min(size, 1 << 30)) * 2 - 1);
+		this.entries = new Entry[capacity];
+		this.stemmers = ThreadLocal.withInitial(factory);
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+	}
+
+	/**
+	 * Returns the stem of a word, stemming it only if it is not cached.
+	 *
+	 * @param word the word to stem
+	 * @return the interned stem of the word
+	 */
+	@Override
+	public String stem(CharSequence word) {
+		int hash = hash(word);
+		int slot = hash & (entries.length - 1);
+		Entry entry = entries[slot];
+
+		if (entry != null && entry.hash == hash && entry.word.contentEquals(word)) {
+			hits.increment();
+			return entry.stem;
+		}
+
+		misses.increment();
+		String stem = stemmers.get().stem(word).toString().intern();
+		entries[slot] = new Entry(word.toString(), hash, stem);
+		return stem;
+	}
+
+	/**
+	 * Removes every cached stem. The statistics are kept.
+	 */
+	public void clear() {
+		Arrays.fill(entries, null);
+	}
+
+	/**
+	 * Returns the number of words found in the cache.
+	 *
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of words not found in the cache.
+	 *
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the fraction of words found in the cache.
+	 *
+	 * @return the hit rate, or 0 if no words have been stemmed
+	 */
+	public double hitRate() {
+		long hits = getHits();
+		long lookups = hits + getMisses();
+		return lookups > 0 ? (double) hits / lookups : 0.0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d slots, %d hits, %d misses, %.1f%% hit rate", entries.length, getHits(), getMisses(),
+				hitRate() * 100);
+	}
+
+	/**
+	 * Computes the same hash as {@link String#hashCode()} for any characters,
+	 * spread so that the low bits used to pick a slot depend on every character.
+	 *
+	 * @param word the word to hash
+	 * @return the hash of the word
+	 */
+	private static int hash(CharSequence word) {
+		int hash = 0;
+
+		for (int i = 0; i < word.length(); i++) {
+			hash = 31 * hash + word.charAt(i);
+		}
+
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * A cached word and its stem. Entries are immutable, so they can be read by
+	 * other threads without locking.
+	 */
+	private static class Entry {
+		/** The word. */
+		private final String word;
+
+		/** The hash of the word. */
+		private final int hash;
+
+		/** The stem of the word. */
+		private final String stem;
+
+		/**
+		 * Constructs a cache entry.
+		 *
+		 * @param word the word
+		 * @param hash the hash of the word
+		 * @param stem the stem of the word
+		 */
+		private Entry(String word, int hash, String stem) {
+			this.word = word;
+			this.hash = hash;
+			this.stem = stem;
+		}
+	}
+}
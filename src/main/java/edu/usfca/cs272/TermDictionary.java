@@ -0,0 +1,310 @@
+package edu.usfca.cs272;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * A read-only dictionary of the words in a frozen inverted index, used to speed
+ * up partial (prefix) searches. The words are stored in a sorted array, so the
+ * range of words that start with a prefix is found with two binary searches
+ * instead of walking the index map and checking every key.
+ *
+ * The merged postings of short prefixes that expand to many words are cached,
+ * so that repeated searches for common prefixes do not merge the same postings
+ * again.
+ */
+public class TermDictionary {
+	/** The default number of merged prefixes that are cached. */
+	public static final int DEFAULT_CACHE_SIZE = 256;
+
+	/** The minimum number of words a prefix must expand to before it is cached. */
+	public static final int MIN_CACHED_TERMS = 16;
+
+	/** The words of the index in sorted order. */
+	private final String[] terms;
+
+	/** The postings of each word, parallel to terms. */
+	private final PostingList[] postings;
+
+	/** The number of document ids in the index. */
+	private final int numDocuments;
+
+	/** The most recently used merged prefixes, in access order. */
+	private final LinkedHashMap<String, PrefixPostings> cache;
+
+	/**
+	 * Constructs a dictionary of the given postings with the default cache size.
+	 *
+	 * @param index the postings of each word in sorted order
+	 * @param numDocuments the number of document ids in the index
+	 *
+	 * @see #DEFAULT_CACHE_SIZE
+	 */
+	public TermDictionary(SortedMap<String, PostingList> index, int numDocuments) {
+		this(index, numDocuments, DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Constructs a dictionary of the given postings.
+	 *
+	 * @param index the postings of each word in sorted order
+	 * @param numDocuments the number of document ids in the index
+	 * @param cacheSize the maximum number of merged prefixes to cache, or 0 to
+	 *   disable caching
+	 */
+	public TermDictionary(SortedMap<String, PostingList> index, int numDocuments, int cacheSize) {
+		this.terms = new String[index.size()];
+		this.postings = new PostingList[index.size()];
+		this.numDocuments = numDocuments;
+
+		int i = 0;
+		for (var entry : index.entrySet()) {
+			terms[i] = entry.getKey();
+			postings[i] = entry.getValue();
+			i++;
+		}
+
+		this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PrefixPostings> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	/**
+	 * Returns the number of words in this dictionary.
+	 *
+	 * @return the number of words
+	 */
+	public int size() {
+		return terms.length;
+	}
+
+	/**
+	 * Returns the word at the given index.
+	 *
+	 * @param index the index of the word
+	 * @return the word
+	 */
+	public String term(int index) {
+		return terms[index];
+	}
+
+	/**
+	 * Returns the postings of the word at the given index.
+	 *
+	 * @param index the index of the word
+	 * @return the postings of the word
+	 */
+	public PostingList postings(int index) {
+		return postings[index];
+	}
+
+	/**
+	 * Returns the index of the first word that starts with the given prefix, or
+	 * where such a word would be inserted.
+	 *
+	 * @param prefix the prefix to search for
+	 * @return the index of the first word in the prefix range
+	 */
+	public int from(String prefix) {
+		return lowerBound(prefix);
+	}
+
+	/**
+	 * Returns the index after the last word that starts with the given prefix.
+	 *
+	 * @param prefix the prefix to search for
+	 * @return the end (exclusive) of the prefix range
+	 */
+	public int to(String prefix) {
+		// every word with the prefix sorts before the prefix with its last
+		// character incremented, skipping trailing characters that are already
+		// the largest possible character
+		for (int end = prefix.length() - 1; end >= 0; end--) {
+			char last = prefix.charAt(end);
+
+			if (last != Character.MAX_VALUE) {
+				return lowerBound(prefix.substring(0, end) + (char) (last + 1));
+			}
+		}
+
+		return terms.length;
+	}
+
+	/**
+	 * Returns the number of matches of every word that starts with the given
+	 * prefix, merged by document. Prefixes that expand to many words are cached.
+	 *
+	 * @param prefix the prefix to search for
+	 * @return the merged postings of the prefix
+	 */
+	public PrefixPostings prefix(String prefix) {
+		PrefixPostings merged;
+
+		synchronized (cache) {
+			merged = cache.get(prefix);
+		}
+
+		if (merged != null) {
+			return merged;
+		}
+
+		int from = from(prefix);
+		int to = to(prefix);
+		merged = merge(from, to);
+
+		if (to - from >= MIN_CACHED_TERMS) {
+			synchronized (cache) {
+				cache.put(prefix, merged);
+			}
+		}
+
+		return merged;
+	}
+
+	/**
+	 * Merges the postings of the words in the given range.
+	 *
+	 * @param from the index of the first word (inclusive)
+	 * @param to the index of the last word (exclusive)
+	 * @return the merged postings
+	 */
+	private PrefixPostings merge(int from, int to) {
+		if (to - from == 1) {
+			PostingList list = postings[from];
+			int[] documents = new int[list.size()];
+			int[] counts = new int[list.size()];
+
+			for (int i = 0; i < list.size(); i++) {
+				documents[i] = list.document(i);
+				counts[i] = list.positions(i).size();
+			}
+
+			return new PrefixPostings(documents, counts, 1);
+		}
+
+		int[] totals = new int[numDocuments];
+		int found = 0;
+
+		for (int t = from; t < to; t++) {
+			PostingList list = postings[t];
+
+			for (int i = 0; i < list.size(); i++) {
+				int document = list.document(i);
+
+				if (totals[document] == 0) {
+					found++;
+				}
+
+				totals[document] += list.positions(i).size();
+			}
+		}
+
+		int[] documents = new int[found];
+		int[] counts = new int[found];
+		int next = 0;
+
+		for (int document = 0; next < found; document++) {
+			if (totals[document] > 0) {
+				documents[next] = document;
+				counts[next] = totals[document];
+				next++;
+			}
+		}
+
+		return new PrefixPostings(documents, counts, to - from);
+	}
+
+	/**
+	 * Finds the index of the first word that is not less than the given key.
+	 *
+	 * @param key the key to search for
+	 * @return the index of the first word greater than or equal to the key
+	 */
+	private int lowerBound(String key) {
+		int index = Arrays.binarySearch(terms, key);
+		return index < 0 ? -(index + 1) : index;
+	}
+
+	/**
+	 * The postings of every word that starts with a prefix, merged by document.
+	 * Each document id appears once, in increasing order, along with the total
+	 * number of positions of the matching words in that document.
+	 */
+	public static class PrefixPostings {
+		/** The sorted ids of the matching documents. */
+		private final int[] documents;
+
+		/** The total number of matching positions, parallel to documents. */
+		private final int[] counts;
+
+		/** The number of words that were merged. */
+		private final int terms;
+
+		/**
+		 * Constructs merged postings from parallel arrays.
+		 *
+		 * @param documents the sorted ids of the matching documents
+		 * @param counts the total number of matching positions in each document
+		 * @param terms the number of words that were merged
+		 */
+		private PrefixPostings(int[] documents, int[] counts, int terms) {
+			this.documents = documents;
+			this.counts = counts;
+			this.terms = terms;
+		}
+
+		/**
+		 * Returns the number of matching documents.
+		 *
+		 * @return the number of documents
+		 */
+		public int size() {
+			return documents.length;
+		}
+
+		/**
+		 * Returns the document id stored at the given index.
+		 *
+		 * @param index the index into these postings
+		 * @return the document id
+		 */
+		public int document(int index) {
+			return documents[index];
+		}
+
+		/**
+		 * Returns the number of matching positions stored at the given index.
+		 *
+		 * @param index the index into these postings
+		 * @return the number of matching positions in that document
+		 */
+		public int count(int index) {
+			return counts[index];
+		}
+
+		/**
+		 * Returns the number of words that were merged.
+		 *
+		 * @return the number of words
+		 */
+		public int terms() {
+			return terms;
+		}
+
+		/**
+		 * Returns an iterator through the merged documents.
+		 *
+		 * @return an iterator starting on the first document
+		 */
+		public PostingIterator iterator() {
+			return PostingIterator.of(documents, counts, documents.length);
+		}
+	}
+}
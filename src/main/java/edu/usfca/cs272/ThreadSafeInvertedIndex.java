@@ -3,31 +3,274 @@ package edu.usfca.cs272;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
 
 /**
- * A thread-safe version of {@link InvertedIndex} using a read/write lock. *
- * 
+ * A thread-safe version of {@link InvertedIndex} using striped read/write
+ * locks. The postings are stored in a concurrent map, and each word is guarded
+ * by one of several locks chosen by its hash, so writers that touch different
+ * words can merge in parallel. The document table (paths and word counts) is
+ * guarded by its own lock, which writers only hold while registering documents.
+ *
+ * Looking up words alone relies on the concurrent map and needs no lock. A
+ * partial search first finds the words that start with each prefix without
+ * locking, then locks only the stripes of those words. Words added to any other
+ * stripe in the meantime are ignored, as if they were added after the search.
+ * Operations that need several locks always acquire stripes in increasing
+ * order before the document table lock, which prevents deadlock. Once the
+ * index is frozen, readers skip the locks entirely.
+ *
  * @author CS 272 Software Development (University of San Francisco)
  * @version Spring 2024
  */
 public class ThreadSafeInvertedIndex extends InvertedIndex {
-	/** The lock used to protect concurrent access to the underlying set. */
-	private final MultiReaderLock lock;
+	/** The default number of lock stripes used to guard the postings. */
+	public static final int DEFAULT_STRIPES = 64;
+
+	/** The stripe indices used by operations that only read the document table. */
+	private static final int[] NONE = {};
+
+	/** The postings of each word, shared with the superclass. */
+	private final ConcurrentSkipListMap<String, PostingList> words;
+
+	/** The locks used to protect concurrent access to the postings of words. */
+	private final MultiReaderLock[] stripes;
+
+	/** The lock used to protect concurrent access to the document table. */
+	private final MultiReaderLock documentLock;
 
 	/**
-	 * Initializes a thread-safe inverted index.
+	 * Initializes a thread-safe inverted index with the default number of lock
+	 * stripes.
+	 *
+	 * @see #DEFAULT_STRIPES
 	 */
 	public ThreadSafeInvertedIndex() {
-		super();
-		lock = new MultiReaderLock();
+		this(DEFAULT_STRIPES);
+	}
+
+	/**
+	 * Initializes a thread-safe inverted index with the given number of lock
+	 * stripes.
+	 *
+	 * @param stripes the number of locks used to guard the postings; should be at
+	 *   least 1
+	 */
+	public ThreadSafeInvertedIndex(int stripes) {
+		this(new ConcurrentSkipListMap<>(), stripes);
 	}
 
+	/**
+	 * Initializes a thread-safe inverted index that stores its postings in the
+	 * given map.
+	 *
+	 * @param words the empty map used to store the postings of each word
+	 * @param stripes the number of locks used to guard the postings
+	 */
+	private ThreadSafeInvertedIndex(ConcurrentSkipListMap<String, PostingList> words, int stripes) {
+		super(words);
+		this.words = words;
+		this.stripes = new MultiReaderLock[Math.max(1, stripes)];
+		this.documentLock = new MultiReaderLock();
+
+		for (int i = 0; i < this.stripes.length; i++) {
+			this.stripes[i] = new MultiReaderLock();
+		}
+	}
+
+	/**
+	 * Returns the index of the lock stripe that guards the given word.
+	 *
+	 * @param word the word to find the stripe for
+	 * @return the index of the stripe
+	 */
+	private int stripe(String word) {
+		return Math.floorMod(word.hashCode(), stripes.length);
+	}
+
+	/**
+	 * Returns the sorted indices of the lock stripes that guard the given words.
+	 *
+	 * @param words the words to find the stripes for
+	 * @return the sorted stripe indices without duplicates
+	 */
+	private int[] stripes(Collection<String> words) {
+		TreeSet<Integer> indices = new TreeSet<>();
+		for (String word : words) {
+			indices.add(stripe(word));
+		}
+		return indices.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * Returns the sorted indices of the lock stripes that guard the words that
+	 * currently start with any of the given prefixes, as well as the given exact
+	 * words. The words are found without locking, since the concurrent map can be
+	 * traversed while it is modified.
+	 *
+	 * @param prefixes the prefixes of the words to find the stripes for
+	 * @param exact the words matched exactly to find the stripes for
+	 * @return the sorted stripe indices without duplicates
+	 */
+	private int[] prefixStripes(Collection<String> prefixes, Collection<String> exact) {
+		TreeSet<Integer> indices = new TreeSet<>();
+
+		for (String prefix : prefixes) {
+			for (String word : words.tailMap(prefix, true).keySet()) {
+				if (!word.startsWith(prefix)) {
+					break;
+				}
+				indices.add(stripe(word));
+			}
+		}
+
+		for (String word : exact) {
+			indices.add(stripe(word));
+		}
+
+		return indices.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * Returns a filter of the words guarded by the given stripes, or of every word
+	 * if no stripes were locked because the index is frozen.
+	 *
+	 * @param locked the stripe indices returned when locking
+	 * @return the filter of the words that are safe to read
+	 */
+	private Predicate<String> guardedBy(int[] locked) {
+		if (locked == null) {
+			return word -> true;
+		}
+
+		BitSet guarded = new BitSet(stripes.length);
+		for (int index : locked) {
+			guarded.set(index);
+		}
+		return word -> guarded.get(stripe(word));
+	}
+
+	/**
+	 * Acquires the read lock of every given stripe in increasing order, followed
+	 * by the read lock of the document table. Does nothing if the index is
+	 * frozen, since a frozen index is never modified.
+	 *
+	 * @param indices the sorted stripe indices to lock
+	 * @return the stripe indices that were locked, or {@code null} if no locks
+	 *   were acquired
+	 */
+	private int[] readLock(int[] indices) {
+		if (isFrozen()) {
+			return null;
+		}
+
+		for (int index : indices) {
+			stripes[index].readLock().lock();
+		}
+		documentLock.readLock().lock();
+		return indices;
+	}
+
+	/**
+	 * Releases the locks acquired by {@link #readLock(int[])}.
+	 *
+	 * @param locked the stripe indices returned when locking
+	 */
+	private void readUnlock(int[] locked) {
+		if (locked == null) {
+			return;
+		}
+
+		documentLock.readLock().unlock();
+		for (int i = locked.length - 1; i >= 0; i--) {
+			stripes[locked[i]].readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the indices of every lock stripe in increasing order.
+	 *
+	 * @return all stripe indices
+	 */
+	private int[] allStripes() {
+		int[] indices = new int[stripes.length];
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = i;
+		}
+		return indices;
+	}
+
+	/**
+	 * Freezes this index, waiting for any in-progress writers to finish first.
+	 * After this call, every read operation proceeds without locking.
+	 */
 	@Override
-	public void addWord(String word, String location, Integer position) {
+	public void freeze() {
+		writeLockAll();
+		try {
+			super.freeze();
+		}
+		finally {
+			writeUnlockAll();
+		}
+	}
+
+	/**
+	 * Acquires the write lock of every stripe in increasing order followed by the
+	 * write lock of the document table, waiting for all in-progress readers and
+	 * writers.
+	 */
+	private void writeLockAll() {
+		for (MultiReaderLock stripe : stripes) {
+			stripe.writeLock().lock();
+		}
+		documentLock.writeLock().lock();
+	}
+
+	/**
+	 * Releases the locks acquired by {@link #writeLockAll()}.
+	 */
+	private void writeUnlockAll() {
+		documentLock.writeLock().unlock();
+		for (int i = stripes.length - 1; i >= 0; i--) {
+			stripes[i].writeLock().unlock();
+		}
+	}
+
+	@Override
+	protected int addDocument(String location, int position) {
+		documentLock.writeLock().lock();
+		try {
+			return super.addDocument(location, position);
+		}
+		finally {
+			documentLock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	protected int[] addDocuments(InvertedIndex other, int offset) {
+		documentLock.writeLock().lock();
+		try {
+			return super.addDocuments(other, offset);
+		}
+		finally {
+			documentLock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	protected void addPosting(String word, int document, int position) {
+		MultiReaderLock lock = stripes[stripe(word)];
 		lock.writeLock().lock();
 		try {
-			super.addWord(word, location, position);
+			super.addPosting(word, document, position);
 		}
 		finally {
 			lock.writeLock().unlock();
@@ -35,10 +278,11 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	}
 
 	@Override
-	public void addWords(ArrayList<String> stems, String location) {
+	protected void addPostings(String word, PostingList postings, int[] mapping, int offset) {
+		MultiReaderLock lock = stripes[stripe(word)];
 		lock.writeLock().lock();
 		try {
-			super.addWords(stems, location);
+			super.addPostings(word, postings, mapping, offset);
 		}
 		finally {
 			lock.writeLock().unlock();
@@ -46,223 +290,332 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	}
 
 	@Override
-	public void addAll(InvertedIndex other) {
+	protected void putPostings(String word, PostingList postings) {
+		MultiReaderLock lock = stripes[stripe(word)];
 		lock.writeLock().lock();
-
 		try {
-			super.addAll(other);
+			super.putPostings(word, postings);
 		}
 		finally {
 			lock.writeLock().unlock();
 		}
 	}
 
+	/**
+	 * Adds the postings of several words from another index, locking each stripe
+	 * once for all of its words instead of once for every word.
+	 *
+	 * @param postings the postings of each word in the other index
+	 * @param mapping the document id in this index for each document id in the
+	 *   other index
+	 * @param offset the amount added to every position of the other index
+	 */
+	@Override
+	protected void addPostings(Map<String, PostingList> postings, int[] mapping, int offset) {
+		ArrayList<ArrayList<Map.Entry<String, PostingList>>> groups = new ArrayList<>(stripes.length);
+		for (int i = 0; i < stripes.length; i++) {
+			groups.add(new ArrayList<>());
+		}
+
+		for (var entry : postings.entrySet()) {
+			groups.get(stripe(entry.getKey())).add(entry);
+		}
+
+		for (int i = 0; i < stripes.length; i++) {
+			if (groups.get(i).isEmpty()) {
+				continue;
+			}
+
+			stripes[i].writeLock().lock();
+			try {
+				for (var entry : groups.get(i)) {
+					super.addPostings(entry.getKey(), entry.getValue(), mapping, offset);
+				}
+			}
+			finally {
+				stripes[i].writeLock().unlock();
+			}
+		}
+	}
+
+	@Override
+	public void setStamp(String location, FileStamp stamp) {
+		documentLock.writeLock().lock();
+		try {
+			super.setStamp(location, stamp);
+		}
+		finally {
+			documentLock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public FileStamp getStamp(String location) {
+		int[] locked = readLock(NONE);
+		try {
+			return super.getStamp(location);
+		}
+		finally {
+			readUnlock(locked);
+		}
+	}
+
+	@Override
+	public int removeDocuments(Collection<String> locations) {
+		writeLockAll();
+		try {
+			return super.removeDocuments(locations);
+		}
+		finally {
+			writeUnlockAll();
+		}
+	}
+
 	@Override
 	public int getWordCount(String path) {
-		lock.readLock().lock();
+		int[] locked = readLock(NONE);
 
 		try {
 			return super.getWordCount(path);
 		}
 		finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public int getFileCount() {
-		lock.readLock().lock();
+		int[] locked = readLock(NONE);
 
 		try {
 			return super.getFileCount();
 		}
 		finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
-	public boolean hasFileinCount(String path) {
-		lock.readLock().lock();
+	public long getTotalWords() {
+		int[] locked = readLock(NONE);
+
 		try {
-			return super.hasFileinCount(path);
+			return super.getTotalWords();
 		}
 		finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
-	public boolean hasWord(String word) {
-		lock.readLock().lock();
+	public boolean hasFileinCount(String path) {
+		int[] locked = readLock(NONE);
 		try {
-			return super.hasWord(word);
+			return super.hasFileinCount(path);
 		}
 		finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public boolean hasLocation(String word, String location) {
-		lock.readLock().lock();
+		int[] locked = readLock(new int[] { stripe(word) });
 		try {
 			return super.hasLocation(word, location);
 		}
 		finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public boolean hasPosition(String word, String location, Integer position) {
-		lock.readLock().lock();
+		int[] locked = readLock(new int[] { stripe(word) });
 		try {
 			return super.hasPosition(word, location, position);
 		}
 		finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public int numWords(String word) {
-		lock.readLock().lock();
+		int[] locked = readLock(new int[] { stripe(word) });
 
 		try {
 			return super.numWords(word);
 		}
 		finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
+		}
+	}
+
+	@Override
+	public int numDocuments(String word) {
+		int[] locked = readLock(new int[] { stripe(word) });
+
+		try {
+			return super.numDocuments(word);
+		}
+		finally {
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public int numLocations(String word, String location) {
-		lock.readLock().lock();
+		int[] locked = readLock(new int[] { stripe(word) });
 
 		try {
 			return super.numLocations(word, location);
 		}
 		finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public int numPositions(String word, String location, Integer position) {
-		lock.readLock().lock();
+		int[] locked = readLock(new int[] { stripe(word) });
 
 		try {
 			return super.numPositions(word, location, position);
 		}
 		finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public Set<String> viewFiles() {
-		lock.readLock().lock();
+		int[] locked = readLock(NONE);
 
 		try {
 			return super.viewFiles();
 		}
 		finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
-	public Set<String> viewWords() {
-		lock.readLock().lock();
+	public Set<String> viewStampedFiles() {
+		int[] locked = readLock(NONE);
 
 		try {
-			return super.viewWords();
+			return super.viewStampedFiles();
 		}
 		finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public Set<String> viewLocations(String word) {
-		lock.readLock().lock();
+		int[] locked = readLock(new int[] { stripe(word) });
 
 		try {
 			return super.viewLocations(word);
 		}
 		finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public Set<Integer> viewPositions(String word, String location) {
-		lock.readLock().lock();
+		int[] locked = readLock(new int[] { stripe(word) });
 
 		try {
 			return super.viewPositions(word, location);
 		}
 		finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public void writeWordCountMap(Path output) throws IOException {
-		lock.readLock().lock();
+		int[] locked = readLock(NONE);
 
 		try {
 			super.writeWordCountMap(output);
 		}
 		finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public void writeIndexMap(Path output) throws IOException {
-		lock.readLock().lock();
+		int[] locked = readLock(allStripes());
 
 		try {
 			super.writeIndexMap(output);
 		}
 		finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
+		}
+	}
+
+	@Override
+	public void writeSegment(Path output) throws IOException {
+		int[] locked = readLock(allStripes());
+
+		try {
+			super.writeSegment(output);
+		}
+		finally {
+			readUnlock(locked);
 		}
 	}
 
 	@Override
 	public String toString() {
-		lock.readLock().lock();
+		int[] locked = readLock(allStripes());
 		try {
 			return super.toString();
 		}
 		finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
-	public ArrayList<IndexSearcher> exactSearch(Set<String> queries) {
-		lock.readLock().lock();
+	public ArrayList<IndexSearcher> search(Query query, boolean isPartial, int limit, Scorer scorer) {
+		if (!isPartial) {
+			int[] locked = readLock(stripes(query.allWords()));
+			try {
+				return super.search(query, false, limit, scorer);
+			}
+			finally {
+				readUnlock(locked);
+			}
+		}
+
+		// the words of phrases are always matched exactly
+		TreeSet<String> prefixes = new TreeSet<>(query.getWords());
+		prefixes.addAll(query.getExcluded());
+
+		int[] locked = readLock(prefixStripes(prefixes, query.allWords()));
 		try {
-			return super.exactSearch(queries);
+			return super.search(query, true, limit, scorer, guardedBy(locked));
 		}
 		finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
 	@Override
-	public ArrayList<IndexSearcher> partialSearch(Set<String> queries) {
-		lock.readLock().lock();
+	public int countMatches(Set<String> queries, boolean isPartial) {
+		int[] locked = readLock(isPartial ? prefixStripes(queries, Set.of()) : stripes(queries));
 		try {
-			return super.partialSearch(queries);
+			return super.countMatches(queries, isPartial, guardedBy(locked));
 		}
 		finally {
-			lock.readLock().unlock();
+			readUnlock(locked);
 		}
 	}
 
@@ -0,0 +1,350 @@
+package edu.usfca.cs272;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Splits text into the same clean words as {@link FileStemmer#parse(String)},
+ * without regular expressions or intermediate strings. The words of the last
+ * text are kept in a reusable buffer, so a tokenizer should be reused for every
+ * line of a file and must not be shared between threads.
+ *
+ * Text is scanned once. Runs of characters between whitespace are cleaned
+ * through a lookup table when every character is in the Latin-1 range, which
+ * covers plain ASCII and the common accented letters. Any other run falls back
+ * to normalizing just that run, which gives the same result since whitespace is
+ * never combined with the characters around it.
+ *
+ * @see FileStemmer#parse(String)
+ */
+public class WordTokenizer {
+	/**
+	 * The clean character each Latin-1 character becomes after it is decomposed,
+	 * filtered, and lowercased, or 0 if the character is removed.
+	 */
+	private static final char[] LATIN_1 = new char[256];
+
+	static {
+		for (char c = 0; c < LATIN_1.length; c++) {
+			String cleaned = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD)
+					.codePoints()
+					.filter(Character::isAlphabetic)
+					.collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append)
+					.toString()
+					.toLowerCase(Locale.ROOT);
+
+			LATIN_1[c] = cleaned.length() == 1 ? cleaned.charAt(0) : 0;
+		}
+	}
+
+	/** The characters of the words, one after another. */
+	private char[] chars;
+
+	/** The start of each word in the characters. */
+	private int[] starts;
+
+	/** The number of characters in use. */
+	private int length;
+
+	/** The number of words found. */
+	private int size;
+
+	/** The reusable view of a single word. */
+	private final Word word;
+
+	/**
+	 * Constructs an empty tokenizer.
+	 */
+	public WordTokenizer() {
+		this.chars = new char[64];
+		this.starts = new int[16];
+		this.length = 0;
+		this.size = 0;
+		this.word = new Word();
+	}
+
+	/**
+	 * Splits the text into clean words, replacing the words of the previous text.
+	 *
+	 * @param text the text to split
+	 * @return the number of words found
+	 */
+	public int tokenize(CharSequence text) {
+		length = 0;
+		size = 0;
+
+		// lowercasing depends on the locale for a few letters outside of Latin-1
+		String language = Locale.getDefault().getLanguage();
+		boolean special = language.equals("tr") || language.equals("az") || language.equals("lt");
+
+		// whether the cleaned text has had a character strip() would keep yet
+		boolean stripped = false;
+
+		// whether split() would find an empty word before the first word
+		boolean leading = false;
+
+		int start = 0;
+		boolean latin1 = true;
+
+		for (int i = 0; i <= text.length(); i++) {
+			char c = i < text.length() ? text.charAt(i) : ' ';
+
+			if (!isSpace(c)) {
+				latin1 &= c < LATIN_1.length;
+				continue;
+			}
+
+			if (i > start) {
+				int before = length;
+
+				if (latin1 && !special) {
+					cleanLatin1(text, start, i);
+				}
+				else if (!clean(text, start, i)) {
+					return load(FileStemmer.parse(text.toString()));
+				}
+
+				if (length > before) {
+					if (!stripped) {
+						stripped = true;
+					}
+					else if (leading && size == 0) {
+						addWord(before);
+					}
+
+					addWord(before);
+				}
+			}
+
+			if (i < text.length() && !stripped && !Character.isWhitespace(c)) {
+				// a space that strip() keeps, such as a non-breaking space
+				stripped = true;
+				leading = true;
+			}
+
+			start = i + 1;
+			latin1 = true;
+		}
+
+		return size;
+	}
+
+	/**
+	 * Returns the number of words found in the last text.
+	 *
+	 * @return the number of words
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a word of the last text as a new string.
+	 *
+	 * @param index the index of the word
+	 * @return the word
+	 */
+	public String get(int index) {
+		return new String(chars, start(index), end(index) - start(index));
+	}
+
+	/**
+	 * Returns a view of a word of the last text, without copying it. The same
+	 * view is returned every time, so it is only valid until this method is
+	 * called again or the next text is split.
+	 *
+	 * @param index the index of the word
+	 * @return a view of the word
+	 */
+	public CharSequence view(int index) {
+		word.start = start(index);
+		word.end = end(index);
+		return word;
+	}
+
+	/**
+	 * Returns the words of the last text as an array, in the same form as
+	 * {@link FileStemmer#parse(String)}.
+	 *
+	 * @return the words
+	 */
+	public String[] toArray() {
+		String[] words = new String[size];
+		for (int i = 0; i < size; i++) {
+			words[i] = get(i);
+		}
+		return words;
+	}
+
+	/**
+	 * Checks whether a character is whitespace as matched by
+	 * {@link FileStemmer#SPLIT_REGEX}, which is the Unicode White_Space property.
+	 *
+	 * @param c the character to check
+	 * @return {@code true} if the character is whitespace
+	 */
+	private static boolean isSpace(char c) {
+		return switch (Character.getType(c)) {
+			case Character.SPACE_SEPARATOR, Character.LINE_SEPARATOR, Character.PARAGRAPH_SEPARATOR -> true;
+			default -> (c >= 0x9 && c <= 0xD) || c == 0x85;
+		};
+	}
+
+	/**
+	 * Cleans a run of Latin-1 characters through the lookup table.
+	 *
+	 * @param text the text being split
+	 * @param start the start of the run (inclusive)
+	 * @param end the end of the run (exclusive)
+	 */
+	private void cleanLatin1(CharSequence text, int start, int end) {
+		ensureCapacity(length + end - start);
+
+		for (int i = start; i < end; i++) {
+			char clean = LATIN_1[text.charAt(i)];
+
+			if (clean != 0) {
+				chars[length++] = clean;
+			}
+		}
+	}
+
+	/**
+	 * Cleans any other run of characters the same way as
+	 * {@link FileStemmer#clean(String)}. A capital sigma is lowercased depending
+	 * on the word boundaries of the whole text, so runs containing one are
+	 * rejected and the whole text has to be parsed instead.
+	 *
+	 * @param text the text being split
+	 * @param start the start of the run (inclusive)
+	 * @param end the end of the run (exclusive)
+	 * @return {@code true} if the run could be cleaned on its own
+	 */
+	private boolean clean(CharSequence text, int start, int end) {
+		String run = text.subSequence(start, end).toString();
+
+		if (run.indexOf('\u03A3') >= 0) {
+			return false;
+		}
+
+		String cleaned = FileStemmer.clean(run);
+		ensureCapacity(length + cleaned.length());
+		cleaned.getChars(0, cleaned.length(), chars, length);
+		length += cleaned.length();
+		return true;
+	}
+
+	/**
+	 * Replaces the words found so far with words parsed some other way.
+	 *
+	 * @param words the words to use
+	 * @return the number of words
+	 */
+	private int load(String[] words) {
+		length = 0;
+		size = 0;
+
+		for (String word : words) {
+			ensureCapacity(length + word.length());
+			addWord(length);
+			word.getChars(0, word.length(), chars, length);
+			length += word.length();
+		}
+
+		return size;
+	}
+
+	/**
+	 * Adds a word that starts at the given position, or an empty word if every
+	 * character since then was already added.
+	 *
+	 * @param start the start of the word
+	 */
+	private void addWord(int start) {
+		if (size == starts.length) {
+			starts = Arrays.copyOf(starts, size * 2);
+		}
+
+		starts[size++] = start;
+	}
+
+	/**
+	 * Returns the start of a word.
+	 *
+	 * @param index the index of the word
+	 * @return the start of the word in the characters
+	 */
+	private int start(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException(index);
+		}
+
+		return starts[index];
+	}
+
+	/**
+	 * Returns the end of a word.
+	 *
+	 * @param index the index of the word
+	 * @return the end (exclusive) of the word in the characters
+	 */
+	private int end(int index) {
+		// only the empty leading word shares its start with the next word
+		if (index == 0 && size > 1 && starts[1] == starts[0]) {
+			return starts[0];
+		}
+
+		return index + 1 < size ? starts[index + 1] : length;
+	}
+
+	/**
+	 * Grows the character buffer if necessary.
+	 *
+	 * @param capacity the number of characters needed
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > chars.length) {
+			chars = Arrays.copyOf(chars, Math.max(capacity, chars.length * 2));
+		}
+	}
+
+	/**
+	 * A view of one word in the character buffer.
+	 */
+	private class Word implements CharSequence {
+		/** The start of the word in the characters. */
+		private int start;
+
+		/** The end (exclusive) of the word in the characters. */
+		private int end;
+
+		/**
+		 * Constructs an empty view.
+		 */
+		private Word() {
+			this.start = 0;
+			this.end = 0;
+		}
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return chars[start + index];
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return new String(chars, start + from, to - from);
+		}
+
+		@Override
+		public String toString() {
+			return new String(chars, start, end - start);
+		}
+	}
+}
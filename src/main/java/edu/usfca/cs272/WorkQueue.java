@@ -1,6 +1,12 @@
 package edu.usfca.cs272;
 
 import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
@@ -11,6 +17,18 @@ import org.apache.logging.log4j.Logger;
  * Brian Goetz. It is up to the user of this class to keep track of whether
  * there is any pending work remaining.
  *
+ * <p>The tasks are run by one of several executors, chosen by {@link Type}. The
+ * legacy executor is a fixed set of workers sharing a single queue. The other
+ * executors are backed by the standard library, and this class only keeps
+ * track of the pending work so that {@link #finish()} behaves the same for
+ * all of them.
+ *
+ * <p>Once {@link #shutdown()} has been called, every {@code execute} method
+ * throws a {@link RejectedExecutionException} instead of accepting the task.
+ * Earlier versions of this class silently ignored work added after a shutdown,
+ * so callers that may add work during or after a shutdown must now either stop
+ * adding it first or catch the exception.
+ *
  * @see <a href=
  *   "https://web.archive.org/web/20210126172022/https://www.ibm.com/developerworks/library/j-jtp0730/index.html">
  *   Java Theory and Practice: Thread Pools and Work Queues</a>
@@ -22,6 +40,12 @@ public class WorkQueue {
 	/** Workers that wait until work (or tasks) are available. */
 	private final Worker[] workers;
 
+	/** The executor that runs the tasks, or {@code null} for the legacy workers. */
+	private final ExecutorService executor;
+
+	/** The number of threads requested for this work queue. */
+	private final int threads;
+
 	/** Queue of pending work (or tasks). */
 	private final LinkedList<Runnable> tasks;
 
@@ -34,8 +58,11 @@ public class WorkQueue {
 	/** Logger used for this class. */
 	private static final Logger log = LogManager.getLogger();
 
-	/** The amount of pending work. */
-	private int pending;
+	/**
+	 * The amount of pending work. Only waking up waiting threads needs the
+	 * monitor of this work queue, so tasks do not contend on it.
+	 */
+	private final AtomicInteger pending;
 
 	/**
 	 * Starts a work queue with the default number of threads.
@@ -52,13 +79,32 @@ public class WorkQueue {
 	 * @param threads number of worker threads; should be greater than 1
 	 */
 	public WorkQueue(int threads) {
+		this(threads, Type.LEGACY);
+	}
+
+	/**
+	 * Starts a work queue with the specified number of threads and executor.
+	 *
+	 * @param threads number of worker threads; should be greater than 1, and is
+	 *   ignored by the virtual thread executor
+	 * @param type the executor used to run the tasks
+	 */
+	public WorkQueue(int threads, Type type) {
 		this.tasks = new LinkedList<Runnable>();
-		this.workers = new Worker[threads];
+		this.threads = threads;
 		this.shutdown = false;
-		this.pending = 0;
+		this.pending = new AtomicInteger();
+
+		this.executor = switch (type) {
+			case FORK_JOIN -> new ForkJoinPool(threads);
+			case VIRTUAL -> Executors.newVirtualThreadPerTaskExecutor();
+			case LEGACY -> null;
+		};
+
+		this.workers = new Worker[executor == null ? threads : 0];
 
 		// start the threads so they are waiting in the background
-		for (int i = 0; i < threads; i++) {
+		for (int i = 0; i < workers.length; i++) {
 			workers[i] = new Worker();
 			workers[i].start();
 		}
@@ -69,12 +115,78 @@ public class WorkQueue {
 	 * request when available.
 	 *
 	 * @param task work request (in the form of a {@link Runnable} object)
+	 * @throws RejectedExecutionException if the queue has been shut down
 	 */
 	public void execute(Runnable task) {
-		incrementPending();
+		if (executor != null) {
+			incrementPending();
+
+			try {
+				executor.execute(() -> run(task, Thread.currentThread().toString()));
+			}
+			catch (RejectedExecutionException e) {
+				// the task will never run, so it must not be waited for
+				decrementPending();
+				throw e;
+			}
+			return;
+		}
+
 		synchronized (tasks) {
+			if (shutdown) {
+				throw new RejectedExecutionException("Work queue has been shut down.");
+			}
+
+			incrementPending();
 			tasks.addLast(task);
-			tasks.notifyAll();
+			// only one task was added, so waking one worker is enough
+			tasks.notify();
+		}
+	}
+
+	/**
+	 * Adds a work (or task) request to the queue, unless more than the given
+	 * amount of work is already pending, in which case the calling thread runs the
+	 * task itself. This bounds how far a producer of tasks can get ahead of the
+	 * workers, without ever blocking a worker that is itself producing tasks.
+	 *
+	 * @param task work request (in the form of a {@link Runnable} object)
+	 * @param bound the amount of pending work above which the task is run by the
+	 *   calling thread
+	 * @throws RejectedExecutionException if the queue has been shut down
+	 */
+	public void execute(Runnable task, int bound) {
+		if (pending.get() <= bound) {
+			execute(task);
+			return;
+		}
+
+		if (shutdown) {
+			throw new RejectedExecutionException("Work queue has been shut down.");
+		}
+
+		incrementPending();
+		run(task, Thread.currentThread().getName());
+	}
+
+	/**
+	 * Runs a task, logging any runtime exception instead of letting it escape, and
+	 * then marks the task as finished.
+	 *
+	 * @param task the task to run
+	 * @param name the name of the thread running the task
+	 */
+	private void run(Runnable task, String name) {
+		try {
+			task.run();
+		}
+		catch (RuntimeException e) {
+			// catch runtime exceptions to avoid leaking threads
+			System.err.printf("Error: %s encountered an exception while running.%n", name);
+			log.catching(Level.ERROR, e);
+		}
+		finally {
+			decrementPending();
 		}
 	}
 
@@ -85,7 +197,7 @@ public class WorkQueue {
 	public void finish() {
 		try {
 			synchronized (this) {
-				while (pending > 0) {
+				while (pending.get() > 0) {
 					this.wait();
 				}
 			}
@@ -98,20 +210,22 @@ public class WorkQueue {
 	/**
 	 * Safely increments the shared pending variable.
 	 */
-	private synchronized void incrementPending() {
-		pending++;
+	private void incrementPending() {
+		pending.incrementAndGet();
 	}
 
 	/**
 	 * Safely decrements the shared pending variable, and wakes up any threads
 	 * waiting for work to be completed.
 	 */
-	private synchronized void decrementPending() {
-		assert pending > 0;
-		pending--;
+	private void decrementPending() {
+		int remaining = pending.decrementAndGet();
+		assert remaining >= 0;
 
-		if (pending == 0) {
-			this.notifyAll();
+		if (remaining == 0) {
+			synchronized (this) {
+				this.notifyAll();
+			}
 		}
 	}
 
@@ -128,6 +242,10 @@ public class WorkQueue {
 			for (Worker worker : workers) {
 				worker.join();
 			}
+
+			if (executor != null) {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			}
 		}
 		catch (InterruptedException e) {
 			System.err.println("Warning: Work queue interrupted while joining.");
@@ -138,13 +256,24 @@ public class WorkQueue {
 
 	/**
 	 * Asks the queue to shutdown. Any unprocessed work (or tasks) will not be
-	 * finished, but threads in-progress will not be interrupted.
+	 * finished, but threads in-progress will not be interrupted. Work that is
+	 * dropped is no longer pending, so waiting for the queue to finish does not
+	 * hang, and any work added afterwards is rejected.
 	 */
 	public void shutdown() {
 		// safe to do unsynchronized due to volatile keyword
 		shutdown = true;
 
+		if (executor != null) {
+			executor.shutdown();
+		}
+
 		synchronized (tasks) {
+			while (!tasks.isEmpty()) {
+				tasks.removeFirst();
+				decrementPending();
+			}
+
 			tasks.notifyAll();
 		}
 	}
@@ -155,7 +284,7 @@ public class WorkQueue {
 	 * @return number of worker threads
 	 */
 	public int size() {
-		return workers.length;
+		return threads;
 	}
 
 	/**
@@ -200,17 +329,7 @@ public class WorkQueue {
 
 					}
 
-					try {
-						task.run();
-					}
-					catch (RuntimeException e) {
-						// catch runtime exceptions to avoid leaking threads
-						System.err.printf("Error: %s encountered an exception while running.%n", this.getName());
-						log.catching(Level.ERROR, e);
-					}
-					finally {
-						decrementPending();
-					}
+					WorkQueue.this.run(task, this.getName());
 				}
 			}
 			catch (InterruptedException e) {
@@ -222,4 +341,40 @@ public class WorkQueue {
 
 		}
 	}
+
+	/**
+	 * The executors that can run the tasks of a work queue.
+	 */
+	public static enum Type {
+		/** A fixed set of workers that wait on a single shared queue. */
+		LEGACY,
+
+		/**
+		 * A work-stealing pool, where each thread has its own queue and idle threads
+		 * take tasks from busy ones.
+		 */
+		FORK_JOIN,
+
+		/**
+		 * A new virtual thread for every task. Best suited to tasks that block on
+		 * IO, since tasks that wait on a monitor keep their carrier thread busy.
+		 */
+		VIRTUAL;
+
+		/**
+		 * Returns the executor with the given name, ignoring case.
+		 *
+		 * @param name the name of the executor, one of "legacy", "forkjoin", or
+		 *   "virtual"
+		 * @return the executor, or {@code null} if no executor has that name
+		 */
+		public static Type forName(String name) {
+			return switch (name.toLowerCase()) {
+				case "legacy" -> LEGACY;
+				case "forkjoin", "fork-join" -> FORK_JOIN;
+				case "virtual" -> VIRTUAL;
+				default -> null;
+			};
+		}
+	}
 }
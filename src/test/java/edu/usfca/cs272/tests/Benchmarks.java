@@ -0,0 +1,87 @@
+package edu.usfca.cs272.tests;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.IntSupplier;
+
+/**
+ * Measures the time and allocations of small pieces of code. The benchmarks
+ * only run when the {@code benchmarks} system property is {@code true}, for
+ * example with {@code mvn test -Dconfig.tests=. -Dbenchmarks=true}, and print
+ * their results instead of asserting on them.
+ */
+public class Benchmarks {
+	/** The name of the system property that enables the benchmarks. */
+	public static final String PROPERTY = "benchmarks";
+
+	/** The number of untimed rounds run before measuring. */
+	public static final int WARMUP_ROUNDS = 5;
+
+	/** The number of timed rounds. */
+	public static final int ROUNDS = 10;
+
+	/**
+	 * Runs a benchmark and prints the average time and allocation of one
+	 * operation, after some rounds of warmup.
+	 *
+	 * @param name the name of the benchmark
+	 * @param operations the number of operations in one round
+	 * @param round runs one round and returns a value that depends on its work,
+	 *   so the work cannot be optimized away
+	 * @return the average time of one operation in nanoseconds
+	 */
+	public static double measure(String name, long operations, IntSupplier round) {
+		long blackhole = 0;
+
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			blackhole += round.getAsInt();
+		}
+
+		long allocated = allocatedBytes();
+		long start = System.nanoTime();
+
+		for (int i = 0; i < ROUNDS; i++) {
+			blackhole += round.getAsInt();
+		}
+
+		long elapsed = System.nanoTime() - start;
+		allocated = allocatedBytes() - allocated;
+
+		double nanos = (double) elapsed / (ROUNDS * operations);
+		double bytes = (double) allocated / (ROUNDS * operations);
+		System.out.printf("%-40s %12.1f ns/op %12.1f B/op (%d)%n", name, nanos, bytes, blackhole % 10);
+		return nanos;
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the current thread so far, or 0 if
+	 * the virtual machine does not report it.
+	 *
+	 * @return the number of bytes allocated
+	 */
+	public static long allocatedBytes() {
+		if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads) {
+			return threads.getCurrentThreadAllocatedBytes();
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the number of bytes of heap in use after collecting garbage, as an
+	 * estimate of the memory held by live objects.
+	 *
+	 * @return the number of bytes in use
+	 */
+	public static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/** Prevent instantiating this class of static methods. */
+	private Benchmarks() {
+	}
+}
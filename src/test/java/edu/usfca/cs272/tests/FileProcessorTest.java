@@ -0,0 +1,290 @@
+package edu.usfca.cs272.tests;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import edu.usfca.cs272.FileProcessor;
+import edu.usfca.cs272.InvertedIndex;
+import edu.usfca.cs272.QueuedFileProcessor;
+import edu.usfca.cs272.ThreadSafeInvertedIndex;
+import edu.usfca.cs272.WorkQueue;
+
+/**
+ * Tests that indexing a directory again after files were edited, deleted,
+ * touched, or emptied gives the same index as building it from scratch, with
+ * both the sequential {@link FileProcessor} and the {@link QueuedFileProcessor}.
+ */
+public class FileProcessorTest {
+	/** The seed of the generated corpus. */
+	private static final long SEED = 6;
+
+	/** The directory of text files. */
+	private Path directory;
+
+	/** The generated text files. */
+	private List<Path> files;
+
+	/** A file that is empty to begin with. */
+	private Path empty;
+
+	/** Another file that is empty to begin with. */
+	private Path blank;
+
+	/**
+	 * Writes the text files.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@BeforeEach
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("reindex");
+		files = new ArrayList<>(TestCorpus.writeFiles(directory.resolve("generated"), SEED, 10, 50));
+		files.addAll(TestCorpus.writeFiles(directory.resolve("nested").resolve("deeper"), SEED + 1, 5, 20));
+
+		empty = directory.resolve("empty.txt");
+		blank = directory.resolve("nested").resolve("blank.txt");
+		Files.writeString(empty, "", UTF_8);
+		Files.writeString(blank, ",,, 123\n\n", UTF_8);
+	}
+
+	/**
+	 * Deletes the text files.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@AfterEach
+	public void cleanup() throws IOException {
+		TestCorpus.delete(directory);
+	}
+
+	/**
+	 * Checks that the sequential processor updates the index to match a fresh
+	 * build after every kind of change.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testReindexSequential() throws IOException {
+		InvertedIndex index = new InvertedIndex();
+		FileProcessor.processPath(directory, index);
+		assertReindexed(index, () -> FileProcessor.processPath(directory, index));
+	}
+
+	/**
+	 * Checks that the queued processor updates the index to match a fresh build
+	 * after every kind of change, including when large files are read in chunks.
+	 *
+	 * @param type the kind of work queue
+	 * @throws IOException if an I/O error occurs
+	 */
+	@ParameterizedTest
+	@EnumSource(WorkQueue.Type.class)
+	public void testReindexQueued(WorkQueue.Type type) throws IOException {
+		WorkQueue queue = new WorkQueue(4, type);
+
+		try {
+			ThreadSafeInvertedIndex index = new ThreadSafeInvertedIndex();
+			QueuedFileProcessor.processPath(directory, index, queue, 256);
+			assertReindexed(index, () -> QueuedFileProcessor.processPath(directory, index, queue, 256));
+		}
+		finally {
+			queue.join();
+		}
+	}
+
+	/**
+	 * Checks that processing a single changed file replaces its document, with
+	 * both processors.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testReindexSingleFile() throws IOException {
+		Path path = files.get(0);
+		InvertedIndex sequential = new InvertedIndex();
+		ThreadSafeInvertedIndex queued = new ThreadSafeInvertedIndex();
+		WorkQueue queue = new WorkQueue(2);
+
+		try {
+			FileProcessor.processPath(path, sequential);
+			QueuedFileProcessor.processPath(path, queued, queue);
+
+			Files.writeString(path, "replaced words only\n", UTF_8);
+			FileProcessor.processPath(path, sequential);
+			QueuedFileProcessor.processPath(path, queued, queue);
+
+			InvertedIndex fresh = new InvertedIndex();
+			FileProcessor.readFile(path, fresh);
+			assertEquals(fresh.toString(), sequential.toString());
+			assertEquals(fresh.toString(), queued.toString());
+			assertEquals(3, sequential.getWordCount(path.toString()));
+			assertEquals(3, queued.getTotalWords());
+		}
+		finally {
+			queue.join();
+		}
+	}
+
+	/**
+	 * Checks that checking a changed file only reports it, and leaves its
+	 * document in the index until it is processed.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testNeedsIndexingKeepsDocument() throws IOException {
+		InvertedIndex index = new InvertedIndex();
+		FileProcessor.processPath(directory, index);
+
+		Path path = files.get(1);
+		String location = path.toString();
+		int words = index.getWordCount(location);
+		assertFalse(FileProcessor.needsIndexing(path, index));
+
+		Files.writeString(path, "changed\n", UTF_8, StandardOpenOption.APPEND);
+		assertTrue(FileProcessor.needsIndexing(path, index));
+		assertEquals(words, index.getWordCount(location));
+		assertTrue(index.hasFileinCount(location));
+
+		FileProcessor.processPath(directory, index);
+		assertEquals(words + 1, index.getWordCount(location));
+		assertFalse(FileProcessor.needsIndexing(path, index));
+	}
+
+	/**
+	 * Changes the files in every way a later run has to notice, indexes them
+	 * again, and checks the index against one built from scratch.
+	 *
+	 * @param index the index of the files before the changes
+	 * @param reindex indexes the changed files into the same index
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void assertReindexed(InvertedIndex index, Reindex reindex) throws IOException {
+		assertFresh(index);
+		assertTrue(index.viewStampedFiles().contains(empty.toString()));
+		assertFalse(index.viewFiles().contains(empty.toString()));
+
+		// edited, with a different size
+		Path edited = files.get(0);
+		Files.writeString(edited, "edited text\nnew words here\n", UTF_8);
+
+		// edited, with the same size
+		Path same = files.get(1);
+		FileTime modified = Files.getLastModifiedTime(same);
+		byte[] bytes = Files.readAllBytes(same);
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) (bytes[i] == 'a' ? 'e' : bytes[i]);
+		}
+		Files.write(same, bytes);
+		Files.setLastModifiedTime(same, FileTime.fromMillis(modified.toMillis() + 1000));
+
+		// touched, without changing its contents
+		Path touched = files.get(2);
+		Files.setLastModifiedTime(touched, FileTime.fromMillis(Files.getLastModifiedTime(touched).toMillis() + 1000));
+
+		// emptied, and a file that was empty now has words
+		Path emptied = files.get(3);
+		Files.writeString(emptied, "", UTF_8);
+		Files.writeString(blank, "no longer blank\n", UTF_8);
+
+		// deleted, including an empty file and a whole directory
+		Path deleted = files.get(4);
+		Files.delete(deleted);
+		Files.delete(empty);
+		TestCorpus.delete(directory.resolve("nested").resolve("deeper"));
+
+		// added
+		Path added = directory.resolve("generated").resolve("added.txt");
+		Files.writeString(added, "a file that was not there before\n", UTF_8);
+
+		reindex.run();
+		assertFresh(index);
+
+		for (Path path : List.of(deleted, empty, files.get(files.size() - 1))) {
+			String location = path.toString();
+			assertEquals(0, index.getWordCount(location), location);
+			assertFalse(index.hasFileinCount(location), location);
+			assertNull(index.getStamp(location), location);
+			assertFalse(index.viewStampedFiles().contains(location), location);
+		}
+
+		assertEquals(0, index.getWordCount(emptied.toString()));
+		assertFalse(index.viewFiles().contains(emptied.toString()));
+		assertTrue(index.viewStampedFiles().contains(emptied.toString()));
+		assertEquals(5, index.getWordCount(edited.toString()));
+		assertEquals(3, index.getWordCount(blank.toString()));
+
+		// nothing changed since, so nothing is read again
+		long version = index.getVersion();
+		reindex.run();
+		assertEquals(version, index.getVersion());
+		assertFresh(index);
+	}
+
+	/**
+	 * Asserts that an index holds the same words, word counts, and stamps as an
+	 * index built from scratch from the files as they are now.
+	 *
+	 * @param actual the index being tested
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void assertFresh(InvertedIndex actual) throws IOException {
+		InvertedIndex expected = new InvertedIndex();
+		FileProcessor.processPath(directory, expected);
+
+		assertEquals(expected.toString(), actual.toString());
+		assertEquals(expected.getTotalWords(), actual.getTotalWords());
+		assertEquals(expected.viewFiles(), actual.viewFiles());
+		assertEquals(expected.viewStampedFiles(), actual.viewStampedFiles());
+
+		for (String location : expected.viewStampedFiles()) {
+			assertEquals(expected.getWordCount(location), actual.getWordCount(location), location);
+			assertEquals(expected.getStamp(location).toString(), actual.getStamp(location).toString(), location);
+		}
+
+		Path first = directory.resolveSibling(directory.getFileName() + "-expected.json");
+		Path second = directory.resolveSibling(directory.getFileName() + "-actual.json");
+
+		try {
+			expected.writeWordCountMap(first);
+			actual.writeWordCountMap(second);
+			assertEquals(Files.readString(first, UTF_8), Files.readString(second, UTF_8));
+
+			expected.writeIndexMap(first);
+			actual.writeIndexMap(second);
+			assertEquals(Files.readString(first, UTF_8), Files.readString(second, UTF_8));
+		}
+		finally {
+			Files.deleteIfExists(first);
+			Files.deleteIfExists(second);
+		}
+	}
+
+	/** Indexes the changed files again. */
+	@FunctionalInterface
+	private interface Reindex {
+		/**
+		 * Indexes the files.
+		 *
+		 * @throws IOException if an I/O error occurs
+		 */
+		public abstract void run() throws IOException;
+	}
+}
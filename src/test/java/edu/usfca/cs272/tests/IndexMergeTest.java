@@ -0,0 +1,187 @@
+package edu.usfca.cs272.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import edu.usfca.cs272.InvertedIndex;
+import edu.usfca.cs272.Scorer;
+import edu.usfca.cs272.ThreadSafeInvertedIndex;
+
+/**
+ * Tests that merging one index into another, as the file processors do with
+ * their local buffers, gives the same index as adding every word to one index,
+ * and that the merged postings are copies that neither index shares.
+ */
+public class IndexMergeTest {
+	/** The seed of the generated documents. */
+	private static final long SEED = 20;
+
+	/** The number of words in each generated document. */
+	private static final int LENGTH = 80;
+
+	/**
+	 * Checks merging documents into an index that already holds other documents
+	 * with many of the same words.
+	 *
+	 * @param safe whether the target is thread-safe
+	 */
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	public void testMergeIntoPopulated(boolean safe) {
+		List<List<String>> documents = documents(100);
+		InvertedIndex expected = new InvertedIndex();
+		InvertedIndex target = create(safe);
+		InvertedIndex source = new InvertedIndex();
+
+		for (int document = 0; document < documents.size(); document++) {
+			add(expected, documents.get(document), document);
+			add(document < 60 ? target : source, documents.get(document), document);
+		}
+
+		target.addAll(source);
+		assertSameIndex(expected, target);
+	}
+
+	/**
+	 * Checks merging the later part of documents into an index that holds their
+	 * earlier part, shifting the positions of the later part.
+	 *
+	 * @param safe whether the target is thread-safe
+	 */
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	public void testMergeParts(boolean safe) {
+		List<List<String>> documents = documents(30);
+		InvertedIndex expected = new InvertedIndex();
+		InvertedIndex target = create(safe);
+		InvertedIndex source = new InvertedIndex();
+		int split = LENGTH / 3;
+
+		for (int document = 0; document < documents.size(); document++) {
+			List<String> words = documents.get(document);
+			add(expected, words, document);
+			add(target, words.subList(0, split), document);
+			add(source, words.subList(split, words.size()), document);
+		}
+
+		target.addAll(source, split);
+		assertSameIndex(expected, target);
+	}
+
+	/**
+	 * Checks that changing either index after a merge leaves the other one as it
+	 * was, whether or not the target already held the merged words and documents.
+	 *
+	 * @param populated whether the target holds documents before the merge
+	 */
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	public void testNotAliased(boolean populated) {
+		List<List<String>> documents = documents(20);
+		InvertedIndex target = new InvertedIndex();
+		InvertedIndex source = new InvertedIndex();
+
+		for (int document = 0; document < documents.size(); document++) {
+			add(populated && document % 2 == 0 ? target : source, documents.get(document), document);
+		}
+
+		target.addAll(source);
+		String merged = target.toString();
+
+		// new positions for words and documents that both indexes hold
+		for (int document = 0; document < documents.size(); document++) {
+			for (String word : new TreeSet<>(documents.get(document))) {
+				source.addWord(word, TestCorpus.location(document), 1000 + document);
+			}
+		}
+		source.removeDocument(TestCorpus.location(1));
+		assertEquals(merged, target.toString());
+
+		source = new InvertedIndex();
+		for (int document = 0; document < documents.size(); document++) {
+			add(source, documents.get(document), document);
+		}
+		String original = source.toString();
+
+		target = new InvertedIndex();
+		target.addAll(source);
+		for (int document = 0; document < documents.size(); document++) {
+			for (String word : new TreeSet<>(documents.get(document))) {
+				target.addWord(word, TestCorpus.location(document), 2000 + document);
+			}
+		}
+		target.removeDocument(TestCorpus.location(3));
+		assertEquals(original, source.toString());
+	}
+
+	/**
+	 * Asserts that two indexes hold the same words, positions, and word counts,
+	 * and give the same search results.
+	 *
+	 * @param expected the index built by adding every word
+	 * @param actual the merged index
+	 */
+	private static void assertSameIndex(InvertedIndex expected, InvertedIndex actual) {
+		assertEquals(expected.toString(), actual.toString());
+		assertEquals(expected.getTotalWords(), actual.getTotalWords());
+		assertEquals(expected.viewFiles(), actual.viewFiles());
+
+		for (String location : expected.viewFiles()) {
+			assertEquals(expected.getWordCount(location), actual.getWordCount(location), location);
+		}
+
+		Random random = new Random(SEED);
+		for (int i = 0; i < 50; i++) {
+			TreeSet<String> query = TestCorpus.query(random, 1 + random.nextInt(3));
+
+			for (boolean partial : new boolean[] { false, true }) {
+				assertEquals(TestCorpus.render(expected.search(query, partial, Integer.MAX_VALUE, Scorer.forName("bm25"))),
+						TestCorpus.render(actual.search(query, partial, Integer.MAX_VALUE, Scorer.forName("bm25"))),
+						query + " partial: " + partial);
+			}
+		}
+	}
+
+	/**
+	 * Generates the words of several documents.
+	 *
+	 * @param count the number of documents
+	 * @return the words of each document
+	 */
+	private static List<List<String>> documents(int count) {
+		Random random = new Random(SEED);
+		ArrayList<List<String>> documents = new ArrayList<>();
+		for (int document = 0; document < count; document++) {
+			documents.add(TestCorpus.words(random, LENGTH));
+		}
+		return documents;
+	}
+
+	/**
+	 * Adds words to an index as a document, starting from position 1.
+	 *
+	 * @param index the index
+	 * @param words the words of the document
+	 * @param document the number of the document
+	 */
+	private static void add(InvertedIndex index, List<String> words, int document) {
+		index.addWords(new ArrayList<>(words), TestCorpus.location(document));
+	}
+
+	/**
+	 * Creates an empty index.
+	 *
+	 * @param safe whether the index is thread-safe
+	 * @return the index
+	 */
+	private static InvertedIndex create(boolean safe) {
+		return safe ? new ThreadSafeInvertedIndex() : new InvertedIndex();
+	}
+}
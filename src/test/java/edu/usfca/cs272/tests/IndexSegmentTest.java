@@ -0,0 +1,405 @@
+package edu.usfca.cs272.tests;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import edu.usfca.cs272.FileStamp;
+import edu.usfca.cs272.IndexSegment;
+import edu.usfca.cs272.InvertedIndex;
+import edu.usfca.cs272.Scorer;
+import edu.usfca.cs272.ThreadSafeInvertedIndex;
+
+/**
+ * Tests that an {@link IndexSegment} gives back the index it was written from,
+ * whether it is read onto the heap or mapped, that segments written by older
+ * versions can still be read, and that invalid segments are rejected.
+ */
+public class IndexSegmentTest {
+	/** The seed of the generated corpus. */
+	private static final long SEED = 5;
+
+	/** The directory the segments are written to. */
+	private Path directory;
+
+	/**
+	 * Creates the output directory.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@BeforeEach
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("segments");
+	}
+
+	/**
+	 * Deletes the output directory.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@AfterEach
+	public void cleanup() throws IOException {
+		TestCorpus.delete(directory);
+	}
+
+	/**
+	 * Checks that reading or mapping a segment gives the same words, word counts,
+	 * and stamps as the index it was written from, including an index with
+	 * removed documents and files without any words.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testRoundTrip() throws IOException {
+		InvertedIndex expected = generate();
+		Path segment = directory.resolve("index.bin");
+		expected.writeSegment(segment);
+
+		InvertedIndex read = new InvertedIndex();
+		IndexSegment.read(segment, read);
+		assertSameIndex(expected, read);
+
+		InvertedIndex mapped = new InvertedIndex();
+		IndexSegment.map(segment, mapped);
+		assertSameIndex(expected, mapped);
+
+		ThreadSafeInvertedIndex safe = new ThreadSafeInvertedIndex();
+		IndexSegment.map(segment, safe);
+		assertSameIndex(expected, safe);
+
+		// a segment written from a mapped index is the same file
+		Path again = directory.resolve("again.bin");
+		mapped.writeSegment(again);
+		assertArrayEquals(Files.readAllBytes(segment), Files.readAllBytes(again));
+	}
+
+	/**
+	 * Checks that a frozen mapped index gives the same search results as the
+	 * index it was written from, with every scorer and both kinds of search.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testMappedSearch() throws IOException {
+		InvertedIndex expected = generate();
+		Path segment = directory.resolve("index.bin");
+		expected.writeSegment(segment);
+
+		InvertedIndex mapped = new InvertedIndex();
+		IndexSegment.map(segment, mapped);
+		expected.freeze();
+		mapped.freeze();
+
+		Random random = new Random(SEED);
+		for (int i = 0; i < 200; i++) {
+			TreeSet<String> query = TestCorpus.query(random, 1 + random.nextInt(3));
+			boolean partial = random.nextBoolean();
+			Scorer scorer = Scorer.forName(List.of("count", "tfidf", "bm25").get(random.nextInt(3)));
+			int limit = random.nextBoolean() ? Integer.MAX_VALUE : 1 + random.nextInt(10);
+
+			assertEquals(TestCorpus.render(expected.search(query, partial, limit, scorer)),
+					TestCorpus.render(mapped.search(query, partial, limit, scorer)), query + " " + scorer);
+		}
+	}
+
+	/**
+	 * Checks that a mapped index can still be changed, and that changing it gives
+	 * the same index as changing a copy on the heap, without changing the file.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testMappedChanges() throws IOException {
+		Path segment = directory.resolve("index.bin");
+		generate().writeSegment(segment);
+		byte[] before = Files.readAllBytes(segment);
+
+		InvertedIndex read = new InvertedIndex();
+		IndexSegment.read(segment, read);
+		InvertedIndex mapped = new InvertedIndex();
+		IndexSegment.map(segment, mapped);
+
+		for (InvertedIndex index : List.of(read, mapped)) {
+			String first = index.viewFiles().iterator().next();
+			String word = index.viewWords().iterator().next();
+			index.addWord(word, first, 1000);
+			index.addWord(word, first, 2);
+			index.removeDocument(TestCorpus.location(3));
+			TestCorpus.addDocument(index, SEED, 100, 50);
+		}
+
+		assertSameIndex(read, mapped);
+		assertArrayEquals(before, Files.readAllBytes(segment));
+	}
+
+	/**
+	 * Checks that writing a segment over the file a mapped index was mapped from
+	 * does not change the mapped index.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testOverwriteMapped() throws IOException {
+		InvertedIndex expected = generate();
+		Path segment = directory.resolve("index.bin");
+		expected.writeSegment(segment);
+
+		InvertedIndex mapped = new InvertedIndex();
+		IndexSegment.map(segment, mapped);
+		new InvertedIndex().writeSegment(segment);
+		assertSameIndex(expected, mapped);
+
+		mapped.writeSegment(segment);
+		InvertedIndex read = new InvertedIndex();
+		IndexSegment.read(segment, read);
+		assertSameIndex(expected, read);
+	}
+
+	/**
+	 * Checks that the segments checked in for every version of the format are
+	 * read with the documents, postings, and stamps that version holds.
+	 *
+	 * @param version the version of the segment format
+	 * @throws IOException if an I/O error occurs
+	 */
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 2, 3 })
+	public void testVersions(int version) throws IOException {
+		Path segment = fixture(version);
+
+		InvertedIndex read = new InvertedIndex();
+		IndexSegment.read(segment, read);
+		InvertedIndex mapped = new InvertedIndex();
+		IndexSegment.map(segment, mapped);
+
+		for (InvertedIndex index : List.of(read, mapped)) {
+			assertEquals(Set.of("docs/a.txt", "docs/b.txt"), index.viewFiles());
+			assertEquals(3, index.getWordCount("docs/a.txt"));
+			assertEquals(2, index.getWordCount("docs/b.txt"));
+			assertEquals(5, index.getTotalWords());
+			assertEquals(Set.of("hello", "world"), index.viewWords());
+			assertEquals(Set.of(1, 3), index.viewPositions("hello", "docs/a.txt"));
+			assertEquals(Set.of(2), index.viewPositions("world", "docs/a.txt"));
+			assertEquals(Set.of(1, 2), index.viewPositions("world", "docs/b.txt"));
+
+			if (version >= 2) {
+				assertEquals(new FileStamp(17, 1000, 11).toString(), index.getStamp("docs/a.txt").toString());
+			}
+			else {
+				assertNull(index.getStamp("docs/a.txt"));
+			}
+
+			if (version >= 3) {
+				assertEquals(new FileStamp(12, 2000, 22).toString(), index.getStamp("docs/b.txt").toString());
+				assertEquals(new FileStamp(0, 3000, 0).toString(), index.getStamp("docs/empty.txt").toString());
+				assertEquals(Set.of("docs/a.txt", "docs/b.txt", "docs/empty.txt"), index.viewStampedFiles());
+			}
+			else {
+				assertNull(index.getStamp("docs/b.txt"));
+				assertNull(index.getStamp("docs/empty.txt"));
+			}
+		}
+
+		assertSameIndex(read, mapped);
+	}
+
+	/**
+	 * Checks that the current version of the format still writes the same bytes
+	 * as the segment checked in for it.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testWriteCurrentVersion() throws IOException {
+		InvertedIndex index = new InvertedIndex();
+		index.addWord("hello", "docs/a.txt", 1);
+		index.addWord("world", "docs/a.txt", 2);
+		index.addWord("hello", "docs/a.txt", 3);
+		index.addWord("world", "docs/b.txt", 1);
+		index.addWord("world", "docs/b.txt", 2);
+		index.setStamp("docs/a.txt", new FileStamp(17, 1000, 11));
+		index.setStamp("docs/b.txt", new FileStamp(12, 2000, 22));
+		index.setStamp("docs/empty.txt", new FileStamp(0, 3000, 0));
+
+		Path segment = directory.resolve("index.bin");
+		index.writeSegment(segment);
+		assertEquals(3, IndexSegment.VERSION);
+		assertArrayEquals(Files.readAllBytes(fixture(IndexSegment.VERSION)), Files.readAllBytes(segment));
+	}
+
+	/**
+	 * Checks that files that are not segments, or are of an unknown version, are
+	 * rejected.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testBadHeader() throws IOException {
+		byte[] bytes = Files.readAllBytes(fixture(IndexSegment.VERSION));
+
+		Path text = directory.resolve("text.bin");
+		Files.writeString(text, "not an index segment", UTF_8);
+		assertRejected(text);
+
+		Path magic = directory.resolve("magic.bin");
+		byte[] copy = bytes.clone();
+		copy[0] ^= 1;
+		Files.write(magic, copy);
+		assertRejected(magic);
+
+		for (int version : new int[] { IndexSegment.MIN_VERSION - 1, IndexSegment.VERSION + 1 }) {
+			Path future = directory.resolve("version-" + version + ".bin");
+			copy = bytes.clone();
+			ByteBuffer.wrap(copy).putInt(Integer.BYTES, version);
+			Files.write(future, copy);
+			assertRejected(future);
+		}
+
+		Path empty = directory.resolve("empty.bin");
+		Files.write(empty, new byte[0]);
+		assertRejected(empty);
+	}
+
+	/**
+	 * Checks that every segment cut short anywhere is rejected, by both readers.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testTruncated() throws IOException {
+		InvertedIndex index = TestCorpus.fill(new InvertedIndex(), SEED, 3, 20);
+		index.setStamp(TestCorpus.location(0), new FileStamp(1, 2, 3));
+		index.setStamp("empty.txt", new FileStamp(0, 0, 0));
+
+		Path segment = directory.resolve("index.bin");
+		index.writeSegment(segment);
+		byte[] bytes = Files.readAllBytes(segment);
+		Path truncated = directory.resolve("truncated.bin");
+
+		for (int length = 0; length < bytes.length; length++) {
+			Files.write(truncated, Arrays.copyOf(bytes, length));
+			assertRejected(truncated);
+		}
+	}
+
+	/**
+	 * Checks that a mapped segment whose postings refer to documents that do not
+	 * exist is rejected before it can be searched, and that segments can only be
+	 * mapped into an empty index.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testCorruptPostings() throws IOException {
+		byte[] bytes = Files.readAllBytes(fixture(IndexSegment.VERSION));
+
+		// the document id of the last posting, just before its positions
+		int last = bytes.length - (3 * Integer.BYTES + 2) - Integer.BYTES;
+		assertEquals(1, ByteBuffer.wrap(bytes).getInt(last));
+
+		Path corrupt = directory.resolve("corrupt.bin");
+		for (int document : new int[] { -1, 0, 2 }) {
+			ByteBuffer.wrap(bytes).putInt(last, document);
+			Files.write(corrupt, bytes);
+			assertThrows(IOException.class, () -> IndexSegment.map(corrupt, new InvertedIndex()),
+					"document: " + document);
+		}
+
+		InvertedIndex index = new InvertedIndex();
+		index.addWord("hello", "other.txt", 1);
+		assertThrows(IllegalArgumentException.class, () -> IndexSegment.map(fixture(IndexSegment.VERSION), index));
+	}
+
+	/**
+	 * Generates an index with removed documents and stamps, both of documents and
+	 * of files without any words.
+	 *
+	 * @return the generated index
+	 */
+	private static InvertedIndex generate() {
+		InvertedIndex index = TestCorpus.fill(new InvertedIndex(), SEED, 60, 120);
+		Random random = new Random(SEED);
+
+		for (int i = 0; i < 60; i += 2) {
+			index.setStamp(TestCorpus.location(i), new FileStamp(random.nextInt(1000), random.nextLong(), random.nextLong()));
+		}
+
+		index.setStamp("empty-1.txt", new FileStamp(0, 1, 2));
+		index.setStamp("empty-2.txt", new FileStamp(0, 3, 4));
+		index.removeDocuments(List.of(TestCorpus.location(1), TestCorpus.location(2), TestCorpus.location(30)));
+		return index;
+	}
+
+	/**
+	 * Asserts that two indexes hold the same documents, words, positions, word
+	 * counts, and stamps.
+	 *
+	 * @param expected the expected index
+	 * @param actual the index being tested
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void assertSameIndex(InvertedIndex expected, InvertedIndex actual) throws IOException {
+		assertEquals(expected.toString(), actual.toString());
+		assertEquals(expected.getTotalWords(), actual.getTotalWords());
+		assertEquals(expected.viewStampedFiles(), actual.viewStampedFiles());
+
+		for (String location : expected.viewStampedFiles()) {
+			assertEquals(String.valueOf(expected.getStamp(location)), String.valueOf(actual.getStamp(location)), location);
+		}
+
+		Path first = directory.resolve("expected.json");
+		Path second = directory.resolve("actual.json");
+
+		expected.writeIndexMap(first);
+		actual.writeIndexMap(second);
+		assertEquals(Files.readString(first, UTF_8), Files.readString(second, UTF_8));
+
+		expected.writeWordCountMap(first);
+		actual.writeWordCountMap(second);
+		assertEquals(Files.readString(first, UTF_8), Files.readString(second, UTF_8));
+	}
+
+	/**
+	 * Asserts that a file is rejected as a segment by both readers.
+	 *
+	 * @param segment the path of the file
+	 */
+	private static void assertRejected(Path segment) {
+		assertThrows(IOException.class, () -> IndexSegment.read(segment, new InvertedIndex()), segment.toString());
+		assertThrows(IOException.class, () -> IndexSegment.map(segment, new InvertedIndex()), segment.toString());
+	}
+
+	/**
+	 * Returns the path of the segment checked in for a version of the format.
+	 *
+	 * @param version the version of the segment format
+	 * @return the path of the segment
+	 */
+	private static Path fixture(int version) {
+		try {
+			return Path.of(IndexSegmentTest.class.getResource("/segments/v" + version + ".bin").toURI());
+		}
+		catch (URISyntaxException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package edu.usfca.cs272.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import edu.usfca.cs272.InvertedIndex;
+import edu.usfca.cs272.ThreadSafeInvertedIndex;
+
+/**
+ * Tests that the word and corpus statistics kept by the index stay equal to the
+ * statistics counted from the documents, as documents are added, merged, and
+ * removed.
+ */
+public class IndexStatisticsTest {
+	/** The seed of the generated documents and changes. */
+	private static final long SEED = 9;
+
+	/**
+	 * Applies random changes to an index, and checks every statistic after each
+	 * one and once the index is frozen.
+	 *
+	 * @param safe whether the index is thread-safe
+	 */
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	public void testRandomChanges(boolean safe) {
+		Random random = new Random(SEED);
+		InvertedIndex index = safe ? new ThreadSafeInvertedIndex() : new InvertedIndex();
+		TreeMap<String, List<String>> documents = new TreeMap<>();
+		assertStatistics(documents, index);
+
+		for (int change = 0; change < 300; change++) {
+			String location = TestCorpus.location(random.nextInt(60));
+			List<String> words = TestCorpus.words(random, 1 + random.nextInt(40));
+
+			switch (random.nextInt(5)) {
+				case 0 -> {
+					// a new document, or the end of an existing one
+					List<String> existing = documents.getOrDefault(location, List.of());
+					ArrayList<String> combined = new ArrayList<>(existing);
+					combined.addAll(words);
+					documents.put(location, combined);
+
+					for (int i = 0; i < words.size(); i++) {
+						index.addWord(words.get(i), location, existing.size() + i + 1);
+					}
+				}
+				case 1 -> {
+					// merged from a buffer, as a whole document or the end of one
+					List<String> existing = documents.getOrDefault(location, List.of());
+					ArrayList<String> combined = new ArrayList<>(existing);
+					combined.addAll(words);
+					documents.put(location, combined);
+
+					InvertedIndex buffer = new InvertedIndex();
+					buffer.addWords(new ArrayList<>(words), location);
+					index.addAll(buffer, existing.size());
+				}
+				case 2 -> {
+					documents.remove(location);
+					index.removeDocument(location);
+				}
+				case 3 -> {
+					ArrayList<String> removed = new ArrayList<>();
+					for (int i = random.nextInt(10); i > 0; i--) {
+						removed.add(TestCorpus.location(random.nextInt(60)));
+					}
+					removed.forEach(documents::remove);
+					index.removeDocuments(removed);
+				}
+				default -> {
+					documents.remove(location);
+					index.removeDocument(location);
+					documents.put(location, words);
+					index.addWords(new ArrayList<>(words), location);
+				}
+			}
+
+			assertStatistics(documents, index);
+		}
+
+		index.freeze();
+		assertStatistics(documents, index);
+	}
+
+	/**
+	 * Asserts that the statistics of an index match those counted from its
+	 * documents.
+	 *
+	 * @param documents the words of each document in order
+	 * @param index the index of the documents
+	 */
+	private static void assertStatistics(TreeMap<String, List<String>> documents, InvertedIndex index) {
+		TreeMap<String, Integer> occurrences = new TreeMap<>();
+		TreeMap<String, Integer> frequencies = new TreeMap<>();
+		long total = 0;
+
+		for (var entry : documents.entrySet()) {
+			List<String> words = entry.getValue();
+			total += words.size();
+			assertEquals(words.size(), index.getWordCount(entry.getKey()), entry.getKey());
+
+			for (String word : words) {
+				occurrences.merge(word, 1, Integer::sum);
+			}
+			for (String word : new TreeSet<>(words)) {
+				frequencies.merge(word, 1, Integer::sum);
+			}
+		}
+
+		assertEquals(total, index.getTotalWords());
+		assertEquals(documents.size(), index.getFileCount());
+		assertEquals(documents.keySet(), index.viewFiles());
+		assertEquals(occurrences.keySet(), index.viewWords());
+
+		for (String word : occurrences.keySet()) {
+			assertEquals(occurrences.get(word), index.numWords(word), word);
+			assertEquals(frequencies.get(word), index.numDocuments(word), word);
+		}
+
+		assertEquals(0, index.numWords("missing"));
+		assertEquals(0, index.numDocuments("missing"));
+	}
+}
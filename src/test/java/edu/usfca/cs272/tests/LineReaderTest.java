@@ -0,0 +1,324 @@
+package edu.usfca.cs272.tests;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Checksum;
+
+import org.junit.jupiter.api.Test;
+
+import edu.usfca.cs272.FileStamp;
+import edu.usfca.cs272.LineReader;
+
+/**
+ * Tests that {@link LineReader} splits text into the same lines as
+ * {@link BufferedReader#readLine()}, however the bytes are split into reads and
+ * buffers, and that it checksums every byte it reads.
+ */
+public class LineReaderTest {
+	/** The seed of the generated text. */
+	private static final long SEED = 24;
+
+	/** The buffer sizes to read with, including sizes below the minimum. */
+	private static final int[] BUFFER_SIZES = { 1, 16, 17, 31, 64, 1000, LineReader.BUFFER_SIZE };
+
+	/** The most bytes each read from the channel returns, or 0 for no limit. */
+	private static final int[] READ_SIZES = { 1, 2, 3, 5, 0 };
+
+	/**
+	 * Pieces of text to generate lines from, including every kind of line end,
+	 * characters of every length in UTF-8, and surrogate pairs.
+	 */
+	private static final String[] PIECES = { "a", "word ", "\n", "\r", "\r\n", "\n\r", "\r\r", "é", "日本", "😀", "𝄞x",
+			" ", "\t" };
+
+	/**
+	 * Checks random text against {@link BufferedReader} with every buffer and read
+	 * size.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testRandomText() throws IOException {
+		Random random = new Random(SEED);
+
+		for (int trial = 0; trial < 300; trial++) {
+			StringBuilder text = new StringBuilder();
+			int pieces = random.nextInt(trial < 100 ? 20 : 400);
+			for (int i = 0; i < pieces; i++) {
+				text.append(PIECES[random.nextInt(PIECES.length)]);
+			}
+
+			assertSameLines(text.toString());
+		}
+	}
+
+	/**
+	 * Checks carriage returns on their own, at the end of the text, and followed by
+	 * a line feed that is split into a later read or buffer.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testLineEnds() throws IOException {
+		List<String> texts = List.of("", "\n", "\r", "\r\n", "\n\n", "\r\r", "\n\r", "a", "a\r", "a\rb", "a\r\rb\r",
+				"a\r\nb\r\n", "a\n\rb", "\r\n\r\n\r", "x".repeat(15) + "\r\n" + "y".repeat(15) + "\r",
+				"x".repeat(16) + "\r\ny", "x".repeat(31) + "\r\n\r\n" + "z".repeat(40));
+
+		for (String text : texts) {
+			assertSameLines(text);
+		}
+
+		// a carriage return as the last byte of every possible read
+		String text = "one\r\ntwo\r\n\r\nthree\rfour\r\n";
+		for (int split = 0; split <= text.length(); split++) {
+			assertEquals(bufferedLines(text), readLines(text.getBytes(UTF_8), 16, split), "split at " + split);
+		}
+	}
+
+	/**
+	 * Checks characters that take several bytes, including surrogate pairs,
+	 * split across reads and across the end of the character buffer.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testSurrogatePairs() throws IOException {
+		for (int prefix = 0; prefix < 40; prefix++) {
+			String padding = "p".repeat(prefix);
+			assertSameLines(padding + "😀😀😀\n" + padding + "𝄞\r\n😀");
+			assertSameLines(padding + "😀".repeat(40));
+			assertSameLines(padding + "é日😀\r" + "😀".repeat(prefix));
+		}
+	}
+
+	/**
+	 * Checks that lines much longer than the buffers are read whole.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testLongLines() throws IOException {
+		assertSameLines("x".repeat(100_000) + "\n" + "日本😀".repeat(20_000) + "\r\nend");
+	}
+
+	/**
+	 * Checks that malformed bytes, and a character cut off by the end of the
+	 * input, are reported as errors with every buffer and read size.
+	 */
+	@Test
+	public void testMalformed() {
+		List<byte[]> malformed = List.of(
+				new byte[] { 'a', (byte) 0xFF, 'b' },
+				new byte[] { 'a', '\n', (byte) 0x80 },
+				new byte[] { (byte) 0xC0, (byte) 0x80 },
+				new byte[] { (byte) 0xED, (byte) 0xA0, (byte) 0x80 },
+				new byte[] { 'a', '\n', (byte) 0xE6, (byte) 0x97 },
+				new byte[] { (byte) 0xF0, (byte) 0x9F, (byte) 0x98 },
+				new byte[] { (byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80 });
+
+		for (byte[] bytes : malformed) {
+			for (int bufferSize : BUFFER_SIZES) {
+				for (int readSize : READ_SIZES) {
+					assertThrows(CharacterCodingException.class, () -> readLines(bytes, bufferSize, readSize));
+				}
+			}
+
+			assertThrows(CharacterCodingException.class, () -> readAll(new LineReader(ByteBuffer.wrap(bytes))));
+		}
+	}
+
+	/**
+	 * Checks that the checksum of the bytes read matches the checksum of the
+	 * whole file, however the file is read.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testChecksum() throws IOException {
+		Random random = new Random(SEED);
+		Path file = Files.createTempFile("lines", ".txt");
+
+		try {
+			for (int length : new int[] { 0, 1, 15, 16, 17, 1000, 100_000 }) {
+				StringBuilder text = new StringBuilder();
+				while (text.length() < length) {
+					text.append(PIECES[random.nextInt(PIECES.length)]);
+				}
+				Files.writeString(file, text, UTF_8);
+				long expected = FileStamp.hash(file);
+
+				for (int bufferSize : BUFFER_SIZES) {
+					Checksum checksum = FileStamp.checksum();
+					try (LineReader reader = new LineReader(FileChannel.open(file), checksum, bufferSize)) {
+						readAll(reader);
+					}
+					assertEquals(expected, checksum.getValue(), length + " bytes, buffer " + bufferSize);
+
+					for (int readSize : READ_SIZES) {
+						checksum = FileStamp.checksum();
+						byte[] bytes = Files.readAllBytes(file);
+						try (LineReader reader = new LineReader(new Trickle(bytes, readSize), checksum, bufferSize)) {
+							readAll(reader);
+						}
+						assertEquals(expected, checksum.getValue(), length + " bytes, read " + readSize);
+					}
+				}
+			}
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * Asserts that text is split into the same lines as {@link BufferedReader}
+	 * does, with every buffer and read size, and from a buffer of bytes.
+	 *
+	 * @param text the text to split
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void assertSameLines(String text) throws IOException {
+		List<String> expected = bufferedLines(text);
+		byte[] bytes = text.getBytes(UTF_8);
+
+		for (int bufferSize : BUFFER_SIZES) {
+			for (int readSize : READ_SIZES) {
+				assertEquals(expected, readLines(bytes, bufferSize, readSize),
+						"buffer " + bufferSize + ", read " + readSize + ": " + escape(text));
+			}
+		}
+
+		assertEquals(expected, readAll(new LineReader(ByteBuffer.wrap(bytes))), escape(text));
+	}
+
+	/**
+	 * Splits text into lines with {@link BufferedReader}.
+	 *
+	 * @param text the text to split
+	 * @return the lines
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static List<String> bufferedLines(String text) throws IOException {
+		ArrayList<String> lines = new ArrayList<>();
+
+		try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		}
+
+		return lines;
+	}
+
+	/**
+	 * Splits bytes into lines with a {@link LineReader} of a channel.
+	 *
+	 * @param bytes the bytes to split
+	 * @param bufferSize the size of the buffers of the reader
+	 * @param readSize the most bytes each read from the channel returns, or 0
+	 *   for no limit
+	 * @return the lines
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static List<String> readLines(byte[] bytes, int bufferSize, int readSize) throws IOException {
+		try (LineReader reader = new LineReader(new Trickle(bytes, readSize), null, bufferSize)) {
+			return readAll(reader);
+		}
+	}
+
+	/**
+	 * Reads every line of a reader, and checks that it stays at the end.
+	 *
+	 * @param reader the reader
+	 * @return the lines
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static List<String> readAll(LineReader reader) throws IOException {
+		ArrayList<String> lines = new ArrayList<>();
+		CharSequence line;
+
+		while ((line = reader.readLine()) != null) {
+			lines.add(line.toString());
+		}
+
+		assertNull(reader.readLine());
+		return lines;
+	}
+
+	/**
+	 * Makes line ends visible in a message.
+	 *
+	 * @param text the text
+	 * @return the text with line ends escaped
+	 */
+	private static String escape(String text) {
+		String shown = text.length() > 200 ? text.substring(0, 200) + "..." : text;
+		return shown.replace("\r", "\\r").replace("\n", "\\n");
+	}
+
+	/** A channel of bytes in memory that returns at most a few bytes per read. */
+	private static class Trickle implements ReadableByteChannel {
+		/** The bytes not read yet. */
+		private final ByteBuffer bytes;
+
+		/** The most bytes each read returns, or 0 for no limit. */
+		private final int readSize;
+
+		/** Whether the channel is open. */
+		private boolean open;
+
+		/**
+		 * Constructs a channel of the given bytes.
+		 *
+		 * @param bytes the bytes to read
+		 * @param readSize the most bytes each read returns, or 0 for no limit
+		 */
+		private Trickle(byte[] bytes, int readSize) {
+			this.bytes = ByteBuffer.wrap(bytes);
+			this.readSize = readSize;
+			this.open = true;
+		}
+
+		@Override
+		public int read(ByteBuffer destination) {
+			if (!bytes.hasRemaining()) {
+				return -1;
+			}
+
+			int count = Math.min(bytes.remaining(), destination.remaining());
+			if (readSize > 0) {
+				count = Math.min(count, readSize);
+			}
+
+			destination.put(bytes.slice(bytes.position(), count));
+			bytes.position(bytes.position() + count);
+			return count;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public void close() {
+			open = false;
+		}
+	}
+}
@@ -0,0 +1,240 @@
+package edu.usfca.cs272.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import edu.usfca.cs272.InvertedIndex;
+import edu.usfca.cs272.InvertedIndex.IndexSearcher;
+import edu.usfca.cs272.Query;
+import edu.usfca.cs272.QueryParser;
+import edu.usfca.cs272.QueryProcessor;
+import edu.usfca.cs272.Scorer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM;
+
+/**
+ * Tests that conjunctive queries and excluded words match the same documents as
+ * a naive scan over the words of each document, including queries that can
+ * match nothing.
+ */
+public class OperatorTest {
+	/** The seed of the generated documents and queries. */
+	private static final long SEED = 13;
+
+	/** A small vocabulary where some words are prefixes of others. */
+	private static final String[] VOCABULARY = { "ab", "abc", "b", "bc", "bcd", "c" };
+
+	/**
+	 * Checks random conjunctive and disjunctive queries with excluded words
+	 * against a naive scan, on an index before and after it is frozen.
+	 *
+	 * @param partial whether to search for partial matches
+	 */
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	public void testRandomQueries(boolean partial) {
+		Random random = new Random(SEED);
+		InvertedIndex index = new InvertedIndex();
+		ArrayList<List<String>> documents = new ArrayList<>();
+
+		for (int document = 0; document < 100; document++) {
+			List<String> words = randomWords(random, 1 + random.nextInt(6));
+			documents.add(words);
+			index.addWords(new ArrayList<>(words), TestCorpus.location(document));
+		}
+
+		ArrayList<Query> queries = new ArrayList<>();
+		for (int trial = 0; trial < 500; trial++) {
+			TreeSet<String> words = new TreeSet<>(randomWords(random, 1 + random.nextInt(3)));
+			TreeSet<String> excluded = new TreeSet<>(randomWords(random, random.nextInt(2)));
+			excluded.removeAll(words);
+			queries.add(new Query(words, List.of(), excluded, random.nextBoolean()));
+		}
+
+		for (boolean frozen : new boolean[] { false, true }) {
+			if (frozen) {
+				index.freeze();
+			}
+
+			for (Query query : queries) {
+				String message = query + " partial: " + partial + " frozen: " + frozen;
+				Map<String, Integer> actual = counts(index.search(query, partial, Integer.MAX_VALUE, Scorer.COUNT));
+				assertEquals(naiveSearch(documents, query, partial), actual, message);
+			}
+		}
+	}
+
+	/**
+	 * Checks that a conjunctive query whose words never appear together, a query
+	 * whose every match is excluded, and a query of only excluded words all
+	 * match nothing.
+	 *
+	 * @param partial whether to search for partial matches
+	 */
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	public void testNoResults(boolean partial) {
+		InvertedIndex index = new InvertedIndex();
+		index.addWords(new ArrayList<>(List.of("apple", "banana")), "first");
+		index.addWords(new ArrayList<>(List.of("cherry", "banana")), "second");
+		index.addWords(new ArrayList<>(List.of("date")), "third");
+
+		for (boolean frozen : new boolean[] { false, true }) {
+			if (frozen) {
+				index.freeze();
+			}
+
+			String message = "partial: " + partial + " frozen: " + frozen;
+			List<Query> empty = List.of(
+					new Query(Set.of("apple", "cherry"), List.of(), Set.of(), true),
+					new Query(Set.of("apple", "missing"), List.of(), Set.of(), true),
+					new Query(Set.of("banana"), List.of(), Set.of("apple", "cherry"), false),
+					new Query(Set.of("apple", "cherry"), List.of(), Set.of("banana"), false),
+					new Query(Set.of(), List.of(), Set.of("apple"), false),
+					new Query(Set.of(), List.of(), Set.of("apple"), true),
+					new Query(Set.of(), List.of(), Set.of("missing"), false));
+
+			for (Query query : empty) {
+				assertTrue(index.search(query, partial, Integer.MAX_VALUE, Scorer.COUNT).isEmpty(), message + " " + query);
+				assertTrue(index.search(query, partial, 1, Scorer.forName("bm25")).isEmpty(), message + " " + query);
+			}
+
+			Query excluded = new Query(Set.of("banana"), List.of(), Set.of("cherry"), true);
+			assertEquals(Map.of("first", 1), counts(index.search(excluded, partial, Integer.MAX_VALUE, Scorer.COUNT)),
+					message);
+		}
+	}
+
+	/**
+	 * Checks that the operators are parsed, and that a line of only excluded
+	 * words is an empty query that is not searched.
+	 */
+	@Test
+	public void testParseOperators() {
+		SnowballStemmer stemmer = new SnowballStemmer(ALGORITHM.ENGLISH);
+		QueryParser parser = new QueryParser(false, true, false);
+
+		Query query = parser.parse("Apples AND bananas NOT cherries -dates", stemmer);
+		assertEquals(Set.of("appl", "banana"), query.getWords());
+		assertEquals(Set.of("cherri", "date"), query.getExcluded());
+		assertTrue(query.isConjunctive());
+		assertEquals("appl AND banana -cherri -date", query.toString());
+
+		query = parser.parse("NOT apples -bananas", stemmer);
+		assertTrue(query.isEmpty());
+		assertEquals(Set.of("appl", "banana"), query.getExcluded());
+		assertEquals("", query.toString());
+
+		Query conjunctive = new QueryParser(false, false, true).parse("apples bananas", stemmer);
+		assertTrue(conjunctive.isConjunctive());
+		assertEquals("appl AND banana", conjunctive.toString());
+
+		Query words = new QueryParser().parse("apples AND NOT -bananas", stemmer);
+		assertEquals(Set.of("appl", "and", "not", "banana"), words.getWords());
+		assertTrue(words.getExcluded().isEmpty());
+
+		InvertedIndex index = new InvertedIndex();
+		index.addWords(new ArrayList<>(List.of("appl", "banana")), "first");
+		QueryProcessor processor = new QueryProcessor(index, false, Integer.MAX_VALUE, Scorer.COUNT, parser, null);
+		processor.processQueries("NOT apples -bananas");
+		processor.processQueries("apples -bananas");
+		processor.processQueries("apples AND NOT cherries");
+
+		assertEquals(Set.of("appl -banana", "appl -cherri"), Set.copyOf(processor.viewQueries()));
+		assertTrue(processor.viewResults("appl -banana").isEmpty());
+		assertEquals(List.of("first"), processor.viewResults("appl -cherri").stream().map(IndexSearcher::getWhere).toList());
+	}
+
+	/**
+	 * Searches documents by checking every word of each one.
+	 *
+	 * @param documents the words of each document in order
+	 * @param query the query
+	 * @param partial whether query words match as prefixes
+	 * @return the number of matches of each matching document by its location
+	 */
+	private static TreeMap<String, Integer> naiveSearch(List<List<String>> documents, Query query, boolean partial) {
+		TreeMap<String, Integer> results = new TreeMap<>();
+
+		if (query.isEmpty()) {
+			return results;
+		}
+
+		for (int document = 0; document < documents.size(); document++) {
+			List<String> words = documents.get(document);
+			int total = 0;
+			int clauses = 0;
+			boolean excluded = false;
+
+			for (String word : query.getWords()) {
+				int count = (int) words.stream().filter(other -> matches(other, word, partial)).count();
+				total += count;
+				clauses += count > 0 ? 1 : 0;
+			}
+
+			for (String word : query.getExcluded()) {
+				excluded |= words.stream().anyMatch(other -> matches(other, word, partial));
+			}
+
+			boolean matched = query.isConjunctive() ? clauses == query.getWords().size() : clauses > 0;
+			if (matched && !excluded) {
+				results.put(TestCorpus.location(document), total);
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Checks whether a word of a document matches a word of a query.
+	 *
+	 * @param word the word of the document
+	 * @param query the word of the query
+	 * @param partial whether the query word matches as a prefix
+	 * @return {@code true} if the words match
+	 */
+	private static boolean matches(String word, String query, boolean partial) {
+		return partial ? word.startsWith(query) : word.equals(query);
+	}
+
+	/**
+	 * Generates random words from the small vocabulary.
+	 *
+	 * @param random the source of randomness
+	 * @param count the number of words
+	 * @return the words
+	 */
+	private static List<String> randomWords(Random random, int count) {
+		ArrayList<String> words = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			words.add(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+		}
+		return words;
+	}
+
+	/**
+	 * Collects the count of every search result by its location.
+	 *
+	 * @param results the search results
+	 * @return the count of each result
+	 */
+	private static TreeMap<String, Integer> counts(List<IndexSearcher> results) {
+		TreeMap<String, Integer> counts = new TreeMap<>();
+		for (IndexSearcher result : results) {
+			counts.put(result.getWhere(), result.getCount());
+		}
+		return counts;
+	}
+}
@@ -0,0 +1,269 @@
+package edu.usfca.cs272.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import edu.usfca.cs272.InvertedIndex;
+import edu.usfca.cs272.InvertedIndex.IndexSearcher;
+import edu.usfca.cs272.PositionList;
+import edu.usfca.cs272.Query;
+import edu.usfca.cs272.QueryParser;
+import edu.usfca.cs272.Scorer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM;
+
+/**
+ * Tests that phrases are parsed from quoted text, and that phrase matches are
+ * counted and found the same way as a naive scan over the words of each
+ * document.
+ */
+public class PhraseTest {
+	/** The seed of the generated documents and phrases. */
+	private static final long SEED = 12;
+
+	/** A small vocabulary, so that random phrases often match. */
+	private static final String[] VOCABULARY = { "a", "b", "c", "d" };
+
+	/**
+	 * Checks consecutive words, words with gaps, and a phrase that repeats a word.
+	 */
+	@Test
+	public void testCountPhrase() {
+		List<String> document = List.of("a", "b", "x", "a", "x", "x", "b", "a", "a", "a", "b");
+
+		assertEquals(2, countPhrase(document, List.of("a", "b"), 0));
+		assertEquals(3, countPhrase(document, List.of("a", "b"), 1));
+		assertEquals(5, countPhrase(document, List.of("a", "b"), 2));
+		assertEquals(0, countPhrase(document, List.of("b", "b"), 2));
+		assertEquals(1, countPhrase(document, List.of("b", "b"), 3));
+		assertEquals(2, countPhrase(document, List.of("b", "b"), 4));
+
+		// each start counts once, even where the matches overlap
+		assertEquals(2, countPhrase(document, List.of("a", "a"), 0));
+		assertEquals(1, countPhrase(document, List.of("a", "a", "a"), 0));
+		assertEquals(1, countPhrase(document, List.of("a", "a", "b"), 0));
+		assertEquals(0, countPhrase(document, List.of("b", "a", "x"), 0));
+		assertEquals(0, countPhrase(document, List.of("a", "y"), 100));
+
+		for (List<String> phrase : List.of(List.of("a", "b"), List.of("a", "a"), List.of("a", "a", "b"),
+				List.of("b", "a", "x"), List.of("b", "b"))) {
+			for (int slop = 0; slop < 12; slop++) {
+				assertEquals(naiveCount(document, phrase, slop), countPhrase(document, phrase, slop), phrase + "~" + slop);
+			}
+		}
+	}
+
+	/**
+	 * Checks random phrases against random documents.
+	 */
+	@Test
+	public void testCountPhraseRandom() {
+		Random random = new Random(SEED);
+
+		for (int trial = 0; trial < 2000; trial++) {
+			List<String> document = randomWords(random, random.nextInt(40));
+			List<String> phrase = randomWords(random, 2 + random.nextInt(3));
+			int slop = random.nextInt(4);
+
+			assertEquals(naiveCount(document, phrase, slop), countPhrase(document, phrase, slop),
+					document + " " + phrase + "~" + slop);
+		}
+	}
+
+	/**
+	 * Checks that searching for phrases finds the documents and counts of a naive
+	 * scan, and that a phrase never matches across the end of one document and
+	 * the start of the next.
+	 */
+	@Test
+	public void testSearchPhrase() {
+		Random random = new Random(SEED);
+		InvertedIndex index = new InvertedIndex();
+		ArrayList<List<String>> documents = new ArrayList<>();
+
+		for (int document = 0; document < 200; document++) {
+			List<String> words = randomWords(random, 1 + random.nextInt(30));
+			documents.add(words);
+			index.addWords(new ArrayList<>(words), TestCorpus.location(document));
+		}
+
+		for (int trial = 0; trial < 300; trial++) {
+			List<String> phrase = randomWords(random, 2 + random.nextInt(3));
+			int slop = random.nextInt(3);
+
+			TreeMap<String, Integer> expected = new TreeMap<>();
+			for (int document = 0; document < documents.size(); document++) {
+				int count = naiveCount(documents.get(document), phrase, slop);
+				if (count > 0) {
+					expected.put(TestCorpus.location(document), count);
+				}
+			}
+
+			Query query = new Query(Set.of(), List.of(new Query.Phrase(phrase, slop)));
+			assertEquals(expected, counts(index.search(query, false, Integer.MAX_VALUE, Scorer.COUNT)),
+					phrase + "~" + slop);
+		}
+
+		InvertedIndex split = new InvertedIndex();
+		split.addWords(new ArrayList<>(List.of("x", "y", "a")), "first");
+		split.addWords(new ArrayList<>(List.of("b", "y", "x")), "second");
+
+		Query across = new Query(Set.of(), List.of(new Query.Phrase(List.of("a", "b"), 5)));
+		assertTrue(split.search(across, false, Integer.MAX_VALUE, Scorer.COUNT).isEmpty());
+
+		Query within = new Query(Set.of(), List.of(new Query.Phrase(List.of("y", "x"), 0)));
+		assertEquals(new TreeMap<>(Map.of("second", 1)),
+				counts(split.search(within, false, Integer.MAX_VALUE, Scorer.COUNT)));
+	}
+
+	/**
+	 * Checks that quoted text is parsed into phrases of stems, with their slop,
+	 * only when phrases are enabled.
+	 */
+	@Test
+	public void testParsePhrases() {
+		SnowballStemmer stemmer = new SnowballStemmer(ALGORITHM.ENGLISH);
+		QueryParser parser = new QueryParser(true);
+
+		Query query = parser.parse("Jumping \"Quick Foxes\"~2 over \"the lazy DOGS\"", stemmer);
+		assertEquals(Set.of("jump", "over"), query.getWords());
+		assertEquals(2, query.getPhrases().size());
+		assertEquals(List.of("quick", "fox"), query.getPhrases().get(0).getWords());
+		assertEquals(2, query.getPhrases().get(0).getSlop());
+		assertEquals(List.of("the", "lazi", "dog"), query.getPhrases().get(1).getWords());
+		assertEquals(0, query.getPhrases().get(1).getSlop());
+		assertEquals("\"quick fox\"~2 \"the lazi dog\" jump over", query.toString());
+
+		// a phrase may repeat a word, and a repeated phrase is kept in order
+		query = parser.parse("\"buffalo buffalo\" \"buffalo buffalo\"~0", stemmer);
+		assertEquals(2, query.getPhrases().size());
+		assertEquals(List.of("buffalo", "buffalo"), query.getPhrases().get(0).getWords());
+		assertEquals("\"buffalo buffalo\"", query.toString());
+
+		// a single word in quotes is a word, and empty quotes are nothing
+		query = parser.parse("\"Foxes\" \"\" \"123 ,,\" dogs", stemmer);
+		assertEquals(Set.of("fox", "dog"), query.getWords());
+		assertTrue(query.getPhrases().isEmpty());
+		assertEquals("dog fox", query.toString());
+
+		// an unmatched quote is ignored, and only a number is a slop
+		query = parser.parse("\"quick fox\"~x \"lazy", stemmer);
+		assertEquals(Set.of("x", "lazi"), query.getWords());
+		assertEquals(List.of("quick", "fox"), query.getPhrases().get(0).getWords());
+		assertEquals(0, query.getPhrases().get(0).getSlop());
+
+		Query words = new QueryParser(false).parse("\"Quick Foxes\"~2", stemmer);
+		assertEquals(Set.of("quick", "fox"), words.getWords());
+		assertTrue(words.getPhrases().isEmpty());
+	}
+
+	/**
+	 * Counts the matches of a phrase in a document with
+	 * {@link PositionList#countPhrase(PositionList[], int)}.
+	 *
+	 * @param document the words of the document in order
+	 * @param phrase the words of the phrase in order
+	 * @param slop the number of extra words allowed within the phrase
+	 * @return the number of matches
+	 */
+	private static int countPhrase(List<String> document, List<String> phrase, int slop) {
+		PositionList[] positions = new PositionList[phrase.size()];
+
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = new PositionList();
+
+			for (int position = 0; position < document.size(); position++) {
+				if (document.get(position).equals(phrase.get(i))) {
+					positions[i].add(position + 1);
+				}
+			}
+		}
+
+		return PositionList.countPhrase(positions, slop);
+	}
+
+	/**
+	 * Counts the matches of a phrase in a document by trying every way to pick
+	 * its words after each start.
+	 *
+	 * @param document the words of the document in order
+	 * @param phrase the words of the phrase in order
+	 * @param slop the number of extra words allowed within the phrase
+	 * @return the number of positions of the first word that start a match
+	 */
+	private static int naiveCount(List<String> document, List<String> phrase, int slop) {
+		int matches = 0;
+
+		for (int start = 0; start < document.size(); start++) {
+			if (document.get(start).equals(phrase.get(0))
+					&& naiveMatch(document, phrase, 1, start, start + phrase.size() - 1 + slop)) {
+				matches++;
+			}
+		}
+
+		return matches;
+	}
+
+	/**
+	 * Checks whether the rest of a phrase can be picked after a position without
+	 * going past the end of the span.
+	 *
+	 * @param document the words of the document in order
+	 * @param phrase the words of the phrase in order
+	 * @param next the index of the next word of the phrase to pick
+	 * @param previous the position of the previous word picked
+	 * @param end the last position the phrase may reach
+	 * @return {@code true} if the rest of the phrase fits
+	 */
+	private static boolean naiveMatch(List<String> document, List<String> phrase, int next, int previous, int end) {
+		if (next == phrase.size()) {
+			return true;
+		}
+
+		for (int position = previous + 1; position <= end && position < document.size(); position++) {
+			if (document.get(position).equals(phrase.get(next)) && naiveMatch(document, phrase, next + 1, position, end)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Generates random words from the small vocabulary.
+	 *
+	 * @param random the source of randomness
+	 * @param count the number of words
+	 * @return the words
+	 */
+	private static List<String> randomWords(Random random, int count) {
+		ArrayList<String> words = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			words.add(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+		}
+		return words;
+	}
+
+	/**
+	 * Collects the count of every search result by its location.
+	 *
+	 * @param results the search results
+	 * @return the count of each result
+	 */
+	private static TreeMap<String, Integer> counts(List<IndexSearcher> results) {
+		TreeMap<String, Integer> counts = new TreeMap<>();
+		for (IndexSearcher result : results) {
+			counts.put(result.getWhere(), result.getCount());
+		}
+		return counts;
+	}
+}
@@ -0,0 +1,209 @@
+package edu.usfca.cs272.tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import edu.usfca.cs272.PositionList;
+import edu.usfca.cs272.PostingList;
+
+/**
+ * Tests that {@link PositionList} behaves like the sorted set of positions it
+ * replaced.
+ */
+public class PositionListTest {
+	/**
+	 * Checks positions added in increasing order, including gaps that need more
+	 * bytes to encode.
+	 */
+	@Test
+	public void testAppend() {
+		int[] positions = { 1, 2, 127, 128, 255, 16383, 16384, 2097152, Integer.MAX_VALUE };
+		PositionList list = new PositionList();
+
+		for (int position : positions) {
+			assertTrue(list.add(position));
+		}
+
+		assertArrayEquals(positions, list.toIntArray());
+		assertEquals(positions.length, list.size());
+		assertEquals(1, list.first());
+		assertEquals(Integer.MAX_VALUE, list.last());
+
+		for (int position : positions) {
+			assertTrue(list.contains(position));
+		}
+
+		for (int position : new int[] { 0, 3, 126, 129, 16385, Integer.MAX_VALUE - 1 }) {
+			assertFalse(list.contains(position));
+		}
+	}
+
+	/**
+	 * Checks positions added in any order against a sorted set.
+	 */
+	@Test
+	public void testRandomOrder() {
+		Random random = new Random(272);
+
+		for (int i = 0; i < 200; i++) {
+			PositionList list = new PositionList();
+			TreeSet<Integer> expected = new TreeSet<>();
+
+			for (int j = random.nextInt(100); j > 0; j--) {
+				int position = random.nextInt(1000);
+				assertEquals(expected.add(position), list.add(position));
+			}
+
+			assertEquals(expected, list);
+			assertEquals(expected.size(), list.size());
+			assertEquals(new ArrayList<>(expected), new ArrayList<>(list));
+		}
+	}
+
+	/**
+	 * Checks that duplicates are ignored and negative positions are rejected.
+	 */
+	@Test
+	public void testInvalid() {
+		PositionList list = new PositionList();
+
+		assertTrue(list.add(5));
+		assertFalse(list.add(5));
+		assertTrue(list.add(3));
+		assertFalse(list.add(3));
+		assertFalse(list.contains(-1));
+		assertThrows(IllegalArgumentException.class, () -> list.add(-1));
+		assertArrayEquals(new int[] { 3, 5 }, list.toIntArray());
+	}
+
+	/**
+	 * Checks adding shifted positions, both when they come after every position
+	 * and when they overlap.
+	 */
+	@Test
+	public void testAddAll() {
+		Random random = new Random(272);
+
+		for (int i = 0; i < 200; i++) {
+			PositionList list = new PositionList();
+			PositionList other = new PositionList();
+			TreeSet<Integer> expected = new TreeSet<>();
+
+			for (int j = random.nextInt(20); j > 0; j--) {
+				int position = random.nextInt(500);
+				list.add(position);
+				expected.add(position);
+			}
+
+			int offset = random.nextBoolean() ? 0 : random.nextInt(600);
+			for (int j = random.nextInt(20); j > 0; j--) {
+				int position = random.nextInt(500);
+				other.add(position);
+				expected.add(position + offset);
+			}
+
+			list.addAll(other, offset);
+			assertEquals(expected, list);
+		}
+	}
+
+	/**
+	 * Checks that merged positions are copied, so changing the source afterwards
+	 * does not change the destination.
+	 */
+	@Test
+	public void testAddAllCopies() {
+		PositionList other = new PositionList();
+		other.add(1);
+		other.add(2);
+
+		PositionList list = new PositionList();
+		list.addAll(other);
+
+		PostingList postings = new PostingList();
+		postings.addAll(0, other);
+
+		other.add(3);
+		other.add(0);
+
+		assertArrayEquals(new int[] { 1, 2 }, list.toIntArray());
+		assertArrayEquals(new int[] { 1, 2 }, postings.get(0).toIntArray());
+	}
+
+	/**
+	 * Checks that written positions are read back unchanged.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testWriteRead() throws IOException {
+		PositionList list = new PositionList();
+		for (int position = 1; position < 100_000; position += position / 3 + 1) {
+			list.add(position);
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			list.writeTo(out);
+		}
+
+		PositionList read = PositionList.readFrom(ByteBuffer.wrap(bytes.toByteArray()));
+		assertArrayEquals(list.toIntArray(), read.toIntArray());
+		assertEquals(list.last(), read.last());
+		assertEquals(list.encodedLength(), read.encodedLength());
+	}
+
+	/**
+	 * Compares the memory held by position lists against sorted sets of boxed
+	 * positions with the same contents.
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = Benchmarks.PROPERTY, matches = "true")
+	public void benchmarkMemory() {
+		int lists = 20_000;
+		int positions = 50;
+		Random random = new Random(272);
+
+		long before = Benchmarks.usedMemory();
+		ArrayList<TreeSet<Integer>> sets = new ArrayList<>(lists);
+		for (int i = 0; i < lists; i++) {
+			TreeSet<Integer> set = new TreeSet<>();
+			for (int j = 0, position = 0; j < positions; j++) {
+				position += 1 + random.nextInt(200);
+				set.add(position);
+			}
+			sets.add(set);
+		}
+		long setBytes = Benchmarks.usedMemory() - before;
+
+		before = Benchmarks.usedMemory();
+		ArrayList<PositionList> encoded = new ArrayList<>(lists);
+		for (TreeSet<Integer> set : sets) {
+			PositionList list = new PositionList();
+			for (int position : set) {
+				list.add(position);
+			}
+			list.compact();
+			encoded.add(list);
+		}
+		long listBytes = Benchmarks.usedMemory() - before;
+
+		System.out.printf("%-40s %12.1f B/position%n", "TreeSet<Integer>", (double) setBytes / (lists * positions));
+		System.out.printf("%-40s %12.1f B/position%n", "PositionList", (double) listBytes / (lists * positions));
+		assertEquals(sets.size(), encoded.size());
+	}
+}
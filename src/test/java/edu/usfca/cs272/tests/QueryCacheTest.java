@@ -0,0 +1,290 @@
+package edu.usfca.cs272.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.usfca.cs272.InvertedIndex;
+import edu.usfca.cs272.InvertedIndex.IndexSearcher;
+import edu.usfca.cs272.QueryCache;
+import edu.usfca.cs272.QueryParser;
+import edu.usfca.cs272.QueryProcessor;
+import edu.usfca.cs272.Scorer;
+
+/**
+ * Tests the bounds, invalidation, and statistics of {@link QueryCache}, and
+ * that query processors sharing a cache give the same results as without one,
+ * even when they search with different settings.
+ */
+public class QueryCacheTest {
+	/** The seed of the generated corpus. */
+	private static final long SEED = 15;
+
+	/** A small index to take search results from. */
+	private InvertedIndex index;
+
+	/** Builds the index. */
+	@BeforeEach
+	public void buildIndex() {
+		index = TestCorpus.fill(new InvertedIndex(), SEED, 20, 50);
+	}
+
+	/**
+	 * Checks that the least recently used query is evicted once there are too
+	 * many, where reading a query counts as using it.
+	 */
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		QueryCache cache = new QueryCache(3, Long.MAX_VALUE);
+
+		cache.put("a", results(1), 0);
+		cache.put("b", results(1), 0);
+		cache.put("c", results(1), 0);
+		assertNotNull(cache.get("a", 0));
+
+		cache.put("d", results(1), 0);
+		assertEquals(3, cache.size());
+		assertEquals(1, cache.getEvictions());
+		assertNull(cache.get("b", 0));
+		assertNotNull(cache.get("a", 0));
+		assertNotNull(cache.get("c", 0));
+		assertNotNull(cache.get("d", 0));
+	}
+
+	/**
+	 * Checks that results are evicted to stay within the size bound, and that
+	 * results too large to ever fit are not cached at all.
+	 */
+	@Test
+	public void testByteBound() {
+		long size = sizeOf(results(10));
+
+		QueryCache cache = new QueryCache(10, 2 * size);
+		cache.put("a", results(10), 0);
+		cache.put("b", results(10), 0);
+		assertEquals(2, cache.size());
+		assertEquals(2 * size, cache.bytes());
+
+		cache.put("c", results(10), 0);
+		assertEquals(2, cache.size());
+		assertEquals(2 * size, cache.bytes());
+		assertNull(cache.get("a", 0));
+
+		cache.put("d", results(100), 0);
+		assertNull(cache.get("d", 0));
+		assertEquals(2, cache.size());
+
+		cache.put("b", results(1), 0);
+		assertEquals(2, cache.size());
+		assertEquals(size + sizeOf(results(1)), cache.bytes());
+	}
+
+	/**
+	 * Checks that results from an older version of the index are dropped once a
+	 * newer version is seen, and never cached afterwards.
+	 */
+	@Test
+	public void testVersions() {
+		QueryCache cache = new QueryCache();
+		ArrayList<IndexSearcher> results = results(2);
+
+		cache.put("a", results, 1);
+		assertSame(results, cache.get("a", 1));
+		assertNull(cache.get("a", 2));
+		assertEquals(0, cache.size());
+
+		cache.put("a", results, 1);
+		assertNull(cache.get("a", 2));
+
+		cache.put("a", results, 3);
+		assertNull(cache.get("a", 2));
+		assertSame(results, cache.get("a", 3));
+		assertEquals(0, cache.getEvictions());
+	}
+
+	/**
+	 * Checks the hit and miss counts and the hit rate.
+	 */
+	@Test
+	public void testStatistics() {
+		QueryCache cache = new QueryCache();
+		assertEquals(0.0, cache.hitRate());
+
+		assertNull(cache.get("a", 0));
+		cache.put("a", results(1), 0);
+		assertNotNull(cache.get("a", 0));
+		assertNotNull(cache.get("a", 0));
+		assertNull(cache.get("b", 0));
+
+		assertEquals(2, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		assertEquals(0.5, cache.hitRate());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.bytes());
+		assertEquals(2, cache.getHits());
+	}
+
+	/**
+	 * Checks parsing the bounds of the cache from a command-line value.
+	 */
+	@Test
+	public void testForBounds() {
+		assertNotNull(QueryCache.forBounds(null));
+		assertNotNull(QueryCache.forBounds(""));
+		assertNotNull(QueryCache.forBounds("10"));
+		assertNotNull(QueryCache.forBounds(" 10 , 2048 "));
+		assertNull(QueryCache.forBounds("0"));
+		assertNull(QueryCache.forBounds("10,0"));
+		assertNull(QueryCache.forBounds("-1"));
+		assertNull(QueryCache.forBounds("ten"));
+		assertNull(QueryCache.forBounds("10,"));
+
+		QueryCache cache = QueryCache.forBounds("2");
+		cache.put("a", results(1), 0);
+		cache.put("b", results(1), 0);
+		cache.put("c", results(1), 0);
+		assertEquals(2, cache.size());
+	}
+
+	/**
+	 * Checks that processors sharing a cache give the same results as one
+	 * without a cache, reuse the results of earlier processors, and see changes
+	 * to the index.
+	 */
+	@Test
+	public void testProcessors() {
+		Random random = new Random(SEED);
+		ArrayList<String> lines = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			lines.add(String.join(" ", TestCorpus.words(random, 1 + random.nextInt(3))));
+		}
+
+		QueryCache cache = new QueryCache();
+		QueryProcessor uncached = process(null, lines);
+		QueryProcessor first = process(cache, lines);
+		long misses = cache.getMisses();
+		assertEquals(first.numQueryLines(), misses);
+
+		QueryProcessor second = process(cache, lines);
+		assertEquals(misses, cache.getMisses());
+		assertEquals(first.numQueryLines(), cache.getHits());
+
+		for (String query : uncached.viewQueries()) {
+			List<String> expected = TestCorpus.render(uncached.viewResults(query));
+			assertEquals(expected, TestCorpus.render(first.viewResults(query)), query);
+			assertEquals(expected, TestCorpus.render(second.viewResults(query)), query);
+		}
+
+		TestCorpus.addDocument(index, SEED, 20, 50);
+		QueryProcessor third = process(cache, lines);
+		QueryProcessor fresh = process(null, lines);
+		assertEquals(2 * misses, cache.getMisses());
+		assertNotEquals(uncached.viewResults(lines.get(0)), fresh.viewResults(lines.get(0)));
+
+		for (String query : fresh.viewQueries()) {
+			assertEquals(TestCorpus.render(fresh.viewResults(query)), TestCorpus.render(third.viewResults(query)), query);
+		}
+	}
+
+	/**
+	 * Checks that processors with different settings can share a cache, and each
+	 * still gets the results of its own settings.
+	 */
+	@Test
+	public void testSharedSettings() {
+		Random random = new Random(SEED);
+		ArrayList<String> lines = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			lines.add(String.join(" ", TestCorpus.words(random, 1 + random.nextInt(3))));
+		}
+
+		QueryCache cache = new QueryCache();
+		List<Scorer> scorers = List.of(Scorer.COUNT, Scorer.forName("tfidf"), Scorer.forName("bm25"),
+				new Scorer.BM25(2.0, 0.5));
+
+		for (boolean partial : new boolean[] { true, false }) {
+			for (int limit : new int[] { 1, 3, Integer.MAX_VALUE }) {
+				for (Scorer scorer : scorers) {
+					String settings = partial + " " + limit + " " + scorer;
+					QueryProcessor uncached = process(null, lines, partial, limit, scorer);
+					QueryProcessor cached = process(cache, lines, partial, limit, scorer);
+
+					for (String query : uncached.viewQueries()) {
+						assertEquals(TestCorpus.render(uncached.viewResults(query)),
+								TestCorpus.render(cached.viewResults(query)), settings + " " + query);
+					}
+				}
+			}
+		}
+
+		assertEquals(0, cache.getHits());
+		assertNotEquals(QueryCache.key("a", true, 1, Scorer.COUNT), QueryCache.key("a", false, 1, Scorer.COUNT));
+		assertNotEquals(QueryCache.key("a", true, 1, Scorer.COUNT), QueryCache.key("a", true, 2, Scorer.COUNT));
+		assertNotEquals(QueryCache.key("a", true, 1, new Scorer.BM25()),
+				QueryCache.key("a", true, 1, new Scorer.BM25(1.0, 0.5)));
+		assertEquals(QueryCache.key("a", true, 1, new Scorer.BM25()), QueryCache.key("a", true, 1, new Scorer.BM25()));
+	}
+
+	/**
+	 * Processes query lines with a new processor.
+	 *
+	 * @param cache the cache to use, or {@code null} for no cache
+	 * @param lines the query lines
+	 * @return the processor
+	 */
+	private QueryProcessor process(QueryCache cache, List<String> lines) {
+		return process(cache, lines, true, 5, Scorer.COUNT);
+	}
+
+	/**
+	 * Processes query lines with a new processor with the given settings.
+	 *
+	 * @param cache the cache to use, or {@code null} for no cache
+	 * @param lines the query lines
+	 * @param partial whether to search for partial matches
+	 * @param limit the maximum number of results kept for each query
+	 * @param scorer the scorer used to rank the results
+	 * @return the processor
+	 */
+	private QueryProcessor process(QueryCache cache, List<String> lines, boolean partial, int limit, Scorer scorer) {
+		QueryProcessor processor = new QueryProcessor(index, partial, limit, scorer, new QueryParser(), cache);
+		for (String line : lines) {
+			processor.processQueries(line);
+		}
+		return processor;
+	}
+
+	/**
+	 * Returns a list with the given number of search results.
+	 *
+	 * @param size the number of results
+	 * @return the results
+	 */
+	private ArrayList<IndexSearcher> results(int size) {
+		return new ArrayList<>(Collections.nCopies(size, index.new IndexSearcher(0)));
+	}
+
+	/**
+	 * Returns the estimated size of results cached under a one-letter query.
+	 *
+	 * @param results the results
+	 * @return the estimated size in bytes
+	 */
+	private static long sizeOf(ArrayList<IndexSearcher> results) {
+		QueryCache cache = new QueryCache(1, Long.MAX_VALUE);
+		cache.put("x", results, 0);
+		return cache.bytes();
+	}
+}
@@ -0,0 +1,193 @@
+package edu.usfca.cs272.tests;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import edu.usfca.cs272.FileProcessor;
+import edu.usfca.cs272.InvertedIndex;
+import edu.usfca.cs272.QueuedFileProcessor;
+import edu.usfca.cs272.ThreadSafeInvertedIndex;
+import edu.usfca.cs272.WorkQueue;
+
+/**
+ * Tests that {@link QueuedFileProcessor} builds the same index as the
+ * sequential {@link FileProcessor}, however small the chunks that large files
+ * are split into, and that it reports files it cannot read.
+ */
+public class QueuedFileProcessorTest {
+	/** The seed of the generated corpus. */
+	private static final long SEED = 21;
+
+	/** The sizes in bytes above which files are split into chunks. */
+	private static final long[] CHUNK_BYTES = { 1, 2, 7, 64, 1000, QueuedFileProcessor.CHUNK_BYTES };
+
+	/** The directory of text files. */
+	private static Path directory;
+
+	/** The index built by the sequential file processor. */
+	private static InvertedIndex expected;
+
+	/**
+	 * Writes the text files and indexes them sequentially.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@BeforeAll
+	public static void setup() throws IOException {
+		directory = Files.createTempDirectory("chunks");
+		TestCorpus.writeFiles(directory.resolve("generated"), SEED, 20, 200);
+
+		// lines with multi-byte characters, so chunks may start inside a character
+		String mixed = "Café naïve RÉSUMÉ 日本語 ΣΑΣ, 😀 smile face\n";
+		Files.writeString(directory.resolve("mixed.txt"), mixed.repeat(300), UTF_8);
+
+		// one long line, longer than most chunks, between short ones
+		String line = "short\n" + "word ".repeat(2000) + "\nshort again\r\n\nlast";
+		Files.writeString(directory.resolve("long.text"), line, UTF_8);
+
+		Files.writeString(directory.resolve("empty.txt"), "", UTF_8);
+		Files.writeString(directory.resolve("blank.txt"), "\n\n  \r\n,,, 123\n", UTF_8);
+		Files.writeString(directory.resolve("ignored.md"), "not indexed", UTF_8);
+
+		expected = new InvertedIndex();
+		FileProcessor.processPath(directory, expected);
+	}
+
+	/**
+	 * Deletes the text files.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@AfterAll
+	public static void cleanup() throws IOException {
+		TestCorpus.delete(directory);
+	}
+
+	/**
+	 * Checks that the index, word counts, and file stamps match the sequential
+	 * ones for every chunk size.
+	 *
+	 * @param type the kind of work queue
+	 * @throws IOException if an I/O error occurs
+	 */
+	@ParameterizedTest
+	@EnumSource(WorkQueue.Type.class)
+	public void testChunkedMatchesSequential(WorkQueue.Type type) throws IOException {
+		WorkQueue queue = new WorkQueue(4, type);
+
+		try {
+			for (long chunkBytes : CHUNK_BYTES) {
+				ThreadSafeInvertedIndex actual = new ThreadSafeInvertedIndex();
+				QueuedFileProcessor.processPath(directory, actual, queue, chunkBytes);
+				String message = type + " chunk bytes: " + chunkBytes;
+
+				assertEquals(expected.toString(), actual.toString(), message);
+				assertEquals(expected.getTotalWords(), actual.getTotalWords(), message);
+				assertEquals(expected.getFileCount(), actual.getFileCount(), message);
+
+				for (Path path : List.of(directory.resolve("mixed.txt"), directory.resolve("long.text"),
+						directory.resolve("empty.txt"), directory.resolve("generated").resolve(TestCorpus.location(0)))) {
+					assertFalse(FileProcessor.needsIndexing(path, actual), message + " " + path);
+				}
+			}
+		}
+		finally {
+			queue.join();
+		}
+	}
+
+	/**
+	 * Checks that a file that cannot be read makes processing fail, whether it is
+	 * read whole or in chunks, and that none of it is left in the index while
+	 * every other file is indexed.
+	 *
+	 * @param type the kind of work queue
+	 * @throws IOException if an I/O error occurs
+	 */
+	@ParameterizedTest
+	@EnumSource(WorkQueue.Type.class)
+	public void testMalformedFileFails(WorkQueue.Type type) throws IOException {
+		Path malformed = Files.createTempDirectory("malformed");
+		WorkQueue queue = new WorkQueue(4, type);
+
+		try {
+			TestCorpus.writeFiles(malformed.resolve("generated"), SEED, 5, 50);
+			InvertedIndex valid = new InvertedIndex();
+			FileProcessor.processPath(malformed, valid);
+
+			// valid lines on both sides of a byte that is never part of UTF-8
+			Path bad = malformed.resolve("bad.txt");
+			byte[] line = "valid words on a line\n".repeat(20).getBytes(UTF_8);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			bytes.write(line);
+			bytes.write(0xFF);
+			bytes.write(line);
+			Files.write(bad, bytes.toByteArray());
+
+			assertThrows(IOException.class, () -> FileProcessor.processPath(bad, new InvertedIndex()));
+
+			for (long chunkBytes : CHUNK_BYTES) {
+				ThreadSafeInvertedIndex actual = new ThreadSafeInvertedIndex();
+				String message = type + " chunk bytes: " + chunkBytes;
+
+				assertThrows(IOException.class, () -> QueuedFileProcessor.processPath(malformed, actual, queue, chunkBytes),
+						message);
+				assertEquals(valid.toString(), actual.toString(), message);
+				assertEquals(0, actual.getWordCount(bad.toString()), message);
+				assertNull(actual.getStamp(bad.toString()), message);
+
+				ThreadSafeInvertedIndex single = new ThreadSafeInvertedIndex();
+				assertThrows(IOException.class, () -> QueuedFileProcessor.processPath(bad, single, queue, chunkBytes),
+						message);
+				assertEquals(0, single.getTotalWords(), message);
+				assertNull(single.getStamp(bad.toString()), message);
+			}
+		}
+		finally {
+			queue.join();
+			TestCorpus.delete(malformed);
+		}
+	}
+
+	/**
+	 * Checks that reading one file in chunks gives the same index as reading it
+	 * whole.
+	 *
+	 * @param type the kind of work queue
+	 * @throws IOException if an I/O error occurs
+	 */
+	@ParameterizedTest
+	@EnumSource(WorkQueue.Type.class)
+	public void testSingleFile(WorkQueue.Type type) throws IOException {
+		Path path = directory.resolve("mixed.txt");
+		InvertedIndex whole = new InvertedIndex();
+		FileProcessor.readFile(path, whole);
+
+		WorkQueue queue = new WorkQueue(4, type);
+
+		try {
+			for (long chunkBytes : CHUNK_BYTES) {
+				ThreadSafeInvertedIndex actual = new ThreadSafeInvertedIndex();
+				QueuedFileProcessor.processPath(path, actual, queue, chunkBytes);
+				assertEquals(whole.toString(), actual.toString(), type + " chunk bytes: " + chunkBytes);
+			}
+		}
+		finally {
+			queue.join();
+		}
+	}
+}
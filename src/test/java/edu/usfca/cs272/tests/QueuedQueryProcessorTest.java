@@ -0,0 +1,210 @@
+package edu.usfca.cs272.tests;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import edu.usfca.cs272.InvertedIndex;
+import edu.usfca.cs272.QueryCache;
+import edu.usfca.cs272.QueryParser;
+import edu.usfca.cs272.QueryProcessor;
+import edu.usfca.cs272.QueryProcessorInterface;
+import edu.usfca.cs272.QueuedQueryProcessor;
+import edu.usfca.cs272.Scorer;
+import edu.usfca.cs272.ThreadSafeInvertedIndex;
+import edu.usfca.cs272.WorkQueue;
+
+/**
+ * Tests that {@link QueuedQueryProcessor} gives the same results as the
+ * sequential {@link QueryProcessor}, with every kind of work queue.
+ */
+public class QueuedQueryProcessorTest {
+	/** The seed of the generated corpus. */
+	private static final long SEED = 17;
+
+	/** The number of query lines, enough for several batches. */
+	private static final int LINES = 2 * QueuedQueryProcessor.BATCH_SIZE + 500;
+
+	/** The sequential index. */
+	private static InvertedIndex index;
+
+	/** The thread-safe index with the same contents. */
+	private static ThreadSafeInvertedIndex safe;
+
+	/** The query lines, many of which repeat earlier queries. */
+	private static ArrayList<String> lines;
+
+	/** The directory holding the query file and outputs. */
+	private static Path directory;
+
+	/** The query file. */
+	private static Path queries;
+
+	/**
+	 * Builds the indexes and writes the query file.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@BeforeAll
+	public static void setup() throws IOException {
+		index = TestCorpus.fill(new InvertedIndex(), SEED, 100, 100);
+		safe = new ThreadSafeInvertedIndex();
+		TestCorpus.fill(safe, SEED, 100, 100);
+
+		Random random = new Random(SEED);
+		lines = new ArrayList<>();
+		for (int i = 0; i < LINES; i++) {
+			lines.add(String.join(random.nextBoolean() ? " " : ", ", TestCorpus.words(random, 1 + random.nextInt(3))));
+		}
+
+		directory = Files.createTempDirectory("queries");
+		queries = directory.resolve("queries.txt");
+		Files.write(queries, lines, UTF_8);
+	}
+
+	/**
+	 * Deletes the query file and outputs.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@AfterAll
+	public static void cleanup() throws IOException {
+		TestCorpus.delete(directory);
+	}
+
+	/**
+	 * Checks that queries read from a file in batches give the same results as
+	 * processing them one line at a time.
+	 *
+	 * @param type the kind of work queue
+	 * @throws IOException if an I/O error occurs
+	 */
+	@ParameterizedTest
+	@EnumSource(WorkQueue.Type.class)
+	public void testProcessFile(WorkQueue.Type type) throws IOException {
+		for (boolean partial : new boolean[] { false, true }) {
+			QueryProcessor expected = new QueryProcessor(index, partial);
+			expected.processQueries(queries);
+
+			WorkQueue queue = new WorkQueue(4, type);
+			try {
+				QueuedQueryProcessor actual = new QueuedQueryProcessor(safe, partial, queue);
+				actual.processQueries(queries);
+				assertSameResults(expected, actual, type + " partial: " + partial);
+			}
+			finally {
+				queue.join();
+			}
+		}
+	}
+
+	/**
+	 * Checks that a collection of lines processed at once gives the same results
+	 * as processing them one line at a time.
+	 *
+	 * @param type the kind of work queue
+	 * @throws IOException if an I/O error occurs
+	 */
+	@ParameterizedTest
+	@EnumSource(WorkQueue.Type.class)
+	public void testProcessCollection(WorkQueue.Type type) throws IOException {
+		QueryProcessor expected = new QueryProcessor(index, true, 10);
+		WorkQueue queue = new WorkQueue(4, type);
+
+		try {
+			QueuedQueryProcessor actual = new QueuedQueryProcessor(safe, true, 10, queue);
+
+			for (int start = 0; start < lines.size(); start += 700) {
+				List<String> batch = lines.subList(start, Math.min(lines.size(), start + 700));
+				batch.forEach(expected::processQueries);
+				actual.processQueries(batch);
+				assertSameResults(expected, actual, type.toString());
+			}
+		}
+		finally {
+			queue.join();
+		}
+	}
+
+	/**
+	 * Checks that every distinct query is searched exactly once, however often
+	 * it repeats and however many workers see it at once, both when results are
+	 * kept and when they are streamed. A cache that is never hit counts the
+	 * searches.
+	 *
+	 * @param type the kind of work queue
+	 * @throws IOException if an I/O error occurs
+	 */
+	@ParameterizedTest
+	@EnumSource(WorkQueue.Type.class)
+	public void testDuplicatesSearchedOnce(WorkQueue.Type type) throws IOException {
+		QueryProcessor expected = new QueryProcessor(index, true);
+		expected.processQueries(queries);
+		Path output = directory.resolve("expected.json");
+		expected.writeSearchResults(output);
+
+		WorkQueue queue = new WorkQueue(8, type);
+
+		try {
+			QueryCache cache = new QueryCache(1, Long.MAX_VALUE);
+			QueuedQueryProcessor kept = new QueuedQueryProcessor(safe, true, Integer.MAX_VALUE, Scorer.COUNT,
+					new QueryParser(), cache, queue);
+
+			kept.processQueries(queries);
+			kept.processQueries(queries);
+			kept.processQueries(lines);
+			assertEquals(expected.numQueryLines(), cache.getMisses(), type.toString());
+			assertEquals(0, cache.getHits(), type.toString());
+
+			QueryCache streamed = new QueryCache(1, Long.MAX_VALUE);
+			QueuedQueryProcessor streaming = new QueuedQueryProcessor(safe, true, Integer.MAX_VALUE, Scorer.COUNT,
+					new QueryParser(), streamed, queue);
+			Path actual = directory.resolve("streamed.json");
+
+			streaming.processQueries(queries, actual, 100);
+			assertEquals(expected.numQueryLines(), streamed.getMisses(), type.toString());
+			assertEquals(0, streamed.getHits(), type.toString());
+			assertEquals(Files.readString(output, UTF_8), Files.readString(actual, UTF_8), type.toString());
+		}
+		finally {
+			queue.join();
+		}
+	}
+
+	/**
+	 * Asserts that two processors hold the same queries and results, and write
+	 * the same file.
+	 *
+	 * @param expected the processor with the expected results
+	 * @param actual the processor being tested
+	 * @param message the message shown if they differ
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void assertSameResults(QueryProcessorInterface expected, QueryProcessorInterface actual, String message)
+			throws IOException {
+		assertEquals(expected.numQueryLines(), actual.numQueryLines(), message);
+		assertEquals(expected.viewQueries(), actual.viewQueries(), message);
+
+		for (String query : expected.viewQueries()) {
+			assertEquals(TestCorpus.render(expected.viewResults(query)), TestCorpus.render(actual.viewResults(query)),
+					message + " " + query);
+		}
+
+		Path first = directory.resolve("expected.json");
+		Path second = directory.resolve("actual.json");
+		expected.writeSearchResults(first);
+		actual.writeSearchResults(second);
+		assertEquals(Files.readString(first, UTF_8), Files.readString(second, UTF_8), message);
+	}
+}
@@ -0,0 +1,233 @@
+package edu.usfca.cs272.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import edu.usfca.cs272.InvertedIndex;
+import edu.usfca.cs272.InvertedIndex.IndexSearcher;
+import edu.usfca.cs272.PostingList;
+import edu.usfca.cs272.Scorer;
+
+/**
+ * Tests that ranked searches, both document-at-a-time and with block-max WAND,
+ * return the same documents, counts, and scores as an exhaustive baseline that
+ * scores every document of the index one word at a time.
+ */
+public class RankedSearchTest {
+	/** The seed of the generated corpus. */
+	private static final long SEED = 11;
+
+	/** The number of generated documents. */
+	private static final int DOCUMENTS = 1000;
+
+	/** The number of words in each generated document. */
+	private static final int LENGTH = 60;
+
+	/** The relative difference allowed between scores summed in any order. */
+	private static final double EPSILON = 1e-9;
+
+	/** The limits that skip blocks, just below, at, and just above block ends. */
+	private static final int[] LIMITS = { 1, 2, 10, PostingList.BLOCK_SIZE - 1, PostingList.BLOCK_SIZE,
+			PostingList.BLOCK_SIZE + 1, 2 * PostingList.BLOCK_SIZE, 2 * PostingList.BLOCK_SIZE + 1, 500,
+			DOCUMENTS - 1, DOCUMENTS };
+
+	/** An index that can still be modified. */
+	private static InvertedIndex index;
+
+	/** An index with the same contents that has been frozen. */
+	private static InvertedIndex frozen;
+
+	/** The number of matches of each word in each document, for the baseline. */
+	private static TreeMap<String, TreeMap<String, Integer>> matches;
+
+	/** Builds the indexes searched by the tests. */
+	@BeforeAll
+	public static void buildIndexes() {
+		index = TestCorpus.fill(new InvertedIndex(), SEED, DOCUMENTS, LENGTH);
+		frozen = TestCorpus.fill(new InvertedIndex(), SEED, DOCUMENTS, LENGTH);
+		frozen.freeze();
+
+		matches = new TreeMap<>();
+		for (String word : index.viewWords()) {
+			TreeMap<String, Integer> documents = new TreeMap<>();
+			for (String location : index.viewLocations(word)) {
+				documents.put(location, index.viewPositions(word, location).size());
+			}
+			matches.put(word, documents);
+		}
+	}
+
+	/**
+	 * Checks the full and limited results of document-at-a-time searches against
+	 * the baseline.
+	 *
+	 * @param name the name of the scorer
+	 */
+	@ParameterizedTest
+	@ValueSource(strings = { "count", "tfidf", "bm25" })
+	public void testDocumentAtATime(String name) {
+		Scorer scorer = Scorer.forName(name);
+		Random random = new Random(SEED);
+
+		for (int i = 0; i < 100; i++) {
+			TreeSet<String> query = TestCorpus.query(random, 1 + random.nextInt(4));
+
+			for (boolean partial : new boolean[] { false, true }) {
+				TreeMap<String, double[]> expected = baseline(index, query, partial, scorer);
+
+				for (int limit : new int[] { 1, 10, Integer.MAX_VALUE }) {
+					List<IndexSearcher> actual = index.search(query, partial, limit, scorer);
+					assertTopResults(expected, actual, limit, query + " partial: " + partial + " limit: " + limit);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks searches of a frozen index, which skip blocks of documents that
+	 * cannot reach the top results, against the baseline. The limits are around
+	 * multiples of the block size, and some queries match enough documents that
+	 * their results span several blocks.
+	 *
+	 * @param name the name of the scorer
+	 */
+	@ParameterizedTest
+	@ValueSource(strings = { "count", "tfidf", "bm25" })
+	public void testBlockMaxWand(String name) {
+		Scorer scorer = Scorer.forName(name);
+		Random random = new Random(SEED);
+		int spanning = 0;
+
+		for (int i = 0; i < 30; i++) {
+			// single letters match most documents, so their results span many blocks
+			TreeSet<String> query = i % 3 == 0 ? new TreeSet<>(List.of(TestCorpus.word(random).substring(0, 1)))
+					: TestCorpus.query(random, 1 + random.nextInt(4));
+
+			for (boolean partial : new boolean[] { false, true }) {
+				TreeMap<String, double[]> expected = baseline(frozen, query, partial, scorer);
+				spanning += expected.size() > 2 * PostingList.BLOCK_SIZE + 1 ? 1 : 0;
+
+				for (int limit : LIMITS) {
+					List<IndexSearcher> actual = frozen.search(query, partial, limit, scorer);
+					assertTopResults(expected, actual, limit, query + " partial: " + partial + " limit: " + limit);
+				}
+			}
+		}
+
+		assertTrue(spanning >= 10, "too few queries match several blocks of documents: " + spanning);
+	}
+
+	/**
+	 * Checks that searches of a frozen index with other parameters of BM25 match
+	 * the baseline, since the bounds used to skip blocks depend on them.
+	 *
+	 * @param k1 the term frequency saturation parameter
+	 */
+	@ParameterizedTest
+	@ValueSource(doubles = { 0.0, 0.5, 2.0, 10.0 })
+	public void testBlockMaxWandParameters(double k1) {
+		Random random = new Random(SEED);
+
+		for (double b : new double[] { 0.0, 0.5, 1.0 }) {
+			Scorer scorer = new Scorer.BM25(k1, b);
+
+			for (int i = 0; i < 10; i++) {
+				TreeSet<String> query = TestCorpus.query(random, 1 + random.nextInt(4));
+				boolean partial = i % 2 == 0;
+				TreeMap<String, double[]> expected = baseline(frozen, query, partial, scorer);
+
+				for (int limit : LIMITS) {
+					assertTopResults(expected, frozen.search(query, partial, limit, scorer), limit,
+							query + " " + scorer + " partial: " + partial + " limit: " + limit);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Scores every document of an index one query word at a time, from the number
+	 * of matches of each word in each document read directly from the index.
+	 *
+	 * @param searched the index to search
+	 * @param query the query words
+	 * @param partial whether query words match as prefixes
+	 * @param scorer the scorer
+	 * @return the score and count of every matching document by its location
+	 */
+	private static TreeMap<String, double[]> baseline(InvertedIndex searched, TreeSet<String> query,
+			boolean partial, Scorer scorer) {
+		int numDocuments = searched.getFileCount();
+		double averageWordCount = (double) searched.getTotalWords() / numDocuments;
+		TreeMap<String, double[]> scores = new TreeMap<>();
+
+		for (String prefix : query) {
+			for (var entry : matches.tailMap(prefix, true).entrySet()) {
+				String word = entry.getKey();
+
+				if (partial ? !word.startsWith(prefix) : !word.equals(prefix)) {
+					break;
+				}
+
+				double weight = scorer.weight(searched.numDocuments(word), numDocuments);
+
+				for (var document : entry.getValue().entrySet()) {
+					String location = document.getKey();
+					int count = document.getValue();
+					double[] score = scores.computeIfAbsent(location, key -> new double[2]);
+					score[1] += count;
+					score[0] = scorer.score(score[0], (int) score[1], count, searched.getWordCount(location),
+							averageWordCount, weight);
+				}
+			}
+		}
+
+		return scores;
+	}
+
+	/**
+	 * Asserts that search results are the best results of the baseline. Documents
+	 * with scores that tie within rounding may be returned in either order.
+	 *
+	 * @param expected the score and count of every matching document by its
+	 *   location
+	 * @param actual the results of the search
+	 * @param limit the maximum number of results
+	 * @param message the message shown if they differ
+	 */
+	private static void assertTopResults(TreeMap<String, double[]> expected, List<IndexSearcher> actual, int limit,
+			String message) {
+		assertEquals(Math.min(limit, expected.size()), actual.size(), message);
+		HashSet<String> returned = new HashSet<>();
+		double previous = Double.POSITIVE_INFINITY;
+
+		for (IndexSearcher result : actual) {
+			double[] baseline = expected.get(result.getWhere());
+			String detail = message + " " + result.getWhere();
+
+			assertTrue(baseline != null, detail);
+			assertTrue(returned.add(result.getWhere()), detail);
+			assertEquals((int) baseline[1], result.getCount(), detail);
+			assertEquals(baseline[0], result.getScore(), Math.abs(baseline[0]) * EPSILON, detail);
+			assertTrue(result.getScore() <= previous + Math.abs(previous) * EPSILON, detail);
+			previous = result.getScore();
+		}
+
+		// nothing left out may score higher than the worst result returned
+		for (var entry : expected.entrySet()) {
+			if (!returned.contains(entry.getKey())) {
+				assertTrue(entry.getValue()[0] <= previous + Math.abs(previous) * EPSILON,
+						message + " missing " + entry.getKey());
+			}
+		}
+	}
+}
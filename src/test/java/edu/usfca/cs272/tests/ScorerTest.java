@@ -0,0 +1,187 @@
+package edu.usfca.cs272.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import edu.usfca.cs272.InvertedIndex;
+import edu.usfca.cs272.InvertedIndex.IndexSearcher;
+import edu.usfca.cs272.Scorer;
+
+/**
+ * Tests the scorers on their own and the scores of search results ranked with
+ * them.
+ */
+public class ScorerTest {
+	/** The seed of the generated corpus. */
+	private static final long SEED = 10;
+
+	/**
+	 * Checks that scorers are found by name, ignoring case.
+	 */
+	@Test
+	public void testForName() {
+		assertSame(Scorer.COUNT, Scorer.forName("count"));
+		assertSame(Scorer.COUNT, Scorer.forName("COUNT"));
+		assertInstanceOf(Scorer.TfIdf.class, Scorer.forName("tfidf"));
+		assertInstanceOf(Scorer.TfIdf.class, Scorer.forName("TF-IDF"));
+		assertInstanceOf(Scorer.BM25.class, Scorer.forName("Bm25"));
+		assertNull(Scorer.forName("bm26"));
+		assertNull(Scorer.forName(""));
+	}
+
+	/**
+	 * Checks that rarer words weigh more, and that every weight is positive.
+	 *
+	 * @param name the name of the scorer
+	 */
+	@ParameterizedTest
+	@ValueSource(strings = { "tfidf", "bm25" })
+	public void testWeight(String name) {
+		Scorer scorer = Scorer.forName(name);
+
+		for (int frequency = 1; frequency < 100; frequency++) {
+			assertTrue(scorer.weight(frequency, 100) > scorer.weight(frequency + 1, 100));
+			assertTrue(scorer.weight(frequency + 1, 100) > 0);
+		}
+	}
+
+	/**
+	 * Checks that BM25 rewards more matches with diminishing returns, and
+	 * penalizes documents longer than average.
+	 */
+	@Test
+	public void testBM25Saturation() {
+		Scorer scorer = new Scorer.BM25();
+		double weight = 2.0;
+		double previous = 0.0;
+		double gain = Double.POSITIVE_INFINITY;
+
+		for (int matches = 1; matches < 50; matches++) {
+			double score = scorer.score(0.0, matches, matches, 100, 100, weight);
+			assertTrue(score > previous);
+			assertTrue(score - previous < gain);
+			assertTrue(score < weight * (Scorer.BM25.DEFAULT_K1 + 1.0));
+
+			gain = score - previous;
+			previous = score;
+		}
+
+		assertTrue(scorer.score(0.0, 3, 3, 50, 100, weight) > scorer.score(0.0, 3, 3, 100, 100, weight));
+		assertTrue(scorer.score(0.0, 3, 3, 100, 100, weight) > scorer.score(0.0, 3, 3, 200, 100, weight));
+
+		// without length normalization, only the matches count
+		Scorer unnormalized = new Scorer.BM25(Scorer.BM25.DEFAULT_K1, 0.0);
+		assertEquals(unnormalized.score(0.0, 3, 3, 50, 100, weight), unnormalized.score(0.0, 3, 3, 200, 100, weight));
+	}
+
+	/**
+	 * Checks that the bounds used to skip documents are never below an actual
+	 * score, for any document with fewer matches or more words.
+	 *
+	 * @param name the name of the scorer
+	 */
+	@ParameterizedTest
+	@ValueSource(strings = { "count", "tfidf", "bm25" })
+	public void testMaxScore(String name) {
+		Scorer scorer = Scorer.forName(name);
+		Random random = new Random(SEED);
+
+		for (int i = 0; i < 10_000; i++) {
+			int maxMatches = 1 + random.nextInt(50);
+			int minWordCount = maxMatches + random.nextInt(500);
+			int matches = 1 + random.nextInt(maxMatches);
+			int wordCount = Math.max(matches, minWordCount + random.nextInt(500));
+			double average = 1 + random.nextInt(1000);
+			double weight = scorer.weight(1 + random.nextInt(100), 100);
+
+			double bound = scorer.maxScore(maxMatches, minWordCount, average, weight);
+			double score = scorer.score(0.0, matches, matches, wordCount, average, weight);
+			assertTrue(score <= bound, score + " > " + bound);
+		}
+	}
+
+	/**
+	 * Checks the scores of exact search results against scores computed one
+	 * document at a time from the statistics of the index.
+	 *
+	 * @param name the name of the scorer
+	 */
+	@ParameterizedTest
+	@ValueSource(strings = { "count", "tfidf", "bm25" })
+	public void testSearchScores(String name) {
+		Scorer scorer = Scorer.forName(name);
+		InvertedIndex index = TestCorpus.fill(new InvertedIndex(), SEED, 200, 200);
+		int documents = index.getFileCount();
+		double average = (double) index.getTotalWords() / documents;
+		Random random = new Random(SEED);
+
+		for (int i = 0; i < 100; i++) {
+			TreeSet<String> query = TestCorpus.query(random, 1 + random.nextInt(4));
+			TreeMap<String, Double> scores = new TreeMap<>();
+			TreeMap<String, Integer> counts = new TreeMap<>();
+
+			for (String word : query) {
+				double weight = scorer.weight(index.viewLocations(word).size(), documents);
+
+				for (String location : index.viewLocations(word)) {
+					int matches = index.viewPositions(word, location).size();
+					int count = counts.merge(location, matches, Integer::sum);
+					double score = scores.getOrDefault(location, 0.0);
+					scores.put(location,
+							scorer.score(score, count, matches, index.getWordCount(location), average, weight));
+				}
+			}
+
+			ArrayList<IndexSearcher> results = index.search(query, false, Integer.MAX_VALUE, scorer);
+			assertEquals(scores.size(), results.size(), query.toString());
+
+			for (IndexSearcher result : results) {
+				assertEquals(scores.get(result.getWhere()), result.getScore(), 1e-9, query.toString());
+				assertEquals(counts.get(result.getWhere()), result.getCount(), query.toString());
+			}
+		}
+	}
+
+	/**
+	 * Compares the cost of ranking the same queries with each scorer.
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = Benchmarks.PROPERTY, matches = "true")
+	public void benchmarkScoring() {
+		InvertedIndex index = TestCorpus.fill(new InvertedIndex(), SEED, 2000, 500);
+		index.freeze();
+
+		Random random = new Random(SEED);
+		ArrayList<TreeSet<String>> queries = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			queries.add(TestCorpus.query(random, 1 + random.nextInt(4)));
+		}
+
+		for (String name : new String[] { "count", "tfidf", "bm25" }) {
+			Scorer scorer = Scorer.forName(name);
+
+			for (boolean partial : new boolean[] { false, true }) {
+				Benchmarks.measure(name + (partial ? " partial" : " exact") + " per query", queries.size(), () -> {
+					int found = 0;
+					for (TreeSet<String> query : queries) {
+						found += index.search(query, partial, Integer.MAX_VALUE, scorer).size();
+					}
+					return found;
+				});
+			}
+		}
+	}
+}
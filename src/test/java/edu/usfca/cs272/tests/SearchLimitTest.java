@@ -0,0 +1,134 @@
+package edu.usfca.cs272.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import edu.usfca.cs272.InvertedIndex;
+import edu.usfca.cs272.InvertedIndex.IndexSearcher;
+import edu.usfca.cs272.Scorer;
+
+/**
+ * Tests that searches limited to the best few results return the start of the
+ * fully sorted results, and that the total number of hits is still reported.
+ */
+public class SearchLimitTest {
+	/** The seed of the generated corpus. */
+	private static final long SEED = 7;
+
+	/** The number of generated documents. */
+	private static final int DOCUMENTS = 200;
+
+	/** The number of words in each generated document. */
+	private static final int LENGTH = 200;
+
+	/** The limits checked for every query. */
+	private static final int[] LIMITS = { 1, 2, 3, 10, 50, DOCUMENTS + 1 };
+
+	/** An index that can still be modified. */
+	private static InvertedIndex index;
+
+	/** An index with the same contents that has been frozen. */
+	private static InvertedIndex frozen;
+
+	/** Builds the indexes searched by the tests. */
+	@BeforeAll
+	public static void buildIndexes() {
+		index = TestCorpus.fill(new InvertedIndex(), SEED, DOCUMENTS, LENGTH);
+		frozen = TestCorpus.fill(new InvertedIndex(), SEED, DOCUMENTS, LENGTH);
+		frozen.freeze();
+	}
+
+	/**
+	 * Checks that every limited search returns the start of the full results, for
+	 * both the modifiable and the frozen index.
+	 *
+	 * @param name the name of the scorer
+	 */
+	@ParameterizedTest
+	@ValueSource(strings = { "count", "tfidf", "bm25" })
+	public void testLimitIsPrefix(String name) {
+		Scorer scorer = Scorer.forName(name);
+		Random random = new Random(SEED);
+
+		for (int i = 0; i < 200; i++) {
+			TreeSet<String> query = TestCorpus.query(random, 1 + random.nextInt(4));
+			boolean partial = i % 2 == 0;
+
+			for (InvertedIndex searched : List.of(index, frozen)) {
+				List<String> full = TestCorpus.render(searched.search(query, partial, Integer.MAX_VALUE, scorer));
+
+				for (int limit : LIMITS) {
+					List<String> limited = TestCorpus.render(searched.search(query, partial, limit, scorer));
+					String message = query + " partial: " + partial + " limit: " + limit + " frozen: " + searched.isFrozen();
+					assertEquals(full.subList(0, Math.min(limit, full.size())), limited, message);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks that the number of hits matches the size of the full results.
+	 */
+	@Test
+	public void testCountMatches() {
+		Random random = new Random(SEED);
+
+		for (int i = 0; i < 200; i++) {
+			TreeSet<String> query = TestCorpus.query(random, 1 + random.nextInt(4));
+			boolean partial = i % 2 == 0;
+
+			for (InvertedIndex searched : List.of(index, frozen)) {
+				assertEquals(searched.search(query, partial).size(), searched.countMatches(query, partial),
+						query + " partial: " + partial);
+			}
+		}
+	}
+
+	/**
+	 * Checks the full results of exact searches against counts taken from the
+	 * index one document at a time, and that they are in sorted order.
+	 */
+	@Test
+	public void testExactResults() {
+		Random random = new Random(SEED);
+
+		for (int i = 0; i < 200; i++) {
+			TreeSet<String> query = TestCorpus.query(random, 1 + random.nextInt(4));
+			TreeMap<String, Integer> expected = new TreeMap<>();
+
+			for (String word : query) {
+				for (String location : index.viewLocations(word)) {
+					expected.merge(location, index.viewPositions(word, location).size(), Integer::sum);
+				}
+			}
+
+			ArrayList<IndexSearcher> results = index.search(query, false);
+			TreeMap<String, Integer> actual = new TreeMap<>();
+
+			for (int j = 0; j < results.size(); j++) {
+				IndexSearcher result = results.get(j);
+				actual.put(result.getWhere(), result.getCount());
+
+				double score = (double) result.getCount() / index.getWordCount(result.getWhere());
+				assertEquals(score, result.getScore(), 1e-12);
+
+				if (j > 0) {
+					assertTrue(results.get(j - 1).compareTo(result) < 0, query.toString());
+				}
+			}
+
+			assertEquals(expected, actual, query.toString());
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package edu.usfca.cs272.tests;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import edu.usfca.cs272.InvertedIndex;
+import edu.usfca.cs272.InvertedIndex.IndexSearcher;
+import edu.usfca.cs272.JsonWriter;
+import edu.usfca.cs272.QueryProcessor;
+import edu.usfca.cs272.SearchResultStream;
+
+/**
+ * Tests that {@link SearchResultStream} writes the same file as
+ * {@link JsonWriter#writeSearchResults(java.util.Map, Path)} for any window,
+ * including windows small enough to need several merge passes.
+ */
+public class SearchResultStreamTest {
+	/** The seed of the generated corpus. */
+	private static final long SEED = 16;
+
+	/** The number of distinct queries added to each stream. */
+	private static final int QUERIES = 300;
+
+	/** The index searched for results. */
+	private InvertedIndex index;
+
+	/** The directory the output is written to. */
+	private Path directory;
+
+	/**
+	 * Builds the index and creates the output directory.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@BeforeEach
+	public void setup() throws IOException {
+		index = TestCorpus.fill(new InvertedIndex(), SEED, 50, 100);
+		directory = Files.createTempDirectory("stream");
+	}
+
+	/**
+	 * Deletes the output directory.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@AfterEach
+	public void cleanup() throws IOException {
+		TestCorpus.delete(directory);
+	}
+
+	/**
+	 * Checks that the output matches the results written all at once, when
+	 * queries are added in any order and some of them more than once. A window of
+	 * one writes more runs than are merged at once.
+	 *
+	 * @param window the number of queries kept in memory
+	 * @throws IOException if an I/O error occurs
+	 */
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 2, 3, 64, 65, QUERIES, QUERIES + 1 })
+	public void testMatchesJsonWriter(int window) throws IOException {
+		Random random = new Random(SEED + window);
+		TreeMap<String, ArrayList<IndexSearcher>> expected = new TreeMap<>();
+		ArrayList<String> order = new ArrayList<>();
+
+		while (expected.size() < QUERIES) {
+			TreeSet<String> words = TestCorpus.query(random, 1 + random.nextInt(3));
+			String query = String.join(" ", words);
+			if (expected.putIfAbsent(query, index.search(words, true, 5)) == null) {
+				order.add(query);
+			}
+		}
+
+		Collections.shuffle(order, random);
+		List<Path> runs = runs();
+		Path output = directory.resolve("results-" + window + ".json");
+
+		try (SearchResultStream stream = new SearchResultStream(output, window)) {
+			for (int i = 0; i < order.size(); i++) {
+				stream.add(order.get(i), expected.get(order.get(i)));
+
+				// later results of a query already added are ignored
+				String earlier = order.get(random.nextInt(i + 1));
+				stream.add(earlier, index.search(Collections.singleton("a"), true));
+				assertTrue(stream.contains(earlier));
+			}
+		}
+
+		assertEquals(JsonWriter.writeSearchResults(expected), Files.readString(output, UTF_8));
+		assertEquals(runs, runs(), "run files left behind");
+	}
+
+	/**
+	 * Checks that queries are remembered after their results were written to a
+	 * run, and that a closed stream rejects more results.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testContains() throws IOException {
+		Path output = directory.resolve("results.json");
+		SearchResultStream stream = new SearchResultStream(output, 2);
+
+		assertFalse(stream.contains("a"));
+		stream.add("a", List.of());
+		stream.add("b", List.of());
+		stream.add("c", List.of());
+		assertTrue(stream.contains("a"));
+		assertTrue(stream.contains("b"));
+		assertTrue(stream.contains("c"));
+		assertFalse(stream.contains("d"));
+
+		stream.close();
+		stream.close();
+		assertThrows(IllegalStateException.class, () -> stream.add("d", List.of()));
+
+		TreeMap<String, List<IndexSearcher>> expected = new TreeMap<>();
+		for (String query : List.of("a", "b", "c")) {
+			expected.put(query, List.of());
+		}
+		assertEquals(JsonWriter.writeSearchResults(expected), Files.readString(output, UTF_8));
+	}
+
+	/**
+	 * Checks that streaming the results of a query file gives the same output as
+	 * keeping every result until they are written.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public void testProcessQueries() throws IOException {
+		Random random = new Random(SEED);
+		ArrayList<String> lines = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			lines.add(String.join(random.nextBoolean() ? " " : ", ", TestCorpus.words(random, 1 + random.nextInt(3))));
+		}
+
+		Path queries = directory.resolve("queries.txt");
+		Files.write(queries, lines, UTF_8);
+
+		QueryProcessor kept = new QueryProcessor(index, true);
+		kept.processQueries(queries);
+		Path expected = directory.resolve("expected.json");
+		kept.writeSearchResults(expected);
+
+		for (int window : new int[] { 1, 7, 1000 }) {
+			Path actual = directory.resolve("actual-" + window + ".json");
+			new QueryProcessor(index, true).processQueries(queries, actual, window);
+			assertEquals(Files.readString(expected, UTF_8), Files.readString(actual, UTF_8), "window: " + window);
+		}
+	}
+
+	/**
+	 * Lists the run files in the temporary directory.
+	 *
+	 * @return the paths of the run files, sorted
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static List<Path> runs() throws IOException {
+		try (var paths = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+			return paths.filter(path -> path.getFileName().toString().endsWith(".run")).sorted().toList();
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package edu.usfca.cs272.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import edu.usfca.cs272.StemCache;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM;
+
+/**
+ * Tests that {@link StemCache} returns the same stems as a plain stemmer, even
+ * when words share a slot or are stemmed by many threads at once, and that it
+ * counts its hits and misses.
+ */
+public class StemCacheTest {
+	/** The seed of the generated words. */
+	private static final long SEED = 23;
+
+	/** Word stems that take different suffixes. */
+	private static final String[] ROOTS = { "jump", "run", "happi", "connect", "nation", "relat", "stem", "cach", "fox",
+			"lazi", "search", "index", "quick", "argu", "gener" };
+
+	/** Suffixes that the stemmer removes or rewrites. */
+	private static final String[] SUFFIXES = { "", "s", "ing", "ed", "ness", "ly", "ation", "ational", "ful", "ies",
+			"er", "est", "ment", "ize", "izing" };
+
+	/**
+	 * Checks that words sharing a slot replace each other, and each lookup still
+	 * returns its own stem, including words with the same hash code.
+	 */
+	@Test
+	public void testCollisions() {
+		SnowballStemmer plain = new SnowballStemmer(ALGORITHM.ENGLISH);
+		StemCache cache = new StemCache(() -> new SnowballStemmer(ALGORITHM.ENGLISH), 1);
+
+		// these have the same hash code, so only the words themselves tell them apart
+		List<String> same = List.of("AaAaing", "BBBBing", "AaBBing", "BBAaing");
+		for (String word : same) {
+			assertEquals(same.get(0).hashCode(), word.hashCode());
+		}
+
+		Random random = new Random(SEED);
+		List<String> words = new ArrayList<>(same);
+		words.addAll(randomWords(random, 50));
+
+		int hits = 0;
+		String previous = null;
+
+		for (int i = 0; i < 2000; i++) {
+			String word = words.get(random.nextInt(random.nextBoolean() ? same.size() : words.size()));
+			assertEquals(plain.stem(word).toString(), cache.stem(word), word);
+
+			// a single slot only ever holds the last word
+			hits += word.equals(previous) ? 1 : 0;
+			previous = word;
+		}
+
+		assertEquals(hits, cache.getHits());
+		assertEquals(2000 - hits, cache.getMisses());
+	}
+
+	/**
+	 * Checks the hit and miss counts, and that clearing the cache keeps them.
+	 */
+	@Test
+	public void testStatistics() {
+		StemCache cache = new StemCache(() -> new SnowballStemmer(ALGORITHM.ENGLISH));
+		assertEquals(0.0, cache.hitRate());
+
+		String stem = cache.stem("jumping");
+		for (int i = 0; i < 99; i++) {
+			assertSame(stem, cache.stem(new StringBuilder("jumping")));
+		}
+
+		assertEquals("jump", stem);
+		assertSame(stem, stem.intern());
+		assertEquals(99, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(0.99, cache.hitRate(), 1e-9);
+
+		cache.clear();
+		assertSame(stem, cache.stem("jumping"));
+		assertSame(stem, cache.stem("jumping"));
+		assertEquals(100, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		assertTrue(cache.toString().startsWith(StemCache.DEFAULT_SIZE + " slots, 100 hits, 2 misses, "));
+	}
+
+	/**
+	 * Checks that many threads stemming the same words at once always get the
+	 * stems of a plain stemmer, and that every lookup is counted once.
+	 *
+	 * @param size the number of slots in the cache
+	 * @throws Exception if a thread fails
+	 */
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 16, StemCache.DEFAULT_SIZE })
+	public void testConcurrent(int size) throws Exception {
+		StemCache cache = new StemCache(() -> new SnowballStemmer(ALGORITHM.ENGLISH), size);
+		List<String> words = randomWords(new Random(SEED), 200);
+		int threads = 8;
+		int lookups = 20_000;
+
+		ArrayList<Callable<Void>> tasks = new ArrayList<>();
+		for (int thread = 0; thread < threads; thread++) {
+			Random random = new Random(SEED + thread);
+
+			tasks.add(() -> {
+				SnowballStemmer plain = new SnowballStemmer(ALGORITHM.ENGLISH);
+
+				for (int i = 0; i < lookups; i++) {
+					String word = words.get(random.nextInt(words.size()));
+					assertEquals(plain.stem(word).toString(), cache.stem(word), word);
+				}
+
+				return null;
+			});
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+
+		assertEquals((long) threads * lookups, cache.getHits() + cache.getMisses());
+	}
+
+	/**
+	 * Generates random words from the roots and suffixes.
+	 *
+	 * @param random the source of randomness
+	 * @param count the number of words
+	 * @return the words
+	 */
+	private static List<String> randomWords(Random random, int count) {
+		ArrayList<String> words = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			words.add(ROOTS[random.nextInt(ROOTS.length)] + SUFFIXES[random.nextInt(SUFFIXES.length)]);
+		}
+		return words;
+	}
+}
@@ -0,0 +1,169 @@
+package edu.usfca.cs272.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import edu.usfca.cs272.PostingIterator;
+import edu.usfca.cs272.PostingList;
+import edu.usfca.cs272.TermDictionary;
+import edu.usfca.cs272.TermDictionary.PrefixPostings;
+
+/**
+ * Tests that {@link TermDictionary} finds the same words and merged postings
+ * for a prefix as checking every word, and that it caches the merged postings
+ * of the most recently used prefixes.
+ */
+public class TermDictionaryTest {
+	/** The seed of the generated words. */
+	private static final long SEED = 8;
+
+	/** The number of generated documents. */
+	private static final int DOCUMENTS = 300;
+
+	/** The postings of each word. */
+	private static TreeMap<String, PostingList> index;
+
+	/** Builds the postings of generated documents, plus some unusual words. */
+	@BeforeAll
+	public static void buildIndex() {
+		Random random = new Random(SEED);
+		index = new TreeMap<>();
+
+		for (int document = 0; document < DOCUMENTS; document++) {
+			ArrayList<String> words = TestCorpus.words(random, 30);
+
+			// words that end in the largest character, which has no successor
+			if (document % 10 == 0) {
+				words.add("b\uffff");
+				words.add("b\uffff\uffff");
+				words.add("\uffff");
+			}
+
+			for (int position = 0; position < words.size(); position++) {
+				index.computeIfAbsent(words.get(position), word -> new PostingList()).add(document, position + 1);
+			}
+		}
+	}
+
+	/**
+	 * Checks the range of words of many prefixes, including the empty prefix,
+	 * prefixes that end in the largest character, and prefixes that no word has.
+	 */
+	@Test
+	public void testPrefixRanges() {
+		TermDictionary dictionary = new TermDictionary(index, DOCUMENTS, 0);
+		List<String> terms = new ArrayList<>(index.keySet());
+		assertEquals(terms.size(), dictionary.size());
+
+		for (int i = 0; i < terms.size(); i++) {
+			assertEquals(terms.get(i), dictionary.term(i));
+			assertSame(index.get(terms.get(i)), dictionary.postings(i));
+		}
+
+		ArrayList<String> prefixes = new ArrayList<>(List.of("", "a", "b", "b\uffff", "b\uffff\uffff", "\uffff",
+				"\uffff\uffff", "h", "hhhhhhh", "i", "z", "aaaaaaaaa", " ", "\u0000"));
+		for (String term : terms) {
+			for (int length = 1; length <= term.length(); length++) {
+				prefixes.add(term.substring(0, length));
+			}
+			prefixes.add(term + "a");
+		}
+
+		for (String prefix : prefixes) {
+			int from = dictionary.from(prefix);
+			int to = dictionary.to(prefix);
+			List<String> expected = terms.stream().filter(term -> term.startsWith(prefix)).toList();
+
+			assertEquals(expected, terms.subList(from, Math.max(from, to)), prefix);
+			assertEquals(expected.size(), to - from, prefix);
+		}
+	}
+
+	/**
+	 * Checks the merged postings of every prefix against the sum of the postings
+	 * of every word that starts with it.
+	 */
+	@Test
+	public void testPrefixPostings() {
+		TermDictionary dictionary = new TermDictionary(index, DOCUMENTS);
+
+		for (String prefix : List.of("", "a", "ab", "abc", "b", "b\uffff", "c", "d", "dd", "h", "ha", "z", "\uffff")) {
+			TreeMap<Integer, Integer> expected = new TreeMap<>();
+			int terms = 0;
+
+			for (var entry : index.entrySet()) {
+				if (entry.getKey().startsWith(prefix)) {
+					terms++;
+					PostingList postings = entry.getValue();
+					for (int i = 0; i < postings.size(); i++) {
+						expected.merge(postings.document(i), postings.positions(i).size(), Integer::sum);
+					}
+				}
+			}
+
+			// twice, so cached postings are checked as well
+			for (int round = 0; round < 2; round++) {
+				PrefixPostings merged = dictionary.prefix(prefix);
+				TreeMap<Integer, Integer> actual = new TreeMap<>();
+
+				for (int i = 0; i < merged.size(); i++) {
+					actual.put(merged.document(i), merged.count(i));
+					assertTrue(i == 0 || merged.document(i - 1) < merged.document(i), prefix);
+				}
+
+				assertEquals(expected, actual, prefix);
+				assertEquals(terms, merged.terms(), prefix);
+
+				TreeMap<Integer, Integer> iterated = new TreeMap<>();
+				PostingIterator iterator = merged.iterator();
+				while (iterator.document() != PostingIterator.NO_MORE_DOCUMENTS) {
+					iterated.put(iterator.document(), iterator.matches());
+					iterator.next();
+				}
+				assertEquals(expected, iterated, prefix);
+			}
+		}
+	}
+
+	/**
+	 * Checks that only prefixes that expand to many words are cached, and that
+	 * the least recently used prefix is dropped first.
+	 */
+	@Test
+	public void testCache() {
+		TermDictionary dictionary = new TermDictionary(index, DOCUMENTS, 2);
+		List<String> common = List.of("a", "b", "c");
+		for (String prefix : common) {
+			assertTrue(dictionary.to(prefix) - dictionary.from(prefix) >= TermDictionary.MIN_CACHED_TERMS, prefix);
+		}
+
+		String rare = "b\uffff";
+		assertTrue(dictionary.to(rare) - dictionary.from(rare) < TermDictionary.MIN_CACHED_TERMS);
+		assertNotSame(dictionary.prefix(rare), dictionary.prefix(rare));
+
+		PrefixPostings a = dictionary.prefix("a");
+		PrefixPostings b = dictionary.prefix("b");
+		assertSame(a, dictionary.prefix("a"));
+		assertSame(b, dictionary.prefix("b"));
+
+		// "a" was used more recently than "b", so "b" is dropped to make room
+		assertSame(a, dictionary.prefix("a"));
+		PrefixPostings c = dictionary.prefix("c");
+		assertSame(c, dictionary.prefix("c"));
+		assertSame(a, dictionary.prefix("a"));
+		assertNotSame(b, dictionary.prefix("b"));
+
+		TermDictionary uncached = new TermDictionary(index, DOCUMENTS, 0);
+		assertNotSame(uncached.prefix("a"), uncached.prefix("a"));
+	}
+}
@@ -0,0 +1,174 @@
+package edu.usfca.cs272.tests;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import edu.usfca.cs272.InvertedIndex;
+import edu.usfca.cs272.InvertedIndex.IndexSearcher;
+
+/**
+ * Generates random but repeatable documents for tests and benchmarks. Words are
+ * drawn from a small alphabet with short words more likely than long ones, so
+ * words repeat often and share prefixes the way stems of real text do.
+ */
+public class TestCorpus {
+	/** The letters words are made of. */
+	private static final String LETTERS = "abcdefgh";
+
+	/** The longest word generated. */
+	private static final int MAX_LENGTH = 6;
+
+	/**
+	 * Returns a random word.
+	 *
+	 * @param random the source of randomness
+	 * @return the word
+	 */
+	public static String word(Random random) {
+		int length = 1 + Math.min(random.nextInt(MAX_LENGTH), random.nextInt(MAX_LENGTH));
+		StringBuilder word = new StringBuilder(length);
+
+		for (int i = 0; i < length; i++) {
+			// earlier letters are more likely, so prefixes are shared
+			word.append(LETTERS.charAt(Math.min(random.nextInt(LETTERS.length()), random.nextInt(LETTERS.length()))));
+		}
+
+		return word.toString();
+	}
+
+	/**
+	 * Returns a list of random words.
+	 *
+	 * @param random the source of randomness
+	 * @param count the number of words
+	 * @return the words
+	 */
+	public static ArrayList<String> words(Random random, int count) {
+		ArrayList<String> words = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			words.add(word(random));
+		}
+		return words;
+	}
+
+	/**
+	 * Returns a set of random words, for use as a query.
+	 *
+	 * @param random the source of randomness
+	 * @param count the number of words to draw
+	 * @return the distinct words drawn
+	 */
+	public static TreeSet<String> query(Random random, int count) {
+		return new TreeSet<>(words(random, count));
+	}
+
+	/**
+	 * Returns the name of a generated document.
+	 *
+	 * @param document the number of the document
+	 * @return the name of the document
+	 */
+	public static String location(int document) {
+		return "doc-" + document + ".txt";
+	}
+
+	/**
+	 * Adds the words of one generated document to an index. The same document
+	 * always has the same words.
+	 *
+	 * @param index the index to add to
+	 * @param seed the seed of the corpus
+	 * @param document the number of the document
+	 * @param length the number of words in the document
+	 */
+	public static void addDocument(InvertedIndex index, long seed, int document, int length) {
+		index.addWords(words(new Random(seed * 31 + document), length), location(document));
+	}
+
+	/**
+	 * Adds several generated documents to an index.
+	 *
+	 * @param index the index to add to
+	 * @param seed the seed of the corpus
+	 * @param documents the number of documents
+	 * @param length the number of words in each document
+	 * @return the index
+	 */
+	public static InvertedIndex fill(InvertedIndex index, long seed, int documents, int length) {
+		for (int i = 0; i < documents; i++) {
+			addDocument(index, seed, i, length);
+		}
+		return index;
+	}
+
+	/**
+	 * Writes generated text files into a directory, with several words per line.
+	 *
+	 * @param directory the directory to write to
+	 * @param seed the seed of the corpus
+	 * @param files the number of files
+	 * @param lines the number of lines in each file
+	 * @return the paths of the files written
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static List<Path> writeFiles(Path directory, long seed, int files, int lines) throws IOException {
+		ArrayList<Path> paths = new ArrayList<>();
+		Random random = new Random(seed);
+		Files.createDirectories(directory);
+
+		for (int i = 0; i < files; i++) {
+			Path path = directory.resolve(location(i));
+			paths.add(path);
+
+			try (BufferedWriter writer = Files.newBufferedWriter(path, UTF_8)) {
+				for (int j = 0; j < lines; j++) {
+					writer.write(String.join(random.nextBoolean() ? " " : ", ", words(random, 1 + random.nextInt(12))));
+					writer.write(random.nextInt(10) == 0 ? "\r\n" : "\n");
+				}
+			}
+		}
+
+		return paths;
+	}
+
+	/**
+	 * Deletes a directory and everything in it.
+	 *
+	 * @param directory the directory to delete
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static void delete(Path directory) throws IOException {
+		if (!Files.exists(directory)) {
+			return;
+		}
+
+		try (var paths = Files.walk(directory)) {
+			for (Path path : paths.sorted((a, b) -> b.compareTo(a)).toList()) {
+				Files.delete(path);
+			}
+		}
+	}
+
+	/**
+	 * Renders search results as text, so results from different indexes can be
+	 * compared.
+	 *
+	 * @param results the search results
+	 * @return the results as text
+	 */
+	public static List<String> render(List<IndexSearcher> results) {
+		return results.stream().map(IndexSearcher::toString).toList();
+	}
+
+	/** Prevent instantiating this class of static methods. */
+	private TestCorpus() {
+	}
+}
@@ -0,0 +1,202 @@
+package edu.usfca.cs272.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import edu.usfca.cs272.InvertedIndex;
+import edu.usfca.cs272.QueuedFileProcessor;
+import edu.usfca.cs272.ThreadSafeInvertedIndex;
+import edu.usfca.cs272.WorkQueue;
+
+/**
+ * Tests that {@link ThreadSafeInvertedIndex} ends up with the same contents as a
+ * sequential index when written to and searched by several threads at once.
+ */
+public class ThreadSafeInvertedIndexTest {
+	/** The seed of the generated corpus. */
+	private static final long SEED = 272;
+
+	/** The number of generated documents. */
+	private static final int DOCUMENTS = 400;
+
+	/** The number of words in each generated document. */
+	private static final int LENGTH = 300;
+
+	/** The number of writer threads. */
+	private static final int WRITERS = 8;
+
+	/** How long any concurrent test may take. */
+	private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+	/**
+	 * Checks that documents merged in parallel from local indexes, or added word
+	 * by word, give the same index as adding them sequentially.
+	 */
+	@Test
+	public void testParallelWrites() {
+		String expected = TestCorpus.fill(new InvertedIndex(), SEED, DOCUMENTS, LENGTH).toString();
+
+		for (int stripes : new int[] { 1, 3, ThreadSafeInvertedIndex.DEFAULT_STRIPES }) {
+			ThreadSafeInvertedIndex index = new ThreadSafeInvertedIndex(stripes);
+			Assertions.assertTimeoutPreemptively(TIMEOUT, () -> write(index, new AtomicBoolean()));
+			assertEquals(expected, index.toString(), "stripes: " + stripes);
+		}
+	}
+
+	/**
+	 * Checks that searches running while documents are added never fail or see
+	 * more documents than exist, and that searches afterwards give the same
+	 * results as a sequential index.
+	 */
+	@Test
+	public void testSearchWhileWriting() {
+		InvertedIndex expected = TestCorpus.fill(new InvertedIndex(), SEED, DOCUMENTS, LENGTH);
+		ThreadSafeInvertedIndex index = new ThreadSafeInvertedIndex();
+		ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+		AtomicBoolean done = new AtomicBoolean();
+
+		Assertions.assertTimeoutPreemptively(TIMEOUT, () -> {
+			ArrayList<Thread> readers = new ArrayList<>();
+
+			for (int i = 0; i < 4; i++) {
+				Random random = new Random(SEED + i);
+				readers.add(Thread.ofPlatform().start(() -> {
+					try {
+						while (!done.get()) {
+							Set<String> query = TestCorpus.query(random, 3);
+							boolean partial = random.nextBoolean();
+							int found = index.search(query, partial).size();
+							int total = index.countMatches(query, partial);
+
+							assertTrue(found <= DOCUMENTS && total <= DOCUMENTS);
+							assertTrue(index.viewFiles().size() <= DOCUMENTS);
+
+							// the lock prefers readers, so leave gaps for the writers
+							Thread.sleep(1);
+						}
+					}
+					catch (Throwable e) {
+						errors.add(e);
+					}
+				}));
+			}
+
+			write(index, done);
+
+			for (Thread reader : readers) {
+				reader.join();
+			}
+		});
+
+		assertEquals(new ArrayList<>(), new ArrayList<>(errors));
+
+		Random random = new Random(SEED);
+		for (int i = 0; i < 200; i++) {
+			TreeSet<String> query = TestCorpus.query(random, 1 + random.nextInt(4));
+			boolean partial = i % 2 == 0;
+			assertEquals(TestCorpus.render(expected.search(query, partial)),
+					TestCorpus.render(index.search(query, partial)), query.toString());
+			assertEquals(expected.countMatches(query, partial), index.countMatches(query, partial));
+		}
+	}
+
+	/**
+	 * Measures the throughput of indexing generated files with 1, 2, 4, 8, and 16
+	 * threads.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = Benchmarks.PROPERTY, matches = "true")
+	public void benchmarkScaling() throws IOException {
+		Path directory = Files.createTempDirectory("scaling");
+
+		try {
+			TestCorpus.writeFiles(directory, SEED, 400, 400);
+
+			for (int threads : new int[] { 1, 2, 4, 8, 16 }) {
+				WorkQueue queue = new WorkQueue(threads);
+
+				try {
+					Benchmarks.measure("index 400 files, threads: " + threads, 400, () -> {
+						ThreadSafeInvertedIndex index = new ThreadSafeInvertedIndex();
+						try {
+							QueuedFileProcessor.processPath(directory, index, queue);
+						}
+						catch (IOException e) {
+							throw new IllegalStateException(e);
+						}
+						return index.getFileCount();
+					});
+				}
+				finally {
+					queue.join();
+				}
+			}
+		}
+		finally {
+			TestCorpus.delete(directory);
+		}
+	}
+
+	/**
+	 * Adds every generated document to the index from several threads. Half of
+	 * the threads merge local indexes, and the other half add words one at a time.
+	 *
+	 * @param index the index to add to
+	 * @param done set once every document was added
+	 * @throws InterruptedException if interrupted while waiting for the writers
+	 */
+	private static void write(ThreadSafeInvertedIndex index, AtomicBoolean done) throws InterruptedException {
+		CountDownLatch start = new CountDownLatch(1);
+		ArrayList<Thread> writers = new ArrayList<>();
+
+		for (int i = 0; i < WRITERS; i++) {
+			int writer = i;
+			writers.add(Thread.ofPlatform().start(() -> {
+				try {
+					start.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+
+				for (int document = writer; document < DOCUMENTS; document += WRITERS) {
+					if (writer % 2 == 0) {
+						InvertedIndex local = new InvertedIndex();
+						TestCorpus.addDocument(local, SEED, document, LENGTH);
+						index.addAll(local);
+					}
+					else {
+						TestCorpus.addDocument(index, SEED, document, LENGTH);
+					}
+				}
+			}));
+		}
+
+		start.countDown();
+
+		for (Thread writer : writers) {
+			writer.join();
+		}
+
+		done.set(true);
+	}
+}
@@ -0,0 +1,220 @@
+package edu.usfca.cs272.tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import edu.usfca.cs272.FileStemmer;
+import edu.usfca.cs272.WordTokenizer;
+
+/**
+ * Tests that {@link WordTokenizer} splits text into exactly the same words as
+ * {@link FileStemmer#parse(String)}, in several locales.
+ */
+public class WordTokenizerTest {
+	/** Text that exercises whitespace, accents, and locale-sensitive letters. */
+	private static final String[] TEXTS = {
+			"",
+			"   ",
+			"Hello, World!",
+			"  leading and trailing  ",
+			"tabs\tand\nnew\u000Blines\fand\rreturns",
+			"123 abc-def o'clock x2y",
+			"Café naïve résumé Ångström Ærø straße ß ª º µ ÿ",
+
+			// no-break spaces are split on, but are not removed by strip()
+			"a\u00A0b",
+			"\u00A0hello",
+			"hello\u00A0",
+			"\u00A0",
+			"\u00A0 \u00A0 word",
+			"\u2007figure\u202Fnarrow",
+
+			// next line is whitespace to both split() and strip()
+			"one\u0085two",
+			"\u0085x",
+			"x\u0085",
+
+			"line\u2028paragraph\u2029ideographic\u3000space",
+
+			// a capital sigma depends on the letters around it
+			"ΟΔΟΣ",
+			"ΣΑΣ ΣΑΣ",
+			"Σ",
+			"aΣb",
+			"ΌΣΟΣ. ΣΟΦΊΑ",
+			"Σ Σ",
+
+			// letters that lowercase differently in Turkish, Azeri, or Lithuanian
+			"İSTANBUL ıi Iİ DIŞ",
+			"\u012E\u00CC \u0128 i\u0307 \u012E\u0301",
+			"\u0130 J\u0307 \u00CC\u00CD\u0128",
+
+			"日本語 テキスト Привет мир مرحبا",
+			"😀 smile 𝒜𝒷𝒸 ǅ ﬁ Ⅻ",
+			"\u0301 combining e\u0301",
+	};
+
+	/** The locales the tokenizer is compared in. */
+	private static final Locale[] LOCALES = {
+			Locale.ROOT, Locale.ENGLISH, Locale.of("tr"), Locale.of("lt"), Locale.of("az"), Locale.of("el")
+	};
+
+	/** The characters random text is made of. */
+	private static final String ALPHABET = "aZ\u00E91 .\t\u00A0\u0085\u2028\u3000\u03A3\u03C3\u0130\u0131i\u0307I\u012E\u00CC\u65E5\uD83D\uDE00\u01C5\u0301-";
+
+	/** The default locale before each test. */
+	private Locale original;
+
+	/** Remembers the default locale. */
+	@BeforeEach
+	public void saveLocale() {
+		original = Locale.getDefault();
+	}
+
+	/** Restores the default locale. */
+	@AfterEach
+	public void restoreLocale() {
+		Locale.setDefault(original);
+	}
+
+	/**
+	 * Checks every sample text in the given locale.
+	 *
+	 * @param language the language of the default locale
+	 */
+	@ParameterizedTest
+	@ValueSource(strings = { "", "en", "tr", "lt", "az", "el" })
+	public void testSamples(String language) {
+		Locale.setDefault(Locale.of(language));
+		WordTokenizer tokenizer = new WordTokenizer();
+
+		for (String text : TEXTS) {
+			assertTokens(tokenizer, text);
+		}
+	}
+
+	/**
+	 * Checks the sample texts joined together, so that a tokenizer reused across
+	 * lines never leaks words from one line into the next.
+	 */
+	@Test
+	public void testReuse() {
+		for (Locale locale : LOCALES) {
+			Locale.setDefault(locale);
+			WordTokenizer tokenizer = new WordTokenizer();
+
+			for (int i = TEXTS.length - 1; i >= 0; i--) {
+				assertTokens(tokenizer, TEXTS[i]);
+				assertTokens(tokenizer, TEXTS[i] + " " + TEXTS[(i + 1) % TEXTS.length]);
+			}
+		}
+	}
+
+	/**
+	 * Checks random text made of the characters most likely to differ.
+	 */
+	@Test
+	public void testRandom() {
+		Random random = new Random(272);
+
+		for (Locale locale : LOCALES) {
+			Locale.setDefault(locale);
+			WordTokenizer tokenizer = new WordTokenizer();
+
+			for (int i = 0; i < 2000; i++) {
+				StringBuilder text = new StringBuilder();
+				int length = random.nextInt(24);
+
+				for (int j = 0; j < length; j++) {
+					int index = random.nextInt(ALPHABET.length());
+
+					// keep surrogate pairs together
+					if (Character.isLowSurrogate(ALPHABET.charAt(index))) {
+						index--;
+					}
+					text.append(ALPHABET.charAt(index));
+					if (Character.isHighSurrogate(ALPHABET.charAt(index))) {
+						text.append(ALPHABET.charAt(index + 1));
+					}
+				}
+
+				assertTokens(tokenizer, text.toString());
+			}
+		}
+	}
+
+	/**
+	 * Checks that the views of the words match their copies.
+	 */
+	@Test
+	public void testViews() {
+		WordTokenizer tokenizer = new WordTokenizer();
+		tokenizer.tokenize("The quick brown fox jumps over the lazy dog");
+
+		for (int i = 0; i < tokenizer.size(); i++) {
+			assertEquals(tokenizer.get(i), tokenizer.view(i).toString());
+			assertEquals(tokenizer.get(i).length(), tokenizer.view(i).length());
+		}
+	}
+
+	/**
+	 * Compares the time and allocations of the tokenizer against
+	 * {@link FileStemmer#parse(String)}.
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = Benchmarks.PROPERTY, matches = "true")
+	public void benchmark() {
+		String[] lines = new String[10_000];
+		Random random = new Random(272);
+
+		for (int i = 0; i < lines.length; i++) {
+			lines[i] = i % 10 == 0 ? TEXTS[random.nextInt(TEXTS.length)]
+					: "The Quick brown fox, naïve café owner, jumped over " + i + " lazy dogs!";
+		}
+
+		WordTokenizer tokenizer = new WordTokenizer();
+
+		Benchmarks.measure("FileStemmer.parse per line", lines.length, () -> {
+			int words = 0;
+			for (String line : lines) {
+				words += FileStemmer.parse(line).length;
+			}
+			return words;
+		});
+
+		Benchmarks.measure("WordTokenizer.tokenize per line", lines.length, () -> {
+			int words = 0;
+			for (String line : lines) {
+				words += tokenizer.tokenize(line);
+			}
+			return words;
+		});
+	}
+
+	/**
+	 * Asserts that the tokenizer finds the same words as the parser.
+	 *
+	 * @param tokenizer the tokenizer to use
+	 * @param text the text to split
+	 */
+	private static void assertTokens(WordTokenizer tokenizer, String text) {
+		String[] expected = FileStemmer.parse(text);
+		int size = tokenizer.tokenize(text);
+		String message = Locale.getDefault() + " " + Arrays.toString(text.codePoints().toArray());
+
+		assertArrayEquals(expected, tokenizer.toArray(), message);
+		assertEquals(expected.length, size, message);
+		assertEquals(expected.length, tokenizer.size(), message);
+	}
+}
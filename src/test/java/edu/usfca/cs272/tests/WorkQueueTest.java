@@ -0,0 +1,219 @@
+package edu.usfca.cs272.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import edu.usfca.cs272.WorkQueue;
+
+/**
+ * Tests that every kind of {@link WorkQueue} runs every task, waits for all of
+ * them, and rejects tasks once shut down.
+ */
+public class WorkQueueTest {
+	/** The number of worker threads. */
+	private static final int THREADS = 4;
+
+	/** How long any test may take. */
+	private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+	/**
+	 * Checks that finish waits for every task, including tasks added by other
+	 * tasks, and that the queue can be reused afterwards.
+	 *
+	 * @param type the kind of work queue
+	 */
+	@ParameterizedTest
+	@EnumSource(WorkQueue.Type.class)
+	public void testTasksComplete(WorkQueue.Type type) {
+		WorkQueue queue = new WorkQueue(THREADS, type);
+		AtomicInteger count = new AtomicInteger();
+
+		Assertions.assertTimeoutPreemptively(TIMEOUT, () -> {
+			for (int round = 1; round <= 3; round++) {
+				for (int i = 0; i < 1000; i++) {
+					queue.execute(() -> {
+						count.incrementAndGet();
+						queue.execute(count::incrementAndGet);
+						queue.execute(count::incrementAndGet, 0);
+					});
+				}
+
+				queue.finish();
+				assertEquals(3000 * round, count.get(), type.toString());
+			}
+
+			queue.join();
+		});
+	}
+
+	/**
+	 * Checks that a task that fails does not stop the queue from running other
+	 * tasks or from finishing.
+	 *
+	 * @param type the kind of work queue
+	 */
+	@ParameterizedTest
+	@EnumSource(WorkQueue.Type.class)
+	public void testFailingTask(WorkQueue.Type type) {
+		WorkQueue queue = new WorkQueue(THREADS, type);
+		AtomicInteger count = new AtomicInteger();
+
+		Assertions.assertTimeoutPreemptively(TIMEOUT, () -> {
+			for (int i = 0; i < 2 * THREADS; i++) {
+				queue.execute(() -> {
+					throw new IllegalStateException("expected by the test");
+				});
+				queue.execute(count::incrementAndGet);
+			}
+
+			queue.join();
+		});
+
+		assertEquals(2 * THREADS, count.get());
+	}
+
+	/**
+	 * Checks that tasks are rejected after a shutdown, and that waiting for the
+	 * queue afterwards does not hang.
+	 *
+	 * @param type the kind of work queue
+	 */
+	@ParameterizedTest
+	@EnumSource(WorkQueue.Type.class)
+	public void testRejectAfterShutdown(WorkQueue.Type type) {
+		WorkQueue queue = new WorkQueue(THREADS, type);
+		AtomicInteger count = new AtomicInteger();
+
+		Assertions.assertTimeoutPreemptively(TIMEOUT, () -> {
+			queue.execute(count::incrementAndGet);
+			queue.finish();
+			queue.shutdown();
+
+			assertThrows(RejectedExecutionException.class, () -> queue.execute(count::incrementAndGet));
+			assertThrows(RejectedExecutionException.class, () -> queue.execute(count::incrementAndGet, -1));
+
+			queue.finish();
+			queue.join();
+		});
+
+		assertEquals(1, count.get());
+	}
+
+	/**
+	 * Checks that tasks still waiting in the legacy queue are dropped by a
+	 * shutdown, and are no longer waited for.
+	 */
+	@Test
+	public void testShutdownDropsQueued() {
+		WorkQueue queue = new WorkQueue(1, WorkQueue.Type.LEGACY);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger count = new AtomicInteger();
+
+		Assertions.assertTimeoutPreemptively(TIMEOUT, () -> {
+			queue.execute(() -> {
+				started.countDown();
+				await(release);
+				count.incrementAndGet();
+			});
+			queue.execute(count::incrementAndGet);
+
+			started.await();
+			queue.shutdown();
+			release.countDown();
+
+			queue.finish();
+			queue.join();
+		});
+
+		assertEquals(1, count.get());
+	}
+
+	/**
+	 * Checks that a task is run by the calling thread when more work than the
+	 * bound is pending, and queued otherwise.
+	 *
+	 * @param type the kind of work queue
+	 */
+	@ParameterizedTest
+	@EnumSource(WorkQueue.Type.class)
+	public void testBoundedExecute(WorkQueue.Type type) {
+		WorkQueue queue = new WorkQueue(THREADS, type);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicReference<Thread> ranOn = new AtomicReference<>();
+
+		Assertions.assertTimeoutPreemptively(TIMEOUT, () -> {
+			queue.execute(() -> await(release));
+
+			queue.execute(() -> ranOn.set(Thread.currentThread()), 0);
+			assertSame(Thread.currentThread(), ranOn.get(), type.toString());
+
+			CountDownLatch queued = new CountDownLatch(1);
+			queue.execute(() -> {
+				ranOn.set(Thread.currentThread());
+				queued.countDown();
+			}, 1);
+			queued.await();
+			assertNotSame(Thread.currentThread(), ranOn.get(), type.toString());
+
+			release.countDown();
+			queue.join();
+		});
+	}
+
+	/**
+	 * Measures the cost of dispatching small tasks and waiting for them with each
+	 * kind of work queue.
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = Benchmarks.PROPERTY, matches = "true")
+	public void benchmarkDispatch() {
+		int tasks = 100_000;
+
+		for (WorkQueue.Type type : WorkQueue.Type.values()) {
+			WorkQueue queue = new WorkQueue(THREADS, type);
+			AtomicInteger count = new AtomicInteger();
+
+			try {
+				Benchmarks.measure(type + " per task", tasks, () -> {
+					for (int i = 0; i < tasks; i++) {
+						queue.execute(count::incrementAndGet);
+					}
+					queue.finish();
+					return count.get();
+				});
+			}
+			finally {
+				queue.join();
+			}
+		}
+	}
+
+	/**
+	 * Waits for a latch, ignoring interrupts.
+	 *
+	 * @param latch the latch to wait for
+	 */
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}